@@ -45,7 +45,7 @@ public abstract class Command implements CommandInterface {
      */
     private volatile boolean cancel;
 
-    private final String sql;
+    private String sql;
 
     private boolean canReuse;
 
@@ -376,6 +376,38 @@ public boolean isCacheable() {
         return false;
     }
 
+    /**
+     * Check whether this command, after it was closed, can be used by another
+     * session.
+     *
+     * @return true if the command can be used by another session
+     */
+    public boolean isShareable() {
+        return false;
+    }
+
+    /**
+     * Create a command that executes the statement of this command in another
+     * session. This is only allowed if the command is closed and shareable,
+     * this command must not be used afterwards.
+     *
+     * @param session the new session
+     * @param sql the SQL statement
+     * @return the new command
+     */
+    public Command share(Session session, String sql) {
+        throw DbException.throwInternalError(toString());
+    }
+
+    /**
+     * Set the SQL statement that is reported in error messages.
+     *
+     * @param sql the SQL statement
+     */
+    void setSQL(String sql) {
+        this.sql = sql;
+    }
+
     /**
      * Whether the command is already closed (in which case it can be re-used).
      *
@@ -6,6 +6,7 @@
 package org.h2.command;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.h2.api.DatabaseEventListener;
 import org.h2.command.dml.Explain;
@@ -14,7 +15,9 @@
 import org.h2.expression.Parameter;
 import org.h2.expression.ParameterInterface;
 import org.h2.result.ResultInterface;
+import org.h2.table.Column;
 import org.h2.table.TableView;
+import org.h2.value.TypeInfo;
 import org.h2.value.Value;
 import org.h2.value.ValueNull;
 
@@ -28,6 +31,22 @@ public class CommandContainer extends Command {
     private boolean readOnlyKnown;
     private boolean readOnly;
 
+    /**
+     * The indexes of parameters that replace literals of the original
+     * statement, or null.
+     */
+    private int[] literalIndexes;
+
+    /**
+     * The values of the replaced literals.
+     */
+    private Value[] literalValues;
+
+    /**
+     * The parameters without the parameters that replace literals.
+     */
+    private ArrayList<Parameter> parameters;
+
     /**
      * Clears CTE views for a specified statement.
      *
@@ -65,7 +84,57 @@ static void clearCTE(Session session, List<TableView> views) {
 
     @Override
     public ArrayList<? extends ParameterInterface> getParameters() {
-        return prepared.getParameters();
+        if (literalIndexes == null) {
+            return prepared.getParameters();
+        }
+        if (parameters == null) {
+            ArrayList<Parameter> list = new ArrayList<>(prepared.getParameters());
+            for (int i = literalIndexes.length - 1; i >= 0; i--) {
+                list.remove(literalIndexes[i]);
+            }
+            parameters = list;
+        }
+        return parameters;
+    }
+
+    /**
+     * Set the values of the parameters that replace literals of the original
+     * statement. These parameters are not visible to the client.
+     *
+     * @param sql the original statement
+     * @param indexes the parameter indexes
+     * @param values the values
+     */
+    public void setLiteralParameters(String sql, int[] indexes, Value[] values) {
+        setSQL(sql);
+        if (!Arrays.equals(indexes, literalIndexes)) {
+            literalIndexes = indexes;
+            parameters = null;
+        }
+        literalValues = values;
+    }
+
+    private void setLiteralValues() {
+        if (literalIndexes != null) {
+            ArrayList<Parameter> list = prepared.getParameters();
+            for (int i = 0; i < literalIndexes.length; i++) {
+                Parameter p = list.get(literalIndexes[i]);
+                Value v = literalValues[i];
+                Column column = p.getColumn();
+                if (column != null) {
+                    // convert the value like a constant compared with the
+                    // column, see Comparison.optimize
+                    TypeInfo colType = column.getType(), constType = v.getType();
+                    if (constType.getValueType() != colType.getValueType()) {
+                        TypeInfo resType = Value.getHigherType(colType, constType);
+                        if (constType.getValueType() != resType.getValueType()) {
+                            v = v.convertTo(resType, session.getDatabase().getMode(), column);
+                        }
+                    }
+                }
+                p.setValue(v);
+            }
+        }
     }
 
     @Override
@@ -120,12 +189,14 @@ private void recompileIfRequired() {
             prepared.prepare();
             prepared.setModificationMetaId(mod);
             prepareJoinBatch();
+            parameters = null;
         }
     }
 
     @Override
     public int update() {
         recompileIfRequired();
+        setLiteralValues();
         setProgress(DatabaseEventListener.STATE_STATEMENT_START);
         start();
         session.setLastScopeIdentity(ValueNull.INSTANCE);
@@ -139,6 +210,7 @@ public int update() {
     @Override
     public ResultInterface query(int maxrows) {
         recompileIfRequired();
+        setLiteralValues();
         setProgress(DatabaseEventListener.STATE_STATEMENT_START);
         start();
         prepared.checkParameters();
@@ -180,6 +252,17 @@ public boolean isCacheable() {
         return prepared.isCacheable();
     }
 
+    @Override
+    public boolean isShareable() {
+        return prepared.isShareable();
+    }
+
+    @Override
+    public Command share(Session session, String sql) {
+        prepared.setSession(session);
+        return new CommandContainer(session, sql, prepared);
+    }
+
     @Override
     public int getCommandType() {
         return prepared.getType();
@@ -0,0 +1,400 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.command;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.h2.engine.Mode;
+import org.h2.util.StringUtils;
+import org.h2.util.Utils;
+import org.h2.value.Value;
+import org.h2.value.ValueDecimal;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueLong;
+import org.h2.value.ValueString;
+
+/**
+ * Replaces literals of SELECT, INSERT, UPDATE, and DELETE statements with
+ * parameters, so that statements that only differ in these literals can use
+ * the same prepared statement. Only literals where a parameter can't change
+ * the plan or the result meta data are replaced: the right side of
+ * comparisons in WHERE, ON, and HAVING conditions, values of assignments of
+ * UPDATE statements, and values of rows of INSERT statements. Literals in the
+ * select list, in derived tables, in LIKE patterns, and in LIMIT and OFFSET
+ * clauses are kept.
+ */
+public final class LiteralParameterizer {
+
+    /**
+     * Token types.
+     */
+    private static final int IDENTIFIER = 0, QUOTED_IDENTIFIER = 1, NUMBER = 2, STRING = 3, PARAMETER = 4,
+            SYMBOL = 5, OPEN = 6, CLOSE = 7, END = 8;
+
+    private static final HashSet<String> COMPARISONS = new HashSet<>(
+            Arrays.asList("=", "<>", "!=", "<", ">", "<=", ">="));
+
+    private static final HashSet<String> CLAUSES = new HashSet<>(Arrays.asList("SELECT", "FROM", "WHERE",
+            "GROUP", "HAVING", "ORDER", "LIMIT", "OFFSET", "FETCH", "ON", "SET", "VALUES", "QUALIFY", "WINDOW",
+            "UNION", "EXCEPT", "MINUS", "INTERSECT", "JOIN", "INTO", "USING", "TOP", "FOR"));
+
+    /**
+     * Keywords that may follow a condition.
+     */
+    private static final HashSet<String> CONDITION_END = new HashSet<>(Arrays.asList("AND", "OR", "WHERE",
+            "GROUP", "HAVING", "ORDER", "LIMIT", "OFFSET", "FETCH", "QUALIFY", "WINDOW", "UNION", "EXCEPT", "MINUS",
+            "INTERSECT", "FOR", "JOIN", "INNER", "LEFT", "RIGHT", "FULL", "CROSS", "NATURAL"));
+
+    private final String sql;
+
+    private final int[] parameterIndexes;
+
+    private final Value[] values;
+
+    private LiteralParameterizer(String sql, int[] parameterIndexes, Value[] values) {
+        this.sql = sql;
+        this.parameterIndexes = parameterIndexes;
+        this.values = values;
+    }
+
+    /**
+     * Replace the literals of the statement with parameters.
+     *
+     * @param sql the SQL statement
+     * @param mode the compatibility mode
+     * @return the statement with parameters, or null if the statement is not
+     *         supported or doesn't contain literals that can be replaced
+     */
+    public static LiteralParameterizer parameterize(String sql, Mode mode) {
+        ArrayList<int[]> tokens = tokenize(sql);
+        if (tokens == null || tokens.size() < 2) {
+            return null;
+        }
+        int[] first = tokens.get(0);
+        if (first[0] != IDENTIFIER) {
+            return null;
+        }
+        String command = StringUtils.toUpperEnglish(sql.substring(first[1], first[2]));
+        boolean insert = command.equals("INSERT");
+        if (!insert && !command.equals("SELECT") && !command.equals("UPDATE") && !command.equals("DELETE")) {
+            return null;
+        }
+        // the clause of each nesting level
+        ArrayList<String> clauses = Utils.newSmallArrayList();
+        // whether the parenthesis of each nesting level encloses a row of
+        // the VALUES clause
+        ArrayList<Boolean> rows = Utils.newSmallArrayList();
+        clauses.add(command);
+        rows.add(Boolean.FALSE);
+        StringBuilder builder = null;
+        ArrayList<Integer> indexes = null;
+        ArrayList<Value> list = null;
+        int parameterCount = 0, copied = 0;
+        for (int i = 0, size = tokens.size(); i < size; i++) {
+            int[] token = tokens.get(i);
+            int level = clauses.size() - 1;
+            switch (token[0]) {
+            case IDENTIFIER: {
+                String word = StringUtils.toUpperEnglish(sql.substring(token[1], token[2]));
+                if (CLAUSES.contains(word)) {
+                    clauses.set(level, word);
+                }
+                break;
+            }
+            case OPEN: {
+                int[] previous = tokens.get(i - 1);
+                String clause = clauses.get(level);
+                boolean row = clause.equals("VALUES") && !rows.get(level)
+                        && (previous[0] == IDENTIFIER || isSymbol(sql, previous, ","));
+                clauses.add(clause);
+                rows.add(row);
+                break;
+            }
+            case CLOSE:
+                if (level == 0) {
+                    return null;
+                }
+                clauses.remove(level);
+                rows.remove(level);
+                break;
+            case PARAMETER:
+                parameterCount++;
+                break;
+            case NUMBER:
+            case STRING: {
+                int[] previous = tokens.get(i - 1), next = tokens.get(i + 1);
+                boolean replace;
+                if (insert) {
+                    replace = rows.get(level) && (previous[0] == OPEN || isSymbol(sql, previous, ","))
+                            && (next[0] == CLOSE || isSymbol(sql, next, ","));
+                } else {
+                    replace = isReplaceable(sql, clauses, tokens, i);
+                }
+                if (!replace) {
+                    break;
+                }
+                Value v = getValue(sql, token, mode);
+                if (v == null) {
+                    break;
+                }
+                if (builder == null) {
+                    builder = new StringBuilder(sql.length());
+                    indexes = Utils.newSmallArrayList();
+                    list = Utils.newSmallArrayList();
+                }
+                builder.append(sql, copied, token[1]).append('?');
+                copied = token[2];
+                indexes.add(parameterCount++);
+                list.add(v);
+                break;
+            }
+            default:
+            }
+        }
+        if (builder == null) {
+            return null;
+        }
+        builder.append(sql, copied, sql.length());
+        int count = indexes.size();
+        int[] parameterIndexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            parameterIndexes[i] = indexes.get(i);
+        }
+        return new LiteralParameterizer(builder.toString(), parameterIndexes, list.toArray(new Value[0]));
+    }
+
+    private static boolean isReplaceable(String sql, ArrayList<String> clauses, ArrayList<int[]> tokens,
+            int index) {
+        int[] previous = tokens.get(index - 1), next = tokens.get(index + 1);
+        if (previous[0] != SYMBOL || !COMPARISONS.contains(sql.substring(previous[1], previous[2]))) {
+            return false;
+        }
+        if (isLiteralOperand(tokens, index - 2)) {
+            // a comparison of two literals, such as 1 = 0, is evaluated by
+            // the optimizer
+            return false;
+        }
+        String clause = clauses.get(clauses.size() - 1);
+        boolean set = clause.equals("SET");
+        if (!set && !isCondition(clause)) {
+            return false;
+        }
+        // subqueries in the select list or in the FROM clause
+        for (int i = 0, size = clauses.size() - 1; i < size; i++) {
+            String c = clauses.get(i);
+            if (!isCondition(c) && !c.equals("SET")) {
+                return false;
+            }
+        }
+        switch (next[0]) {
+        case CLOSE:
+        case END:
+            return true;
+        case IDENTIFIER:
+            return CONDITION_END.contains(StringUtils.toUpperEnglish(sql.substring(next[1], next[2])));
+        case SYMBOL:
+            return set && isSymbol(sql, next, ",");
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Check whether the left operand of a comparison is a single literal.
+     *
+     * @param tokens the tokens
+     * @param i the index of the last token of the left operand
+     * @return whether the operand is a literal
+     */
+    private static boolean isLiteralOperand(ArrayList<int[]> tokens, int i) {
+        if (i < 1) {
+            return false;
+        }
+        int type = tokens.get(i)[0];
+        if (type != NUMBER && type != STRING) {
+            return false;
+        }
+        // a keyword such as WHERE or AND, a data type name of a typed
+        // literal, or an opening parenthesis
+        type = tokens.get(i - 1)[0];
+        return type == IDENTIFIER || type == OPEN;
+    }
+
+    private static boolean isCondition(String clause) {
+        return clause.equals("WHERE") || clause.equals("ON") || clause.equals("HAVING");
+    }
+
+    private static boolean isSymbol(String sql, int[] token, String symbol) {
+        return token[0] == SYMBOL && token[2] - token[1] == symbol.length() && sql.startsWith(symbol, token[1]);
+    }
+
+    /**
+     * Get the value of a literal, the same way as the parser.
+     *
+     * @return the value, or null if the literal should be kept
+     */
+    private static Value getValue(String sql, int[] token, Mode mode) {
+        String s = sql.substring(token[1], token[2]);
+        if (token[0] == STRING) {
+            s = StringUtils.replaceAll(s.substring(1, s.length() - 1), "''", "'");
+            return ValueString.get(s, mode.treatEmptyStringsAsNull);
+        }
+        int dots = 0;
+        for (int i = 0, l = s.length(); i < l; i++) {
+            char c = s.charAt(i);
+            if (c == '.') {
+                dots++;
+            } else if (c < '0' || c > '9') {
+                // exponent, hexadecimal number, or suffix
+                return null;
+            }
+        }
+        if (dots > 1) {
+            return null;
+        } else if (dots == 1) {
+            return ValueDecimal.get(new BigDecimal(s));
+        }
+        if (s.length() > 18) {
+            return null;
+        }
+        long x = Long.parseLong(s);
+        return x <= Integer.MAX_VALUE ? ValueInt.get((int) x) : ValueLong.get(x);
+    }
+
+    /**
+     * Split the statement into tokens. Each token is an array of the type, the
+     * start index, and the end index.
+     *
+     * @return the tokens (the last token has the type END), or null if the
+     *         statement uses syntax that is not supported
+     */
+    private static ArrayList<int[]> tokenize(String sql) {
+        ArrayList<int[]> tokens = new ArrayList<>();
+        int length = sql.length();
+        for (int i = 0; i < length;) {
+            char c = sql.charAt(i);
+            int start = i, type;
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-'
+                    || c == '/' && i + 1 < length && sql.charAt(i + 1) == '/') {
+                while (i < length && sql.charAt(i) != '\n' && sql.charAt(i) != '\r') {
+                    i++;
+                }
+                continue;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                if (end < 0) {
+                    return null;
+                }
+                i = end + 2;
+                continue;
+            } else if (c == '\'' || c == '"') {
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        return null;
+                    }
+                    if (sql.charAt(i++) == c) {
+                        if (i < length && sql.charAt(i) == c) {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                type = c == '\'' ? STRING : QUOTED_IDENTIFIER;
+            } else if (c >= '0' && c <= '9' || c == '.' && i + 1 < length && Character.isDigit(sql.charAt(i + 1))) {
+                while (i < length && (Character.isLetterOrDigit(c = sql.charAt(i)) || c == '.' || c == '_')) {
+                    i++;
+                }
+                type = NUMBER;
+            } else if (Character.isLetter(c) || c == '_') {
+                while (i < length && (Character.isLetterOrDigit(c = sql.charAt(i)) || c == '_' || c == '$')) {
+                    i++;
+                }
+                type = IDENTIFIER;
+            } else if (c == '?') {
+                if (i + 1 < length && Character.isDigit(sql.charAt(i + 1))) {
+                    // indexed parameters can't be mixed with other parameters
+                    return null;
+                }
+                i++;
+                type = PARAMETER;
+            } else if (c == '(') {
+                i++;
+                type = OPEN;
+            } else if (c == ')') {
+                i++;
+                type = CLOSE;
+            } else if (c == ';' || c == '$' || c == '`' || c == '[' || c == ']' || c == '#' || c == '{'
+                    || c == '}' || c == '\\') {
+                // multiple statements, dollar quoted strings, special
+                // identifiers, or other syntax that is not supported here
+                return null;
+            } else {
+                i++;
+                if (i < length) {
+                    char d = sql.charAt(i);
+                    if ((c == '<' || c == '>' || c == '!' || c == ':') && d == '=' || c == '<' && d == '>'
+                            || c == '|' && d == '|' || c == ':' && d == ':' || c == '&' && d == '&') {
+                        i++;
+                    }
+                }
+                type = SYMBOL;
+            }
+            tokens.add(new int[] { type, start, i });
+        }
+        tokens.add(new int[] { END, length, length });
+        return tokens;
+    }
+
+    /**
+     * Get the statement with parameters instead of literals.
+     *
+     * @return the SQL statement
+     */
+    public String getSQL() {
+        return sql;
+    }
+
+    /**
+     * Get the key of the statement for query caches. Statements with the same
+     * key have the same parameters.
+     *
+     * @return the key
+     */
+    public String getKey() {
+        StringBuilder builder = new StringBuilder(sql).append('\0');
+        for (int index : parameterIndexes) {
+            builder.append(index).append(',');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Get the indexes of the parameters that replace literals.
+     *
+     * @return the parameter indexes
+     */
+    public int[] getParameterIndexes() {
+        return parameterIndexes;
+    }
+
+    /**
+     * Get the values of the replaced literals.
+     *
+     * @return the values
+     */
+    public Value[] getValues() {
+        return values;
+    }
+
+}
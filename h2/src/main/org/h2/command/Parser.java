@@ -206,10 +206,14 @@
 import org.h2.expression.function.TableFunction;
 import org.h2.index.Index;
 import org.h2.message.DbException;
+import org.h2.mvstore.db.MVHistoricalTable;
+import org.h2.mvstore.db.MVTable;
+import org.h2.mvstore.tx.Transaction;
 import org.h2.result.SortOrder;
 import org.h2.schema.Schema;
 import org.h2.schema.Sequence;
 import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
 import org.h2.table.FunctionTable;
 import org.h2.table.IndexColumn;
 import org.h2.table.IndexHints;
@@ -1907,6 +1911,25 @@ private TableFilter readTableFilter() {
                 }
             } else {
                 table = readTableOrView(tableName);
+                if (table instanceof MVTable) {
+                    int start = lastParseIndex;
+                    if (readIf("AS")) {
+                        if (readIf("OF") && (isToken("VERSION") || isToken("TIMESTAMP"))) {
+                            boolean timestamp = readIf("TIMESTAMP");
+                            if (!timestamp) {
+                                read("VERSION");
+                            }
+                            if (!rightsChecked) {
+                                session.getUser().checkRight(table, Right.SELECT);
+                            }
+                            table = new MVHistoricalTable((MVTable) table, timestamp, readTerm());
+                        } else {
+                            // AS is followed by an alias
+                            parseIndex = start;
+                            read();
+                        }
+                    }
+                }
             }
         }
         ArrayList<String> derivedColumnNames = null;
@@ -1939,8 +1962,8 @@ private TableFilter readTableFilter() {
         if (table.isView() && table.isTableExpression() && alias == null) {
             alias = table.getName();
         }
-        TableFilter filter = new TableFilter(session, table, alias, rightsChecked,
-                currentSelect, orderInFrom++, indexHints);
+        TableFilter filter = new TableFilter(session, table, alias,
+                rightsChecked || table instanceof MVHistoricalTable, currentSelect, orderInFrom++, indexHints);
         if (derivedColumnNames != null) {
             filter.setDerivedColumns(derivedColumnNames);
         }
@@ -5396,6 +5419,10 @@ private Column parseColumnForTable(String columnName,
             int value = readNonNegativeInt();
             column.setSelectivity(value);
         }
+        if (readIf("STATISTICS")) {
+            Value value = readExpression().optimize(session).getValue(session);
+            column.setStatistics(ColumnStatistics.get(column, value));
+        }
         String comment = readCommentIf();
         if (comment != null) {
             column.setComment(comment);
@@ -6060,6 +6087,11 @@ private Prepared parseCreate() {
             command.setComment(readCommentIf());
             read(OPEN_PAREN);
             command.setIndexColumns(parseIndexColumnList());
+            boolean include = !primaryKey && !hash && !spatial && readIf("INCLUDE");
+            if (include) {
+                read(OPEN_PAREN);
+                command.setIncludedColumnNames(parseColumnList());
+            }
 
             if (readIf(USING)) {
                 if (hash) {
@@ -6070,6 +6102,8 @@ private Prepared parseCreate() {
                 }
                 if (readIf("BTREE")) {
                     // default
+                } else if (include) {
+                    throw getSyntaxError();
                 } else if (readIf("RTREE")) {
                     spatial = true;
                 } else if (readIf("HASH")) {
@@ -6079,6 +6113,9 @@ private Prepared parseCreate() {
                 }
 
             }
+            if (!primaryKey && !hash && !spatial && readIf(WHERE)) {
+                command.setCondition(readExpression());
+            }
             command.setHash(hash);
             command.setSpatial(spatial);
             return command;
@@ -7133,6 +7170,13 @@ private Prepared parseSet() {
         } else if (readIf("JAVA_OBJECT_SERIALIZER")) {
             readIfEqualOrTo();
             return parseSetJavaObjectSerializer();
+        } else if (readIf("TRANSACTION")) {
+            read("DURABILITY");
+            readIfEqualOrTo();
+            return parseSetTransactionDurability();
+        } else if (readIf("TRANSACTION_DURABILITY")) {
+            readIfEqualOrTo();
+            return parseSetTransactionDurability();
         } else {
             if (isToken("LOGSIZE")) {
                 // HSQLDB compatibility
@@ -7159,6 +7203,20 @@ private Prepared parseSet() {
         }
     }
 
+    private Set parseSetTransactionDurability() {
+        Set command = new Set(session, SetTypes.TRANSACTION_DURABILITY);
+        if (readIf("SYNC")) {
+            command.setInt(Transaction.DURABILITY_SYNC);
+        } else if (readIf("ASYNC")) {
+            command.setInt(Transaction.DURABILITY_ASYNC);
+        } else if (readIf("NONE")) {
+            command.setInt(Transaction.DURABILITY_NONE);
+        } else {
+            command.setInt(readNonNegativeInt());
+        }
+        return command;
+    }
+
     private Prepared parseUse() {
         readIfEqualOrTo();
         Set command = new Set(session, SetTypes.SCHEMA);
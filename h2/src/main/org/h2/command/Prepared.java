@@ -6,16 +6,27 @@
 package org.h2.command;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import org.h2.api.DatabaseEventListener;
 import org.h2.api.ErrorCode;
 import org.h2.engine.Database;
+import org.h2.engine.DbObject;
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionVisitor;
 import org.h2.expression.Parameter;
+import org.h2.expression.SequenceValue;
+import org.h2.expression.ValueExpression;
+import org.h2.expression.Variable;
+import org.h2.expression.aggregate.Aggregate;
+import org.h2.expression.function.Function;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
 import org.h2.result.ResultInterface;
+import org.h2.table.Table;
+import org.h2.table.TableType;
 import org.h2.table.TableView;
 import org.h2.util.MathUtils;
 import org.h2.value.Value;
@@ -454,6 +465,117 @@ public boolean isCacheable() {
         return false;
     }
 
+    /**
+     * Check whether this statement, after it was closed, can be executed by
+     * another session of the same user with the same settings. Such statements
+     * must not keep any state that belongs to the session that prepared them.
+     *
+     * @return true if the statement can be used by another session
+     */
+    public boolean isShareable() {
+        return false;
+    }
+
+    /**
+     * Check whether a statement that uses the table can be used by another
+     * session.
+     *
+     * @param table the table
+     * @return true for persistent and global temporary tables
+     */
+    protected static boolean isShareable(Table table) {
+        return table.getTableType() == TableType.TABLE && (!table.isTemporary() || table.isGlobalTemporary());
+    }
+
+    /**
+     * Check whether the expression can be used by another session. Only
+     * expressions that don't keep any state of the session are allowed.
+     *
+     * @param e the expression, or null
+     * @return false if the expression contains subqueries or other
+     *         expressions that may depend on the session
+     */
+    protected static boolean isShareable(Expression e) {
+        if (e == null) {
+            return true;
+        }
+        e = e.getNonAliasExpression();
+        if (e instanceof ExpressionColumn || e instanceof ValueExpression || e instanceof Parameter
+                || e instanceof SequenceValue || e instanceof Variable) {
+            return true;
+        } else if (e instanceof Aggregate) {
+            Aggregate aggregate = (Aggregate) e;
+            if (!aggregate.isMergeable()) {
+                return false;
+            }
+            for (Expression arg : aggregate.getSourceExpressions()) {
+                if (!isShareable(arg)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int count = e.getSubexpressionCount();
+        if (count == 0 && !(e instanceof Function)) {
+            // subqueries and other expressions without visible arguments
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!isShareable(e.getSubexpression(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether the expression may be evaluated for the rows of a data
+     * change statement after some rows of the table were already modified by
+     * the same statement. Only expressions that don't read any table are
+     * allowed.
+     *
+     * @param e the expression, or null
+     * @param table the modified table
+     * @return false if the expression contains subqueries, user-defined
+     *         functions, or refers to other tables
+     */
+    protected static boolean isBatchable(Expression e, Table table) {
+        if (e == null) {
+            return true;
+        }
+        if (Expression.containsQuery(e)) {
+            return false;
+        }
+        HashSet<DbObject> dependencies = new HashSet<>();
+        e.isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies));
+        for (DbObject object : dependencies) {
+            if (object != table && object.getType() != DbObject.SEQUENCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Undo the batches of a data change statement that were already applied
+     * if the statement is going to be executed again because of a concurrent
+     * update, so that no row is modified twice.
+     *
+     * @param e the exception
+     * @param rollback the savepoint before the first batch
+     */
+    protected void rollbackBatches(DbException e, Session.Savepoint rollback) {
+        switch (e.getErrorCode()) {
+        case ErrorCode.CONCURRENT_UPDATE_1:
+        case ErrorCode.ROW_NOT_FOUND_IN_PRIMARY_INDEX:
+        case ErrorCode.ROW_NOT_FOUND_WHEN_DELETING_1:
+            session.rollbackTo(rollback);
+            session.startStatementWithinTransaction();
+            break;
+        default:
+        }
+    }
+
     /**
      * @return the temporary views created for CTE's.
      */
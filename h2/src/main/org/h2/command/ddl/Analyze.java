@@ -12,8 +12,10 @@
 import org.h2.engine.Right;
 import org.h2.engine.Session;
 import org.h2.expression.Parameter;
+import org.h2.index.Index;
 import org.h2.result.ResultInterface;
 import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
 import org.h2.table.Table;
 import org.h2.table.TableType;
 import org.h2.value.DataType;
@@ -27,6 +29,12 @@
  */
 public class Analyze extends DefineCommand {
 
+    /**
+     * The maximum number of rows used to compute the distribution of the
+     * values of a column.
+     */
+    private static final int MAX_DISTRIBUTION_SAMPLE = 100_000;
+
     /**
      * The sample size.
      */
@@ -136,9 +144,83 @@ public static void analyzeTable(Session session, Table table, int sample,
                 columns[j].setSelectivity(selectivity);
             }
         }
+        analyzeDistribution(session, table, sample);
         db.updateMeta(session, table);
     }
 
+    /**
+     * Compute the histograms and the most common values of the indexed
+     * columns of the table. Only the first rows of the table are read, as for
+     * the selectivity.
+     *
+     * @param session the session
+     * @param table the table
+     * @param sample the number of sample rows
+     */
+    private static void analyzeDistribution(Session session, Table table, int sample) {
+        ArrayList<Column> list = new ArrayList<>();
+        for (Index index : table.getIndexes()) {
+            if (index.getIndexType().isScan()) {
+                continue;
+            }
+            for (Column col : index.getColumns()) {
+                if (!list.contains(col) && isSortable(col.getType().getValueType())) {
+                    list.add(col);
+                }
+            }
+        }
+        int columnCount = list.size();
+        if (columnCount == 0) {
+            return;
+        }
+        StringBuilder buff = new StringBuilder("SELECT ");
+        for (int i = 0; i < columnCount; i++) {
+            if (i > 0) {
+                buff.append(", ");
+            }
+            list.get(i).getSQL(buff, true);
+        }
+        buff.append(" FROM ");
+        table.getSQL(buff, true).append(" LIMIT ?");
+        Prepared command = session.prepare(buff.toString());
+        command.getParameters().get(0).setValue(ValueInt.get(
+                sample > 0 && sample < MAX_DISTRIBUTION_SAMPLE ? sample : MAX_DISTRIBUTION_SAMPLE));
+        ResultInterface result = command.query(0);
+        ArrayList<ArrayList<Value>> values = new ArrayList<>(columnCount);
+        for (int i = 0; i < columnCount; i++) {
+            values.add(new ArrayList<Value>());
+        }
+        int rowCount = 0;
+        while (result.next()) {
+            Value[] row = result.currentRow();
+            for (int i = 0; i < columnCount; i++) {
+                Value v = row[i];
+                if (v != ValueNull.INSTANCE) {
+                    values.get(i).add(v);
+                }
+            }
+            rowCount++;
+        }
+        result.close();
+        Database db = session.getDatabase();
+        for (int i = 0; i < columnCount; i++) {
+            list.get(i).setStatistics(ColumnStatistics.create(db, values.get(i), rowCount));
+        }
+    }
+
+    private static boolean isSortable(int type) {
+        switch (type) {
+        case Value.ARRAY:
+        case Value.ROW:
+        case Value.RESULT_SET:
+        case Value.JAVA_OBJECT:
+        case Value.GEOMETRY:
+            return false;
+        default:
+            return !DataType.isLargeObject(type);
+        }
+    }
+
     public void setTop(int top) {
         this.sampleRows = top;
     }
@@ -5,15 +5,19 @@
  */
 package org.h2.command.ddl;
 
+import java.util.HashSet;
+
 import org.h2.api.ErrorCode;
 import org.h2.command.CommandInterface;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Right;
 import org.h2.engine.Session;
+import org.h2.expression.Expression;
 import org.h2.index.IndexType;
 import org.h2.message.DbException;
 import org.h2.schema.Schema;
+import org.h2.table.Column;
 import org.h2.table.IndexColumn;
 import org.h2.table.Table;
 
@@ -26,6 +30,8 @@ public class CreateIndex extends SchemaCommand {
     private String tableName;
     private String indexName;
     private IndexColumn[] indexColumns;
+    private String[] includedColumnNames = new String[0];
+    private Expression condition;
     private boolean primaryKey, unique, hash, spatial, affinity;
     private boolean ifTableExists;
     private boolean ifNotExists;
@@ -55,6 +61,14 @@ public void setIndexColumns(IndexColumn[] columns) {
         this.indexColumns = columns;
     }
 
+    public void setIncludedColumnNames(String[] includedColumnNames) {
+        this.includedColumnNames = includedColumnNames;
+    }
+
+    public void setCondition(Expression condition) {
+        this.condition = condition;
+    }
+
     @Override
     public int update() {
         if (!transactional) {
@@ -104,11 +118,29 @@ public int update() {
             indexType = IndexType.createNonUnique(persistent, hash, spatial);
         }
         IndexColumn.mapColumns(indexColumns, table);
-        table.addIndex(session, indexName, id, indexColumns, indexType, create,
+        Column[] includedColumns = getIncludedColumns(table);
+        table.addIndex(session, indexName, id, indexColumns, includedColumns, condition, indexType, create,
                 comment);
         return 0;
     }
 
+    private Column[] getIncludedColumns(Table table) {
+        int length = includedColumnNames.length;
+        Column[] includedColumns = new Column[length];
+        HashSet<Column> set = new HashSet<>();
+        for (IndexColumn c : indexColumns) {
+            set.add(c.column);
+        }
+        for (int i = 0; i < length; i++) {
+            Column column = table.getColumn(includedColumnNames[i]);
+            if (!set.add(column)) {
+                throw DbException.get(ErrorCode.DUPLICATE_COLUMN_NAME_1, column.getSQL(false));
+            }
+            includedColumns[i] = column;
+        }
+        return includedColumns;
+    }
+
     public void setPrimaryKey(boolean b) {
         this.primaryKey = b;
     }
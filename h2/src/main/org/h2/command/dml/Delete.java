@@ -14,6 +14,7 @@
 import org.h2.engine.Session;
 import org.h2.engine.UndoLogRecord;
 import org.h2.expression.Expression;
+import org.h2.message.DbException;
 import org.h2.result.ResultInterface;
 import org.h2.result.Row;
 import org.h2.result.RowList;
@@ -83,11 +84,13 @@ public int update() {
                 limitRows = v.getInt();
             }
         }
+        int batchSize = getBatchSize(table);
+        Session.Savepoint rollback = batchSize > 0 ? session.setSavepoint() : null;
         try (RowList rows = new RowList(session)) {
             setCurrentRowNumber(0);
             int count = 0;
             while (limitRows != 0 && targetTableFilter.next()) {
-                setCurrentRowNumber(rows.size() + 1);
+                setCurrentRowNumber(count + 1);
                 if (condition == null || condition.getBooleanValue(session)) {
                     Row row = targetTableFilter.get();
                     if (keysFilter == null || keysFilter.contains(row.getKey())) {
@@ -106,6 +109,9 @@ public int update() {
                         }
                         if (!table.fireRow() || !table.fireBeforeRow(session, row, null)) {
                             rows.add(row);
+                            if (batchSize > 0 && rows.size() >= batchSize) {
+                                removeRows(table, rows);
+                            }
                         }
                         count++;
                         if (limitRows >= 0 && count >= limitRows) {
@@ -114,24 +120,60 @@ public int update() {
                     }
                 }
             }
-            int rowScanCount = 0;
+            removeRows(table, rows);
+            table.fire(session, Trigger.DELETE, false);
+            return count;
+        } catch (DbException e) {
+            if (rollback != null) {
+                rollbackBatches(e, rollback);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Get the number of rows that are deleted at a time while the table is
+     * still read, or 0 if all rows need to be read first. The rows are only
+     * deleted in batches if they are read from a snapshot of the table, and
+     * the condition doesn't read the table.
+     *
+     * @param table the table
+     * @return the batch size, or 0
+     */
+    private int getBatchSize(Table table) {
+        int batchSize = session.getDatabase().getSettings().dmlBatchSize;
+        if (batchSize <= 0 || sourceTableFilter != null || keysFilter != null
+                || !targetTableFilter.isSnapshotScan() || !isBatchable(condition, table)
+                || !table.canModifyRowsInBatches(null)) {
+            return 0;
+        }
+        return batchSize;
+    }
+
+    /**
+     * Delete the collected rows, fire the after row triggers, and clear the
+     * list.
+     *
+     * @param table the table
+     * @param rows the rows to delete
+     */
+    private void removeRows(Table table, RowList rows) {
+        int rowScanCount = 0;
+        for (rows.reset(); rows.hasNext();) {
+            if ((++rowScanCount & 127) == 0) {
+                checkCanceled();
+            }
+            Row row = rows.next();
+            table.removeRow(session, row);
+            session.log(table, UndoLogRecord.DELETE, row);
+        }
+        if (table.fireRow()) {
             for (rows.reset(); rows.hasNext();) {
-                if ((++rowScanCount & 127) == 0) {
-                    checkCanceled();
-                }
                 Row row = rows.next();
-                table.removeRow(session, row);
-                session.log(table, UndoLogRecord.DELETE, row);
+                table.fireAfterRow(session, row, null, false);
             }
-            if (table.fireRow()) {
-                for (rows.reset(); rows.hasNext();) {
-                    Row row = rows.next();
-                    table.fireAfterRow(session, row, null, false);
-                }
-            }
-            table.fire(session, Trigger.DELETE, false);
-            return count;
         }
+        rows.clear();
     }
 
     @Override
@@ -196,6 +238,18 @@ public boolean isCacheable() {
         return true;
     }
 
+    @Override
+    public boolean isShareable() {
+        return sourceTableFilter == null && keysFilter == null && isShareable(targetTableFilter.getTable())
+                && isShareable(condition) && isShareable(limitExpr);
+    }
+
+    @Override
+    public void setSession(Session currentSession) {
+        super.setSession(currentSession);
+        targetTableFilter.setSession(currentSession);
+    }
+
     public void setSourceTableFilter(TableFilter sourceTableFilter) {
         this.sourceTableFilter = sourceTableFilter;
     }
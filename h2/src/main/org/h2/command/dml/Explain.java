@@ -90,6 +90,10 @@ public ResultInterface query(int maxrows) {
                     }
                 }
                 if (command.isQuery()) {
+                    if (command instanceof Query) {
+                        // execute the query even if the result is cached
+                        ((Query) command).disableCache();
+                    }
                     command.query(maxrows);
                 } else {
                     command.update();
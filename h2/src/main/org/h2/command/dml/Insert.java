@@ -365,6 +365,21 @@ public boolean isCacheable() {
                 duplicateKeyAssignmentMap.isEmpty();
     }
 
+    @Override
+    public boolean isShareable() {
+        if (query != null || sourceTableFilter != null || !isCacheable() || !isShareable(table)) {
+            return false;
+        }
+        for (Expression[] expr : valuesExpressionList) {
+            for (Expression e : expr) {
+                if (!isShareable(e)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * @param de duplicate key exception
      * @param currentRow current row values (optional)
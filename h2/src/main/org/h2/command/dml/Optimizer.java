@@ -5,11 +5,17 @@
  */
 package org.h2.command.dml;
 
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
+import org.h2.expression.ExpressionVisitor;
+import org.h2.expression.condition.ConditionAndOr;
 import org.h2.table.Plan;
 import org.h2.table.PlanItem;
 import org.h2.table.TableFilter;
@@ -24,6 +30,18 @@ class Optimizer {
     private static final int MAX_BRUTE_FORCE_FILTERS = 7;
     private static final int MAX_BRUTE_FORCE = 2000;
     private static final int MAX_GENETIC = 500;
+
+    /**
+     * The maximum number of table filters for the dynamic programming
+     * algorithm. Sets of filters are stored as bits of a long.
+     */
+    private static final int MAX_DYNAMIC_FILTERS = 63;
+
+    /**
+     * The maximum number of plans (partial or complete) that are evaluated by
+     * the dynamic programming algorithm.
+     */
+    private static final int MAX_DYNAMIC = 20_000;
     private long startNs;
     private BitSet switched;
 
@@ -84,6 +102,8 @@ private void calculateBestPlan() {
             startNs = System.nanoTime();
             if (filters.length <= MAX_BRUTE_FORCE_FILTERS) {
                 calculateBruteForceAll();
+            } else if (filters.length <= MAX_DYNAMIC_FILTERS) {
+                calculateDynamic();
             } else {
                 calculateBruteForceSome();
                 random = new Random(0);
@@ -176,6 +196,169 @@ private void calculateGenetic() {
         }
     }
 
+    /**
+     * A partial join order of the dynamic programming algorithm.
+     */
+    private static final class SubPlan {
+
+        /**
+         * The set of the filters of the order.
+         */
+        final long set;
+
+        /**
+         * The filters, in join order.
+         */
+        final TableFilter[] list;
+
+        /**
+         * The cost of the partial plan.
+         */
+        final double cost;
+
+        SubPlan(long set, TableFilter[] list, double cost) {
+            this.set = set;
+            this.list = list;
+            this.cost = cost;
+        }
+
+    }
+
+    /**
+     * Find the join order bottom-up. For each set of filters, only the
+     * cheapest order is kept, and larger sets are built by appending one
+     * filter to the kept orders. A filter is only appended if it is connected
+     * to the set by a condition, unless no remaining filter is. If there are
+     * too many sets of one size to stay within the budget, only the cheapest
+     * sets are kept. The result does not depend on timing.
+     */
+    private void calculateDynamic() {
+        int n = filters.length;
+        long[] connected = getConnectedFilters();
+        long all = (1L << n) - 1;
+        int maxStates = Math.max(1, MAX_DYNAMIC / (n * n));
+        ArrayList<SubPlan> level = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            SubPlan p = evaluate(0, new TableFilter[0], i);
+            if (p != null) {
+                level.add(p);
+            }
+        }
+        for (int size = 1; size < n && !level.isEmpty(); size++) {
+            HashMap<Long, SubPlan> best = new HashMap<>();
+            for (SubPlan p : level) {
+                long neighbours = 0;
+                for (int i = 0; i < n; i++) {
+                    if ((p.set & 1L << i) != 0) {
+                        neighbours |= connected[i];
+                    }
+                }
+                long candidates = neighbours & ~p.set;
+                if (candidates == 0) {
+                    // a cross join is required
+                    candidates = all & ~p.set;
+                }
+                for (int i = 0; i < n; i++) {
+                    if ((candidates & 1L << i) != 0) {
+                        SubPlan q = evaluate(p.set, p.list, i);
+                        if (q != null) {
+                            SubPlan old = best.get(q.set);
+                            if (old == null || q.cost < old.cost) {
+                                best.put(q.set, q);
+                            }
+                        }
+                    }
+                }
+            }
+            level = new ArrayList<>(best.values());
+            Collections.sort(level, new Comparator<SubPlan>() {
+                @Override
+                public int compare(SubPlan o1, SubPlan o2) {
+                    int c = Double.compare(o1.cost, o2.cost);
+                    return c != 0 ? c : Long.compare(o1.set, o2.set);
+                }
+            });
+            if (level.size() > maxStates) {
+                level.subList(maxStates, level.size()).clear();
+            }
+        }
+        // the order of the query is used if no valid order was found
+        testPlan(filters);
+        if (!level.isEmpty()) {
+            testPlan(level.get(0).list);
+        }
+    }
+
+    /**
+     * Append a filter to a partial join order and calculate the cost.
+     *
+     * @param set the set of filters of the partial order
+     * @param list the partial order
+     * @param i the index of the filter to append
+     * @return the new partial order, or null if it is not valid
+     */
+    private SubPlan evaluate(long set, TableFilter[] list, int i) {
+        int len = list.length;
+        TableFilter[] newList = new TableFilter[len + 1];
+        System.arraycopy(list, 0, newList, 0, len);
+        newList[len] = filters[i];
+        double costNow = new Plan(newList, len + 1, condition).calculateCost(session, allColumnsSet);
+        if (costNow == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        return new SubPlan(set | 1L << i, newList, costNow);
+    }
+
+    /**
+     * Get the filters that are connected to each filter by a condition of the
+     * WHERE clause or by a join condition.
+     *
+     * @return for each filter, the set of connected filters
+     */
+    private long[] getConnectedFilters() {
+        final int n = filters.length;
+        final HashMap<TableFilter, Integer> top = new HashMap<>();
+        final ArrayList<Expression> conditions = new ArrayList<>();
+        addConditions(conditions, condition);
+        for (int i = 0; i < n; i++) {
+            final int index = i;
+            filters[i].visit(new TableFilter.TableFilterVisitor() {
+                @Override
+                public void accept(TableFilter f) {
+                    top.put(f, index);
+                    addConditions(conditions, f.getJoinCondition());
+                }
+            });
+        }
+        long[] connected = new long[n];
+        for (Expression e : conditions) {
+            long set = 0;
+            for (TableFilter f : top.keySet()) {
+                if (!e.isEverything(ExpressionVisitor.getNotFromResolverVisitor(f))) {
+                    set |= 1L << top.get(f);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                if ((set & 1L << i) != 0) {
+                    connected[i] |= set & ~(1L << i);
+                }
+            }
+        }
+        return connected;
+    }
+
+    private static void addConditions(ArrayList<Expression> conditions, Expression e) {
+        if (e == null) {
+            return;
+        }
+        if (e instanceof ConditionAndOr && ((ConditionAndOr) e).getAndOrType() == ConditionAndOr.AND) {
+            addConditions(conditions, e.getSubexpression(0));
+            addConditions(conditions, e.getSubexpression(1));
+        } else {
+            conditions.add(e);
+        }
+    }
+
     private boolean testPlan(TableFilter[] list) {
         Plan p = new Plan(list, list.length, condition);
         double costNow = p.calculateCost(session, allColumnsSet);
@@ -13,6 +13,7 @@
 import org.h2.command.CommandInterface;
 import org.h2.command.Prepared;
 import org.h2.engine.Database;
+import org.h2.engine.DbObject;
 import org.h2.engine.Mode.ModeEnum;
 import org.h2.engine.Session;
 import org.h2.expression.Alias;
@@ -23,14 +24,17 @@
 import org.h2.expression.ValueExpression;
 import org.h2.expression.function.FunctionCall;
 import org.h2.message.DbException;
+import org.h2.result.LocalResult;
 import org.h2.result.ResultInterface;
 import org.h2.result.ResultTarget;
 import org.h2.result.SortOrder;
 import org.h2.table.ColumnResolver;
+import org.h2.table.RangeTable;
 import org.h2.table.Table;
 import org.h2.table.TableFilter;
 import org.h2.util.StringUtils;
 import org.h2.util.Utils;
+import org.h2.value.DataType;
 import org.h2.value.Value;
 import org.h2.value.ValueInt;
 import org.h2.value.ValueNull;
@@ -105,6 +109,14 @@ public abstract class Query extends Prepared {
     private boolean cacheableChecked;
     private boolean neverLazy;
 
+    /**
+     * The plan and the SQL statement of the query used as the key of the
+     * database-wide result cache, or null if the result of this query can't be
+     * shared.
+     */
+    private String resultCachePlan;
+    private boolean resultCacheChecked;
+
     Query(Session session) {
         super(session);
     }
@@ -432,13 +444,109 @@ public final ResultInterface query(int limit, ResultTarget target) {
         }
         lastParameters = params;
         closeLastResult();
-        ResultInterface r = queryWithoutCacheLazyCheck(limit, target);
+        ResultInterface r = null;
+        Database db = session.getDatabase();
+        QueryResultCache resultCache = db.getQueryResultCache();
+        String key = null;
+        long metaId = 0;
+        if (resultCache != null && target == null) {
+            key = getResultCacheKey(params, limit);
+            if (key != null) {
+                metaId = db.getModificationMetaId();
+                r = resultCache.get(session, key, getMaxDataModificationId());
+            }
+        }
+        if (r == null) {
+            r = queryWithoutCacheLazyCheck(limit, target);
+            if (key != null && r instanceof LocalResult) {
+                resultCache.put(key, (LocalResult) r, now, metaId);
+            }
+        }
         lastResult = r;
         this.lastEvaluated = now;
         lastLimit = limit;
         return r;
     }
 
+    /**
+     * Get the key of the result in the database-wide result cache. Only
+     * deterministic queries that don't depend on the session can share their
+     * results, and only if the session doesn't have uncommitted changes.
+     *
+     * @param params the parameter values
+     * @param limit the maximum number of rows
+     * @return the key, or null if the result can't be shared
+     */
+    private String getResultCacheKey(Value[] params, int limit) {
+        if (!resultCacheChecked) {
+            if (isCacheable() && isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)
+                    && isEverything(ExpressionVisitor.INDEPENDENT_VISITOR)
+                    && getMaxDataModificationId() != Long.MAX_VALUE && sqlStatement != null
+                    && isResultShareable()) {
+                // the plan doesn't contain the data types of all constants
+                resultCachePlan = getPlanSQL(true) + '\0' + sqlStatement;
+            }
+            resultCacheChecked = true;
+        }
+        if (resultCachePlan == null || session.containsUncommitted()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(resultCachePlan).append('\0').append(limit);
+        for (Value v : params) {
+            int type = v.getValueType();
+            if (DataType.isLargeObject(type)) {
+                return null;
+            }
+            builder.append('\0').append(type).append(':');
+            v.getSQL(builder);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Check whether the query only reads tables that are the same for all
+     * sessions, and whose content is the same for all sessions without
+     * uncommitted changes.
+     *
+     * @return true if the result can be shared
+     */
+    private boolean isResultShareable() {
+        HashSet<DbObject> dependencies = new HashSet<>();
+        isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies));
+        for (DbObject object : dependencies) {
+            if (object instanceof Table) {
+                Table table = (Table) object;
+                switch (table.getTableType()) {
+                case TABLE:
+                    if (table.isTemporary() && !table.isGlobalTemporary()) {
+                        return false;
+                    }
+                    break;
+                case VIEW:
+                    if (table.isTemporary() && !table.isTableExpression()) {
+                        return false;
+                    }
+                    break;
+                default:
+                    if (!(table instanceof RangeTable)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void setSession(Session currentSession) {
+        if (currentSession != session) {
+            // the last result may be still used by the previous session
+            lastResult = null;
+            lastParameters = null;
+        }
+        super.setSession(currentSession);
+    }
+
     private void closeLastResult() {
         if (lastResult != null) {
             lastResult.close();
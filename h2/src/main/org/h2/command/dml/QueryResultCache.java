@@ -0,0 +1,163 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.command.dml;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.h2.engine.Constants;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.result.LocalResult;
+import org.h2.result.ResultInterface;
+import org.h2.value.Value;
+
+/**
+ * A database-wide cache of query results. Results can be used by all
+ * sessions. An entry is used as long as no table the query depends on was
+ * modified after the result was evaluated. All entries are removed when the
+ * database meta data is changed. The least recently used entries are removed
+ * if the memory used by the cached results exceeds the limit.
+ */
+public final class QueryResultCache {
+
+    /**
+     * A cached result.
+     */
+    private static final class Entry {
+
+        /**
+         * The result.
+         */
+        final LocalResult result;
+
+        /**
+         * The data modification id of the database before the result was
+         * evaluated.
+         */
+        final long evaluated;
+
+        /**
+         * The estimated memory used by the result.
+         */
+        final long memory;
+
+        Entry(LocalResult result, long evaluated, long memory) {
+            this.result = result;
+            this.evaluated = evaluated;
+            this.memory = memory;
+        }
+
+    }
+
+    private final Database database;
+
+    private final long maxMemory;
+
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, .75f, true);
+
+    private long memory;
+
+    private long modificationMetaId;
+
+    /**
+     * Create a new cache.
+     *
+     * @param database the database
+     * @param maxMemoryKb the maximum memory used by the cached results, in KB
+     */
+    public QueryResultCache(Database database, int maxMemoryKb) {
+        this.database = database;
+        maxMemory = maxMemoryKb * 1024L;
+        modificationMetaId = database.getModificationMetaId();
+    }
+
+    /**
+     * Get a copy of the cached result for the session.
+     *
+     * @param session the session
+     * @param key the key of the query and its parameters
+     * @param maxDataModificationId the current maximum data modification id
+     *            of the tables the query depends on
+     * @return the result, or null if there is no valid result
+     */
+    synchronized LocalResult get(Session session, String key, long maxDataModificationId) {
+        checkMetaData();
+        Entry entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (maxDataModificationId <= entry.evaluated) {
+            ResultInterface result = entry.result.createShallowCopy(session);
+            if (result instanceof LocalResult) {
+                return (LocalResult) result;
+            }
+        }
+        remove(key, entry);
+        return null;
+    }
+
+    /**
+     * Add a result to the cache. Results that use more memory than the cache
+     * may use are ignored.
+     *
+     * @param key the key of the query and its parameters
+     * @param result the result
+     * @param evaluated the data modification id of the database before the
+     *            result was evaluated
+     * @param metaId the meta data modification id when the result was
+     *            evaluated
+     */
+    synchronized void put(String key, LocalResult result, long evaluated, long metaId) {
+        checkMetaData();
+        if (metaId != modificationMetaId) {
+            return;
+        }
+        // don't keep the session that evaluated the result reachable
+        ResultInterface r = result.createShallowCopy(database.getSystemSession());
+        if (!(r instanceof LocalResult)) {
+            return;
+        }
+        LocalResult copy = (LocalResult) r;
+        long m = Constants.MEMORY_OBJECT;
+        while (copy.next()) {
+            Value[] row = copy.currentRow();
+            m += Constants.MEMORY_ARRAY + row.length * Constants.MEMORY_POINTER;
+            for (Value v : row) {
+                m += v.getMemory();
+            }
+            if (m > maxMemory) {
+                return;
+            }
+        }
+        copy.reset();
+        Entry old = map.get(key);
+        if (old != null) {
+            remove(key, old);
+        }
+        for (Iterator<Entry> i = map.values().iterator(); memory + m > maxMemory && i.hasNext();) {
+            memory -= i.next().memory;
+            i.remove();
+        }
+        map.put(key, new Entry(copy, evaluated, m));
+        memory += m;
+    }
+
+    private void remove(String key, Entry entry) {
+        map.remove(key);
+        memory -= entry.memory;
+    }
+
+    private void checkMetaData() {
+        long current = database.getModificationMetaId();
+        if (modificationMetaId != current) {
+            map.clear();
+            memory = 0;
+            modificationMetaId = current;
+        }
+    }
+
+}
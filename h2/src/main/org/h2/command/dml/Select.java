@@ -11,30 +11,46 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.h2.api.ErrorCode;
 import org.h2.api.Trigger;
 import org.h2.command.Parser;
+import org.h2.command.Prepared;
 import org.h2.engine.Constants;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2.expression.Alias;
+import org.h2.expression.CompiledExpression;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionCompiler;
 import org.h2.expression.ExpressionVisitor;
 import org.h2.expression.Parameter;
+import org.h2.expression.ValueExpression;
 import org.h2.expression.Wildcard;
+import org.h2.expression.aggregate.Aggregate;
 import org.h2.expression.analysis.DataAnalysisOperation;
 import org.h2.expression.analysis.Window;
 import org.h2.expression.condition.Comparison;
 import org.h2.expression.condition.ConditionAndOr;
 import org.h2.expression.function.Function;
+import org.h2.expression.function.JavaFunction;
 import org.h2.index.Cursor;
 import org.h2.index.Index;
+import org.h2.index.IndexCondition;
 import org.h2.index.IndexType;
+import org.h2.index.LooseScanIndex;
 import org.h2.index.ViewIndex;
 import org.h2.message.DbException;
+import org.h2.mvstore.db.MVKeyedTempResult;
+import org.h2.mvstore.db.MVPrimaryIndex;
 import org.h2.result.LazyResult;
 import org.h2.result.LocalResult;
 import org.h2.result.ResultInterface;
@@ -56,6 +72,8 @@
 import org.h2.util.Utils;
 import org.h2.value.DataType;
 import org.h2.value.Value;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueLong;
 import org.h2.value.ValueNull;
 import org.h2.value.ValueRow;
 
@@ -74,6 +92,42 @@
  */
 public class Select extends Query {
 
+    /**
+     * The number of partitions for source rows of groups that do not fit into
+     * memory.
+     */
+    private static final int SPILL_PARTITIONS = 16;
+
+    /**
+     * The number of times source rows of groups are partitioned again if they
+     * still do not fit into memory.
+     */
+    private static final int MAX_SPILL_LEVEL = 4;
+
+    /**
+     * The minimum number of rows of a table for each thread of a parallel
+     * scan.
+     */
+    private static final int PARALLEL_MIN_ROWS = 10000;
+
+    /**
+     * How often (in milliseconds) the session of a parallel query checks
+     * whether the query was canceled while it waits for the other threads.
+     */
+    private static final int PARALLEL_CANCEL_CHECK_MILLIS = 100;
+
+    /**
+     * The number of rows in the first block of a batch evaluated scan. The
+     * size is doubled for each following block up to the maximum, so that
+     * queries that read only a few rows do not read too many rows ahead.
+     */
+    private static final int BATCH_MIN_SIZE = 16;
+
+    /**
+     * The maximum number of rows in a block of a batch evaluated scan.
+     */
+    private static final int BATCH_MAX_SIZE = 1024;
+
     /**
      * The main (top) table filter.
      */
@@ -102,6 +156,19 @@ public class Select extends Query {
      */
     private Expression qualify;
 
+    /**
+     * The compiled WHERE condition, or null.
+     */
+    private CompiledExpression compiledCondition;
+
+    /**
+     * The compiled expressions of the select list, or null. Expressions that
+     * are not compiled have null entries.
+     */
+    private CompiledExpression[] compiledExpressions;
+
+    private boolean expressionsCompiled;
+
     /**
      * The visible columns (the ones required in the result).
      */
@@ -313,6 +380,133 @@ public Expression getCondition() {
         return condition;
     }
 
+    /**
+     * Remove the equality conditions that correlate this subquery with the
+     * enclosing query, so that it needs to be evaluated only once for all rows
+     * of the enclosing query. This is only done if no index can be used to
+     * find the rows for one row of the enclosing query. The columns of this
+     * query that were compared with columns of the enclosing query are added
+     * to the start of the select list, rows where they are NULL are removed,
+     * and the query is made DISTINCT. This method must be called after the
+     * query was initialized and before it is prepared.
+     *
+     * @param exists whether the subquery is used in EXISTS, in which case the
+     *            select list is replaced instead
+     * @return the columns of the enclosing query, mapped to it, in the order
+     *         of the added select list entries, or null if the query can't be
+     *         decorrelated
+     */
+    public ExpressionColumn[] decorrelate(boolean exists) {
+        if (!checkInit || isPrepared || condition == null || isGroupQuery || isWindowQuery || havingIndex >= 0
+                || qualifyIndex >= 0 || distinctExpressions != null || limitExpr != null || offsetExpr != null
+                || isForUpdate || orderList != null || expressions.size() != visibleColumnCount
+                || !exists && visibleColumnCount != 1) {
+            return null;
+        }
+        ExpressionVisitor inner = ExpressionVisitor.INDEPENDENT_VISITOR.incrementQueryLevel(1);
+        for (TableFilter f : filters) {
+            Expression on = f.getJoinCondition();
+            if (on != null && !on.isEverything(inner)) {
+                return null;
+            }
+        }
+        if (!exists && !expressions.get(0).isEverything(inner)) {
+            return null;
+        }
+        ArrayList<Expression> conditions = new ArrayList<>();
+        addConjuncts(conditions, condition);
+        ArrayList<Expression> keys = Utils.newSmallArrayList();
+        ArrayList<ExpressionColumn> outerColumns = Utils.newSmallArrayList();
+        Expression newCondition = null;
+        for (Expression e : conditions) {
+            if (e.isEverything(inner)) {
+                newCondition = newCondition == null ? e : new ConditionAndOr(ConditionAndOr.AND, newCondition, e);
+                continue;
+            }
+            if (!(e instanceof Comparison) || ((Comparison) e).getCompareType() != Comparison.EQUAL) {
+                return null;
+            }
+            Expression left = e.getSubexpression(0), right = e.getSubexpression(1);
+            ExpressionColumn outer = getOuterColumn(right);
+            if (outer == null || !left.isEverything(inner)) {
+                outer = getOuterColumn(left);
+                left = right;
+                if (outer == null || !left.isEverything(inner)) {
+                    return null;
+                }
+            }
+            int type = left.getType().getValueType();
+            if (type != outer.getType().getValueType() || DataType.isLargeObject(type)) {
+                return null;
+            }
+            keys.add(left);
+            outerColumns.add(outer);
+            Expression notNull = new Comparison(session, Comparison.IS_NOT_NULL, left, null);
+            newCondition = newCondition == null ? notNull
+                    : new ConditionAndOr(ConditionAndOr.AND, newCondition, notNull);
+        }
+        if (keys.isEmpty()) {
+            return null;
+        }
+        for (Expression key : keys) {
+            if (key instanceof ExpressionColumn) {
+                ExpressionColumn c = (ExpressionColumn) key;
+                TableFilter f = c.getTableFilter();
+                if (f != null && f.getTable().getIndexForColumn(c.getColumn(), false, false) != null) {
+                    // the rows for each row of the enclosing query can be
+                    // looked up with the index
+                    return null;
+                }
+            }
+        }
+        if (!exists) {
+            keys.add(expressions.get(0));
+        }
+        expressions = keys;
+        visibleColumnCount = resultColumnCount = keys.size();
+        condition = newCondition;
+        distinct = true;
+        return outerColumns.toArray(new ExpressionColumn[0]);
+    }
+
+    private static void addConjuncts(ArrayList<Expression> list, Expression e) {
+        if (e instanceof ConditionAndOr && ((ConditionAndOr) e).getAndOrType() == ConditionAndOr.AND) {
+            addConjuncts(list, e.getSubexpression(0));
+            addConjuncts(list, e.getSubexpression(1));
+        } else {
+            list.add(e);
+        }
+    }
+
+    /**
+     * Get a copy of the column of the directly enclosing query that is mapped
+     * to the enclosing query.
+     *
+     * @param e the expression
+     * @return the column, or null if the expression is not such a column
+     */
+    private ExpressionColumn getOuterColumn(Expression e) {
+        if (!(e instanceof ExpressionColumn)
+                || e.isEverything(ExpressionVisitor.INDEPENDENT_VISITOR.incrementQueryLevel(1))
+                || !e.isEverything(ExpressionVisitor.INDEPENDENT_VISITOR.incrementQueryLevel(2))) {
+            return null;
+        }
+        ExpressionColumn c = (ExpressionColumn) e;
+        TableFilter f = c.getTableFilter();
+        Column column = c.getColumn();
+        if (f == null || column.getColumnId() < 0) {
+            return null;
+        }
+        Select select = f.getSelect();
+        if (select != null && select.isWindowQuery) {
+            return null;
+        }
+        ExpressionColumn outer = new ExpressionColumn(session.getDatabase(), null, f.getTableAlias(),
+                f.getColumnName(column), false);
+        outer.mapColumns(f, 0, Expression.MAP_INITIAL);
+        return outer.getColumn() == column ? outer : null;
+    }
+
     private LazyResult queryGroupSorted(int columnCount, ResultTarget result, long offset, boolean quickOffset) {
         LazyResultGroupSorted lazyResult = new LazyResultGroupSorted(expressionArray, columnCount);
         skipOffset(lazyResult, offset, quickOffset);
@@ -384,6 +578,11 @@ private Index getGroupSortedIndex() {
                     // does not allow scanning entries
                     continue;
                 }
+                if (index.getCondition() != null && index != topTableFilter.getIndex()) {
+                    // a partial index is only used if the query implies its
+                    // condition
+                    continue;
+                }
                 if (isGroupSortedIndex(topTableFilter, index)) {
                     return index;
                 }
@@ -430,6 +629,55 @@ private boolean isGroupSortedIndex(TableFilter tableFilter, Index index) {
         return true;
     }
 
+    /**
+     * Check whether only the first and the last rows of each group are needed,
+     * when grouping by the first column of the index. This is the case if
+     * there is only one table, the condition only uses the grouped column, and
+     * all expressions are the grouped column, or MIN and MAX of the first two
+     * index columns.
+     *
+     * @param index the index
+     * @return true if a loose index scan may be used
+     */
+    private boolean isLooseScanPossible(Index index) {
+        if (filters.size() != 1 || groupIndex.length != 1 || havingIndex >= 0 || qualifyIndex >= 0
+                || isWindowQuery || isForUpdate) {
+            return false;
+        }
+        Column[] columns = index.getColumns();
+        Column groupColumn = columns[0];
+        if (condition != null) {
+            HashSet<Column> set = new HashSet<>();
+            condition.isEverything(ExpressionVisitor.getColumnsVisitor(set, topTableFilter.getTable()));
+            set.remove(groupColumn);
+            if (!set.isEmpty() || !condition.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)) {
+                return false;
+            }
+        }
+        for (Expression expr : expressions) {
+            expr = expr.getNonAliasExpression();
+            ExpressionColumn column;
+            if (expr instanceof Aggregate) {
+                column = ((Aggregate) expr).getMinMaxColumn();
+                if (column == null) {
+                    return false;
+                }
+            } else if (expr instanceof ExpressionColumn) {
+                column = (ExpressionColumn) expr;
+            } else {
+                return false;
+            }
+            if (column.getTableFilter() != topTableFilter) {
+                return false;
+            }
+            Column c = column.getColumn();
+            if (c != groupColumn && (columns.length < 2 || c != columns[1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private int getGroupByExpressionCount() {
         if (groupByExpression == null) {
             return 0;
@@ -471,7 +719,67 @@ boolean isConditionMetForUpdate() {
     }
 
     boolean isConditionMet() {
-        return condition == null || condition.getBooleanValue(session);
+        if (condition == null) {
+            return true;
+        }
+        if (compiledCondition != null) {
+            return compiledCondition.getBooleanValue(session, topTableFilter);
+        }
+        return condition.getBooleanValue(session);
+    }
+
+    /**
+     * Check if the condition can be evaluated for blocks of rows. This is
+     * possible for queries that scan a single regular table with a
+     * deterministic condition.
+     *
+     * @return whether the condition can be evaluated for blocks of rows
+     */
+    boolean isBatchEvaluation() {
+        return condition != null && session.getDatabase().getSettings().batchEvaluation && isSingleTableScan()
+                && condition.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR);
+    }
+
+    /**
+     * Check if the query reads a single regular table with its scan index.
+     *
+     * @return whether the query reads a single table with its scan index
+     */
+    private boolean isSingleTableScan() {
+        if (filters.size() != 1 || topTableFilter.getJoin() != null || topTableFilter.getNestedJoin() != null
+                || topTableFilter.getJoinBatch() != null
+                || topTableFilter.getTable().getTableType() != TableType.TABLE) {
+            return false;
+        }
+        Index index = topTableFilter.getIndex();
+        // other indexes may return rows that are not loaded completely
+        return index != null && index.getIndexType().isScan();
+    }
+
+    /**
+     * Compile the condition and the expressions of the select list to byte
+     * code if possible.
+     */
+    private void compileExpressions() {
+        expressionsCompiled = true;
+        if (!session.getDatabase().getSettings().compileExpressions || !isSingleTableScan()) {
+            return;
+        }
+        if (condition != null) {
+            compiledCondition = ExpressionCompiler.compile(session, condition, topTableFilter, true);
+        }
+        if (!isGroupQuery && !isWindowQuery) {
+            CompiledExpression[] compiled = new CompiledExpression[expressions.size()];
+            boolean any = false;
+            for (int i = 0; i < compiled.length; i++) {
+                compiled[i] = ExpressionCompiler.compile(session, expressions.get(i).getNonAliasExpression(),
+                        topTableFilter, false);
+                any |= compiled[i] != null;
+            }
+            if (any) {
+                compiledExpressions = compiled;
+            }
+        }
     }
 
     private void queryWindow(int columnCount, LocalResult result, long offset, boolean quickOffset) {
@@ -509,10 +817,26 @@ private void queryGroupWindow(int columnCount, LocalResult result, long offset,
 
     private void queryGroup(int columnCount, LocalResult result, long offset, boolean quickOffset) {
         initGroupData(columnCount);
+        GroupSpill spill = null;
         try {
-            gatherGroup(columnCount, DataAnalysisOperation.STAGE_GROUP);
-            processGroupResult(columnCount, result, offset, quickOffset, true);
+            if (gatherGroupParallel(columnCount)) {
+                processGroupResult(columnCount, result, offset, quickOffset, true);
+                return;
+            }
+            spill = getGroupSpill();
+            if (spill == null) {
+                gatherGroup(columnCount, DataAnalysisOperation.STAGE_GROUP);
+                processGroupResult(columnCount, result, offset, quickOffset, true);
+            } else {
+                groupData.setMaxGroups(spill.maxGroups);
+                gatherGroup(columnCount, DataAnalysisOperation.STAGE_GROUP, spill);
+                offset = processGroupResult(columnCount, result, offset, quickOffset, true);
+                processSpilledGroups(columnCount, result, offset, quickOffset, spill, 1);
+            }
         } finally {
+            if (spill != null) {
+                spill.close();
+            }
             groupData.reset();
         }
     }
@@ -539,7 +863,40 @@ public void accept(TableFilter f) {
         });
     }
 
+    /**
+     * Get the storage for source rows of groups that do not fit into memory,
+     * or null if such rows cannot be processed later.
+     */
+    private GroupSpill getGroupSpill() {
+        Database db = session.getDatabase();
+        if (!db.isPersistent() || db.isReadOnly() || !groupData.canSpill() || getJoinBatch() != null) {
+            return null;
+        }
+        for (Expression e : expressions) {
+            if (!e.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)) {
+                return null;
+            }
+        }
+        final ArrayList<TableFilter> list = new ArrayList<>();
+        final boolean[] nested = new boolean[1];
+        topTableFilter.visit(new TableFilterVisitor() {
+            @Override
+            public void accept(TableFilter f) {
+                list.add(f);
+                nested[0] |= f.getNestedJoin() != null;
+            }
+        });
+        if (nested[0]) {
+            return null;
+        }
+        return new GroupSpill(db, list.toArray(new TableFilter[0]));
+    }
+
     private void gatherGroup(int columnCount, int stage) {
+        gatherGroup(columnCount, stage, null);
+    }
+
+    private void gatherGroup(int columnCount, int stage, GroupSpill spill) {
         long rowNumber = 0;
         setCurrentRowNumber(0);
         int sampleSize = getSampleSizeValue(session);
@@ -547,8 +904,11 @@ private void gatherGroup(int columnCount, int stage) {
             setCurrentRowNumber(rowNumber + 1);
             if (isForUpdateMvcc ? isConditionMetForUpdate() : isConditionMet()) {
                 rowNumber++;
-                groupData.nextSource();
-                updateAgg(columnCount, stage);
+                if (groupData.nextSource()) {
+                    updateAgg(columnCount, stage);
+                } else {
+                    spill.add(groupData.getCurrentGroupsKey(), 0);
+                }
                 if (sampleSize > 0 && rowNumber >= sampleSize) {
                     break;
                 }
@@ -557,6 +917,303 @@ private void gatherGroup(int columnCount, int stage) {
         groupData.done();
     }
 
+    /**
+     * Read the rows of the table with several threads, each with its own copy
+     * of this query, and merge the groups of all copies. This is only done if
+     * the session allows it and if the query reads all rows of a large MVStore
+     * table and uses only aggregates that can be merged.
+     *
+     * @return whether the groups were gathered
+     */
+    private boolean gatherGroupParallel(final int columnCount) {
+        int parallelism = session.getParallelism();
+        if (parallelism <= 1 || isForUpdate || getSampleSizeValue(session) > 0 || filters.size() != 1
+                || topTableFilter.getJoin() != null || topTableFilter.getNestedJoin() != null
+                || getJoinBatch() != null || !(topTableFilter.getIndex() instanceof MVPrimaryIndex)) {
+            return false;
+        }
+        MVPrimaryIndex index = (MVPrimaryIndex) topTableFilter.getIndex();
+        parallelism = (int) Math.min(parallelism, index.getRowCountApproximation() / PARALLEL_MIN_ROWS);
+        if (parallelism <= 1) {
+            return false;
+        }
+        for (IndexCondition c : topTableFilter.getIndexConditions()) {
+            if (c.getColumn().getColumnId() == SearchRow.ROWID_INDEX) {
+                return false;
+            }
+        }
+        Expression[] exprs = getParallelGroupData(columnCount);
+        if (exprs == null) {
+            return false;
+        }
+        Cursor[] cursors = index.findParallel(session, parallelism);
+        int count = cursors.length;
+        if (count <= 1) {
+            return false;
+        }
+        Database db = session.getDatabase();
+        Session[] sessions = new Session[count];
+        try {
+            Select[] selects = new Select[count];
+            Expression[][] copyExprs = new Expression[count][];
+            String sql = getPlanSQL(true);
+            for (int i = 1; i < count; i++) {
+                // each copy has its own session, because the session is not
+                // thread safe
+                sessions[i] = db.createParallelSession(session);
+                Select copy = prepareParallelCopy(sessions[i], sql);
+                if (copy == null) {
+                    return false;
+                }
+                Expression[] e = copy.getParallelGroupData(columnCount);
+                if (e == null || e.length != exprs.length) {
+                    return false;
+                }
+                for (int j = 0; j < e.length; j++) {
+                    if (e[j].getClass() != exprs[j].getClass()) {
+                        return false;
+                    }
+                }
+                copy.initGroupData(columnCount);
+                selects[i] = copy;
+                copyExprs[i] = e;
+            }
+            gatherGroupParallel(db, cursors, selects, sessions, columnCount);
+            for (int i = 1; i < count; i++) {
+                groupData.merge(selects[i].groupData, exprs, copyExprs[i]);
+            }
+        } finally {
+            for (Session s : sessions) {
+                if (s != null) {
+                    s.close();
+                }
+            }
+        }
+        groupData.done();
+        return true;
+    }
+
+    /**
+     * Read the parts of the table with the copies of this query in the
+     * threads of the database, and the first part in the current thread. If
+     * this query is canceled or fails, the other threads are canceled, and
+     * this method only returns after all of them stopped, because they read
+     * rows of the transaction of this session.
+     */
+    private void gatherGroupParallel(Database db, final Cursor[] cursors, final Select[] selects,
+            Session[] sessions, final int columnCount) {
+        int count = cursors.length;
+        ExecutorService executor = db.getParallelQueryExecutor();
+        Future<?>[] futures = new Future<?>[count];
+        boolean success = false, interrupted = false;
+        try {
+            for (int i = 1; i < count; i++) {
+                final int part = i;
+                futures[i] = executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        selects[part].gatherGroup(cursors[part], columnCount);
+                    }
+                });
+            }
+            gatherGroup(cursors[0], columnCount);
+            for (int i = 1; i < count; i++) {
+                while (true) {
+                    try {
+                        futures[i].get(PARALLEL_CANCEL_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException e) {
+                        session.checkCanceled();
+                    }
+                }
+            }
+            success = true;
+        } catch (InterruptedException e) {
+            interrupted = true;
+            throw DbException.get(ErrorCode.STATEMENT_WAS_CANCELED);
+        } catch (ExecutionException e) {
+            throw DbException.convert(e.getCause());
+        } finally {
+            for (int i = 1; i < count; i++) {
+                if (futures[i] == null) {
+                    continue;
+                }
+                if (!success) {
+                    sessions[i].cancel();
+                }
+                while (true) {
+                    try {
+                        futures[i].get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        // the error of the first thread is thrown
+                        break;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void gatherGroup(Cursor cursor, int columnCount) {
+        long rowNumber = 0;
+        while (cursor.next()) {
+            // also checks whether the query was canceled
+            setCurrentRowNumber(++rowNumber);
+            topTableFilter.set(cursor.get());
+            if (isConditionMet()) {
+                groupData.nextSource();
+                updateAgg(columnCount, DataAnalysisOperation.STAGE_GROUP);
+            }
+        }
+    }
+
+    /**
+     * Prepare a copy of this query from its plan.
+     *
+     * @param s the session of the copy
+     * @param sql the plan of this query
+     * @return the copy, or null if the plan does not produce the same query
+     */
+    private Select prepareParallelCopy(Session s, String sql) {
+        Prepared p;
+        try {
+            p = s.prepare(sql, true, true);
+        } catch (DbException e) {
+            return null;
+        }
+        if (!(p instanceof Select) || !sql.equals(p.getPlanSQL(true))) {
+            return null;
+        }
+        ArrayList<Parameter> params = getParameters();
+        for (Parameter copy : p.getParameters()) {
+            Parameter param = null;
+            for (int i = 0; params != null && i < params.size(); i++) {
+                if (params.get(i).getIndex() == copy.getIndex()) {
+                    param = params.get(i);
+                    break;
+                }
+            }
+            if (param == null) {
+                return null;
+            }
+            copy.setValue(param.getParamValue());
+        }
+        return (Select) p;
+    }
+
+    /**
+     * Get the expressions that keep the data of groups: aggregates and columns
+     * outside of aggregates. The order of the expressions is the same for all
+     * copies of the query.
+     *
+     * @return the expressions, or null if the query cannot be evaluated in
+     *         several threads
+     */
+    private Expression[] getParallelGroupData(int columnCount) {
+        if (condition != null && (!condition.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)
+                || !addParallelGroupData(condition, null))) {
+            return null;
+        }
+        ArrayList<Expression> list = new ArrayList<>();
+        for (int i = 0; i < columnCount; i++) {
+            Expression e = expressions.get(i);
+            boolean group = groupByExpression != null && groupByExpression[i]
+                    || groupByCopies != null && groupByCopies[i] >= 0;
+            if (!e.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)
+                    || !addParallelGroupData(e, group ? null : list)) {
+                return null;
+            }
+        }
+        return list.toArray(new Expression[0]);
+    }
+
+    /**
+     * Add the expressions that keep the data of groups to the list, and check
+     * whether the expression can be evaluated by another thread.
+     *
+     * @param e the expression
+     * @param list the list, or null if aggregates are not allowed
+     * @return false if the expression cannot be evaluated by another thread,
+     *         such as a subquery, or contains aggregates that cannot be merged
+     */
+    private static boolean addParallelGroupData(Expression e, ArrayList<Expression> list) {
+        e = e.getNonAliasExpression();
+        if (e instanceof Aggregate) {
+            Aggregate aggregate = (Aggregate) e;
+            if (list == null || !aggregate.isMergeable()) {
+                return false;
+            }
+            list.add(aggregate);
+            for (Expression arg : aggregate.getSourceExpressions()) {
+                if (!addParallelGroupData(arg, null)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (e instanceof ExpressionColumn) {
+            if (list != null) {
+                list.add(e);
+            }
+            return true;
+        } else if (e instanceof ValueExpression || e instanceof Parameter) {
+            return true;
+        } else if (e instanceof JavaFunction) {
+            return false;
+        }
+        int count = e.getSubexpressionCount();
+        if (count == 0 && !(e instanceof Function)) {
+            // subqueries and other expressions without visible arguments
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!addParallelGroupData(e.getSubexpression(i), list)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Process the source rows of groups that did not fit into memory, one
+     * partition after another.
+     */
+    private long processSpilledGroups(int columnCount, LocalResult result, long offset, boolean quickOffset,
+            GroupSpill spill, int level) {
+        MVKeyedTempResult rows = spill.rows;
+        spill.rows = null;
+        if (rows == null) {
+            return offset;
+        }
+        try {
+            for (int p = 0; p < SPILL_PARTITIONS; p++) {
+                groupData.resetGroups();
+                updateAgg(columnCount, DataAnalysisOperation.STAGE_RESET);
+                if (level >= MAX_SPILL_LEVEL) {
+                    groupData.setMaxGroups(Integer.MAX_VALUE);
+                }
+                for (Iterator<Value[]> i = rows.iterator(new Value[] { ValueInt.get(p) }); i.hasNext();) {
+                    spill.restore(i.next());
+                    if (groupData.nextSource()) {
+                        updateAgg(columnCount, DataAnalysisOperation.STAGE_GROUP);
+                    } else {
+                        spill.add(groupData.getCurrentGroupsKey(), level);
+                    }
+                }
+                groupData.done();
+                offset = processGroupResult(columnCount, result, offset, quickOffset, true);
+                offset = processSpilledGroups(columnCount, result, offset, quickOffset, spill, level + 1);
+            }
+        } finally {
+            rows.close();
+        }
+        return offset;
+    }
+
 
     /**
      * Update any aggregate expressions with the query stage.
@@ -573,7 +1230,7 @@ void updateAgg(int columnCount, int stage) {
         }
     }
 
-    private void processGroupResult(int columnCount, LocalResult result, long offset, boolean quickOffset,
+    private long processGroupResult(int columnCount, LocalResult result, long offset, boolean quickOffset,
             boolean withHaving) {
         for (ValueRow currentGroupsKey; (currentGroupsKey = groupData.next()) != null;) {
             Value[] keyValues = currentGroupsKey.getList();
@@ -607,6 +1264,7 @@ private void processGroupResult(int columnCount, LocalResult result, long offset
             }
             result.addRow(rowForResult(row, columnCount));
         }
+        return offset;
     }
 
     /**
@@ -656,6 +1314,9 @@ private Index getSortIndex() {
                 if (index.getIndexType().isHash()) {
                     continue;
                 }
+                if (index.getCondition() != null && index != topTableFilter.getIndex()) {
+                    continue;
+                }
                 IndexColumn[] indexCols = index.getIndexColumns();
                 if (indexCols.length < sortCols.length) {
                     continue;
@@ -746,15 +1407,24 @@ private LazyResult queryFlat(int columnCount, ResultTarget result, long offset,
             }
         }
         int sampleSize = getSampleSizeValue(session);
+        if (limitRows < 0 || sort != null && !sortUsingIndex || withTies && !quickOffset) {
+            limitRows = Long.MAX_VALUE;
+        }
+        // the number of rows that can be used, including skipped rows
+        long maxRows = Long.MAX_VALUE;
+        if (limitRows != Long.MAX_VALUE && !withTies) {
+            maxRows = quickOffset ? limitRows + offset : limitRows;
+            if (maxRows < 0) {
+                // Overflow
+                maxRows = Long.MAX_VALUE;
+            }
+        }
         LazyResultQueryFlat lazyResult = new LazyResultQueryFlat(expressionArray, columnCount, sampleSize,
-                isForUpdateMvcc);
+                maxRows, isForUpdateMvcc);
         skipOffset(lazyResult, offset, quickOffset);
         if (result == null) {
             return lazyResult;
         }
-        if (limitRows < 0 || sort != null && !sortUsingIndex || withTies && !quickOffset) {
-            limitRows = Long.MAX_VALUE;
-        }
         Value[] row = null;
         while (result.getRowCount() < limitRows && lazyResult.next()) {
             row = lazyResult.currentRow();
@@ -804,6 +1474,9 @@ public ResultInterface queryMeta() {
     @Override
     protected ResultInterface queryWithoutCache(int maxRows, ResultTarget target) {
         disableLazyForJoinSubqueries(topTableFilter);
+        if (!expressionsCompiled) {
+            compileExpressions();
+        }
 
         int limitRows = maxRows == 0 ? -1 : maxRows;
         if (limitExpr != null) {
@@ -967,13 +1640,15 @@ public void accept(TableFilter f) {
     }
 
     /**
-     * Reset the batch-join after the query result is closed.
+     * Reset the batch-join and release the state of hash and merge joins after
+     * the query result is closed.
      */
     void resetJoinBatchAfterQuery() {
         JoinBatch jb = getJoinBatch();
         if (jb != null) {
             jb.reset(false);
         }
+        topTableFilter.clearJoinIndexes();
     }
 
     private LocalResult createLocalResult(LocalResult old) {
@@ -1397,6 +2072,12 @@ public void prepare() {
                     current == index)) {
                 topTableFilter.setIndex(index);
                 isGroupSortedQuery = true;
+                if (isLooseScanPossible(index) && session.getDatabase().getSettings().looseIndexScan) {
+                    LooseScanIndex looseScan = LooseScanIndex.create(index);
+                    if (looseScan != null) {
+                        topTableFilter.setIndex(looseScan);
+                    }
+                }
             }
         }
         expressionArray = expressions.toArray(new Expression[0]);
@@ -1405,6 +2086,10 @@ public void prepare() {
 
     @Override
     public void prepareJoinBatch() {
+        if (isForUpdate) {
+            // rows are locked through the current rows of the table filters
+            return;
+        }
         ArrayList<TableFilter> list = new ArrayList<>();
         TableFilter f = getTopTableFilter();
         do {
@@ -1871,6 +2556,45 @@ public boolean isCacheable() {
         return !isForUpdate;
     }
 
+    @Override
+    public boolean isShareable() {
+        if (isForUpdate || isWindowQuery || parentSelect != null || topTableFilter == null
+                || topTableFilter.getJoinBatch() != null) {
+            return false;
+        }
+        for (TableFilter f : filters) {
+            if (!isShareable(f.getTable()) || f.getNestedJoin() != null
+                    || !isShareable(f.getJoinCondition()) || !isShareable(f.getFilterCondition())) {
+                return false;
+            }
+        }
+        for (Expression e : expressions) {
+            if (!isShareable(e)) {
+                return false;
+            }
+        }
+        if (distinctExpressions != null) {
+            for (Expression e : distinctExpressions) {
+                if (!isShareable(e)) {
+                    return false;
+                }
+            }
+        }
+        return isShareable(condition) && isShareable(having) && isShareable(qualify) && isShareable(limitExpr)
+                && isShareable(offsetExpr) && isShareable(sampleSizeExpr);
+    }
+
+    @Override
+    public void setSession(Session currentSession) {
+        if (currentSession != session) {
+            for (TableFilter f : filters) {
+                f.setSession(currentSession);
+            }
+            groupData = null;
+        }
+        super.setSession(currentSession);
+    }
+
     @Override
     public boolean allowGlobalConditions() {
         return offsetExpr == null && (limitExpr == null && distinctExpressions == null || sort == null);
@@ -1880,6 +2604,98 @@ public SortOrder getSortOrder() {
         return sort;
     }
 
+    /**
+     * Storage for source rows of groups that do not fit into memory. The
+     * current rows of all table filters are stored in partitions by the hash
+     * code of the group key, and are restored when a partition is processed.
+     */
+    private static final class GroupSpill {
+
+        /**
+         * The maximum number of groups to keep in memory.
+         */
+        final int maxGroups;
+
+        private final Database database;
+
+        private final TableFilter[] filters;
+
+        private final Expression[] expressions;
+
+        /**
+         * The stored rows, or null.
+         */
+        MVKeyedTempResult rows;
+
+        GroupSpill(Database database, TableFilter[] filters) {
+            this.database = database;
+            this.filters = filters;
+            maxGroups = Math.max(1, database.getMaxMemoryRows());
+            ArrayList<Expression> list = new ArrayList<>();
+            list.add(new ExpressionColumn(database, new Column("PARTITION", Value.INT)));
+            for (TableFilter f : filters) {
+                for (Column column : f.getTable().getColumns()) {
+                    list.add(new ExpressionColumn(database, column));
+                }
+                list.add(new ExpressionColumn(database, new Column(Column.ROWID, Value.LONG)));
+            }
+            expressions = list.toArray(new Expression[0]);
+        }
+
+        /**
+         * Store the current rows of all table filters.
+         *
+         * @param key the group key
+         * @param level the number of times the rows were partitioned before
+         */
+        void add(ValueRow key, int level) {
+            // each level uses different bits of the hash code
+            int h = key.hashCode() * 0x9E3779B9;
+            Value[] row = new Value[expressions.length];
+            row[0] = ValueInt.get((h >>> (28 - 4 * level)) & (SPILL_PARTITIONS - 1));
+            int j = 1;
+            for (TableFilter f : filters) {
+                Row r = f.get();
+                for (int i = 0, l = f.getTable().getColumns().length; i < l; i++) {
+                    row[j++] = r.getValue(i);
+                }
+                row[j++] = ValueLong.get(r.getKey());
+            }
+            if (rows == null) {
+                rows = new MVKeyedTempResult(database, expressions, new int[] { 0 });
+            }
+            rows.addRow(row);
+        }
+
+        /**
+         * Set the current rows of all table filters to the stored rows.
+         *
+         * @param row the stored rows
+         */
+        void restore(Value[] row) {
+            int j = 1;
+            for (TableFilter f : filters) {
+                Table table = f.getTable();
+                int l = table.getColumns().length;
+                Row r = table.createRow(Arrays.copyOfRange(row, j, j + l), Row.MEMORY_CALCULATE);
+                r.setKey(row[j + l].getLong());
+                f.set(r);
+                j += l + 1;
+            }
+        }
+
+        /**
+         * Delete the stored rows.
+         */
+        void close() {
+            if (rows != null) {
+                rows.close();
+                rows = null;
+            }
+        }
+
+    }
+
     /**
      * Lazy execution for this select.
      */
@@ -1924,34 +2740,89 @@ private final class LazyResultQueryFlat extends LazyResultSelect {
 
         private int sampleSize;
 
+        /**
+         * The maximum number of rows that can be returned or skipped, blocks
+         * of rows are not read beyond it.
+         */
+        private final long maxRows;
+
         private boolean forUpdate;
 
-        LazyResultQueryFlat(Expression[] expressions, int columnCount, int sampleSize, boolean forUpdate) {
+        /**
+         * The number of rows in the next block, or 0 if the condition is
+         * evaluated row by row.
+         */
+        private int blockSize;
+
+        /**
+         * The rows of the current block.
+         */
+        private Row[] block;
+
+        /**
+         * The indexes of the rows of the current block where the condition is
+         * true.
+         */
+        private int[] selection;
+
+        private int selected, position;
+
+        private boolean scanDone;
+
+        LazyResultQueryFlat(Expression[] expressions, int columnCount, int sampleSize, long maxRows,
+                boolean forUpdate) {
             super(expressions, columnCount);
             this.sampleSize = sampleSize;
+            this.maxRows = maxRows;
             this.forUpdate = forUpdate;
+            if (!forUpdate && sampleSize <= 0 && isBatchEvaluation()) {
+                blockSize = BATCH_MIN_SIZE;
+            }
         }
 
         @Override
         protected Value[] fetchNextRow() {
+            if (blockSize > 0) {
+                if (!nextSelectedRow()) {
+                    return null;
+                }
+                ++rowNumber;
+                return getRow();
+            }
             while ((sampleSize <= 0 || rowNumber < sampleSize) && topTableFilter.next()) {
                 setCurrentRowNumber(rowNumber + 1);
                 // This method may lock rows
                 if (forUpdate ? isConditionMetForUpdate() : isConditionMet()) {
                     ++rowNumber;
-                    Value[] row = new Value[columnCount];
-                    for (int i = 0; i < columnCount; i++) {
-                        Expression expr = expressions.get(i);
-                        row[i] = expr.getValue(getSession());
-                    }
-                    return row;
+                    return getRow();
                 }
             }
             return null;
         }
 
+        private Value[] getRow() {
+            Value[] row = new Value[columnCount];
+            CompiledExpression[] compiled = compiledExpressions;
+            for (int i = 0; i < columnCount; i++) {
+                if (compiled != null && compiled[i] != null) {
+                    row[i] = compiled[i].getValue(getSession(), topTableFilter);
+                } else {
+                    Expression expr = expressions.get(i);
+                    row[i] = expr.getValue(getSession());
+                }
+            }
+            return row;
+        }
+
         @Override
         protected boolean skipNextRow() {
+            if (blockSize > 0) {
+                if (!nextSelectedRow()) {
+                    return false;
+                }
+                ++rowNumber;
+                return true;
+            }
             while ((sampleSize <= 0 || rowNumber < sampleSize) && topTableFilter.next()) {
                 setCurrentRowNumber(rowNumber + 1);
                 // This method does not lock rows
@@ -1963,6 +2834,73 @@ protected boolean skipNextRow() {
             return false;
         }
 
+        @Override
+        public void reset() {
+            super.reset();
+            if (blockSize > 0) {
+                blockSize = BATCH_MIN_SIZE;
+                selected = position = 0;
+                scanDone = false;
+            }
+        }
+
+        /**
+         * Set the next row of the current block where the condition is true as
+         * the current row of the table filter, reading and evaluating the next
+         * blocks of rows if required.
+         *
+         * @return false if there are no more rows
+         */
+        private boolean nextSelectedRow() {
+            while (position >= selected) {
+                if (scanDone) {
+                    return false;
+                }
+                readBlock();
+            }
+            topTableFilter.set(block[selection[position++]]);
+            // the expressions may use the row number
+            setCurrentRowNumber(rowNumber + 1);
+            return true;
+        }
+
+        private void readBlock() {
+            // all rows of the previous blocks are used, and the condition is
+            // not evaluated for more rows than can be used
+            int length = (int) Math.min(blockSize, maxRows - rowNumber);
+            if (length <= 0) {
+                scanDone = true;
+                selected = position = 0;
+                return;
+            }
+            if (block == null || block.length < length) {
+                block = new Row[length];
+                selection = new int[length];
+            }
+            blockSize = Math.min(blockSize << 1, BATCH_MAX_SIZE);
+            // the row number is set for each selected row, but the query can
+            // be canceled while reading a block
+            checkCanceled();
+            int count = 0;
+            while (count < length) {
+                if (!topTableFilter.next()) {
+                    scanDone = true;
+                    break;
+                }
+                block[count] = topTableFilter.get();
+                selection[count] = count;
+                count++;
+            }
+            if (count == 0) {
+                selected = 0;
+            } else if (compiledCondition != null) {
+                selected = compiledCondition.selectTrueRows(getSession(), topTableFilter, block, selection, count);
+            } else {
+                selected = condition.selectTrueRows(getSession(), topTableFilter, block, selection, count);
+            }
+            position = 0;
+        }
+
     }
 
     /**
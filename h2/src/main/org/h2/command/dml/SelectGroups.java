@@ -13,11 +13,17 @@
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
+import org.h2.api.ErrorCode;
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
+import org.h2.expression.aggregate.Aggregate;
 import org.h2.expression.analysis.DataAnalysisOperation;
 import org.h2.expression.analysis.PartitionData;
+import org.h2.message.DbException;
+import org.h2.value.CompareMode;
+import org.h2.value.DataType;
 import org.h2.value.Value;
+import org.h2.value.ValueNull;
 import org.h2.value.ValueRow;
 
 /**
@@ -33,6 +39,11 @@
  * <li>{@link #next()} is invoked inside a loop until it returns null.</li>
  * </ul>
  * <p>
+ * If the key types of a group-by query allow it, groups are kept in a hash
+ * table and are returned in no particular order; otherwise they are returned
+ * in the order of their keys.
+ * </p>
+ * <p>
  * Call sequence for lazy group sorted result:
  * </p>
  * <ul>
@@ -48,10 +59,31 @@ private static final class Grouped extends SelectGroups {
 
         private final int[] groupIndex;
 
+        /**
+         * The value types of group-by keys if they can be used in a hash
+         * table, or null if groups have to be kept in a sorted map.
+         */
+        private final int[] hashKeyTypes;
+
         /**
          * Map of group-by key to group-by expression data e.g. AggregateData
          */
-        private TreeMap<ValueRow, Object[]> groupByData;
+        private Map<ValueRow, Object[]> groupByData;
+
+        /**
+         * Whether groupByData is a hash table.
+         */
+        private boolean hash;
+
+        /**
+         * The maximum number of groups to keep in memory.
+         */
+        private int maxGroups;
+
+        /**
+         * Whether some source rows were not added to groups in memory.
+         */
+        private boolean spilled;
 
         /**
          * Key into groupByData that produces currentGroupByExprData. Not used
@@ -67,18 +99,58 @@ private static final class Grouped extends SelectGroups {
         Grouped(Session session, ArrayList<Expression> expressions, int[] groupIndex) {
             super(session, expressions);
             this.groupIndex = groupIndex;
+            hashKeyTypes = getHashKeyTypes(session, expressions, groupIndex);
+        }
+
+        private static int[] getHashKeyTypes(Session session, ArrayList<Expression> expressions,
+                int[] groupIndex) {
+            if (groupIndex == null) {
+                return null;
+            }
+            boolean binaryStrings = CompareMode.OFF.equals(session.getDatabase().getCompareMode().getName());
+            int[] types = new int[groupIndex.length];
+            for (int i = 0; i < groupIndex.length; i++) {
+                int type = expressions.get(groupIndex[i]).getType().getValueType();
+                // without a collation strings are equal only if they have
+                // the same characters
+                if (!DataType.hasTotalOrdering(type) && (type != Value.STRING || !binaryStrings)) {
+                    return null;
+                }
+                types[i] = type;
+            }
+            return types;
         }
 
         @Override
         public void reset() {
             super.reset();
-            groupByData = new TreeMap<>(session.getDatabase().getCompareMode());
+            hash = hashKeyTypes != null;
+            maxGroups = Integer.MAX_VALUE;
+            spilled = false;
+            resetGroups();
+        }
+
+        @Override
+        public void resetGroups() {
+            groupByData = hash ? new HashMap<ValueRow, Object[]>()
+                    : new TreeMap<ValueRow, Object[]>(session.getDatabase().getCompareMode());
+            currentGroupByExprData = null;
             currentGroupsKey = null;
             cursor = null;
         }
 
         @Override
-        public void nextSource() {
+        public boolean canSpill() {
+            return hash && groupIndex != null;
+        }
+
+        @Override
+        public void setMaxGroups(int maxGroups) {
+            this.maxGroups = maxGroups;
+        }
+
+        @Override
+        public boolean nextSource() {
             if (groupIndex == null) {
                 currentGroupsKey = ValueRow.getEmpty();
             } else {
@@ -87,17 +159,77 @@ public void nextSource() {
                 for (int i = 0; i < groupIndex.length; i++) {
                     int idx = groupIndex[i];
                     Expression expr = expressions.get(idx);
-                    keyValues[i] = expr.getValue(session);
+                    Value v = expr.getValue(session);
+                    if (hash && v != ValueNull.INSTANCE && v.getValueType() != hashKeyTypes[i]) {
+                        v = unexpectedKeyType(v, i);
+                    }
+                    keyValues[i] = v;
                 }
                 currentGroupsKey = ValueRow.get(keyValues);
             }
             Object[] values = groupByData.get(currentGroupsKey);
             if (values == null) {
+                if (groupByData.size() >= maxGroups) {
+                    spilled = true;
+                    currentGroupByExprData = null;
+                    return false;
+                }
                 values = createRow();
                 groupByData.put(currentGroupsKey, values);
             }
             currentGroupByExprData = values;
             currentGroupRowId++;
+            return true;
+        }
+
+        /**
+         * Handle a key value of a data type that is different from the data
+         * type of the expression. Values of different data types can be equal,
+         * but their hash codes are different.
+         */
+        private Value unexpectedKeyType(Value v, int i) {
+            if (spilled) {
+                // rows of other groups were already partitioned by hash code
+                return v.convertTo(hashKeyTypes[i]);
+            }
+            hash = false;
+            maxGroups = Integer.MAX_VALUE;
+            TreeMap<ValueRow, Object[]> map = new TreeMap<>(session.getDatabase().getCompareMode());
+            map.putAll(groupByData);
+            groupByData = map;
+            return v;
+        }
+
+        @Override
+        public ValueRow getCurrentGroupsKey() {
+            return currentGroupsKey;
+        }
+
+        @Override
+        public void merge(SelectGroups other, Expression[] exprs, Expression[] otherExprs) {
+            Grouped o = (Grouped) other;
+            int[] otherIndexes = other.getExprIndexes(otherExprs);
+            for (Entry<ValueRow, Object[]> entry : o.groupByData.entrySet()) {
+                currentGroupsKey = entry.getKey();
+                if (hash) {
+                    Value[] keyValues = currentGroupsKey.getList();
+                    for (int i = 0; hash && i < keyValues.length; i++) {
+                        Value v = keyValues[i];
+                        if (v != ValueNull.INSTANCE && v.getValueType() != hashKeyTypes[i]) {
+                            unexpectedKeyType(v, i);
+                        }
+                    }
+                }
+                Object[] values = groupByData.get(currentGroupsKey);
+                if (values == null) {
+                    values = createRow();
+                    groupByData.put(currentGroupsKey, values);
+                }
+                currentGroupByExprData = values;
+                mergeCurrentGroupExprData(exprs, otherIndexes, entry.getValue());
+            }
+            currentGroupByExprData = null;
+            currentGroupsKey = null;
         }
 
         @Override
@@ -148,6 +280,8 @@ private static final class Plain extends SelectGroups {
 
         private ArrayList<Object[]> rows;
 
+        private int maxRows;
+
         /**
          * Cursor for {@link #next()} method.
          */
@@ -160,16 +294,44 @@ private static final class Plain extends SelectGroups {
         @Override
         public void reset() {
             super.reset();
+            maxRows = Integer.MAX_VALUE;
+            resetGroups();
+        }
+
+        @Override
+        public void resetGroups() {
             rows = new ArrayList<>();
+            currentGroupByExprData = null;
             cursor = null;
         }
 
         @Override
-        public void nextSource() {
+        public void setMaxGroups(int maxGroups) {
+            maxRows = maxGroups;
+        }
+
+        @Override
+        public boolean nextSource() {
+            if (rows.size() >= maxRows) {
+                currentGroupByExprData = null;
+                return false;
+            }
             Object[] values = createRow();
             rows.add(values);
             currentGroupByExprData = values;
             currentGroupRowId++;
+            return true;
+        }
+
+        @Override
+        public void merge(SelectGroups other, Expression[] exprs, Expression[] otherExprs) {
+            int[] otherIndexes = other.getExprIndexes(otherExprs);
+            for (Object[] otherValues : ((Plain) other).rows) {
+                currentGroupByExprData = createRow();
+                rows.add(currentGroupByExprData);
+                mergeCurrentGroupExprData(exprs, otherIndexes, otherValues);
+            }
+            currentGroupByExprData = null;
         }
 
         @Override
@@ -353,6 +515,73 @@ public final void setWindowExprData(DataAnalysisOperation expr, Value partitionK
         }
     }
 
+    /**
+     * Get the indexes of the data of the given expressions in the group-by
+     * expression data.
+     *
+     * @param exprs
+     *            the expressions
+     * @return the indexes, -1 for expressions without data
+     */
+    final int[] getExprIndexes(Expression[] exprs) {
+        int count = exprs.length;
+        int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            Integer index = exprToIndexInGroupByData.get(exprs[i]);
+            indexes[i] = index != null ? index : -1;
+        }
+        return indexes;
+    }
+
+    /**
+     * Merge the data of the current group with the data of the given
+     * expressions computed from other source rows.
+     *
+     * @param exprs
+     *            the expressions
+     * @param otherIndexes
+     *            the indexes of the data of the expressions in other
+     *            group-by expression data
+     * @param otherValues
+     *            the other group-by expression data
+     */
+    final void mergeCurrentGroupExprData(Expression[] exprs, int[] otherIndexes, Object[] otherValues) {
+        for (int i = 0; i < exprs.length; i++) {
+            int index = otherIndexes[i];
+            if (index >= 0 && index < otherValues.length && otherValues[index] != null) {
+                mergeCurrentGroupExprData(exprs[i], otherValues[index]);
+            }
+        }
+    }
+
+    /**
+     * Merge the data of the current group and the passed in expression with
+     * the data computed from other source rows.
+     *
+     * @param expr
+     *            expression
+     * @param other
+     *            expression data computed from other source rows
+     */
+    final void mergeCurrentGroupExprData(Expression expr, Object other) {
+        Integer index = exprToIndexInGroupByData.get(expr);
+        if (index != null && index >= currentGroupByExprData.length) {
+            currentGroupByExprData = Arrays.copyOf(currentGroupByExprData, index + 1);
+            updateCurrentGroupExprData();
+        }
+        Object data = index != null ? currentGroupByExprData[index] : null;
+        if (expr instanceof Aggregate) {
+            Object merged = ((Aggregate) expr).mergeAggregateData(session, data, other);
+            if (data == null) {
+                setCurrentGroupExprData(expr, merged);
+            }
+        } else if (data == null) {
+            setCurrentGroupExprData(expr, other);
+        } else if (!session.getDatabase().areEqual((Value) data, (Value) other)) {
+            throw DbException.get(ErrorCode.MUST_GROUP_BY_COLUMN_1, expr.getSQL(false));
+        }
+    }
+
     /**
      * Update group-by data specified by implementation.
      */
@@ -382,8 +611,63 @@ public void reset() {
     /**
      * Invoked for each source row to evaluate group key and setup all necessary
      * data for aggregates.
+     *
+     * @return {@code true} if the row belongs to a group in memory,
+     *         {@code false} if the maximum number of groups is reached and the
+     *         row has to be processed again later
+     * @see #setMaxGroups(int)
+     */
+    public abstract boolean nextSource();
+
+    /**
+     * Returns the key of the group of the current source row.
+     *
+     * @return the key of the current group, or null
+     */
+    public ValueRow getCurrentGroupsKey() {
+        return null;
+    }
+
+    /**
+     * Returns whether source rows of groups that do not fit into memory can be
+     * partitioned by the hash codes of their group keys.
+     *
+     * @return {@code true} if {@link #setMaxGroups(int)} can be used
+     */
+    public boolean canSpill() {
+        return false;
+    }
+
+    /**
+     * Sets the maximum number of groups to keep in memory. Source rows of
+     * other groups are rejected by {@link #nextSource()} until
+     * {@link #resetGroups()} is invoked. The limit is removed by
+     * {@link #reset()}.
+     *
+     * @param maxGroups
+     *            the maximum number of groups
+     */
+    public abstract void setMaxGroups(int maxGroups);
+
+    /**
+     * Adds the groups of another instance that were computed from other source
+     * rows of the same query. Groups with the same key are merged.
+     *
+     * @param other
+     *            the group data of another instance of the query
+     * @param exprs
+     *            the expressions of this query that keep data of groups, see
+     *            {@link Aggregate#isMergeable()}
+     * @param otherExprs
+     *            the corresponding expressions of the other query
+     */
+    public abstract void merge(SelectGroups other, Expression[] exprs, Expression[] otherExprs);
+
+    /**
+     * Removes all groups in memory, to process rejected source rows, but keeps
+     * the layout of the group-by expression data.
      */
-    public abstract void nextSource();
+    public abstract void resetGroups();
 
     /**
      * Invoked after all source rows are evaluated.
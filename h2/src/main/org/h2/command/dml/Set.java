@@ -19,6 +19,7 @@
 import org.h2.expression.ValueExpression;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
+import org.h2.mvstore.tx.Transaction;
 import org.h2.result.LocalResultFactory;
 import org.h2.result.ResultInterface;
 import org.h2.result.RowFactory;
@@ -65,6 +66,8 @@ public boolean isTransactional() {
         case SetTypes.SCHEMA_SEARCH_PATH:
         case SetTypes.RETENTION_TIME:
         case SetTypes.LAZY_QUERY_EXECUTION:
+        case SetTypes.TRANSACTION_DURABILITY:
+        case SetTypes.PARALLELISM:
             return true;
         default:
         }
@@ -591,6 +594,22 @@ public int update() {
             session.setLazyQueryExecution(value == 1);
             break;
         }
+        case SetTypes.TRANSACTION_DURABILITY: {
+            int value = getIntValue();
+            if (value < Transaction.DURABILITY_NONE || value > Transaction.DURABILITY_SYNC) {
+                throw DbException.getInvalidValueException("TRANSACTION_DURABILITY", value);
+            }
+            session.setTransactionDurability(value);
+            break;
+        }
+        case SetTypes.PARALLELISM: {
+            int value = getIntValue();
+            if (value < 1) {
+                throw DbException.getInvalidValueException("PARALLELISM", value);
+            }
+            session.setParallelism(value);
+            break;
+        }
         case SetTypes.BUILTIN_ALIAS_OVERRIDE: {
             session.getUser().checkAdmin();
             int value = getIntValue();
@@ -649,10 +668,45 @@ public int update() {
         database.getNextModificationDataId();
         // query caches might be affected as well, for example
         // when changing the compatibility mode
-        database.getNextModificationMetaId();
+        if (affectsPreparedStatements()) {
+            database.getNextModificationMetaId();
+        }
         return 0;
     }
 
+    /**
+     * Check whether the setting may change the result of parsing and
+     * optimization of statements. Settings that are used for each connection,
+     * such as the lock timeout, should not invalidate the prepared statements
+     * of all sessions. The values of these settings are only read during the
+     * execution of statements, prepared statements don't keep a copy.
+     *
+     * @return false if the setting is only used during execution
+     */
+    private boolean affectsPreparedStatements() {
+        switch (type) {
+        case SetTypes.QUERY_TIMEOUT:
+        case SetTypes.LOCK_TIMEOUT:
+        case SetTypes.DEFAULT_LOCK_TIMEOUT:
+        case SetTypes.TRACE_LEVEL_SYSTEM_OUT:
+        case SetTypes.TRACE_LEVEL_FILE:
+        case SetTypes.TRACE_MAX_FILE_SIZE:
+        case SetTypes.THROTTLE:
+        case SetTypes.LOG:
+        case SetTypes.MAX_LOG_SIZE:
+        case SetTypes.MULTI_THREADED:
+        case SetTypes.WRITE_DELAY:
+        case SetTypes.RETENTION_TIME:
+        case SetTypes.QUERY_STATISTICS:
+        case SetTypes.QUERY_STATISTICS_MAX_ENTRIES:
+        case SetTypes.TRANSACTION_DURABILITY:
+        case SetTypes.PARALLELISM:
+            return false;
+        default:
+            return true;
+        }
+    }
+
     private int getIntValue() {
         expression = expression.optimize(session);
         return expression.getValue(session).getInt();
@@ -262,7 +262,17 @@ public class SetTypes {
      */
     public static final int UUID_COLLATION = 50;
 
-    private static final int COUNT = UUID_COLLATION + 1;
+    /**
+     * The type of a SET TRANSACTION_DURABILITY statement.
+     */
+    public static final int TRANSACTION_DURABILITY = 51;
+
+    /**
+     * The type of a SET PARALLELISM statement.
+     */
+    public static final int PARALLELISM = 52;
+
+    private static final int COUNT = PARALLELISM + 1;
 
     private static final ArrayList<String> TYPES;
 
@@ -323,6 +333,8 @@ private SetTypes() {
         list.add(AUTHENTICATOR, "AUTHENTICATOR");
         list.add(LOCAL_RESULT_FACTORY, "LOCAL_RESULT_FACTORY");
         list.add(UUID_COLLATION, "UUID_COLLATION");
+        list.add(TRANSACTION_DURABILITY, "TRANSACTION_DURABILITY");
+        list.add(PARALLELISM, "PARALLELISM");
         TYPES = list;
     }
 
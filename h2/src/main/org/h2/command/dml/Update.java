@@ -102,8 +102,10 @@ public void setUpdatedKeysCollector(HashSet<Long> updatedKeysCollector) {
     public int update() {
         targetTableFilter.startQuery(session);
         targetTableFilter.reset();
+        Table table = targetTableFilter.getTable();
+        int batchSize = getBatchSize(table);
+        Session.Savepoint rollback = batchSize > 0 ? session.setSavepoint() : null;
         try (RowList rows = new RowList(session)) {
-            Table table = targetTableFilter.getTable();
             session.getUser().checkRight(table, Right.UPDATE);
             table.fire(session, Trigger.UPDATE, true);
             table.lock(session, true, false);
@@ -188,6 +190,9 @@ public int update() {
                         if (updatedKeysCollector != null) {
                             updatedKeysCollector.add(key);
                         }
+                        if (batchSize > 0 && rows.size() >= 2 * batchSize) {
+                            updateRows(table, rows);
+                        }
                     }
                     count++;
                 }
@@ -198,21 +203,69 @@ public int update() {
             // at the same time. anyway good for sql compatibility
             // TODO update in-place (but if the key changes,
             // we need to update all indexes) before row triggers
-
-            // the cached row is already updated - we need the old values
-            table.updateRows(this, session, rows);
-            if (table.fireRow()) {
-                for (rows.reset(); rows.hasNext();) {
-                    Row o = rows.next();
-                    Row n = rows.next();
-                    table.fireAfterRow(session, o, n, false);
-                }
-            }
+            updateRows(table, rows);
             table.fire(session, Trigger.UPDATE, false);
             return count;
+        } catch (DbException e) {
+            if (rollback != null) {
+                rollbackBatches(e, rollback);
+            }
+            throw e;
         }
     }
 
+    /**
+     * Get the number of rows that are updated at a time while the table is
+     * still read, or 0 if all rows need to be read first. The rows are only
+     * updated in batches if they are read from a snapshot of the table, and
+     * the condition and the new values don't read the table.
+     *
+     * @param table the table
+     * @return the batch size, or 0
+     */
+    private int getBatchSize(Table table) {
+        int batchSize = session.getDatabase().getSettings().dmlBatchSize;
+        if (batchSize <= 0 || sourceTableFilter != null || updatedKeysCollector != null
+                || !targetTableFilter.isSnapshotScan() || !isBatchable(condition, table)) {
+            return 0;
+        }
+        HashSet<Column> updatedColumns = new HashSet<>(columns);
+        for (Column column : table.getColumns()) {
+            if (column.getOnUpdateExpression() != null) {
+                updatedColumns.add(column);
+            }
+        }
+        if (!table.canModifyRowsInBatches(updatedColumns)) {
+            return 0;
+        }
+        for (Expression e : expressionMap.values()) {
+            if (!isBatchable(e, table)) {
+                return 0;
+            }
+        }
+        return batchSize;
+    }
+
+    /**
+     * Update the collected rows, fire the after row triggers, and clear the
+     * list.
+     *
+     * @param table the table
+     * @param rows the list of old and new rows
+     */
+    private void updateRows(Table table, RowList rows) {
+        // the cached row is already updated - we need the old values
+        table.updateRows(this, session, rows);
+        if (table.fireRow()) {
+            for (rows.reset(); rows.hasNext();) {
+                Row o = rows.next();
+                Row n = rows.next();
+                table.fireAfterRow(session, o, n, false);
+            }
+        }
+        rows.clear();
+    }
+
     @Override
     public String getPlanSQL(boolean alwaysQuote) {
         StringBuilder builder = new StringBuilder("UPDATE ");
@@ -288,6 +341,26 @@ public boolean isCacheable() {
         return true;
     }
 
+    @Override
+    public boolean isShareable() {
+        if (sourceTableFilter != null || updatedKeysCollector != null || !isShareable(targetTableFilter.getTable())
+                || !isShareable(condition) || !isShareable(limitExpr)) {
+            return false;
+        }
+        for (Expression e : expressionMap.values()) {
+            if (!isShareable(e)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void setSession(Session currentSession) {
+        super.setSession(currentSession);
+        targetTableFilter.setSession(currentSession);
+    }
+
     public TableFilter getSourceTableFilter() {
         return sourceTableFilter;
     }
@@ -22,6 +22,10 @@
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -32,6 +36,7 @@
 import org.h2.api.TableEngine;
 import org.h2.command.CommandInterface;
 import org.h2.command.ddl.CreateTableData;
+import org.h2.command.dml.QueryResultCache;
 import org.h2.command.dml.SetTypes;
 import org.h2.constraint.Constraint;
 import org.h2.index.Cursor;
@@ -161,6 +166,7 @@ public class Database implements DataHandler {
     private User systemUser;
     private Session systemSession;
     private Session lobSession;
+    private ThreadPoolExecutor parallelQueryExecutor;
     private Table meta;
     private Index metaIdIndex;
     private FileLock lock;
@@ -235,6 +241,8 @@ public class Database implements DataHandler {
     private QueryStatisticsData queryStatisticsData;
     private RowFactory rowFactory = RowFactory.DEFAULT;
     private LocalResultFactory resultFactory = LocalResultFactory.DEFAULT;
+    private final SharedCommandCache sharedCommandCache;
+    private final QueryResultCache queryResultCache;
 
     private Authenticator authenticator;
 
@@ -247,6 +255,11 @@ public Database(ConnectionInfo ci, String cipher) {
         String name = ci.getName();
         this.dbSettings = ci.getDbSettings();
         this.reconnectCheckDelayNs = TimeUnit.MILLISECONDS.toNanos(dbSettings.reconnectCheckDelay);
+        int sharedQueryCacheSize = dbSettings.sharedQueryCacheSize;
+        this.sharedCommandCache = sharedQueryCacheSize > 0 ? new SharedCommandCache(this, sharedQueryCacheSize)
+                : null;
+        int queryResultCacheSize = dbSettings.queryResultCacheSize;
+        this.queryResultCache = queryResultCacheSize > 0 ? new QueryResultCache(this, queryResultCacheSize) : null;
         this.compareMode = CompareMode.getInstance(null, 0);
         this.persistent = ci.isPersistent();
         this.filePasswordHash = ci.getFilePasswordHash();
@@ -1368,6 +1381,45 @@ synchronized Session createSession(User user) {
         return session;
     }
 
+    /**
+     * Create a session that evaluates a part of a query of the given session
+     * in another thread. It is not listed as a user session.
+     *
+     * @param session the session of the query
+     * @return the new session
+     */
+    public synchronized Session createParallelSession(Session session) {
+        Session s = new Session(this, session.getUser(), ++nextSessionId);
+        s.setCurrentSchemaName(session.getCurrentSchemaName());
+        s.setSchemaSearchPath(session.getSchemaSearchPath());
+        return s;
+    }
+
+    /**
+     * Get the executor for the threads of parallel queries. The number of
+     * threads is limited by the number of available processors, further
+     * parts of queries wait in the queue.
+     *
+     * @return the executor
+     */
+    public synchronized ExecutorService getParallelQueryExecutor() {
+        if (parallelQueryExecutor == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 10L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "H2 Parallel Query " + getShortName());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            parallelQueryExecutor = executor;
+        }
+        return parallelQueryExecutor;
+    }
+
     /**
      * Remove a session. This method is called after the user has disconnected.
      *
@@ -1376,7 +1428,10 @@ synchronized Session createSession(User user) {
     public synchronized void removeSession(Session session) {
         if (session != null) {
             exclusiveSession.compareAndSet(session, null);
-            userSessions.remove(session);
+            if (!userSessions.remove(session) && session != systemSession && session != lobSession) {
+                // a session of a parallel query
+                return;
+            }
             if (session != systemSession && session != lobSession) {
                 trace.info("disconnecting session #{0}", session.getId());
             }
@@ -1569,6 +1624,10 @@ private void stopWriter() {
     private synchronized void closeOpenFilesAndUnlock(boolean flush) {
         try {
             stopWriter();
+            if (parallelQueryExecutor != null) {
+                parallelQueryExecutor.shutdownNow();
+                parallelQueryExecutor = null;
+            }
             if (pageStore != null) {
                 if (flush) {
                     try {
@@ -3060,6 +3119,34 @@ public void setDefaultTableType(int defaultTableType) {
         this.defaultTableType = defaultTableType;
     }
 
+    /**
+     * Get the cache of prepared statements that can be used by all sessions.
+     *
+     * @return the cache, or null if disabled
+     */
+    SharedCommandCache getSharedCommandCache() {
+        return sharedCommandCache;
+    }
+
+    /**
+     * Get the number of prepared statements that were taken from the shared
+     * cache instead of being parsed and optimized again.
+     *
+     * @return the number of reused statements
+     */
+    public long getSharedQueryCacheHitCount() {
+        return sharedCommandCache != null ? sharedCommandCache.getHitCount() : 0;
+    }
+
+    /**
+     * Get the cache of query results that can be used by all sessions.
+     *
+     * @return the cache, or null if disabled
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
     public DbSettings getSettings() {
         return dbSettings;
     }
@@ -56,6 +56,22 @@ public class DbSettings extends SettingsBase {
      */
     public final int analyzeSample = get("ANALYZE_SAMPLE", 10_000);
 
+    /**
+     * Database setting <code>BATCH_EVALUATION</code> (default: true).<br />
+     * Evaluate the condition of a query that scans a single table for blocks
+     * of rows instead of row by row.
+     */
+    public final boolean batchEvaluation = get("BATCH_EVALUATION", true);
+
+    /**
+     * Database setting <code>COMPILE_EXPRESSIONS</code> (default: false).<br />
+     * Compile the conditions and the select list expressions of queries that
+     * scan a single table to byte code. Only expressions with numeric and
+     * boolean values are compiled. Compilation requires a Java compiler at
+     * runtime.
+     */
+    public final boolean compileExpressions = get("COMPILE_EXPRESSIONS", false);
+
     /**
      * Database setting <code>DATABASE_TO_LOWER</code> (default: false).<br />
      * When set to true unquoted identifiers and short name of database are
@@ -86,6 +102,15 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean dbCloseOnExit = get("DB_CLOSE_ON_EXIT", true);
 
+    /**
+     * Database setting <code>DECORRELATE_SUBQUERIES</code> (default: true).<br />
+     * Evaluate EXISTS and IN subqueries that are correlated with the outer
+     * query only by equality conditions once, and look up the values of the
+     * outer query in the result, instead of evaluating the subquery for each
+     * row of the outer query.
+     */
+    public final boolean decorrelateSubqueries = get("DECORRELATE_SUBQUERIES", true);
+
     /**
      * Database setting <code>DEFAULT_CONNECTION</code> (default: false).<br />
      * Whether Java functions can use
@@ -111,6 +136,15 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean defragAlways = get("DEFRAG_ALWAYS", false);
 
+    /**
+     * Database setting <code>DML_BATCH_SIZE</code> (default: 1000).<br />
+     * The maximum number of rows an UPDATE or DELETE statement on an MVStore
+     * table collects before it modifies them, while the table is still read.
+     * This is only done if the rows are read from a snapshot of the table.
+     * Use 0 to collect all affected rows before any row is modified.
+     */
+    public final int dmlBatchSize = get("DML_BATCH_SIZE", 1000);
+
     /**
      * Database setting <code>DROP_RESTRICT</code> (default: true).<br />
      * Whether the default action for DROP TABLE, DROP VIEW, DROP SCHEMA, and
@@ -144,6 +178,20 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean functionsInSchema = get("FUNCTIONS_IN_SCHEMA", true);
 
+    /**
+     * Database setting <code>HASH_JOIN</code> (default: true).<br />
+     * Use hash joins for equality join conditions if no index can be used.
+     */
+    public final boolean hashJoin = get("HASH_JOIN", true);
+
+    /**
+     * Database setting <code>INDEX_MERGE</code> (default: true).<br />
+     * Use several indexes of a table together for conditions on different
+     * columns, by intersecting the row keys found for AND conditions, and by
+     * merging the row keys found for each operand of OR conditions.
+     */
+    public final boolean indexMerge = get("INDEX_MERGE", true);
+
     /**
      * Database setting <code>LOB_TIMEOUT</code> (default: 300000,
      * which means 5 minutes).<br />
@@ -153,6 +201,14 @@ public class DbSettings extends SettingsBase {
      */
     public final int lobTimeout = get("LOB_TIMEOUT", 300_000);
 
+    /**
+     * Database setting <code>LOOSE_INDEX_SCAN</code> (default: true).<br />
+     * Read only the first and the last index entries of each group of
+     * grouped queries that only use MIN and MAX of index columns. It is only
+     * used if the table was analyzed.
+     */
+    public final boolean looseIndexScan = get("LOOSE_INDEX_SCAN", true);
+
     /**
      * Database setting <code>MAX_COMPACT_COUNT</code>
      * (default: Integer.MAX_VALUE).<br />
@@ -175,6 +231,21 @@ public class DbSettings extends SettingsBase {
      */
     public final int maxQueryTimeout = get("MAX_QUERY_TIMEOUT", 0);
 
+    /**
+     * Database setting <code>MEMOIZE_SUBQUERIES</code> (default: true).<br />
+     * Remember the results of correlated scalar subqueries for the values of
+     * the columns of the outer query they depend on, while a statement is
+     * executed.
+     */
+    public final boolean memoizeSubqueries = get("MEMOIZE_SUBQUERIES", true);
+
+    /**
+     * Database setting <code>MERGE_JOIN</code> (default: true).<br />
+     * Use merge joins if both tables of an equality join condition are read
+     * in the order of the joined columns.
+     */
+    public final boolean mergeJoin = get("MERGE_JOIN", true);
+
     /**
      * Database setting <code>OPTIMIZE_DISTINCT</code> (default: true).<br />
      * Improve the performance of simple DISTINCT queries if an index is
@@ -262,6 +333,17 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean pageStoreTrim = get("PAGE_STORE_TRIM", true);
 
+    /**
+     * Database setting <code>PARAMETERIZE_LITERALS</code>
+     * (default: false).<br />
+     * Replace literals in conditions, in assignments of UPDATE statements,
+     * and in rows of INSERT statements with parameters before the statement
+     * is parsed. Statements that only differ in these literals then use the
+     * same entry of the query cache. Literals in the select list and in LIKE
+     * patterns are not replaced.
+     */
+    public final boolean parameterizeLiterals = get("PARAMETERIZE_LITERALS", false);
+
     /**
      * Database setting <code>QUERY_CACHE_SIZE</code> (default: 8).<br />
      * The size of the query cache, in number of cached statements. Each session
@@ -275,6 +357,18 @@ public class DbSettings extends SettingsBase {
      */
     public final int queryCacheSize = get("QUERY_CACHE_SIZE", 8);
 
+    /**
+     * Database setting <code>QUERY_RESULT_CACHE_SIZE</code>
+     * (default: 0).<br />
+     * The maximum memory used by the database-wide cache of query results, in
+     * KB. If enabled, results of deterministic queries are reused by all
+     * sessions until one of the tables the query depends on is modified. Only
+     * queries of sessions without uncommitted changes use the cache. Results
+     * that are larger than the cache or that are kept on disk are not cached.
+     * This setting requires OPTIMIZE_REUSE_RESULTS.
+     */
+    public final int queryResultCacheSize = get("QUERY_RESULT_CACHE_SIZE", 0);
+
     /**
      * Database setting <code>RECOMPILE_ALWAYS</code> (default: false).<br />
      * Always recompile prepared statements.
@@ -298,6 +392,20 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean reuseSpace = get("REUSE_SPACE", true);
 
+    /**
+     * Database setting <code>SHARED_QUERY_CACHE_SIZE</code>
+     * (default: 0).<br />
+     * The size of the database-wide cache of prepared statements that are
+     * currently not used by any session, in number of distinct statements.
+     * Statements are added when they are removed from the query cache of a
+     * session, or when the session is closed. Other sessions of the same user
+     * with the same current schema and settings use them instead of parsing
+     * and optimizing the statement again. Only simple SELECT, INSERT, UPDATE,
+     * and DELETE statements without subqueries are shared. The cache is
+     * disabled by default.
+     */
+    public final int sharedQueryCacheSize = get("SHARED_QUERY_CACHE_SIZE", 0);
+
     /**
      * Database setting <code>SHARE_LINKED_CONNECTIONS</code>
      * (default: true).<br />
@@ -308,6 +416,14 @@ public class DbSettings extends SettingsBase {
     public final boolean shareLinkedConnections = get(
             "SHARE_LINKED_CONNECTIONS", true);
 
+    /**
+     * Database setting <code>SKIP_SCAN</code> (default: true).<br />
+     * Use an index if there is no condition on its first column, but on its
+     * second column, by reading the rows of each distinct value of the first
+     * column separately. It is only used if the table was analyzed.
+     */
+    public final boolean skipScan = get("SKIP_SCAN", true);
+
     /**
      * Database setting <code>DEFAULT_TABLE_ENGINE</code>
      * (default: null).<br />
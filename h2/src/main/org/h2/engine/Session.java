@@ -20,7 +20,9 @@
 import java.util.concurrent.atomic.AtomicReference;
 import org.h2.api.ErrorCode;
 import org.h2.command.Command;
+import org.h2.command.CommandContainer;
 import org.h2.command.CommandInterface;
+import org.h2.command.LiteralParameterizer;
 import org.h2.command.Parser;
 import org.h2.command.Prepared;
 import org.h2.command.ddl.Analyze;
@@ -130,7 +132,13 @@ public enum State { INIT, RUNNING, BLOCKED, SLEEP, CLOSED }
     private int objectId;
     private final int queryCacheSize;
     private SmallLRUCache<String, Command> queryCache;
+    /**
+     * The keys of parameterized statements that could not be prepared, the
+     * original statements are cached instead.
+     */
+    private SmallLRUCache<String, Boolean> unparameterizedQueries;
     private long modificationMetaID = -1;
+    private long statementId;
     private SubQueryInfo subQueryInfo;
     private ArrayDeque<String> viewNameStack;
     private int preparingQueryExpression;
@@ -139,6 +147,8 @@ public enum State { INIT, RUNNING, BLOCKED, SLEEP, CLOSED }
     private boolean joinBatchEnabled;
     private boolean forceJoinOrder;
     private boolean lazyQueryExecution;
+    private int transactionDurability = Transaction.DURABILITY_ASYNC;
+    private int parallelism = 1;
     private ColumnNamerConfiguration columnNamerConfiguration;
     /**
      * Tables marked for ANALYZE after the current transaction is committed.
@@ -192,8 +202,41 @@ public boolean isLazyQueryExecution() {
         return lazyQueryExecution;
     }
 
+    /**
+     * Set the durability level of transactions committed by this session.
+     * It is only used with MVStore.
+     *
+     * @param transactionDurability the durability level, one of
+     *            Transaction.DURABILITY_NONE, Transaction.DURABILITY_ASYNC,
+     *            or Transaction.DURABILITY_SYNC
+     */
+    public void setTransactionDurability(int transactionDurability) {
+        this.transactionDurability = transactionDurability;
+    }
+
+    public int getTransactionDurability() {
+        return transactionDurability;
+    }
+
+    /**
+     * Set the maximum number of threads used to read the rows of a single
+     * query. It is only used with MVStore.
+     *
+     * @param parallelism the number of threads, 1 disables parallel execution
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
     public void setForceJoinOrder(boolean forceJoinOrder) {
-        this.forceJoinOrder = forceJoinOrder;
+        if (this.forceJoinOrder != forceJoinOrder) {
+            this.forceJoinOrder = forceJoinOrder;
+            clearQueryCache();
+        }
     }
 
     public boolean isForceJoinOrder() {
@@ -607,6 +650,19 @@ public Command prepareLocal(String sql) {
                     "session closed");
         }
         Command command;
+        LiteralParameterizer parameterizer = null;
+        String key = sql;
+        if (database.getSettings().parameterizeLiterals
+                && database.getAllowLiterals() == Constants.ALLOW_LITERALS_ALL) {
+            parameterizer = LiteralParameterizer.parameterize(sql, database.getMode());
+            if (parameterizer != null) {
+                if (unparameterizedQueries != null && unparameterizedQueries.containsKey(parameterizer.getKey())) {
+                    parameterizer = null;
+                } else {
+                    key = parameterizer.getKey();
+                }
+            }
+        }
         if (queryCacheSize > 0) {
             if (queryCache == null) {
                 queryCache = SmallLRUCache.newInstance(queryCacheSize);
@@ -615,29 +671,130 @@ public Command prepareLocal(String sql) {
                 long newModificationMetaID = database.getModificationMetaId();
                 if (newModificationMetaID != modificationMetaID) {
                     queryCache.clear();
+                    unparameterizedQueries = null;
                     modificationMetaID = newModificationMetaID;
                 }
-                command = queryCache.get(sql);
+                command = queryCache.get(key);
                 if (command != null && command.canReuse()) {
                     command.reuse();
+                    setLiteralParameters(command, sql, parameterizer);
                     return command;
                 }
             }
         }
+        SharedCommandCache sharedCommandCache = database.getSharedCommandCache();
+        if (sharedCommandCache != null) {
+            command = sharedCommandCache.take(this, key);
+            if (command != null) {
+                command.reuse();
+                setLiteralParameters(command, sql, parameterizer);
+                if (queryCache != null) {
+                    addToQueryCache(key, command);
+                }
+                return command;
+            }
+        }
+        command = null;
+        if (parameterizer != null) {
+            try {
+                command = parse(parameterizer.getSQL());
+                if (command instanceof CommandContainer) {
+                    setLiteralParameters(command, sql, parameterizer);
+                } else {
+                    command = null;
+                }
+            } catch (DbException e) {
+                // a parameter is not allowed here, or the statement is
+                // invalid, the original statement reports the error
+            }
+            if (command == null) {
+                if (queryCache != null) {
+                    if (unparameterizedQueries == null) {
+                        unparameterizedQueries = SmallLRUCache.newInstance(queryCacheSize);
+                    }
+                    // the next time the original statement is looked up
+                    unparameterizedQueries.put(key, Boolean.TRUE);
+                }
+                key = sql;
+            }
+        }
+        if (command == null) {
+            command = parse(sql);
+        }
+        command.prepareJoinBatch();
+        if (queryCache != null) {
+            if (command.isCacheable()) {
+                addToQueryCache(key, command);
+            }
+        }
+        return command;
+    }
+
+    private Command parse(String sql) {
         Parser parser = new Parser(this);
         try {
-            command = parser.prepareCommand(sql);
+            return parser.prepareCommand(sql);
         } finally {
             // we can't reuse sub-query indexes, so just drop the whole cache
             subQueryIndexCache = null;
         }
-        command.prepareJoinBatch();
+    }
+
+    private static void setLiteralParameters(Command command, String sql, LiteralParameterizer parameterizer) {
+        if (parameterizer != null) {
+            ((CommandContainer) command).setLiteralParameters(sql, parameterizer.getParameterIndexes(),
+                    parameterizer.getValues());
+        }
+    }
+
+    private void addToQueryCache(String sql, Command command) {
+        if (queryCache.size() >= queryCacheSize && !queryCache.containsKey(sql)) {
+            Iterator<Map.Entry<String, Command>> i = queryCache.entrySet().iterator();
+            Map.Entry<String, Command> eldest = i.next();
+            i.remove();
+            // results of lazy queries may still use the command
+            if (!lazyQueryExecution) {
+                releaseCommand(eldest.getKey(), eldest.getValue());
+            }
+        }
+        queryCache.put(sql, command);
+    }
+
+    /**
+     * Remove all statements from the query cache, because they were prepared
+     * with different settings.
+     */
+    private void clearQueryCache() {
         if (queryCache != null) {
-            if (command.isCacheable()) {
-                queryCache.put(sql, command);
+            queryCache.clear();
+        }
+    }
+
+    /**
+     * Pass a command that is no longer used by this session to the shared
+     * cache of the database, if possible.
+     *
+     * @param sql the SQL statement
+     * @param command the command
+     */
+    private void releaseCommand(String sql, Command command) {
+        SharedCommandCache sharedCommandCache = database.getSharedCommandCache();
+        if (sharedCommandCache != null && command.canReuse() && command.isShareable()) {
+            sharedCommandCache.add(this, sql, command, modificationMetaID);
+        }
+    }
+
+    /**
+     * Remove all statements from the query cache. Statements that can be used
+     * by other sessions are passed to the shared cache of the database.
+     */
+    private void releaseQueryCache() {
+        if (queryCache != null) {
+            for (Map.Entry<String, Command> e : queryCache.entrySet()) {
+                releaseCommand(e.getKey(), e.getValue());
             }
+            queryCache.clear();
         }
-        return command;
     }
 
     /**
@@ -680,10 +837,12 @@ public void commit(boolean ddl) {
         transactionStart = null;
         if (transaction != null) {
             try {
-                markUsedTablesAsUpdated();
-                transaction.commit();
+                transaction.commit(transactionDurability);
             } finally {
                 transaction = null;
+                // mark the tables after the changes became visible, results
+                // evaluated before must not be reused
+                markUsedTablesAsUpdated();
             }
         } else if (containsUncommitted()) {
             // need to commit even if rollback is not possible
@@ -890,6 +1049,8 @@ public void close() {
             try {
                 database.checkPowerOff();
 
+                releaseQueryCache();
+
                 // release any open table locks
                 rollback();
 
@@ -1321,12 +1482,19 @@ public boolean getAllowLiterals() {
     }
 
     public void setAllowLiterals(boolean b) {
-        this.allowLiterals = b;
+        if (allowLiterals != b) {
+            this.allowLiterals = b;
+            clearQueryCache();
+        }
     }
 
     public void setCurrentSchema(Schema schema) {
         modificationId++;
-        this.currentSchemaName = schema.getName();
+        String name = schema.getName();
+        if (!name.equals(currentSchemaName)) {
+            this.currentSchemaName = name;
+            clearQueryCache();
+        }
     }
 
     @Override
@@ -1444,6 +1612,7 @@ public Procedure getProcedure(String name) {
     public void setSchemaSearchPath(String[] schemas) {
         modificationId++;
         this.schemaSearchPath = schemas;
+        clearQueryCache();
     }
 
     public String[] getSchemaSearchPath() {
@@ -1753,6 +1922,7 @@ private long getStatementSavepoint() {
      * Start a new statement within a transaction.
      */
     public void startStatementWithinTransaction() {
+        statementId++;
         Transaction transaction = getTransaction();
         if(transaction != null) {
             transaction.markStatementStart();
@@ -1760,6 +1930,16 @@ public void startStatementWithinTransaction() {
         startStatement = -1;
     }
 
+    /**
+     * Get the identifier of the current statement. It is changed each time a
+     * statement is started within the transaction.
+     *
+     * @return the statement identifier
+     */
+    public long getStatementId() {
+        return statementId;
+    }
+
     /**
      * Mark the statement as completed. This also close all temporary result
      * set, and deletes all temporary files held by the result sets.
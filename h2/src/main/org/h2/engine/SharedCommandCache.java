@@ -0,0 +1,132 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.engine;
+
+import java.util.ArrayList;
+
+import org.h2.command.Command;
+import org.h2.util.SmallLRUCache;
+
+/**
+ * A database-wide cache of prepared statements that are currently not used by
+ * any session. A command is bound to one session at a time. A session that no
+ * longer needs a command adds it to this cache, and other sessions that prepare
+ * the same statement take it from here instead of parsing and optimizing the
+ * statement again. All entries are removed when the database meta data is
+ * changed.
+ */
+final class SharedCommandCache {
+
+    /**
+     * The maximum number of idle commands per statement.
+     */
+    private static final int MAX_COMMANDS_PER_KEY = 16;
+
+    private final Database database;
+
+    private final SmallLRUCache<String, ArrayList<Command>> map;
+
+    private long modificationMetaId;
+
+    private long hitCount;
+
+    SharedCommandCache(Database database, int size) {
+        this.database = database;
+        map = SmallLRUCache.newInstance(size);
+        modificationMetaId = database.getModificationMetaId();
+    }
+
+    /**
+     * Take an idle command for the given statement and bind it to the session.
+     *
+     * @param session the session
+     * @param sql the SQL statement
+     * @return the command, or null if there is no matching idle command
+     */
+    synchronized Command take(Session session, String sql) {
+        if (!isValid(database.getModificationMetaId())) {
+            return null;
+        }
+        String key = getKey(session, sql);
+        ArrayList<Command> list = map.get(key);
+        if (list == null) {
+            return null;
+        }
+        Command command = list.remove(list.size() - 1);
+        if (list.isEmpty()) {
+            map.remove(key);
+        }
+        hitCount++;
+        return command.share(session, sql);
+    }
+
+    /**
+     * Add a closed command that is no longer used by the session. Commands
+     * that were prepared with an old version of the meta data are ignored.
+     *
+     * @param session the session that used the command
+     * @param sql the SQL statement
+     * @param command the command
+     * @param commandModificationMetaId the meta data modification id the
+     *            command is known to be valid for
+     */
+    synchronized void add(Session session, String sql, Command command, long commandModificationMetaId) {
+        if (!isValid(commandModificationMetaId)) {
+            return;
+        }
+        String key = getKey(session, sql);
+        ArrayList<Command> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(4);
+            map.put(key, list);
+        } else if (list.size() >= MAX_COMMANDS_PER_KEY) {
+            return;
+        }
+        // don't keep the previous session reachable
+        list.add(command.share(database.getSystemSession(), sql));
+    }
+
+    /**
+     * Get the number of commands that were taken from this cache.
+     *
+     * @return the number of reused commands
+     */
+    synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    private boolean isValid(long id) {
+        long current = database.getModificationMetaId();
+        if (modificationMetaId != current) {
+            map.clear();
+            modificationMetaId = current;
+        }
+        return id == current;
+    }
+
+    /**
+     * Get the key of the statement. Statements can only be shared between
+     * sessions of the same user with the same settings that affect parsing
+     * and optimization.
+     *
+     * @param session the session
+     * @param sql the SQL statement
+     * @return the key
+     */
+    private static String getKey(Session session, String sql) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(session.getUser().getName()).append('\0').append(session.getCurrentSchemaName());
+        String[] searchPath = session.getSchemaSearchPath();
+        if (searchPath != null) {
+            for (String schema : searchPath) {
+                builder.append(',').append(schema);
+            }
+        }
+        return builder.append('\0').append(session.isForceJoinOrder() ? '1' : '0')
+                .append(session.getAllowLiterals() ? '1' : '0').append('\0').append(sql).toString();
+    }
+
+}
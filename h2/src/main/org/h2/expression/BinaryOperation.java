@@ -11,6 +11,7 @@
 import org.h2.expression.IntervalOperation.IntervalOpType;
 import org.h2.expression.function.Function;
 import org.h2.message.DbException;
+import org.h2.result.Row;
 import org.h2.table.ColumnResolver;
 import org.h2.table.TableFilter;
 import org.h2.value.DataType;
@@ -107,6 +108,28 @@ public Value getValue(Session session) {
         if (convertRight) {
             r = r.convertTo(type, mode, null);
         }
+        return getValue(mode, l, r);
+    }
+
+    @Override
+    public void getValues(Session session, TableFilter filter, Row[] rows, int[] selection, int count,
+            Value[] result) {
+        Mode mode = session.getDatabase().getMode();
+        Value[] rightValues = new Value[result.length];
+        left.getValues(session, filter, rows, selection, count, result);
+        right.getValues(session, filter, rows, selection, count, rightValues);
+        for (int i = 0; i < count; i++) {
+            int row = selection[i];
+            Value l = result[row].convertTo(type, mode, null);
+            Value r = rightValues[row];
+            if (convertRight) {
+                r = r.convertTo(type, mode, null);
+            }
+            result[row] = getValue(mode, l, r);
+        }
+    }
+
+    private Value getValue(Mode mode, Value l, Value r) {
         switch (opType) {
         case CONCAT: {
             if (type.getValueType() == Value.ARRAY) {
@@ -457,6 +480,15 @@ public int getCost() {
         return left.getCost() + right.getCost() + 1;
     }
 
+    /**
+     * Returns the type of the operation.
+     *
+     * @return the type of the operation
+     */
+    public OpType getOperationType() {
+        return opType;
+    }
+
     @Override
     public int getSubexpressionCount() {
         return 2;
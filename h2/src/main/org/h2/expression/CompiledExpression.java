@@ -0,0 +1,305 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.expression;
+
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.table.TableFilter;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+
+/**
+ * An expression compiled to byte code. The subclasses are generated by the
+ * {@link ExpressionCompiler}, they evaluate the expression for a row of a table
+ * with local variables of primitive types instead of value objects. If the
+ * generated code can not compute the result, for example on overflow or if a
+ * parameter has an unexpected data type, the original expression is evaluated
+ * instead.
+ */
+public abstract class CompiledExpression {
+
+    private Expression expression;
+
+    /**
+     * The constants and parameters used by the expression.
+     */
+    private Expression[] constants;
+
+    /**
+     * The expected data types of the values of the constants.
+     */
+    private int[] constantTypes;
+
+    /**
+     * Initialize the compiled expression.
+     *
+     * @param expression the original expression
+     * @param constants the constants and parameters
+     * @param constantTypes the expected data types of their values
+     */
+    void init(Expression expression, Expression[] constants, int[] constantTypes) {
+        this.expression = expression;
+        this.constants = constants;
+        this.constantTypes = constantTypes;
+    }
+
+    /**
+     * Get the original expression.
+     *
+     * @return the expression
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     * Evaluate the expression for the current row of the table filter.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @return the result
+     */
+    public Value getValue(Session session, TableFilter filter) {
+        Value[] k = getConstantValues(session);
+        if (k != null) {
+            try {
+                return evaluate(filter.get(), k);
+            } catch (ArithmeticException e) {
+                // evaluate the original expression to get the right exception
+            }
+        }
+        return expression.getValue(session);
+    }
+
+    /**
+     * Evaluate the condition for the current row of the table filter.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @return true if the condition is true
+     */
+    public boolean getBooleanValue(Session session, TableFilter filter) {
+        Value[] k = getConstantValues(session);
+        if (k != null) {
+            try {
+                return test(filter.get(), k);
+            } catch (ArithmeticException e) {
+                // evaluate the original expression to get the right exception
+            }
+        }
+        return expression.getBooleanValue(session);
+    }
+
+    /**
+     * Evaluate the condition for a block of rows of the table filter. See
+     * {@link Expression#selectTrueRows(Session, TableFilter, Row[], int[], int)}.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @param rows the rows
+     * @param selection the indexes of the rows to evaluate
+     * @param count the number of used entries in the selection
+     * @return the number of rows where the condition is true
+     */
+    public int selectTrueRows(Session session, TableFilter filter, Row[] rows, int[] selection, int count) {
+        Value[] k = getConstantValues(session);
+        if (k == null) {
+            return expression.selectTrueRows(session, filter, rows, selection, count);
+        }
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int r = selection[i];
+            Row row = rows[r];
+            boolean result;
+            try {
+                result = test(row, k);
+            } catch (ArithmeticException e) {
+                filter.set(row);
+                result = expression.getBooleanValue(session);
+            }
+            if (result) {
+                selection[n++] = r;
+            }
+        }
+        return n;
+    }
+
+    private Value[] getConstantValues(Session session) {
+        int length = constants.length;
+        Value[] k = new Value[length];
+        for (int i = 0; i < length; i++) {
+            Value v = constants[i].getValue(session);
+            if (v != ValueNull.INSTANCE && v.getValueType() != constantTypes[i]) {
+                return null;
+            }
+            k[i] = v;
+        }
+        return k;
+    }
+
+    /**
+     * Evaluate the expression.
+     *
+     * @param row the row
+     * @param k the values of the constants
+     * @return the result
+     * @throws ArithmeticException if the result can not be computed
+     */
+    protected Value evaluate(Row row, Value[] k) {
+        // only generated for expressions that are not used as conditions
+        throw DbException.throwInternalError("evaluate");
+    }
+
+    /**
+     * Evaluate the condition.
+     *
+     * @param row the row
+     * @param k the values of the constants
+     * @return true if the condition is true
+     * @throws ArithmeticException if the result can not be computed
+     */
+    protected boolean test(Row row, Value[] k) {
+        // only generated for expressions that are used as conditions
+        throw DbException.throwInternalError("test");
+    }
+
+    /**
+     * Add two BIGINT values.
+     *
+     * @param x the first value
+     * @param y the second value
+     * @return the sum
+     * @throws ArithmeticException on overflow
+     */
+    protected static long addLong(long x, long y) {
+        long result = x + y;
+        if (((x ^ result) & (y ^ result)) < 0) {
+            throw new ArithmeticException();
+        }
+        return result;
+    }
+
+    /**
+     * Subtract two BIGINT values.
+     *
+     * @param x the first value
+     * @param y the second value
+     * @return the difference
+     * @throws ArithmeticException on overflow
+     */
+    protected static long subtractLong(long x, long y) {
+        long result = x - y;
+        if (((x ^ y) & (x ^ result)) < 0) {
+            throw new ArithmeticException();
+        }
+        return result;
+    }
+
+    /**
+     * Multiply two BIGINT values.
+     *
+     * @param x the first value
+     * @param y the second value
+     * @return the product
+     * @throws ArithmeticException on overflow
+     */
+    protected static long multiplyLong(long x, long y) {
+        long result = x * y;
+        if ((Math.abs(x) | Math.abs(y)) >>> 31 != 0 && y != 0
+                && (result / y != x || x == Long.MIN_VALUE && y == -1)) {
+            throw new ArithmeticException();
+        }
+        return result;
+    }
+
+    /**
+     * Divide two BIGINT values.
+     *
+     * @param x the dividend
+     * @param y the divisor
+     * @return the quotient
+     * @throws ArithmeticException on division by zero or overflow
+     */
+    protected static long divideLong(long x, long y) {
+        if (x == Long.MIN_VALUE && y == -1) {
+            throw new ArithmeticException();
+        }
+        return x / y;
+    }
+
+    /**
+     * Divide two DOUBLE values.
+     *
+     * @param x the dividend
+     * @param y the divisor
+     * @return the quotient
+     * @throws ArithmeticException on division by zero
+     */
+    protected static double divideDouble(double x, double y) {
+        if (y == 0.0) {
+            throw new ArithmeticException();
+        }
+        return x / y;
+    }
+
+    /**
+     * Get the remainder of the division of two DOUBLE values.
+     *
+     * @param x the dividend
+     * @param y the divisor
+     * @return the remainder
+     * @throws ArithmeticException on division by zero
+     */
+    protected static double modulusDouble(double x, double y) {
+        if (y == 0.0) {
+            throw new ArithmeticException();
+        }
+        return x % y;
+    }
+
+    /**
+     * Check that the value is in the range of the specified data type.
+     *
+     * @param x the value
+     * @param type the data type (TINYINT, SMALLINT, or INT)
+     * @return the value
+     * @throws ArithmeticException if the value is out of range
+     */
+    protected static long checkRange(long x, int type) {
+        long min, max;
+        switch (type) {
+        case Value.BYTE:
+            min = Byte.MIN_VALUE;
+            max = Byte.MAX_VALUE;
+            break;
+        case Value.SHORT:
+            min = Short.MIN_VALUE;
+            max = Short.MAX_VALUE;
+            break;
+        default:
+            min = Integer.MIN_VALUE;
+            max = Integer.MAX_VALUE;
+        }
+        if (x < min || x > max) {
+            throw new ArithmeticException();
+        }
+        return x;
+    }
+
+    /**
+     * Compare two DOUBLE values like the DOUBLE data type does.
+     *
+     * @param x the first value
+     * @param y the second value
+     * @return the result of the comparison
+     */
+    protected static int compareDouble(double x, double y) {
+        // -0.0 is equal to 0.0
+        return Double.compare(x == 0.0 ? 0.0 : x, y == 0.0 ? 0.0 : y);
+    }
+
+}
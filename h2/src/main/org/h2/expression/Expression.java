@@ -9,7 +9,10 @@
 
 import org.h2.engine.Database;
 import org.h2.engine.Session;
+import org.h2.expression.condition.ConditionExists;
+import org.h2.expression.condition.ConditionInSelect;
 import org.h2.result.ResultInterface;
+import org.h2.result.Row;
 import org.h2.table.Column;
 import org.h2.table.ColumnResolver;
 import org.h2.table.TableFilter;
@@ -259,6 +262,55 @@ public boolean getBooleanValue(Session session) {
         return getValue(session).getBoolean();
     }
 
+    /**
+     * Evaluate the expression for a block of rows of the specified table
+     * filter. The default implementation sets each row as the current row of
+     * the filter and evaluates the expression for it; implementations may
+     * evaluate the whole block at once.
+     *
+     * @param session the session
+     * @param filter the table filter the rows belong to
+     * @param rows the rows
+     * @param selection the indexes of the rows to evaluate, in ascending order
+     * @param count the number of used entries in the selection
+     * @param result the array where the value for the row with index
+     *            {@code i} is stored at index {@code i}
+     */
+    public void getValues(Session session, TableFilter filter, Row[] rows, int[] selection, int count,
+            Value[] result) {
+        for (int i = 0; i < count; i++) {
+            int r = selection[i];
+            filter.set(rows[r]);
+            result[r] = getValue(session);
+        }
+    }
+
+    /**
+     * Evaluate the expression as a condition for a block of rows of the
+     * specified table filter and remove the rows where it is not true from
+     * the selection.
+     *
+     * @param session the session
+     * @param filter the table filter the rows belong to
+     * @param rows the rows
+     * @param selection the indexes of the rows to evaluate, in ascending
+     *            order, the indexes of the rows where the condition is true
+     *            are stored at the beginning of this array
+     * @param count the number of used entries in the selection
+     * @return the number of rows where the condition is true
+     */
+    public int selectTrueRows(Session session, TableFilter filter, Row[] rows, int[] selection, int count) {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int r = selection[i];
+            filter.set(rows[r]);
+            if (getBooleanValue(session)) {
+                selection[n++] = r;
+            }
+        }
+        return n;
+    }
+
     /**
      * Create index conditions if possible and attach them to the table filter.
      *
@@ -409,6 +461,25 @@ public static Expression[] getExpressionColumns(Session session, ResultInterface
         return expressions;
     }
 
+    /**
+     * Check whether the expression or one of its subexpressions contains a
+     * query.
+     *
+     * @param e the expression
+     * @return true if yes
+     */
+    public static boolean containsQuery(Expression e) {
+        if (e instanceof Subquery || e instanceof ConditionExists || e instanceof ConditionInSelect) {
+            return true;
+        }
+        for (int i = 0, count = e.getSubexpressionCount(); i < count; i++) {
+            if (containsQuery(e.getSubexpression(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns count of subexpressions.
      *
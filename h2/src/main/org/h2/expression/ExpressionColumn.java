@@ -15,6 +15,7 @@
 import org.h2.expression.condition.Comparison;
 import org.h2.index.IndexCondition;
 import org.h2.message.DbException;
+import org.h2.result.Row;
 import org.h2.schema.Constant;
 import org.h2.schema.Schema;
 import org.h2.table.Column;
@@ -25,6 +26,7 @@
 import org.h2.value.TypeInfo;
 import org.h2.value.Value;
 import org.h2.value.ValueBoolean;
+import org.h2.value.ValueLong;
 import org.h2.value.ValueNull;
 
 /**
@@ -224,6 +226,35 @@ public Value getValue(Session session) {
         return value;
     }
 
+    @Override
+    public void getValues(Session session, TableFilter filter, Row[] rows, int[] selection, int count,
+            Value[] result) {
+        Select select = columnResolver.getSelect();
+        if (columnResolver != filter || select != null && select.getGroupDataIfCurrent(false) != null) {
+            super.getValues(session, filter, rows, selection, count, result);
+            return;
+        }
+        int columnId = column.getColumnId();
+        ExtTypeInfo extTypeInfo = column.getType().getExtTypeInfo();
+        for (int i = 0; i < count; i++) {
+            int r = selection[i];
+            Row row = rows[r];
+            Value value;
+            if (columnId == -1) {
+                value = ValueLong.get(row.getKey());
+            } else {
+                value = row.getValue(columnId);
+                if (value == null) {
+                    filter.set(row);
+                    value = getValue(session);
+                } else if (extTypeInfo != null && value != ValueNull.INSTANCE) {
+                    value = extTypeInfo.cast(value);
+                }
+            }
+            result[r] = value;
+        }
+    }
+
     @Override
     public TypeInfo getType() {
         return column == null ? TypeInfo.TYPE_UNKNOWN : column.getType();
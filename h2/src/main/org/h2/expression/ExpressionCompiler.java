@@ -0,0 +1,501 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.expression;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.h2.api.ErrorCode;
+import org.h2.engine.Session;
+import org.h2.expression.condition.Comparison;
+import org.h2.expression.condition.ConditionAndOr;
+import org.h2.expression.condition.ConditionNot;
+import org.h2.message.DbException;
+import org.h2.message.Trace;
+import org.h2.table.TableFilter;
+import org.h2.util.SmallLRUCache;
+import org.h2.util.SourceCompiler;
+import org.h2.value.Value;
+
+/**
+ * Compiles expressions that are evaluated for the rows of a single table to
+ * byte code. The generated source code is compiled with the
+ * {@link SourceCompiler}. Only a subset of expressions is supported:
+ * columns, constants, and parameters of the data types BOOLEAN, TINYINT,
+ * SMALLINT, INT, BIGINT, and DOUBLE, arithmetic operations, comparisons, and
+ * the logical operators.
+ */
+public class ExpressionCompiler {
+
+    private static final String PACKAGE_NAME = "org.h2.dynamic";
+
+    /**
+     * The generated classes. The key is the source code of the class body, so
+     * that expressions with the same structure use the same class.
+     */
+    private static final SmallLRUCache<String, Class<?>> CLASSES = SmallLRUCache.newInstance(64);
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private static final AtomicLong COMPILED_COUNT = new AtomicLong();
+
+    /**
+     * Whether compiling is disabled, because the compiler can not be used in
+     * this environment.
+     */
+    private static volatile boolean disabled;
+
+    private final TableFilter filter;
+
+    private final StringBuilder builder = new StringBuilder();
+
+    private final ArrayList<Expression> constants = new ArrayList<>();
+
+    private int nextLocal;
+
+    private ExpressionCompiler(TableFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Compile the expression.
+     *
+     * @param session the session
+     * @param expression the expression
+     * @param filter the table filter the columns of the expression belong to
+     * @param condition whether the expression is evaluated as a condition
+     * @return the compiled expression, or null if the expression is not
+     *         supported or can not be compiled
+     */
+    public static CompiledExpression compile(Session session, Expression expression, TableFilter filter,
+            boolean condition) {
+        if (disabled) {
+            return null;
+        }
+        ExpressionCompiler compiler = new ExpressionCompiler(filter);
+        String body = compiler.generate(expression, condition);
+        if (body == null) {
+            return null;
+        }
+        try {
+            Class<?> clazz;
+            synchronized (CLASSES) {
+                clazz = CLASSES.get(body);
+            }
+            if (clazz == null) {
+                String className = "CompiledExpression" + NEXT_ID.incrementAndGet();
+                String fullName = PACKAGE_NAME + '.' + className;
+                SourceCompiler sourceCompiler = new SourceCompiler();
+                sourceCompiler.setSource(fullName, "package " + PACKAGE_NAME + ";\n"
+                        + "import org.h2.result.Row;\n"
+                        + "import org.h2.value.*;\n"
+                        + "public final class " + className + " extends " + CompiledExpression.class.getName()
+                        + " {\n" + body + "}\n");
+                clazz = sourceCompiler.getClass(fullName);
+                synchronized (CLASSES) {
+                    // another thread may have compiled the same body meanwhile
+                    Class<?> existing = CLASSES.get(body);
+                    if (existing != null) {
+                        clazz = existing;
+                    } else {
+                        CLASSES.put(body, clazz);
+                    }
+                }
+            }
+            CompiledExpression compiled = (CompiledExpression) clazz.getDeclaredConstructor().newInstance();
+            int size = compiler.constants.size();
+            Expression[] constants = compiler.constants.toArray(new Expression[size]);
+            int[] constantTypes = new int[size];
+            for (int i = 0; i < size; i++) {
+                constantTypes[i] = constants[i].getType().getValueType();
+            }
+            compiled.init(expression, constants, constantTypes);
+            COMPILED_COUNT.incrementAndGet();
+            return compiled;
+        } catch (DbException e) {
+            if (e.getErrorCode() != ErrorCode.SYNTAX_ERROR_1) {
+                // the compiler could not be run
+                disabled = true;
+            }
+            traceFailure(session, expression, e);
+            return null;
+        } catch (Exception e) {
+            traceFailure(session, expression, e);
+            return null;
+        } catch (LinkageError e) {
+            // the compiler or the generated class can not be loaded
+            disabled = true;
+            traceFailure(session, expression, e);
+            return null;
+        }
+    }
+
+    private static void traceFailure(Session session, Expression expression, Throwable e) {
+        Trace trace = session.getTrace();
+        if (trace.isDebugEnabled()) {
+            trace.debug(e, "compile " + expression.getSQL(false));
+        }
+    }
+
+    /**
+     * Get the number of expressions that were compiled successfully since the
+     * class was loaded. Used for testing.
+     *
+     * @return the number of compiled expressions
+     */
+    public static long getCompiledCount() {
+        return COMPILED_COUNT.get();
+    }
+
+    private String generate(Expression expression, boolean condition) {
+        int resultType = expression.getType().getValueType();
+        if (condition ? resultType != Value.BOOLEAN : getKind(resultType) == 0 || isLeaf(expression)) {
+            return null;
+        }
+        builder.append(condition ? "protected boolean test" : "protected Value evaluate")
+                .append("(Row row, Value[] k) {\n");
+        int result;
+        try {
+            result = generateLocal(expression);
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+        builder.append("return ");
+        if (condition) {
+            builder.append("!n").append(result).append(" && v").append(result);
+        } else {
+            builder.append('n').append(result).append(" ? ValueNull.INSTANCE : ");
+            switch (resultType) {
+            case Value.BOOLEAN:
+                builder.append("ValueBoolean.get(v").append(result).append(')');
+                break;
+            case Value.BYTE:
+                builder.append("ValueByte.get((byte) v").append(result).append(')');
+                break;
+            case Value.SHORT:
+                builder.append("ValueShort.get((short) v").append(result).append(')');
+                break;
+            case Value.INT:
+                builder.append("ValueInt.get((int) v").append(result).append(')');
+                break;
+            case Value.LONG:
+                builder.append("ValueLong.get(v").append(result).append(')');
+                break;
+            default:
+                builder.append("ValueDouble.get(v").append(result).append(')');
+            }
+        }
+        builder.append(";\n}\n");
+        return builder.toString();
+    }
+
+    private static boolean isLeaf(Expression expression) {
+        return expression instanceof ExpressionColumn || expression instanceof ValueExpression
+                || expression instanceof Parameter;
+    }
+
+    /**
+     * Get the kind of the local variables for the data type: 'Z' for BOOLEAN,
+     * 'J' for integer types, and 'D' for DOUBLE.
+     *
+     * @param type the data type
+     * @return the kind, or 0 if the data type is not supported
+     */
+    private static char getKind(int type) {
+        switch (type) {
+        case Value.BOOLEAN:
+            return 'Z';
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            return 'J';
+        case Value.DOUBLE:
+            return 'D';
+        default:
+            return 0;
+        }
+    }
+
+    private static char getKind(Expression expression) {
+        char kind = getKind(expression.getType().getValueType());
+        if (kind == 0) {
+            throw new UnsupportedOperationException();
+        }
+        return kind;
+    }
+
+    /**
+     * Generate the code that declares the local variables nX (whether the
+     * value is NULL) and vX (the value) for the expression.
+     *
+     * @param e the expression
+     * @return the index X of the local variables
+     */
+    private int generateLocal(Expression e) {
+        if (e instanceof ExpressionColumn) {
+            return generateColumn((ExpressionColumn) e);
+        } else if (e instanceof ValueExpression || e instanceof Parameter) {
+            int i = constants.size();
+            constants.add(e);
+            return generateValue(getKind(e), "k[" + i + ']');
+        } else if (e instanceof BinaryOperation) {
+            return generateOperation((BinaryOperation) e);
+        } else if (e instanceof UnaryOperation) {
+            return generateNegation((UnaryOperation) e);
+        } else if (e instanceof Comparison) {
+            return generateComparison((Comparison) e);
+        } else if (e instanceof ConditionAndOr) {
+            return generateAndOr((ConditionAndOr) e);
+        } else if (e instanceof ConditionNot) {
+            Expression condition = e.getSubexpression(0);
+            checkBoolean(condition);
+            int a = generateLocal(condition);
+            int x = nextLocal++;
+            builder.append("boolean n").append(x).append(" = n").append(a).append(";\n");
+            builder.append("boolean v").append(x).append(" = !n").append(a).append(" && !v").append(a).append(";\n");
+            return x;
+        }
+        throw new UnsupportedOperationException();
+    }
+
+    private int generateColumn(ExpressionColumn e) {
+        if (e.getTableFilter() != filter) {
+            throw new UnsupportedOperationException();
+        }
+        int columnId = e.getColumn().getColumnId();
+        if (columnId == -1) {
+            int x = nextLocal++;
+            builder.append("boolean n").append(x).append(" = false;\n");
+            builder.append("long v").append(x).append(" = row.getKey();\n");
+            return x;
+        }
+        if (e.getColumn().getType().getExtTypeInfo() != null) {
+            throw new UnsupportedOperationException();
+        }
+        return generateValue(getKind(e), "row.getValue(" + columnId + ')');
+    }
+
+    private int generateValue(char kind, String value) {
+        int x = nextLocal++;
+        builder.append("Value t").append(x).append(" = ").append(value).append(";\n");
+        builder.append("boolean n").append(x).append(" = t").append(x).append(" == ValueNull.INSTANCE;\n");
+        switch (kind) {
+        case 'Z':
+            builder.append("boolean v").append(x).append(" = !n").append(x).append(" && t").append(x)
+                    .append(".getBoolean();\n");
+            break;
+        case 'J':
+            builder.append("long v").append(x).append(" = n").append(x).append(" ? 0 : t").append(x)
+                    .append(".getLong();\n");
+            break;
+        default:
+            builder.append("double v").append(x).append(" = n").append(x).append(" ? 0 : t").append(x)
+                    .append(".getDouble();\n");
+        }
+        return x;
+    }
+
+    private int generateOperation(BinaryOperation e) {
+        int type = e.getType().getValueType();
+        char kind = getKind(type);
+        Expression left = e.getSubexpression(0), right = e.getSubexpression(1);
+        if (kind == 0 || kind == 'Z' || getKind(left) == 'Z' || getKind(right) == 'Z'
+                || kind == 'J' && (getKind(left) != 'J' || getKind(right) != 'J')) {
+            throw new UnsupportedOperationException();
+        }
+        int a = generateLocal(left);
+        int b = generateLocal(right);
+        String l = "v" + a, r = "v" + b;
+        String op;
+        if (kind == 'D') {
+            builder.append("double");
+            switch (e.getOperationType()) {
+            case PLUS:
+                op = l + " + " + r;
+                break;
+            case MINUS:
+                op = l + " - " + r;
+                break;
+            case MULTIPLY:
+                op = l + " * " + r;
+                break;
+            case DIVIDE:
+                op = "divideDouble(" + l + ", " + r + ')';
+                break;
+            case MODULUS:
+                op = "modulusDouble(" + l + ", " + r + ')';
+                break;
+            default:
+                throw new UnsupportedOperationException();
+            }
+        } else if (type == Value.LONG) {
+            builder.append("long");
+            switch (e.getOperationType()) {
+            case PLUS:
+                op = "addLong(" + l + ", " + r + ')';
+                break;
+            case MINUS:
+                op = "subtractLong(" + l + ", " + r + ')';
+                break;
+            case MULTIPLY:
+                op = "multiplyLong(" + l + ", " + r + ')';
+                break;
+            case DIVIDE:
+                op = "divideLong(" + l + ", " + r + ')';
+                break;
+            case MODULUS:
+                op = l + " % " + r;
+                break;
+            default:
+                throw new UnsupportedOperationException();
+            }
+        } else {
+            // the operands are in the range of INT, so there is no overflow
+            builder.append("long");
+            String o;
+            switch (e.getOperationType()) {
+            case PLUS:
+                o = " + ";
+                break;
+            case MINUS:
+                o = " - ";
+                break;
+            case MULTIPLY:
+                o = " * ";
+                break;
+            case DIVIDE:
+                o = " / ";
+                break;
+            case MODULUS:
+                o = " % ";
+                break;
+            default:
+                throw new UnsupportedOperationException();
+            }
+            op = "checkRange(" + l + o + r + ", " + type + ')';
+        }
+        int x = nextLocal++;
+        builder.append(" v").append(x).append(" = n").append(a).append(" || n").append(b).append(" ? 0 : ")
+                .append(op).append(";\n");
+        builder.append("boolean n").append(x).append(" = n").append(a).append(" || n").append(b).append(";\n");
+        return x;
+    }
+
+    private int generateNegation(UnaryOperation e) {
+        int type = e.getType().getValueType();
+        Expression arg = e.getSubexpression(0);
+        if (getKind(e) == 'Z' || getKind(arg) != getKind(e)) {
+            throw new UnsupportedOperationException();
+        }
+        int a = generateLocal(arg);
+        String v = "v" + a, op;
+        if (type == Value.DOUBLE) {
+            op = "-" + v;
+        } else if (type == Value.LONG) {
+            op = "subtractLong(0, " + v + ')';
+        } else {
+            op = "checkRange(-" + v + ", " + type + ')';
+        }
+        int x = nextLocal++;
+        builder.append(type == Value.DOUBLE ? "double" : "long").append(" v").append(x).append(" = n").append(a)
+                .append(" ? 0 : ").append(op).append(";\n");
+        builder.append("boolean n").append(x).append(" = n").append(a).append(";\n");
+        return x;
+    }
+
+    private int generateComparison(Comparison e) {
+        int compareType = e.getCompareType();
+        Expression left = e.getSubexpression(0);
+        int a = generateLocal(left);
+        int x;
+        if (compareType == Comparison.IS_NULL || compareType == Comparison.IS_NOT_NULL) {
+            x = nextLocal++;
+            builder.append("boolean n").append(x).append(" = false;\n");
+            builder.append("boolean v").append(x).append(" = ").append(compareType == Comparison.IS_NULL ? "" : "!")
+                    .append('n').append(a).append(";\n");
+            return x;
+        }
+        Expression right = e.getSubexpression(1);
+        char l = getKind(left), r = getKind(right);
+        String compare;
+        if (l == 'Z' || r == 'Z') {
+            if (l != r) {
+                throw new UnsupportedOperationException();
+            }
+            compare = "Boolean.compare";
+        } else if (l == 'J' && r == 'J') {
+            compare = "Long.compare";
+        } else {
+            compare = "compareDouble";
+        }
+        int b = generateLocal(right);
+        String op;
+        switch (compareType & ~Comparison.NULL_SAFE) {
+        case Comparison.EQUAL:
+            op = " == 0";
+            break;
+        case Comparison.NOT_EQUAL:
+            op = " != 0";
+            break;
+        case Comparison.BIGGER_EQUAL:
+            op = " >= 0";
+            break;
+        case Comparison.BIGGER:
+            op = " > 0";
+            break;
+        case Comparison.SMALLER_EQUAL:
+            op = " <= 0";
+            break;
+        case Comparison.SMALLER:
+            op = " < 0";
+            break;
+        default:
+            throw new UnsupportedOperationException();
+        }
+        x = nextLocal++;
+        String anyNull = "n" + a + " || n" + b;
+        if ((compareType & Comparison.NULL_SAFE) != 0) {
+            builder.append("boolean n").append(x).append(" = false;\n");
+            builder.append("boolean v").append(x).append(" = ").append(anyNull).append(" ? n").append(a)
+                    .append(compareType == Comparison.EQUAL_NULL_SAFE ? " == " : " != ").append('n').append(b)
+                    .append(" : ");
+        } else {
+            builder.append("boolean n").append(x).append(" = ").append(anyNull).append(";\n");
+            builder.append("boolean v").append(x).append(" = !n").append(x).append(" && ");
+        }
+        builder.append(compare).append("(v").append(a).append(", v").append(b).append(')')
+                .append(op).append(";\n");
+        return x;
+    }
+
+    private int generateAndOr(ConditionAndOr e) {
+        Expression left = e.getSubexpression(0), right = e.getSubexpression(1);
+        checkBoolean(left);
+        checkBoolean(right);
+        int a = generateLocal(left);
+        int b = generateLocal(right);
+        int x = nextLocal++;
+        // the result is known if one of the operands is FALSE for AND, or
+        // TRUE for OR; otherwise it is NULL if one of the operands is NULL
+        boolean and = e.getAndOrType() == ConditionAndOr.AND;
+        String known = and ? "!v" : "v";
+        builder.append("boolean n").append(x).append(" = !(!n").append(a).append(" && ").append(known).append(a)
+                .append(" || !n").append(b).append(" && ").append(known).append(b).append(") && (n").append(a)
+                .append(" || n").append(b).append(");\n");
+        builder.append("boolean v").append(x).append(" = !n").append(x).append(" && (v").append(a)
+                .append(and ? " && " : " || ").append('v').append(b).append(");\n");
+        return x;
+    }
+
+    private static void checkBoolean(Expression e) {
+        if (getKind(e) != 'Z') {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
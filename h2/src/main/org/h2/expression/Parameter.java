@@ -9,6 +9,7 @@
 import org.h2.engine.Session;
 import org.h2.expression.condition.Comparison;
 import org.h2.message.DbException;
+import org.h2.result.Row;
 import org.h2.table.Column;
 import org.h2.table.ColumnResolver;
 import org.h2.table.TableFilter;
@@ -61,6 +62,15 @@ public Value getValue(Session session) {
         return getParamValue();
     }
 
+    @Override
+    public void getValues(Session session, TableFilter filter, Row[] rows, int[] selection, int count,
+            Value[] result) {
+        Value v = getParamValue();
+        for (int i = 0; i < count; i++) {
+            result[selection[i]] = v;
+        }
+    }
+
     @Override
     public TypeInfo getType() {
         if (value != null) {
@@ -186,6 +196,10 @@ public void setColumn(Column column) {
         this.column = column;
     }
 
+    public Column getColumn() {
+        return column;
+    }
+
     public int getIndex() {
         return index;
     }
@@ -6,13 +6,19 @@
 package org.h2.expression;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import org.h2.api.ErrorCode;
 import org.h2.command.dml.Query;
+import org.h2.command.dml.Select;
 import org.h2.engine.Session;
 import org.h2.message.DbException;
 import org.h2.result.ResultInterface;
+import org.h2.table.Column;
 import org.h2.table.ColumnResolver;
+import org.h2.table.Table;
 import org.h2.table.TableFilter;
+import org.h2.value.DataType;
 import org.h2.value.TypeInfo;
 import org.h2.value.Value;
 import org.h2.value.ValueNull;
@@ -24,15 +30,160 @@
  */
 public class Subquery extends Expression {
 
+    /**
+     * The number of lookups after which the memo is disabled for the current
+     * statement if too few of them were hits.
+     */
+    private static final int MEMO_CHECK_LOOKUPS = 1024;
+
     private final Query query;
     private Expression expression;
 
+    /**
+     * The column resolvers of the enclosing queries.
+     */
+    private ArrayList<ColumnResolver> outerResolvers;
+
+    private boolean memoChecked;
+
+    /**
+     * The tables of the enclosing queries and their columns this subquery
+     * depends on, or null if the results are not remembered.
+     */
+    private TableFilter[] memoFilters;
+    private Column[] memoColumns;
+
+    /**
+     * The results of the subquery for the values of the memo columns.
+     */
+    private HashMap<Value, Value> memo;
+    private Session memoSession;
+    private Object memoCommand;
+    private long memoModificationId;
+    private int memoLookups, memoHits;
+    private boolean memoDisabled;
+
     public Subquery(Query query) {
         this.query = query;
     }
 
     @Override
     public Value getValue(Session session) {
+        Value key = getMemoKey(session);
+        if (key != null) {
+            memoLookups++;
+            Value v = memo.get(key);
+            if (v != null) {
+                memoHits++;
+                return v;
+            }
+        }
+        Value v = evaluate(session);
+        if (key != null) {
+            if (memo.size() < session.getDatabase().getMaxMemoryRows()) {
+                memo.put(key, v);
+            }
+            if (memoLookups >= MEMO_CHECK_LOOKUPS && memoHits < memoLookups / 8) {
+                // the values are (almost) unique
+                memoDisabled = true;
+                memo.clear();
+            }
+        }
+        return v;
+    }
+
+    /**
+     * Get the key of the current values of the columns of the enclosing
+     * queries. The remembered results are only used while the same statement
+     * is executed, and as long as no data is modified.
+     *
+     * @param session the session
+     * @return the key, or null if the results are not remembered
+     */
+    private Value getMemoKey(Session session) {
+        if (!memoChecked) {
+            initMemo(session);
+        }
+        if (memoFilters == null) {
+            return null;
+        }
+        Object command = session.getCurrentCommandStart();
+        long modificationId = session.getDatabase().getModificationDataId();
+        if (memo == null || memoSession != session || memoCommand != command
+                || memoModificationId != modificationId) {
+            memo = new HashMap<>();
+            memoSession = session;
+            memoCommand = command;
+            memoModificationId = modificationId;
+            memoLookups = memoHits = 0;
+            memoDisabled = false;
+        }
+        if (memoDisabled) {
+            return null;
+        }
+        int length = memoFilters.length;
+        Value[] values = new Value[length];
+        for (int i = 0; i < length; i++) {
+            Value v = memoFilters[i].getValue(memoColumns[i]);
+            if (v == null) {
+                return null;
+            }
+            values[i] = v;
+        }
+        return length == 1 ? values[0] : ValueRow.get(values);
+    }
+
+    /**
+     * Find the columns of the enclosing queries this subquery depends on.
+     * Results are only remembered for deterministic subqueries that depend
+     * only on columns of tables of the enclosing queries.
+     *
+     * @param session the session
+     */
+    private void initMemo(Session session) {
+        memoChecked = true;
+        if (outerResolvers == null || !session.getDatabase().getSettings().memoizeSubqueries
+                || query.isEverything(ExpressionVisitor.INDEPENDENT_VISITOR)
+                || !query.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)) {
+            return;
+        }
+        HashSet<Column> columns = new HashSet<>();
+        query.isEverything(ExpressionVisitor.getColumnsVisitor(columns, null));
+        ArrayList<TableFilter> filters = new ArrayList<>();
+        ArrayList<Column> list = new ArrayList<>();
+        for (ColumnResolver resolver : outerResolvers) {
+            if (query.isEverything(ExpressionVisitor.getNotFromResolverVisitor(resolver))) {
+                continue;
+            }
+            if (!(resolver instanceof TableFilter)) {
+                return;
+            }
+            TableFilter filter = (TableFilter) resolver;
+            Select select = filter.getSelect();
+            if (select != null && (select.isGroupQuery() || select.isWindowQuery())) {
+                // values of the columns may be read from the groups
+                return;
+            }
+            Table table = filter.getTable();
+            for (Column column : columns) {
+                if (column.getTable() == table) {
+                    int type = column.getType().getValueType();
+                    if (column.getColumnId() < 0 || type == Value.STRING_IGNORECASE
+                            || DataType.isLargeObject(type)) {
+                        return;
+                    }
+                    filters.add(filter);
+                    list.add(column);
+                }
+            }
+        }
+        if (!filters.isEmpty()) {
+            memoFilters = filters.toArray(new TableFilter[0]);
+            memoColumns = list.toArray(new Column[0]);
+        }
+    }
+
+    private Value evaluate(Session session) {
         query.setSession(session);
         try (ResultInterface result = query.query(2)) {
             Value v;
@@ -61,6 +212,12 @@ public TypeInfo getType() {
     @Override
     public void mapColumns(ColumnResolver resolver, int level, int state) {
         query.mapColumns(resolver, level + 1);
+        if (outerResolvers == null) {
+            outerResolvers = new ArrayList<>();
+        }
+        if (!outerResolvers.contains(resolver)) {
+            outerResolvers.add(resolver);
+        }
     }
 
     @Override
@@ -9,6 +9,7 @@
 import org.h2.expression.condition.Comparison;
 import org.h2.index.IndexCondition;
 import org.h2.message.DbException;
+import org.h2.result.Row;
 import org.h2.table.ColumnResolver;
 import org.h2.table.TableFilter;
 import org.h2.value.TypeInfo;
@@ -75,6 +76,19 @@ public Value getValue(Session session) {
         return value;
     }
 
+    @Override
+    public void getValues(Session session, TableFilter filter, Row[] rows, int[] selection, int count,
+            Value[] result) {
+        for (int i = 0; i < count; i++) {
+            result[selection[i]] = value;
+        }
+    }
+
+    @Override
+    public int selectTrueRows(Session session, TableFilter filter, Row[] rows, int[] selection, int count) {
+        return value.getBoolean() ? count : 0;
+    }
+
     @Override
     public TypeInfo getType() {
         return value.getType();
@@ -166,6 +166,89 @@ public AggregateType getAggregateType() {
         return aggregateType;
     }
 
+    /**
+     * Returns the column of a MIN or MAX aggregate without FILTER and OVER
+     * clauses. Such an aggregate only needs the rows with the smallest and the
+     * largest values of the column.
+     *
+     * @return the column, or null if this is another aggregate
+     */
+    public ExpressionColumn getMinMaxColumn() {
+        if ((aggregateType != AggregateType.MIN && aggregateType != AggregateType.MAX) || filterCondition != null
+                || over != null || !(args[0] instanceof ExpressionColumn)) {
+            return null;
+        }
+        return (ExpressionColumn) args[0];
+    }
+
+    /**
+     * Returns whether the aggregate data of this aggregate can be computed
+     * separately from different parts of source rows and merged with
+     * {@link #mergeAggregateData(Session, Object, Object)}.
+     *
+     * @return whether the aggregate data can be merged
+     */
+    public boolean isMergeable() {
+        if (over != null || distinct || orderByList != null) {
+            return false;
+        }
+        switch (aggregateType) {
+        case COUNT_ALL:
+        case COUNT:
+        case SUM:
+        case AVG:
+        case MIN:
+        case MAX:
+        case BIT_AND:
+        case BIT_OR:
+        case ANY:
+        case EVERY:
+        case STDDEV_POP:
+        case STDDEV_SAMP:
+        case VAR_POP:
+        case VAR_SAMP:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns the expressions evaluated for each source row, the arguments and
+     * the FILTER condition.
+     *
+     * @return the expressions
+     */
+    public ArrayList<Expression> getSourceExpressions() {
+        ArrayList<Expression> list = new ArrayList<>(Arrays.asList(args));
+        if (filterCondition != null) {
+            list.add(filterCondition);
+        }
+        return list;
+    }
+
+    /**
+     * Merges the aggregate data computed from different parts of source rows.
+     *
+     * @param session
+     *            the session
+     * @param aggregateData
+     *            the aggregate data, or null
+     * @param other
+     *            the aggregate data computed from other rows, or null
+     * @return the merged aggregate data
+     * @see #isMergeable()
+     */
+    public Object mergeAggregateData(Session session, Object aggregateData, Object other) {
+        if (aggregateData == null) {
+            return other;
+        }
+        if (other != null) {
+            ((AggregateData) aggregateData).merge(session.getDatabase(), (AggregateData) other);
+        }
+        return aggregateData;
+    }
+
     private void sortWithOrderBy(Value[] array) {
         final SortOrder sortOrder = orderBySort;
         if (sortOrder != null) {
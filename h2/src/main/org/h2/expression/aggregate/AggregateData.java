@@ -81,6 +81,17 @@ static AggregateData create(AggregateType aggregateType, boolean distinct, int d
      */
     abstract void add(Database database, Value v);
 
+    /**
+     * Add the data of another aggregate of the same type that was computed
+     * from other rows.
+     *
+     * @param database the database
+     * @param other the other aggregate data
+     */
+    void merge(Database database, AggregateData other) {
+        throw DbException.throwInternalError("merge");
+    }
+
     /**
      * Get the aggregate result.
      *
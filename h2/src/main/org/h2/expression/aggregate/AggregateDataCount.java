@@ -30,6 +30,11 @@ void add(Database database, Value v) {
         }
     }
 
+    @Override
+    void merge(Database database, AggregateData other) {
+        count += ((AggregateDataCount) other).count;
+    }
+
     @Override
     Value getValue(Database database, int dataType) {
         return ValueLong.get(count).convertTo(dataType);
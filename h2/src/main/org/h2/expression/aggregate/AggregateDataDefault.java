@@ -120,6 +120,53 @@ void add(Database database, Value v) {
         }
     }
 
+    @Override
+    void merge(Database database, AggregateData other) {
+        AggregateDataDefault data = (AggregateDataDefault) other;
+        if (data.count == 0) {
+            return;
+        }
+        switch (aggregateType) {
+        case STDDEV_POP:
+        case STDDEV_SAMP:
+        case VAR_POP:
+        case VAR_SAMP:
+            if (count == 0) {
+                mean = data.mean;
+                m2 = data.m2;
+            } else {
+                // combine the partial results, see also
+                // https://en.wikipedia.org/wiki/Algorithms_for_calculating_variance#Parallel_algorithm
+                double delta = data.mean - mean;
+                long n = count + data.count;
+                mean += delta * data.count / n;
+                m2 += data.m2 + delta * delta * count * data.count / n;
+            }
+            break;
+        case SUM:
+        case AVG:
+            if (value == null) {
+                value = data.value;
+            } else {
+                value = value.add(data.value.convertTo(value.getValueType()));
+            }
+            break;
+        case MIN:
+        case MAX:
+        case EVERY:
+        case ANY:
+        case BIT_AND:
+        case BIT_OR:
+            // the aggregated value of the other data is added as a single value
+            count--;
+            add(database, data.value);
+            break;
+        default:
+            DbException.throwInternalError("type=" + aggregateType);
+        }
+        count += data.count;
+    }
+
     @Override
     Value getValue(Database database, int dataType) {
         Value v = null;
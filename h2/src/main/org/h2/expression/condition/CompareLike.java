@@ -16,6 +16,7 @@
 import org.h2.expression.ValueExpression;
 import org.h2.index.IndexCondition;
 import org.h2.message.DbException;
+import org.h2.result.Row;
 import org.h2.table.ColumnResolver;
 import org.h2.table.TableFilter;
 import org.h2.value.CompareMode;
@@ -266,7 +267,31 @@ public Value getValue(Session session) {
         if (invalidPattern) {
             return ValueNull.INSTANCE;
         }
-        String value = l.getString();
+        return ValueBoolean.get(isMatch(l.getString()));
+    }
+
+    @Override
+    public int selectTrueRows(Session session, TableFilter filter, Row[] rows, int[] selection, int count) {
+        if (!isInit) {
+            return super.selectTrueRows(session, filter, rows, selection, count);
+        }
+        if (invalidPattern) {
+            return 0;
+        }
+        Value[] values = new Value[rows.length];
+        left.getValues(session, filter, rows, selection, count, values);
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int r = selection[i];
+            Value l = values[r];
+            if (l != ValueNull.INSTANCE && isMatch(l.getString())) {
+                selection[n++] = r;
+            }
+        }
+        return n;
+    }
+
+    private boolean isMatch(String value) {
         boolean result;
         if (regexp) {
             result = patternRegexp.matcher(value).find();
@@ -285,7 +310,7 @@ public Value getValue(Session session) {
         } else {
             result = compareAt(value, 0, 0, value.length(), patternChars, patternTypes);
         }
-        return ValueBoolean.get(result);
+        return result;
     }
 
     private static boolean containsIgnoreCase(String src, String what) {
@@ -18,6 +18,7 @@
 import org.h2.expression.aggregate.AggregateType;
 import org.h2.index.IndexCondition;
 import org.h2.message.DbException;
+import org.h2.result.Row;
 import org.h2.table.Column;
 import org.h2.table.ColumnResolver;
 import org.h2.table.TableFilter;
@@ -290,6 +291,53 @@ public Value getValue(Session session) {
         return compare(database, l, right.getValue(session), compareType);
     }
 
+    @Override
+    public int selectTrueRows(Session session, TableFilter filter, Row[] rows, int[] selection, int count) {
+        Value[] leftValues = new Value[rows.length];
+        left.getValues(session, filter, rows, selection, count, leftValues);
+        int n = 0;
+        if (right == null) {
+            boolean isNull;
+            switch (compareType) {
+            case IS_NULL:
+                isNull = true;
+                break;
+            case IS_NOT_NULL:
+                isNull = false;
+                break;
+            default:
+                throw DbException.throwInternalError("type=" + compareType);
+            }
+            for (int i = 0; i < count; i++) {
+                int r = selection[i];
+                if ((leftValues[r] == ValueNull.INSTANCE) == isNull) {
+                    selection[n++] = r;
+                }
+            }
+            return n;
+        }
+        // Optimization: do not evaluate right if not necessary
+        if ((compareType & NULL_SAFE) == 0) {
+            for (int i = 0; i < count; i++) {
+                int r = selection[i];
+                if (leftValues[r] != ValueNull.INSTANCE) {
+                    selection[n++] = r;
+                }
+            }
+            count = n;
+            n = 0;
+        }
+        Value[] rightValues = new Value[rows.length];
+        right.getValues(session, filter, rows, selection, count, rightValues);
+        for (int i = 0; i < count; i++) {
+            int r = selection[i];
+            if (compare(database, leftValues[r], rightValues[r], compareType).getBoolean()) {
+                selection[n++] = r;
+            }
+        }
+        return n;
+    }
+
     /**
      * Compare two values.
      *
@@ -655,6 +703,15 @@ private static ConditionIn getConditionIn(Session session, Expression left, Expr
         return new ConditionIn(session.getDatabase(), left, right);
     }
 
+    /**
+     * Returns the type of the comparison.
+     *
+     * @return the type of the comparison
+     */
+    public int getCompareType() {
+        return compareType;
+    }
+
     @Override
     public int getSubexpressionCount() {
         return compareType == IS_NULL || compareType == IS_NOT_NULL ? 1 : 2;
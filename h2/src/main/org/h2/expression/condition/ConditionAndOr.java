@@ -5,11 +5,16 @@
  */
 package org.h2.expression.condition;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionVisitor;
 import org.h2.expression.ValueExpression;
+import org.h2.index.IndexCondition;
 import org.h2.message.DbException;
+import org.h2.result.Row;
 import org.h2.table.ColumnResolver;
 import org.h2.table.TableFilter;
 import org.h2.value.Value;
@@ -65,9 +70,39 @@ public void createIndexConditions(Session session, TableFilter filter) {
         if (andOrType == AND) {
             left.createIndexConditions(session, filter);
             right.createIndexConditions(session, filter);
+        } else if (session.getDatabase().getSettings().indexMerge) {
+            // the rows of each operand may be found using a different index
+            ArrayList<ArrayList<IndexCondition>> disjuncts = new ArrayList<>();
+            if (addDisjuncts(session, filter, disjuncts, this)) {
+                filter.addIndexUnion(disjuncts);
+            }
         }
     }
 
+    /**
+     * Add the index conditions of each operand of nested OR conditions.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @param disjuncts the list to add the index conditions of each operand to
+     * @param e the expression
+     * @return false if an operand has no index conditions
+     */
+    private static boolean addDisjuncts(Session session, TableFilter filter,
+            ArrayList<ArrayList<IndexCondition>> disjuncts, Expression e) {
+        if (e instanceof ConditionAndOr && ((ConditionAndOr) e).andOrType == OR) {
+            ConditionAndOr c = (ConditionAndOr) e;
+            return addDisjuncts(session, filter, disjuncts, c.left)
+                    && addDisjuncts(session, filter, disjuncts, c.right);
+        }
+        ArrayList<IndexCondition> conditions = filter.collectIndexConditions(session, e);
+        if (conditions.isEmpty()) {
+            return false;
+        }
+        disjuncts.add(conditions);
+        return true;
+    }
+
     @Override
     public Expression getNotIfPossible(Session session) {
         // (NOT (A OR B)): (NOT(A) AND NOT(B))
@@ -126,6 +161,45 @@ public Value getValue(Session session) {
         }
     }
 
+    @Override
+    public int selectTrueRows(Session session, TableFilter filter, Row[] rows, int[] selection, int count) {
+        switch (andOrType) {
+        case AND:
+            count = left.selectTrueRows(session, filter, rows, selection, count);
+            return count == 0 ? 0 : right.selectTrueRows(session, filter, rows, selection, count);
+        case OR: {
+            int[] leftTrue = Arrays.copyOf(selection, count);
+            int leftCount = left.selectTrueRows(session, filter, rows, leftTrue, count);
+            if (leftCount == count) {
+                return count;
+            }
+            // evaluate the right condition only for the remaining rows
+            int[] rightTrue = new int[count - leftCount];
+            int rightCount = 0;
+            for (int i = 0, j = 0; i < count; i++) {
+                int r = selection[i];
+                if (j < leftCount && leftTrue[j] == r) {
+                    j++;
+                } else {
+                    rightTrue[rightCount++] = r;
+                }
+            }
+            rightCount = right.selectTrueRows(session, filter, rows, rightTrue, rightCount);
+            int n = 0;
+            for (int i = 0, j = 0; i < leftCount || j < rightCount;) {
+                if (j == rightCount || i < leftCount && leftTrue[i] < rightTrue[j]) {
+                    selection[n++] = leftTrue[i++];
+                } else {
+                    selection[n++] = rightTrue[j++];
+                }
+            }
+            return n;
+        }
+        default:
+            throw DbException.throwInternalError("type=" + andOrType);
+        }
+    }
+
     @Override
     public Expression optimize(Session session) {
         // NULL handling: see wikipedia,
@@ -293,6 +367,15 @@ public int getCost() {
         return left.getCost() + right.getCost();
     }
 
+    /**
+     * Returns the type of the condition, {@link #AND} or {@link #OR}.
+     *
+     * @return the type of the condition
+     */
+    public int getAndOrType() {
+        return andOrType;
+    }
+
     @Override
     public int getSubexpressionCount() {
         return 2;
@@ -6,8 +6,11 @@
 package org.h2.expression.condition;
 
 import org.h2.command.dml.Query;
+import org.h2.command.dml.Select;
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionList;
 import org.h2.expression.ExpressionVisitor;
 import org.h2.result.ResultInterface;
 import org.h2.table.ColumnResolver;
@@ -38,10 +41,37 @@ public Value getValue(Session session) {
 
     @Override
     public Expression optimize(Session session) {
+        if (session.getDatabase().getSettings().decorrelateSubqueries && query instanceof Select) {
+            ExpressionColumn[] outer = ((Select) query).decorrelate(true);
+            if (outer != null) {
+                // EXISTS(SELECT ... WHERE A.X = B.X) is
+                // B.X IS NOT NULL AND B.X IN(SELECT DISTINCT A.X ... WHERE A.X IS NOT NULL)
+                Expression left = outer.length == 1 ? outer[0] : new ExpressionList(outer, false);
+                Expression in = new ConditionInSelect(session.getDatabase(), left, query, false, Comparison.EQUAL);
+                return getNotNullCondition(session, outer, in).optimize(session);
+            }
+        }
         session.optimizeQueryExpression(query);
         return this;
     }
 
+    /**
+     * Combine a condition with the conditions that the given columns are not
+     * NULL.
+     *
+     * @param session the session
+     * @param columns the columns
+     * @param condition the condition
+     * @return the combined condition
+     */
+    static Expression getNotNullCondition(Session session, ExpressionColumn[] columns, Expression condition) {
+        for (int i = columns.length - 1; i >= 0; i--) {
+            condition = new ConditionAndOr(ConditionAndOr.AND,
+                    new Comparison(session, Comparison.IS_NOT_NULL, columns[i], null), condition);
+        }
+        return condition;
+    }
+
     @Override
     public StringBuilder getSQL(StringBuilder builder, boolean alwaysQuote) {
         builder.append("EXISTS(\n");
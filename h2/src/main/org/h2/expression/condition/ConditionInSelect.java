@@ -7,10 +7,12 @@
 
 import org.h2.api.ErrorCode;
 import org.h2.command.dml.Query;
+import org.h2.command.dml.Select;
 import org.h2.engine.Database;
 import org.h2.engine.Session;
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionList;
 import org.h2.expression.ExpressionVisitor;
 import org.h2.index.IndexCondition;
 import org.h2.message.DbException;
@@ -61,7 +63,8 @@ public Value getValue(Session session) {
         if (!rows.hasNext()) {
             return ValueBoolean.get(all);
         } else if (l.containsNull()) {
-            return ValueNull.INSTANCE;
+            // a row value with NULL may still be different from all rows
+            return l.getValueType() == Value.ROW ? getValueSlow(rows, l) : ValueNull.INSTANCE;
         }
         if (!database.getSettings().optimizeInSelect) {
             return getValueSlow(rows, l);
@@ -77,6 +80,12 @@ public Value getValue(Session session) {
             if (columnCount == leftValue.length && rows.containsDistinct(leftValue)) {
                 return ValueBoolean.TRUE;
             }
+            if (rows.containsNull()) {
+                // only rows with NULL where all other values are equal
+                // make the result NULL
+                return getValueSlow(rows, l);
+            }
+            return ValueBoolean.FALSE;
         } else {
             TypeInfo colType = rows.getColumnType(0);
             if (colType.getValueType() == Value.NULL) {
@@ -144,6 +153,20 @@ public void mapColumns(ColumnResolver resolver, int level, int state) {
 
     @Override
     public Expression optimize(Session session) {
+        if (!all && compareType == Comparison.EQUAL && session.getDatabase().getSettings().decorrelateSubqueries
+                && query instanceof Select) {
+            ExpressionColumn[] outer = ((Select) query).decorrelate(false);
+            if (outer != null) {
+                // X IN(SELECT A.Y ... WHERE A.X = B.X) is
+                // B.X IS NOT NULL AND (B.X, X) IN(SELECT DISTINCT A.X, A.Y ... WHERE A.X IS NOT NULL)
+                Expression[] list = new Expression[outer.length + 1];
+                System.arraycopy(outer, 0, list, 0, outer.length);
+                list[outer.length] = left;
+                Expression in = new ConditionInSelect(database, new ExpressionList(list, false), query, false,
+                        Comparison.EQUAL);
+                return ConditionExists.getNotNullCondition(session, outer, in).optimize(session);
+            }
+        }
         left = left.optimize(session);
         session.optimizeQueryExpression(query);
         // Can not optimize: the data may change
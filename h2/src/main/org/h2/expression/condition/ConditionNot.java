@@ -9,6 +9,7 @@
 import org.h2.expression.Expression;
 import org.h2.expression.ExpressionVisitor;
 import org.h2.expression.ValueExpression;
+import org.h2.result.Row;
 import org.h2.table.ColumnResolver;
 import org.h2.table.TableFilter;
 import org.h2.value.Value;
@@ -39,6 +40,21 @@ public Value getValue(Session session) {
         return v.convertTo(Value.BOOLEAN).negate();
     }
 
+    @Override
+    public int selectTrueRows(Session session, TableFilter filter, Row[] rows, int[] selection, int count) {
+        Value[] values = new Value[rows.length];
+        condition.getValues(session, filter, rows, selection, count, values);
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            int r = selection[i];
+            Value v = values[r];
+            if (v != ValueNull.INSTANCE && !v.getBoolean()) {
+                selection[n++] = r;
+            }
+        }
+        return n;
+    }
+
     @Override
     public void mapColumns(ColumnResolver resolver, int level, int state) {
         condition.mapColumns(resolver, level, state);
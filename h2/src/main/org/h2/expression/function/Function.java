@@ -41,6 +41,7 @@
 import org.h2.mode.FunctionsMSSQLServer;
 import org.h2.mode.FunctionsMySQL;
 import org.h2.mvstore.db.MVSpatialIndex;
+import org.h2.result.Row;
 import org.h2.schema.Schema;
 import org.h2.schema.Sequence;
 import org.h2.security.BlockCipher;
@@ -1217,6 +1218,47 @@ protected Value getValueWithArgs(Session session, Expression[] args) {
                 values[i] = v;
             }
         }
+        return getValueWithArgValues(session, args, values);
+    }
+
+    @Override
+    public void getValues(Session session, TableFilter filter, Row[] rows, int[] selection, int count,
+            Value[] result) {
+        int argCount = args.length;
+        if (!info.nullIfParameterIsNull || argCount == 0 || getClass() != Function.class) {
+            super.getValues(session, filter, rows, selection, count, result);
+            return;
+        }
+        Value[][] argValues = new Value[argCount][];
+        int[] sel = Arrays.copyOf(selection, count);
+        int n = count;
+        for (int a = 0; a < argCount && n > 0; a++) {
+            Value[] v = argValues[a] = new Value[rows.length];
+            args[a].getValues(session, filter, rows, sel, n, v);
+            // the remaining arguments are not evaluated for NULL rows
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                int r = sel[i];
+                if (v[r] != ValueNull.INSTANCE) {
+                    sel[m++] = r;
+                }
+            }
+            n = m;
+        }
+        for (int i = 0; i < count; i++) {
+            result[selection[i]] = ValueNull.INSTANCE;
+        }
+        for (int i = 0; i < n; i++) {
+            int r = sel[i];
+            Value[] values = new Value[argCount];
+            for (int a = 0; a < argCount; a++) {
+                values[a] = argValues[a][r];
+            }
+            result[r] = getValueWithArgValues(session, args, values);
+        }
+    }
+
+    private Value getValueWithArgValues(Session session, Expression[] args, Value[] values) {
         Value v0 = getNullOrValue(session, args, values, 0);
         Value resultSimple = getSimpleValue(session, v0, args, values);
         if (resultSimple != null) {
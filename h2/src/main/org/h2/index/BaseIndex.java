@@ -9,8 +9,11 @@
 import org.h2.api.ErrorCode;
 import org.h2.command.dml.AllColumnsForPlan;
 import org.h2.engine.Constants;
+import org.h2.engine.Database;
 import org.h2.engine.DbObject;
 import org.h2.engine.Session;
+import org.h2.expression.Expression;
+import org.h2.expression.condition.Comparison;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
 import org.h2.result.Row;
@@ -18,6 +21,7 @@
 import org.h2.result.SortOrder;
 import org.h2.schema.SchemaObjectBase;
 import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
 import org.h2.table.IndexColumn;
 import org.h2.table.Table;
 import org.h2.table.TableFilter;
@@ -34,6 +38,18 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
     protected IndexColumn[] indexColumns;
     protected Column[] columns;
     protected int[] columnIds;
+
+    /**
+     * The columns whose values are stored in the index entries in addition to
+     * the indexed columns.
+     */
+    protected Column[] includedColumns = new Column[0];
+
+    /**
+     * The condition of a partial index, or null if all rows are stored in the
+     * index.
+     */
+    protected PartialIndexCondition condition;
     protected final Table table;
     protected final IndexType indexType;
 
@@ -172,6 +188,10 @@ protected final long getCostRangeIndex(int[] masks, long rowCount,
         if (masks != null) {
             int i = 0, len = columns.length;
             boolean tryAdditional = false;
+            TableFilter tableFilter = filters == null ? null : filters[filter];
+            // the fraction of matching rows according to the statistics of
+            // the columns, or a negative value if not known
+            double fraction = 1;
             while (i < len) {
                 Column column = columns[i++];
                 int index = column.getColumnId();
@@ -188,16 +208,23 @@ protected final long getCostRangeIndex(int[] masks, long rowCount,
                         distinctRows = 1;
                     }
                     rowsCost = 2 + Math.max(rowCount / distinctRows, 1);
+                    if (fraction >= 0) {
+                        double f = getEqualFraction(column, tableFilter);
+                        fraction = f < 0 ? -1 : fraction * f;
+                        if (fraction >= 0) {
+                            rowsCost = 2 + Math.max((long) (rowCount * fraction), 1);
+                        }
+                    }
                 } else if ((mask & IndexCondition.RANGE) == IndexCondition.RANGE) {
-                    rowsCost = 2 + rowsCost / 4;
+                    rowsCost = getRangeCost(column, tableFilter, rowsCost, 2 + rowsCost / 4);
                     tryAdditional = true;
                     break;
                 } else if ((mask & IndexCondition.START) == IndexCondition.START) {
-                    rowsCost = 2 + rowsCost / 3;
+                    rowsCost = getRangeCost(column, tableFilter, rowsCost, 2 + rowsCost / 3);
                     tryAdditional = true;
                     break;
                 } else if ((mask & IndexCondition.END) == IndexCondition.END) {
-                    rowsCost = rowsCost / 3;
+                    rowsCost = getRangeCost(column, tableFilter, rowsCost, rowsCost / 3);
                     tryAdditional = true;
                     break;
                 } else {
@@ -272,14 +299,7 @@ protected final long getCostRangeIndex(int[] masks, long rowCount,
             if (foundCols != null)
             {
                 for (Column c : foundCols) {
-                    boolean found = false;
-                    for (Column c2 : columns) {
-                        if (c == c2) {
-                            found = true;
-                            break;
-                        }
-                    }
-                    if (!found) {
+                    if (!containsColumn(columns, c) && !containsColumn(includedColumns, c)) {
                         foundAllColumnsWeNeed = false;
                         break;
                     }
@@ -300,11 +320,130 @@ protected final long getCostRangeIndex(int[] masks, long rowCount,
             // columns (the more columns we have in index - the higher cost).
             // This is faster because a smaller index will fit into fewer data
             // blocks.
-            rc = rowsCost + sortingCost + columns.length;
+            rc = rowsCost + sortingCost + columns.length + includedColumns.length;
         }
         return rc;
     }
 
+    private static boolean containsColumn(Column[] list, Column column) {
+        for (Column c : list) {
+            if (c == column) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Estimate the fraction of rows where the column is equal to a constant,
+     * using the distribution of the column values.
+     *
+     * @param column the column
+     * @param filter the table filter, or null
+     * @return the fraction of rows, or -1 if not known
+     */
+    private static double getEqualFraction(Column column, TableFilter filter) {
+        ColumnStatistics statistics = column.getStatistics();
+        if (statistics == null || filter == null) {
+            return -1;
+        }
+        Session session = filter.getSession();
+        Database database = session.getDatabase();
+        for (IndexCondition condition : filter.getIndexConditions()) {
+            if (condition.getColumn() != column) {
+                continue;
+            }
+            switch (condition.getCompareType()) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE: {
+                Value v = getConstant(session, column, condition.getExpression());
+                if (v != null && v != ValueNull.INSTANCE) {
+                    return statistics.getEqualFraction(database, v);
+                }
+                break;
+            }
+            case Comparison.IN_LIST: {
+                double fraction = 0;
+                for (Expression e : condition.getExpressionList()) {
+                    Value v = getConstant(session, column, e);
+                    if (v == null) {
+                        fraction = -1;
+                        break;
+                    }
+                    fraction += statistics.getEqualFraction(database, v);
+                }
+                if (fraction >= 0) {
+                    return Math.min(fraction, 1);
+                }
+                break;
+            }
+            default:
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Estimate the cost of a range condition on a column, using the
+     * distribution of the column values if the bounds of the range are
+     * constants.
+     *
+     * @param column the column
+     * @param filter the table filter, or null
+     * @param rowsCost the cost without the range condition
+     * @param defaultCost the cost if the distribution is not known
+     * @return the cost
+     */
+    private static long getRangeCost(Column column, TableFilter filter, long rowsCost, long defaultCost) {
+        ColumnStatistics statistics = column.getStatistics();
+        if (statistics == null || filter == null) {
+            return defaultCost;
+        }
+        Session session = filter.getSession();
+        Value min = null, max = null;
+        for (IndexCondition condition : filter.getIndexConditions()) {
+            if (condition.getColumn() != column) {
+                continue;
+            }
+            switch (condition.getCompareType()) {
+            case Comparison.BIGGER:
+            case Comparison.BIGGER_EQUAL: {
+                Value v = getConstant(session, column, condition.getExpression());
+                if (v != null) {
+                    min = v;
+                }
+                break;
+            }
+            case Comparison.SMALLER:
+            case Comparison.SMALLER_EQUAL: {
+                Value v = getConstant(session, column, condition.getExpression());
+                if (v != null) {
+                    max = v;
+                }
+                break;
+            }
+            default:
+            }
+        }
+        if (min == null && max == null) {
+            return defaultCost;
+        }
+        // a range condition that can be used is never worse than no condition
+        return Math.min(rowsCost - 1,
+                2 + (long) (rowsCost * statistics.getRangeFraction(session.getDatabase(), min, max)));
+    }
+
+    private static Value getConstant(Session session, Column column, Expression e) {
+        if (e != null && e.isConstant()) {
+            try {
+                return column.convert(e.getValue(session));
+            } catch (DbException ex) {
+                // the index can't be used
+            }
+        }
+        return null;
+    }
+
     @Override
     public int compareRows(SearchRow rowData, SearchRow compare) {
         if (rowData == compare) {
@@ -431,6 +570,15 @@ public String getCreateSQLForCopy(Table targetTable, String quotedName) {
             StringUtils.quoteStringSQL(buff, comment);
         }
         buff.append('(').append(getColumnListSQL(true)).append(')');
+        if (includedColumns.length > 0) {
+            buff.append(" INCLUDE(");
+            Column.writeColumns(buff, includedColumns, true);
+            buff.append(')');
+        }
+        if (condition != null) {
+            buff.append(" WHERE ");
+            condition.getExpression().getUnenclosedSQL(buff, true);
+        }
         return buff.toString();
     }
 
@@ -449,6 +597,16 @@ public Column[] getColumns() {
         return columns;
     }
 
+    @Override
+    public Column[] getIncludedColumns() {
+        return includedColumns;
+    }
+
+    @Override
+    public Expression getCondition() {
+        return condition == null ? null : condition.getExpression();
+    }
+
     @Override
     public IndexType getIndexType() {
         return indexType;
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.h2.command.dml.AllColumnsForPlan;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
+import org.h2.expression.Parameter;
+import org.h2.expression.condition.Comparison;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVKeyedTempResult;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.util.Utils;
+import org.h2.value.DataType;
+import org.h2.value.Value;
+import org.h2.value.ValueLong;
+import org.h2.value.ValueRow;
+
+/**
+ * An index that is used for hash joins. It is not part of the table. On the
+ * first lookup of a query, all rows of the table are read once and grouped by
+ * the values of the columns used in equality conditions; all other lookups are
+ * answered from this hash table. If the table has more rows than the
+ * configured number of rows to keep in memory, they are moved to a temporary
+ * file.
+ */
+public class HashJoinIndex extends BaseIndex {
+
+    private final boolean totalOrdering;
+
+    private final int maxMemoryRows;
+
+    private Map<Value, ArrayList<Row>> rows;
+
+    private MVKeyedTempResult spilledRows;
+
+    private HashJoinIndex(Table table, IndexColumn[] columns, boolean totalOrdering) {
+        super(table, 0, table.getName() + "_HASH_JOIN", columns,
+                IndexType.createNonUnique(false, true, false));
+        this.totalOrdering = totalOrdering;
+        Database db = table.getDatabase();
+        maxMemoryRows = db.isPersistent() && !db.isReadOnly() ? db.getMaxMemoryRows() : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Create a hash join index for the columns with equality conditions.
+     *
+     * @param table the table
+     * @param masks the condition masks per column
+     * @return the index, or null if there are no usable columns
+     */
+    public static HashJoinIndex create(Table table, int[] masks) {
+        ArrayList<Column> list = Utils.newSmallArrayList();
+        boolean totalOrdering = true;
+        for (Column column : table.getColumns()) {
+            int mask = masks[column.getColumnId()];
+            if ((mask & IndexCondition.EQUALITY) == IndexCondition.EQUALITY) {
+                int type = column.getType().getValueType();
+                if (DataType.isLargeObject(type)) {
+                    continue;
+                }
+                totalOrdering &= DataType.hasTotalOrdering(type);
+                list.add(column);
+            }
+        }
+        if (list.isEmpty()) {
+            return null;
+        }
+        return new HashJoinIndex(table, IndexColumn.wrap(list.toArray(new Column[0])), totalOrdering);
+    }
+
+    /**
+     * Release the hash table, it will be built again on the next lookup.
+     */
+    public void clear() {
+        rows = null;
+        if (spilledRows != null) {
+            spilledRows.close();
+            spilledRows = null;
+        }
+    }
+
+    private void build(Session session) {
+        rows = totalOrdering ? new HashMap<Value, ArrayList<Row>>()
+                : new TreeMap<Value, ArrayList<Row>>(database.getCompareMode());
+        Cursor cursor = table.getScanIndex(session).find(session, null, null);
+        int count = 0;
+        while (cursor.next()) {
+            if ((++count & 4095) == 0) {
+                session.checkCanceled();
+            }
+            Row row = cursor.get();
+            if (spilledRows != null) {
+                spilledRows.addRow(toValues(row));
+                continue;
+            }
+            Value key = getKey(row);
+            ArrayList<Row> list = rows.get(key);
+            if (list == null) {
+                list = Utils.newSmallArrayList();
+                rows.put(key, list);
+            }
+            list.add(row);
+            if (count > maxMemoryRows) {
+                spill();
+            }
+        }
+    }
+
+    private void spill() {
+        int columnCount = table.getColumns().length;
+        Expression[] expressions = new Expression[columnCount + 1];
+        for (int i = 0; i < columnCount; i++) {
+            expressions[i] = new ExpressionColumn(database, table.getColumn(i));
+        }
+        expressions[columnCount] = new ExpressionColumn(database, new Column(Column.ROWID, Value.LONG));
+        int[] keyIndexes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            keyIndexes[i] = columns[i].getColumnId();
+        }
+        spilledRows = new MVKeyedTempResult(database, expressions, keyIndexes);
+        for (ArrayList<Row> list : rows.values()) {
+            for (Row row : list) {
+                spilledRows.addRow(toValues(row));
+            }
+        }
+        rows = null;
+    }
+
+    private static Value[] toValues(Row row) {
+        Value[] data = row.getValueList();
+        Value[] values = Arrays.copyOf(data, data.length + 1);
+        values[data.length] = ValueLong.get(row.getKey());
+        return values;
+    }
+
+    private Value getKey(SearchRow row) {
+        if (columns.length == 1) {
+            return row.getValue(columns[0].getColumnId());
+        }
+        Value[] values = new Value[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = row.getValue(columns[i].getColumnId());
+        }
+        return ValueRow.get(values);
+    }
+
+    /**
+     * Get the values to look up, or null if the search rows do not specify
+     * a single value for each column.
+     */
+    private Value[] getSearchValues(SearchRow first, SearchRow last) {
+        if (first == null || last == null) {
+            return null;
+        }
+        Value[] values = new Value[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            Column column = columns[i];
+            int id = column.getColumnId();
+            Value v = first.getValue(id);
+            Value v2 = last.getValue(id);
+            if (v == null || v2 == null || first != last && database.compare(v, v2) != 0) {
+                return null;
+            }
+            values[i] = v.convertTo(column.getType(), database.getMode(), null);
+        }
+        return values;
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        Value[] values = getSearchValues(first, last);
+        if (values == null) {
+            // conditions are checked by the caller, so a scan is enough
+            return table.getScanIndex(session).find(session, null, null);
+        }
+        if (rows == null && spilledRows == null) {
+            build(session);
+        }
+        if (spilledRows != null) {
+            ArrayList<Value[]> list = spilledRows.find(values);
+            int columnCount = table.getColumns().length;
+            ArrayList<Row> result = new ArrayList<>(list.size());
+            for (Value[] v : list) {
+                Row row = table.createRow(Arrays.copyOf(v, columnCount), Row.MEMORY_CALCULATE);
+                row.setKey(v[columnCount].getLong());
+                result.add(row);
+            }
+            return new HashJoinCursor(result);
+        }
+        Value key = values.length == 1 ? values[0] : ValueRow.get(values);
+        return new HashJoinCursor(rows.get(key));
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks,
+            TableFilter[] filters, int filter, SortOrder sortOrder,
+            AllColumnsForPlan allColumnsSet) {
+        if (hasConstantEquality(filters[filter])) {
+            // the table should be read first, so that only the rows with the
+            // constant value are joined (see issue 113)
+            return Double.POSITIVE_INFINITY;
+        }
+        // the table is read once, and the cost of that is shared by all
+        // lookups; the number of lookups is estimated by the number of rows
+        // of the tables that are joined before this one
+        double lookups = 1;
+        for (int i = 0; i < filter; i++) {
+            lookups *= getRowCount(filters[i]);
+        }
+        // building the hash table is more expensive than a scan, which also
+        // makes the optimizer build it from the smaller table
+        double buildCost = 4 * table.getScanIndex(session).getCost(session, null, filters, filter, null,
+                allColumnsSet);
+        return 10 * getCostRangeIndex(masks, table.getRowCountApproximation(), filters, filter, null, false,
+                allColumnsSet) + buildCost / lookups;
+    }
+
+    /**
+     * Estimate the number of rows of a table filter, using the selectivity of
+     * the columns that are compared with constants. If the row count of the
+     * table is only a guess (for example for a view), the cost of building
+     * the hash table is not shared.
+     *
+     * @param f the table filter
+     * @return the estimated number of rows, at least 1
+     */
+    private static double getRowCount(TableFilter f) {
+        Table t = f.getTable();
+        if (!t.canGetRowCount()) {
+            return 1;
+        }
+        long rowCount = t.getRowCountApproximation();
+        double rows = Math.max(1, rowCount);
+        for (IndexCondition condition : f.getIndexConditions()) {
+            if (isConstantEquality(condition)) {
+                // the number of distinct values
+                double distinct = rowCount * condition.getColumn().getSelectivity() / 100d;
+                rows = Math.min(rows, Math.max(1, rowCount / Math.max(1, distinct)));
+            }
+        }
+        return rows;
+    }
+
+    private static boolean hasConstantEquality(TableFilter f) {
+        for (IndexCondition condition : f.getIndexConditions()) {
+            if (isConstantEquality(condition)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConstantEquality(IndexCondition condition) {
+        int compareType = condition.getCompareType();
+        if (compareType != Comparison.EQUAL && compareType != Comparison.EQUAL_NULL_SAFE) {
+            return false;
+        }
+        Expression e = condition.getExpression();
+        return e != null && (e.isConstant() || e instanceof Parameter);
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return table.getSQL(new StringBuilder(), false).append(".hashJoin").toString();
+    }
+
+    @Override
+    public String getCreateSQL() {
+        return null;
+    }
+
+    @Override
+    public void close(Session session) {
+        clear();
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public void remove(Session session) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public void truncate(Session session) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public void checkRename() {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    @Override
+    public boolean canScan() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return table.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return table.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+    /**
+     * The cursor over the rows with the same key.
+     */
+    private static final class HashJoinCursor implements Cursor {
+
+        private final ArrayList<Row> rows;
+
+        private int index = -1;
+
+        HashJoinCursor(ArrayList<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Row get() {
+            if (index < 0 || index >= rows.size()) {
+                return null;
+            }
+            return rows.get(index);
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return get();
+        }
+
+        @Override
+        public boolean next() {
+            return rows != null && ++index < rows.size();
+        }
+
+        @Override
+        public boolean previous() {
+            return rows != null && --index >= 0;
+        }
+
+    }
+
+}
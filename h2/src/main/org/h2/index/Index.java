@@ -7,6 +7,7 @@
 
 import org.h2.command.dml.AllColumnsForPlan;
 import org.h2.engine.Session;
+import org.h2.expression.Expression;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
 import org.h2.result.SortOrder;
@@ -230,6 +231,23 @@ public interface Index extends SchemaObject {
      */
     Column[] getColumns();
 
+    /**
+     * Get the columns that are not indexed, but whose values are stored in the
+     * index entries, so that queries that only need these columns and the
+     * indexed columns don't need to read the rows.
+     *
+     * @return the included columns, an empty array if there are none
+     */
+    Column[] getIncludedColumns();
+
+    /**
+     * Get the condition of a partial index. Only rows where the condition is
+     * true are stored in a partial index.
+     *
+     * @return the condition, or null if all rows are stored in the index
+     */
+    Expression getCondition();
+
     /**
      * Get the index type.
      *
@@ -0,0 +1,529 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+import org.h2.command.dml.AllColumnsForPlan;
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVSecondaryIndex;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.IndexHints;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+
+/**
+ * An index that uses several indexes of a table together. The keys of the
+ * rows that each index finds for its conditions are collected into sorted
+ * arrays, which are intersected for the conditions of an AND condition, or
+ * merged for the operands of an OR condition. The rows are then read in the
+ * order of their keys.
+ */
+public class IndexMergeIndex extends BaseIndex {
+
+    /**
+     * An index with the conditions it is used for.
+     */
+    private static final class Branch {
+
+        /**
+         * The index.
+         */
+        final Index index;
+
+        /**
+         * The index conditions.
+         */
+        final ArrayList<IndexCondition> conditions;
+
+        /**
+         * The cost of reading the rows with the index.
+         */
+        final double cost;
+
+        /**
+         * The estimated fraction of the rows of the table that are found.
+         */
+        final double fraction;
+
+        Branch(Index index, ArrayList<IndexCondition> conditions, double cost, double fraction) {
+            this.index = index;
+            this.conditions = conditions;
+            this.cost = cost;
+            this.fraction = fraction;
+        }
+
+    }
+
+    /**
+     * The fixed cost of a lookup in an index, independent of the number of
+     * rows that are found.
+     */
+    private static final int LOOKUP_COST = 200;
+
+    private final Branch[] branches;
+
+    private final boolean union;
+
+    private final double cost;
+
+    private IndexMergeIndex(Table table, Branch[] branches, boolean union, double cost) {
+        super(table, 0, branches[0].index.getName(), getIndexColumns(branches),
+                IndexType.createNonUnique(false));
+        this.branches = branches;
+        this.union = union;
+        this.cost = cost;
+    }
+
+    private static IndexColumn[] getIndexColumns(Branch[] branches) {
+        ArrayList<IndexColumn> list = new ArrayList<>();
+        ArrayList<Column> columns = new ArrayList<>();
+        for (Branch branch : branches) {
+            for (IndexColumn c : branch.index.getIndexColumns()) {
+                if (!columns.contains(c.column)) {
+                    columns.add(c.column);
+                    list.add(c);
+                }
+            }
+        }
+        return list.toArray(new IndexColumn[0]);
+    }
+
+    /**
+     * Create an index that intersects the keys found by several indexes for
+     * the index conditions of a table filter, if this is cheaper than using
+     * only one of them.
+     *
+     * @param session the session
+     * @param tableFilter the table filter
+     * @param filters all joined table filters
+     * @param filter the current table filter index
+     * @param masks the index condition masks, one for each column of the table
+     * @param sortOrder the sort order, or null
+     * @return the index, or null if it can't be used
+     */
+    public static IndexMergeIndex createIntersection(Session session, TableFilter tableFilter,
+            TableFilter[] filters, int filter, int[] masks, SortOrder sortOrder) {
+        Table table = tableFilter.getTable();
+        ArrayList<IndexCondition> conditions = getEvaluatable(tableFilter.getIndexConditions());
+        // the cheapest index for each first column
+        ArrayList<Branch> list = new ArrayList<>();
+        for (Index index : table.getIndexes()) {
+            if (!isUsable(index, tableFilter) || masks[index.getColumns()[0].getColumnId()] == 0) {
+                continue;
+            }
+            Branch branch = createBranch(session, filters, filter, index, conditions, masks);
+            boolean add = true;
+            for (int i = 0; i < list.size(); i++) {
+                Branch b = list.get(i);
+                if (b.index.getColumns()[0] == index.getColumns()[0]) {
+                    if (branch.cost < b.cost) {
+                        list.set(i, branch);
+                    }
+                    add = false;
+                    break;
+                }
+            }
+            if (add) {
+                list.add(branch);
+            }
+        }
+        if (list.size() < 2) {
+            return null;
+        }
+        Collections.sort(list, new Comparator<Branch>() {
+            @Override
+            public int compare(Branch o1, Branch o2) {
+                return Double.compare(o1.fraction, o2.fraction);
+            }
+        });
+        Index scan = table.getScanIndex(session);
+        double scanCost = scan.getCost(session, null, filters, filter, null, null);
+        Branch first = list.get(0);
+        ArrayList<Branch> used = new ArrayList<>();
+        used.add(first);
+        // reading only the keys from an index is much cheaper than reading
+        // and checking the rows
+        double keyCost = LOOKUP_COST + first.cost / 10, fraction = first.fraction, cost = first.cost;
+        for (int i = 1; i < list.size(); i++) {
+            Branch branch = list.get(i);
+            double k = keyCost + LOOKUP_COST + branch.cost / 10, f = fraction * branch.fraction;
+            double c = k + scanCost * f;
+            if (c < cost) {
+                used.add(branch);
+                keyCost = k;
+                fraction = f;
+                cost = c;
+            }
+        }
+        if (used.size() < 2) {
+            return null;
+        }
+        cost += getSortCost(session, scan, filters, filter, sortOrder);
+        return new IndexMergeIndex(table, used.toArray(new Branch[0]), false, cost);
+    }
+
+    /**
+     * Create an index that merges the keys found by an index for each operand
+     * of an OR condition. The index conditions of the table filter are used
+     * for each operand as well.
+     *
+     * @param session the session
+     * @param tableFilter the table filter
+     * @param filters all joined table filters
+     * @param filter the current table filter index
+     * @param disjuncts the index conditions of each operand
+     * @param sortOrder the sort order, or null
+     * @return the index, or null if it can't be used
+     */
+    public static IndexMergeIndex createUnion(Session session, TableFilter tableFilter,
+            TableFilter[] filters, int filter, ArrayList<ArrayList<IndexCondition>> disjuncts,
+            SortOrder sortOrder) {
+        Table table = tableFilter.getTable();
+        ArrayList<IndexCondition> common = getEvaluatable(tableFilter.getIndexConditions());
+        ArrayList<Branch> used = new ArrayList<>();
+        double cost = 0;
+        for (ArrayList<IndexCondition> disjunct : disjuncts) {
+            ArrayList<IndexCondition> conditions = new ArrayList<>(common);
+            conditions.addAll(getEvaluatable(disjunct));
+            int[] masks = new int[table.getColumns().length];
+            boolean alwaysFalse = false;
+            for (IndexCondition condition : conditions) {
+                if (condition.isAlwaysFalse()) {
+                    alwaysFalse = true;
+                    break;
+                }
+                int id = condition.getColumn().getColumnId();
+                if (id >= 0) {
+                    masks[id] |= condition.getMask(conditions);
+                }
+            }
+            if (alwaysFalse) {
+                // this operand doesn't find any rows
+                continue;
+            }
+            Branch best = null;
+            for (Index index : table.getIndexes()) {
+                if (isUsable(index, tableFilter) && masks[index.getColumns()[0].getColumnId()] != 0) {
+                    Branch branch = createBranch(session, filters, filter, index, conditions, masks);
+                    if (best == null || branch.cost < best.cost) {
+                        best = branch;
+                    }
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            used.add(best);
+            cost += best.cost;
+        }
+        if (used.isEmpty()) {
+            return null;
+        }
+        cost += getSortCost(session, table.getScanIndex(session), filters, filter, sortOrder);
+        return new IndexMergeIndex(table, used.toArray(new Branch[0]), true, cost);
+    }
+
+    /**
+     * Get the cost of sorting the rows, which are returned in the order of
+     * their keys, the same as for a table scan.
+     */
+    private static double getSortCost(Session session, Index scan, TableFilter[] filters, int filter,
+            SortOrder sortOrder) {
+        if (sortOrder == null) {
+            return 0;
+        }
+        return scan.getCost(session, null, filters, filter, sortOrder, null)
+                - scan.getCost(session, null, filters, filter, null, null);
+    }
+
+    private static boolean isUsable(Index index, TableFilter tableFilter) {
+        if (!(index instanceof MVSecondaryIndex) || index.getCondition() != null) {
+            return false;
+        }
+        IndexHints hints = tableFilter.getIndexHints();
+        return hints == null || hints.allowIndex(index);
+    }
+
+    private static Branch createBranch(Session session, TableFilter[] filters, int filter, Index index,
+            ArrayList<IndexCondition> conditions, int[] masks) {
+        double cost = index.getCost(session, masks, filters, filter, null, null);
+        double all = index.getCost(session, null, filters, filter, null, null);
+        return new Branch(index, conditions, cost, Math.min(cost / all, 1));
+    }
+
+    private static ArrayList<IndexCondition> getEvaluatable(ArrayList<IndexCondition> conditions) {
+        ArrayList<IndexCondition> list = new ArrayList<>(conditions.size());
+        for (IndexCondition condition : conditions) {
+            if (condition.isEvaluatable()) {
+                list.add(condition);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the estimated cost of reading the rows.
+     *
+     * @return the cost
+     */
+    public double getCost() {
+        return cost;
+    }
+
+    @Override
+    public Cursor find(TableFilter filter, SearchRow first, SearchRow last) {
+        Session session = filter.getSession();
+        long[] keys = null;
+        int count = 0;
+        for (Branch branch : branches) {
+            long[] k = getKeys(filter, branch);
+            if (keys == null) {
+                keys = k;
+                count = k.length;
+            } else if (union) {
+                long[] merged = new long[count + k.length];
+                count = merge(keys, count, k, k.length, merged);
+                keys = merged;
+            } else {
+                count = intersect(keys, count, k, k.length);
+                if (count == 0) {
+                    break;
+                }
+            }
+        }
+        return new IndexMergeCursor(session, keys, count);
+    }
+
+    /**
+     * Read the sorted distinct keys of the rows that an index finds.
+     *
+     * @param filter the table filter
+     * @param branch the index with its conditions
+     * @return the keys
+     */
+    private static long[] getKeys(TableFilter filter, Branch branch) {
+        Session session = filter.getSession();
+        IndexCursor cursor = new IndexCursor(filter);
+        cursor.setIndex(branch.index);
+        cursor.find(session, branch.conditions);
+        long[] keys = new long[16];
+        int count = 0;
+        while (cursor.next()) {
+            if ((count & 4095) == 4095) {
+                session.checkCanceled();
+            }
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+            }
+            keys[count++] = cursor.getSearchRow().getKey();
+        }
+        Arrays.sort(keys, 0, count);
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (n == 0 || keys[n - 1] != keys[i]) {
+                keys[n++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, n);
+    }
+
+    private static int merge(long[] a, int aCount, long[] b, int bCount, long[] target) {
+        int i = 0, j = 0, n = 0;
+        while (i < aCount || j < bCount) {
+            if (j == bCount || i < aCount && a[i] < b[j]) {
+                target[n++] = a[i++];
+            } else if (i == aCount || b[j] < a[i]) {
+                target[n++] = b[j++];
+            } else {
+                target[n++] = a[i++];
+                j++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Keep only the keys of the first array that are also in the second one.
+     */
+    private static int intersect(long[] a, int aCount, long[] b, int bCount) {
+        int i = 0, j = 0, n = 0;
+        while (i < aCount && j < bCount) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (b[j] < a[i]) {
+                j++;
+            } else {
+                a[n++] = a[i++];
+                j++;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        throw DbException.getUnsupportedException("INDEX MERGE");
+    }
+
+    @Override
+    public boolean isFindUsingFullTableScan() {
+        // the index conditions are used by the indexes of each branch, and
+        // not by the cursor of the table filter
+        return true;
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks,
+            TableFilter[] filters, int filter, SortOrder sortOrder,
+            AllColumnsForPlan allColumnsSet) {
+        return cost;
+    }
+
+    @Override
+    public String getPlanSQL() {
+        StringBuilder builder = new StringBuilder(branches[0].index.getPlanSQL());
+        builder.append(union ? ".union(" : ".intersect(");
+        for (int i = 1; i < branches.length; i++) {
+            if (i > 1) {
+                builder.append(", ");
+            }
+            builder.append(branches[i].index.getPlanSQL());
+        }
+        return builder.append(')').toString();
+    }
+
+    @Override
+    public String getCreateSQL() {
+        return null;
+    }
+
+    @Override
+    public void close(Session session) {
+        // nothing to do
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        throw DbException.getUnsupportedException("INDEX MERGE");
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        throw DbException.getUnsupportedException("INDEX MERGE");
+    }
+
+    @Override
+    public void remove(Session session) {
+        throw DbException.getUnsupportedException("INDEX MERGE");
+    }
+
+    @Override
+    public void truncate(Session session) {
+        throw DbException.getUnsupportedException("INDEX MERGE");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public void checkRename() {
+        throw DbException.getUnsupportedException("INDEX MERGE");
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("INDEX MERGE");
+    }
+
+    @Override
+    public boolean canScan() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return table.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return table.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+    /**
+     * The cursor that reads the rows of the keys.
+     */
+    private final class IndexMergeCursor implements Cursor {
+
+        private final Session session;
+
+        private final long[] keys;
+
+        private final int count;
+
+        private int index = -1;
+
+        private Row row;
+
+        IndexMergeCursor(Session session, long[] keys, int count) {
+            this.session = session;
+            this.keys = keys;
+            this.count = count;
+        }
+
+        @Override
+        public Row get() {
+            return row;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return row;
+        }
+
+        @Override
+        public boolean next() {
+            while (++index < count) {
+                // the row may have been removed after its key was read
+                row = table.getRowIfExists(session, keys[index]);
+                if (row != null) {
+                    return true;
+                }
+            }
+            row = null;
+            index = count;
+            return false;
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.throwInternalError(toString());
+        }
+
+    }
+
+}
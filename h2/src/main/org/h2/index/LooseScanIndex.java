@@ -0,0 +1,156 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import org.h2.command.dml.AllColumnsForPlan;
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVSecondaryIndex;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
+import org.h2.table.TableFilter;
+
+/**
+ * An index that is used for a loose index scan of a grouped query. It wraps
+ * an index where the first column is the only grouped column, and only
+ * returns the first and the last rows of each value of this column, so it can
+ * only be used if the query only needs MIN and MAX of index columns. The next
+ * value is found by seeking to the first entry after the previous value.
+ */
+public class LooseScanIndex extends BaseIndex {
+
+    /**
+     * The estimated cost of finding the first and the last row of a value,
+     * relative to the cost of reading the next row.
+     */
+    private static final int GROUP_COST = 16;
+
+    private final MVSecondaryIndex base;
+
+    private LooseScanIndex(MVSecondaryIndex base) {
+        super(base.getTable(), 0, base.getName(), base.getIndexColumns(), base.getIndexType());
+        this.base = base;
+    }
+
+    /**
+     * Create a loose index scan over the given index if it is cheaper than
+     * reading all rows, according to the number of distinct values of the
+     * first column.
+     *
+     * @param index the index
+     * @return the loose scan index, or null if it can't be used
+     */
+    public static LooseScanIndex create(Index index) {
+        if (!(index instanceof MVSecondaryIndex)) {
+            return null;
+        }
+        ColumnStatistics statistics = index.getIndexColumns()[0].column.getStatistics();
+        if (statistics == null) {
+            return null;
+        }
+        long rowCount = index.getRowCountApproximation();
+        if ((statistics.getDistinctCount(rowCount) + 1) * GROUP_COST >= rowCount) {
+            return null;
+        }
+        return new LooseScanIndex((MVSecondaryIndex) index);
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        return base.findGroupBounds(session, first, last);
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks,
+            TableFilter[] filters, int filter, SortOrder sortOrder,
+            AllColumnsForPlan allColumnsSet) {
+        return base.getCost(session, masks, filters, filter, sortOrder, allColumnsSet);
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return base.getPlanSQL() + ".looseScan";
+    }
+
+    @Override
+    public int getColumnIndex(Column col) {
+        return base.getColumnIndex(col);
+    }
+
+    @Override
+    public String getCreateSQL() {
+        return null;
+    }
+
+    @Override
+    public void close(Session session) {
+        // nothing to do
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        throw DbException.getUnsupportedException("LOOSE SCAN");
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        throw DbException.getUnsupportedException("LOOSE SCAN");
+    }
+
+    @Override
+    public void remove(Session session) {
+        throw DbException.getUnsupportedException("LOOSE SCAN");
+    }
+
+    @Override
+    public void truncate(Session session) {
+        throw DbException.getUnsupportedException("LOOSE SCAN");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public void checkRename() {
+        throw DbException.getUnsupportedException("LOOSE SCAN");
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("LOOSE SCAN");
+    }
+
+    @Override
+    public boolean canScan() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return base.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return base.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+
+import org.h2.command.dml.AllColumnsForPlan;
+import org.h2.engine.Session;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVPrimaryIndex;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.TableFilter;
+import org.h2.util.Utils;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+
+/**
+ * An index that is used for merge joins. It wraps an ordered index of the
+ * inner table of a join, where the first index column is compared with a
+ * column of the outer table, and the outer table is read in the order of that
+ * column. Instead of one index lookup for each outer row, one cursor of the
+ * wrapped index is moved forward, and the rows with the current key are kept
+ * for outer rows with the same value. If the outer values are not in order,
+ * the wrapped index is used for a regular lookup.
+ */
+public class MergeJoinIndex extends BaseIndex {
+
+    /**
+     * The maximum number of rows to skip before the cursor is positioned with
+     * a new lookup instead.
+     */
+    private static final int MAX_SKIP = 32;
+
+    private final Index base;
+
+    private final Column column;
+
+    private Cursor cursor;
+
+    /**
+     * The row the cursor is positioned on that was not used yet, or null.
+     */
+    private Row pending;
+
+    private Value runKey;
+
+    private ArrayList<Row> run;
+
+    public MergeJoinIndex(Index base, Column column) {
+        super(base.getTable(), 0, base.getName(), base.getIndexColumns(), base.getIndexType());
+        this.base = base;
+        this.column = column;
+    }
+
+    /**
+     * Get the column that determines the order of the rows returned by the
+     * index when all rows are read.
+     *
+     * @param index the index
+     * @return the column, or null if the order is not known
+     */
+    public static Column getOrderColumn(Index index) {
+        if (index instanceof MVPrimaryIndex) {
+            int mainIndexColumn = ((MVPrimaryIndex) index).getMainIndexColumn();
+            return mainIndexColumn >= 0 ? index.getTable().getColumn(mainIndexColumn) : null;
+        }
+        IndexType type = index.getIndexType();
+        if (type.isScan() || type.isHash() || type.isSpatial() || index instanceof HashJoinIndex
+                || index instanceof MergeJoinIndex || index.getTable().isView()) {
+            return null;
+        }
+        IndexColumn[] columns = index.getIndexColumns();
+        if (columns == null || columns.length == 0 || (columns[0].sortType & SortOrder.DESCENDING) != 0) {
+            return null;
+        }
+        return columns[0].column;
+    }
+
+    /**
+     * Forget the cursor and the kept rows, they are read again on the next
+     * lookup.
+     */
+    public void clear() {
+        cursor = null;
+        pending = null;
+        runKey = null;
+        run = null;
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        int id = column.getColumnId();
+        Value v = first == null ? null : first.getValue(id);
+        Value v2 = last == null ? null : last.getValue(id);
+        if (v == null || v2 == null || v == ValueNull.INSTANCE || first != last && database.compare(v, v2) != 0) {
+            return base.find(session, first, last);
+        }
+        Value key = v.convertTo(column.getType(), database.getMode(), null);
+        if (runKey != null) {
+            int comp = database.compare(key, runKey);
+            if (comp == 0) {
+                return new MergeJoinCursor(run);
+            } else if (comp < 0) {
+                return base.find(session, first, last);
+            }
+        }
+        runKey = key;
+        run = Utils.newSmallArrayList();
+        int skipped = 0;
+        while (true) {
+            if (pending == null) {
+                if (cursor == null || skipped > MAX_SKIP) {
+                    SearchRow start = table.getTemplateRow();
+                    start.setValue(id, key);
+                    cursor = base.find(session, start, null);
+                    skipped = 0;
+                }
+                if (!cursor.next()) {
+                    break;
+                }
+                pending = cursor.get();
+            }
+            int comp = database.compare(pending.getValue(id), key);
+            if (comp > 0) {
+                break;
+            }
+            if (comp == 0) {
+                run.add(pending);
+            } else {
+                skipped++;
+            }
+            pending = null;
+        }
+        return new MergeJoinCursor(run);
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks,
+            TableFilter[] filters, int filter, SortOrder sortOrder,
+            AllColumnsForPlan allColumnsSet) {
+        double lookupCost = base.getCost(session, masks, filters, filter, sortOrder, allColumnsSet);
+        // the cursor only moves forward, so the rows are only merged while
+        // the outer table is read for the first time, and looked up when
+        // it is read again for the next rows of the tables joined before it
+        double passes = 1;
+        for (int i = 0; i < filter - 1; i++) {
+            passes *= Math.max(1, filters[i].getTable().getRowCountApproximation());
+        }
+        double outerRows = Math.max(1, filters[filter - 1].getTable().getRowCountApproximation());
+        double innerRows = table.getRowCountApproximation();
+        // the inner rows with keys that are not in the outer table are
+        // skipped, assuming the outer keys are a subset of the inner keys
+        double innerKeys = Math.max(1, innerRows * column.getSelectivity() / 100);
+        double skippedRows = innerRows * Math.max(0, 1 - outerRows / innerKeys);
+        // one pass over the rows of the inner table, and a comparison for
+        // each outer row; a new lookup is needed after more than MAX_SKIP
+        // skipped rows
+        double passCost = base.getCost(session, null, filters, filter, null, allColumnsSet);
+        double restarts = Math.min(outerRows, skippedRows / MAX_SKIP);
+        double mergeCost = passCost + outerRows + restarts * lookupCost;
+        return (mergeCost + (passes - 1) * outerRows * lookupCost) / (passes * outerRows);
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return base.getPlanSQL() + ".mergeJoin";
+    }
+
+    @Override
+    public int getColumnIndex(Column col) {
+        return base.getColumnIndex(col);
+    }
+
+    @Override
+    public String getCreateSQL() {
+        return null;
+    }
+
+    @Override
+    public void close(Session session) {
+        clear();
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        throw DbException.getUnsupportedException("MERGE JOIN");
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        throw DbException.getUnsupportedException("MERGE JOIN");
+    }
+
+    @Override
+    public void remove(Session session) {
+        throw DbException.getUnsupportedException("MERGE JOIN");
+    }
+
+    @Override
+    public void truncate(Session session) {
+        throw DbException.getUnsupportedException("MERGE JOIN");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public void checkRename() {
+        throw DbException.getUnsupportedException("MERGE JOIN");
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("MERGE JOIN");
+    }
+
+    @Override
+    public boolean canScan() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return base.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return base.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+    /**
+     * The cursor over the rows with the same key.
+     */
+    private static final class MergeJoinCursor implements Cursor {
+
+        private final ArrayList<Row> rows;
+
+        private int index = -1;
+
+        MergeJoinCursor(ArrayList<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Row get() {
+            if (index < 0 || index >= rows.size()) {
+                return null;
+            }
+            return rows.get(index);
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return get();
+        }
+
+        @Override
+        public boolean next() {
+            return ++index < rows.size();
+        }
+
+        @Override
+        public boolean previous() {
+            return --index >= 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionVisitor;
+import org.h2.expression.condition.Comparison;
+import org.h2.expression.condition.ConditionAndOr;
+import org.h2.expression.condition.ConditionIn;
+import org.h2.expression.condition.ConditionInConstantSet;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.table.Column;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+
+/**
+ * The condition of a partial index. Only rows where the condition is true are
+ * stored in the index, so the index may only be used by queries whose
+ * conditions imply the condition of the index.
+ */
+public final class PartialIndexCondition {
+
+    private final Database database;
+
+    private final Table table;
+
+    private final TableFilter filter;
+
+    private final Expression condition;
+
+    /**
+     * The conjuncts of the condition.
+     */
+    private final Expression[] conjuncts;
+
+    /**
+     * The column of each conjunct that is a comparison of a column with
+     * constants, or null for other conjuncts.
+     */
+    private final Column[] columns;
+
+    /**
+     * Create the condition of a partial index.
+     *
+     * @param session the session
+     * @param table the table
+     * @param condition the condition, with columns that are not mapped yet
+     */
+    public PartialIndexCondition(Session session, Table table, Expression condition) {
+        this.database = session.getDatabase();
+        this.table = table;
+        filter = new TableFilter(session, table, null, false, null, 0, null);
+        condition.mapColumns(filter, 0, Expression.MAP_INITIAL);
+        condition = condition.optimize(session);
+        if (!database.isStarting()) {
+            if (!condition.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)
+                    || Expression.containsQuery(condition)) {
+                throw DbException.getUnsupportedException("Index condition " + condition.getSQL(false));
+            }
+        }
+        this.condition = condition;
+        ArrayList<Expression> list = new ArrayList<>();
+        addConjuncts(list, condition);
+        conjuncts = list.toArray(new Expression[0]);
+        columns = new Column[conjuncts.length];
+        for (int i = 0; i < conjuncts.length; i++) {
+            columns[i] = getComparedColumn(conjuncts[i]);
+        }
+    }
+
+    private static void addConjuncts(ArrayList<Expression> list, Expression e) {
+        if (e instanceof ConditionAndOr && ((ConditionAndOr) e).getAndOrType() == ConditionAndOr.AND) {
+            addConjuncts(list, e.getSubexpression(0));
+            addConjuncts(list, e.getSubexpression(1));
+        } else {
+            list.add(e);
+        }
+    }
+
+    /**
+     * Get the column if the expression compares a column with constants, or
+     * checks whether the column is NULL.
+     *
+     * @param e the expression
+     * @return the column, or null
+     */
+    private static Column getComparedColumn(Expression e) {
+        if (!(e instanceof Comparison || e instanceof ConditionIn || e instanceof ConditionInConstantSet)) {
+            return null;
+        }
+        Expression left = e.getSubexpression(0);
+        if (!(left instanceof ExpressionColumn)) {
+            return null;
+        }
+        for (int i = 1, count = e.getSubexpressionCount(); i < count; i++) {
+            if (!e.getSubexpression(i).isConstant()) {
+                return null;
+            }
+        }
+        return ((ExpressionColumn) left).getColumn();
+    }
+
+    /**
+     * Get the condition.
+     *
+     * @return the condition
+     */
+    public Expression getExpression() {
+        return condition;
+    }
+
+    /**
+     * Check whether a row belongs to the index.
+     *
+     * @param session the session
+     * @param row the row
+     * @return true if the condition is true for the row
+     */
+    public boolean matches(Session session, Row row) {
+        return matches(session, condition, row);
+    }
+
+    private boolean matches(Session session, Expression e, Row row) {
+        // the filter is shared by all sessions
+        synchronized (filter) {
+            filter.set(row);
+            try {
+                return e.getBooleanValue(session);
+            } finally {
+                filter.set(null);
+            }
+        }
+    }
+
+    /**
+     * Check whether the index conditions of a table filter imply the condition
+     * of the index, so that all rows that the query reads from the table are
+     * stored in the index. Only conjuncts that compare a column with constants
+     * can be implied; they are implied by equality conditions with constants
+     * for which they are true, and by range conditions with constants of the
+     * same data type that are within the range of the conjunct.
+     *
+     * @param session the session
+     * @param tableFilter the table filter, or null
+     * @return true if the index may be used
+     */
+    public boolean isImpliedBy(Session session, TableFilter tableFilter) {
+        if (tableFilter == null || tableFilter.getTable() != table) {
+            return false;
+        }
+        ArrayList<IndexCondition> indexConditions = tableFilter.getIndexConditions();
+        for (int i = 0; i < conjuncts.length; i++) {
+            Column column = columns[i];
+            if (column == null || !isImplied(session, conjuncts[i], column, indexConditions)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isImplied(Session session, Expression conjunct, Column column,
+            ArrayList<IndexCondition> indexConditions) {
+        for (IndexCondition indexCondition : indexConditions) {
+            if (indexCondition.getColumn() != column) {
+                continue;
+            }
+            switch (indexCondition.getCompareType()) {
+            case Comparison.EQUAL:
+            case Comparison.EQUAL_NULL_SAFE: {
+                Expression e = indexCondition.getExpression();
+                if (e.isConstant() && isTrue(session, conjunct, column, e.getValue(session))) {
+                    return true;
+                }
+                break;
+            }
+            case Comparison.IN_LIST: {
+                boolean implied = true;
+                for (Expression e : indexCondition.getExpressionList()) {
+                    if (!e.isConstant() || !isTrue(session, conjunct, column, e.getValue(session))) {
+                        implied = false;
+                        break;
+                    }
+                }
+                if (implied) {
+                    return true;
+                }
+                break;
+            }
+            case Comparison.BIGGER_EQUAL:
+            case Comparison.BIGGER:
+            case Comparison.SMALLER_EQUAL:
+            case Comparison.SMALLER: {
+                Expression e = indexCondition.getExpression();
+                if (e.isConstant() && isRangeImplied(session, conjunct, indexCondition.getCompareType(),
+                        e.getValue(session))) {
+                    return true;
+                }
+                break;
+            }
+            default:
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether the conjunct is true if the column has the given value.
+     */
+    private boolean isTrue(Session session, Expression conjunct, Column column, Value v) {
+        Row row = table.getTemplateRow();
+        try {
+            row.setValue(column.getColumnId(), column.convert(v));
+        } catch (DbException e) {
+            return false;
+        }
+        return matches(session, conjunct, row);
+    }
+
+    /**
+     * Check whether all values within a range satisfy the conjunct.
+     *
+     * @param session the session
+     * @param conjunct the conjunct
+     * @param rangeType the comparison type of the range
+     * @param bound the bound of the range
+     * @return true if the range implies the conjunct
+     */
+    private boolean isRangeImplied(Session session, Expression conjunct, int rangeType, Value bound) {
+        if (!(conjunct instanceof Comparison)) {
+            return false;
+        }
+        int type = ((Comparison) conjunct).getCompareType();
+        if (type == Comparison.IS_NOT_NULL) {
+            // a range doesn't contain NULL
+            return true;
+        }
+        if (conjunct.getSubexpressionCount() != 2) {
+            return false;
+        }
+        Value v = conjunct.getSubexpression(1).getValue(session);
+        if (bound == ValueNull.INSTANCE || v == ValueNull.INSTANCE || bound.getValueType() != v.getValueType()) {
+            return false;
+        }
+        int comp = database.compare(bound, v);
+        boolean lower = rangeType == Comparison.BIGGER || rangeType == Comparison.BIGGER_EQUAL;
+        // x > bound implies x >= v if bound >= v,
+        // x >= bound implies x > v only if bound > v
+        boolean strict = rangeType == Comparison.BIGGER || rangeType == Comparison.SMALLER;
+        switch (type) {
+        case Comparison.BIGGER:
+            return lower && (strict ? comp >= 0 : comp > 0);
+        case Comparison.BIGGER_EQUAL:
+            return lower && comp >= 0;
+        case Comparison.SMALLER:
+            return !lower && (strict ? comp <= 0 : comp < 0);
+        case Comparison.SMALLER_EQUAL:
+            return !lower && comp <= 0;
+        case Comparison.NOT_EQUAL:
+            return lower ? (strict ? comp >= 0 : comp > 0) : (strict ? comp <= 0 : comp < 0);
+        default:
+            return false;
+        }
+    }
+
+}
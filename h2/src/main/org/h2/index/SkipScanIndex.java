@@ -0,0 +1,286 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.index;
+
+import java.util.ArrayList;
+
+import org.h2.command.dml.AllColumnsForPlan;
+import org.h2.engine.Session;
+import org.h2.expression.condition.Comparison;
+import org.h2.message.DbException;
+import org.h2.mvstore.db.MVSecondaryIndex;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.ColumnStatistics;
+import org.h2.table.IndexColumn;
+import org.h2.table.TableFilter;
+import org.h2.value.Value;
+
+/**
+ * An index that is used for a skip scan. It wraps a multi-column index where
+ * the first column is not used by the index conditions, but the second column
+ * is. The distinct values of the first column are found one after the other
+ * by seeking to the first entry after the previous value, and for each value
+ * the range of the index conditions is read.
+ */
+public class SkipScanIndex extends BaseIndex {
+
+    private final Index base;
+
+    private final Column column;
+
+    private SkipScanIndex(Index base, Column column) {
+        super(base.getTable(), 0, base.getName(), base.getIndexColumns(), base.getIndexType());
+        this.base = base;
+        this.column = column;
+    }
+
+    /**
+     * Create a skip scan over the given index if the first column of the index
+     * is not used by the index conditions, but the second column is, and the
+     * number of distinct values of the first column is known.
+     *
+     * @param index the index
+     * @param masks the index condition masks, one for each column of the table
+     * @param indexConditions the index conditions of the table filter
+     * @return the skip scan index, or null if it can't be used
+     */
+    public static SkipScanIndex create(Index index, int[] masks, ArrayList<IndexCondition> indexConditions) {
+        if (!(index instanceof MVSecondaryIndex)) {
+            return null;
+        }
+        IndexColumn[] columns = index.getIndexColumns();
+        if (columns.length < 2) {
+            return null;
+        }
+        Column first = columns[0].column;
+        if (masks[first.getColumnId()] != 0 || first.getStatistics() == null) {
+            return null;
+        }
+        Column second = columns[1].column;
+        for (IndexCondition condition : indexConditions) {
+            if (condition.getColumn() == second && condition.isEvaluatable()) {
+                switch (condition.getCompareType()) {
+                case Comparison.EQUAL:
+                case Comparison.EQUAL_NULL_SAFE:
+                case Comparison.BIGGER_EQUAL:
+                case Comparison.BIGGER:
+                case Comparison.SMALLER_EQUAL:
+                case Comparison.SMALLER:
+                    return new SkipScanIndex(index, first);
+                default:
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        int id = column.getColumnId();
+        if (first != null && first.getValue(id) != null || last != null && last.getValue(id) != null) {
+            return base.find(session, first, last);
+        }
+        return new SkipScanCursor(session, first, last);
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks,
+            TableFilter[] filters, int filter, SortOrder sortOrder,
+            AllColumnsForPlan allColumnsSet) {
+        ColumnStatistics statistics = column.getStatistics();
+        if (statistics == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        int[] lookupMasks = masks.clone();
+        lookupMasks[column.getColumnId()] = IndexCondition.EQUALITY;
+        // one lookup for each distinct value, and for NULL
+        double cost = (statistics.getDistinctCount(base.getRowCountApproximation()) + 1)
+                * base.getCost(session, lookupMasks, filters, filter, null, allColumnsSet);
+        if (sortOrder != null) {
+            // the rows are returned in the order of the index
+            cost += base.getCost(session, masks, filters, filter, sortOrder, allColumnsSet)
+                    - base.getCost(session, masks, filters, filter, null, allColumnsSet);
+        }
+        return cost;
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return base.getPlanSQL() + ".skipScan";
+    }
+
+    @Override
+    public int getColumnIndex(Column col) {
+        return base.getColumnIndex(col);
+    }
+
+    @Override
+    public String getCreateSQL() {
+        return null;
+    }
+
+    @Override
+    public void close(Session session) {
+        // nothing to do
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        throw DbException.getUnsupportedException("SKIP SCAN");
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        throw DbException.getUnsupportedException("SKIP SCAN");
+    }
+
+    @Override
+    public void remove(Session session) {
+        throw DbException.getUnsupportedException("SKIP SCAN");
+    }
+
+    @Override
+    public void truncate(Session session) {
+        throw DbException.getUnsupportedException("SKIP SCAN");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public void checkRename() {
+        throw DbException.getUnsupportedException("SKIP SCAN");
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("SKIP SCAN");
+    }
+
+    @Override
+    public boolean canScan() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return base.getRowCount(session);
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return base.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+    /**
+     * The cursor that reads the range of each value of the first column.
+     */
+    private final class SkipScanCursor implements Cursor {
+
+        private final Session session;
+
+        private final SearchRow first, last;
+
+        /**
+         * The current value of the first column, or null before the first
+         * value was read.
+         */
+        private Value value;
+
+        private Cursor cursor;
+
+        private boolean done;
+
+        SkipScanCursor(Session session, SearchRow first, SearchRow last) {
+            this.session = session;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        public Row get() {
+            return cursor == null ? null : cursor.get();
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return cursor == null ? null : cursor.getSearchRow();
+        }
+
+        @Override
+        public boolean next() {
+            while (!done) {
+                if (cursor == null && !nextValue()) {
+                    done = true;
+                    break;
+                }
+                if (cursor.next()) {
+                    return true;
+                }
+                cursor = null;
+            }
+            return false;
+        }
+
+        /**
+         * Seek to the next value of the first column, and open the cursor for
+         * its range.
+         *
+         * @return false if there are no more values
+         */
+        private boolean nextValue() {
+            int id = column.getColumnId();
+            Cursor c;
+            if (value == null) {
+                c = base.find(session, null, null);
+            } else {
+                SearchRow higherThan = table.getTemplateRow();
+                higherThan.setValue(id, value);
+                c = base.findNext(session, higherThan, null);
+            }
+            if (!c.next()) {
+                return false;
+            }
+            value = c.getSearchRow().getValue(id);
+            cursor = base.find(session, getSearchRow(first), getSearchRow(last));
+            return true;
+        }
+
+        private SearchRow getSearchRow(SearchRow row) {
+            SearchRow r = table.getTemplateRow();
+            if (row != null) {
+                for (Column c : columns) {
+                    int id = c.getColumnId();
+                    r.setValue(id, row.getValue(id));
+                }
+            }
+            r.setValue(column.getColumnId(), value);
+            return r;
+        }
+
+        @Override
+        public boolean previous() {
+            throw DbException.throwInternalError(toString());
+        }
+
+    }
+
+}
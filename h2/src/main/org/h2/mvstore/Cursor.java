@@ -5,7 +5,11 @@
  */
 package org.h2.mvstore;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -15,6 +19,72 @@
  * @param <V> the value type
  */
 public class Cursor<K, V> implements Iterator<K> {
+
+    /**
+     * A visitor of the positions of a batch of keys.
+     */
+    public interface PositionVisitor {
+
+        /**
+         * Visit the position of a key.
+         *
+         * @param i the index of the key
+         * @param pos the position of the first entry that is equal or larger
+         *            than the key
+         */
+        void visit(int i, CursorPos pos);
+
+    }
+
+    /**
+     * A page of the tree that contains some of the keys of a batch of
+     * lookups.
+     */
+    private static final class PageKeys {
+
+        /**
+         * The page, or null if not read yet.
+         */
+        Page page;
+
+        /**
+         * The parent, or null for the root page.
+         */
+        final PageKeys parent;
+
+        /**
+         * The index of the page in the parent page.
+         */
+        final int index;
+
+        /**
+         * The index of the first key.
+         */
+        final int start;
+
+        /**
+         * The index after the last key.
+         */
+        final int end;
+
+        PageKeys(Page page, PageKeys parent, int index, int start, int end) {
+            this.page = page;
+            this.parent = parent;
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        long getPos() {
+            return parent.page.getChildPagePos(index);
+        }
+
+        CursorPos getParentPos() {
+            return parent == null ? null : new CursorPos(parent.page, index, parent.getParentPos());
+        }
+
+    }
+
     private final K to;
     private CursorPos cursorPos;
     private CursorPos keeper;
@@ -28,7 +98,18 @@ public Cursor(Page root, K from) {
     }
 
     public Cursor(Page root, K from, K to) {
-        this.cursorPos = traverseDown(root, from);
+        this(traverseDown(root, from), to);
+    }
+
+    /**
+     * Create a cursor that starts at the given position.
+     *
+     * @param cursorPos the position of the first key, see
+     *            {@link #find(Page, List, PositionVisitor)}
+     * @param to the last key to return, or null if there is no limit
+     */
+    public Cursor(CursorPos cursorPos, K to) {
+        this.cursorPos = cursorPos;
         this.to = to;
     }
 
@@ -138,6 +219,85 @@ public void skip(long n) {
         }
     }
 
+    /**
+     * Find the positions of several keys with one descent through the tree.
+     * Each page on the way to the keys is only searched once, and the pages of
+     * a level that are not in memory are read in the order of their position
+     * in the file, so that pages stored close to each other are read
+     * together. The positions in a leaf page are passed to the visitor as
+     * soon as the page was read, so that the leaf pages of a large batch of
+     * keys don't need to be kept in memory at the same time.
+     *
+     * @param root the root page
+     * @param keys the keys in ascending order, null means the first key
+     * @param visitor the visitor of the position of the first entry that is
+     *            equal or larger than each key
+     */
+    public static void find(Page root, List<?> keys, PositionVisitor visitor) {
+        ArrayList<PageKeys> pages = new ArrayList<>();
+        PageKeys top = new PageKeys(root, null, 0, 0, keys.size());
+        if (root.isLeaf()) {
+            visit(top, root, keys, visitor);
+            return;
+        }
+        pages.add(top);
+        while (!pages.isEmpty()) {
+            ArrayList<PageKeys> children = new ArrayList<>();
+            ArrayList<PageKeys> missing = new ArrayList<>();
+            for (PageKeys p : pages) {
+                for (int i = p.start; i < p.end;) {
+                    int index = getChildIndex(p.page, keys.get(i));
+                    int next = i + 1;
+                    while (next < p.end && getChildIndex(p.page, keys.get(next)) == index) {
+                        next++;
+                    }
+                    PageKeys child = new PageKeys(p.page.getChildPageIfLoaded(index), p, index, i, next);
+                    (child.page == null ? missing : children).add(child);
+                    i = next;
+                }
+            }
+            Collections.sort(missing, new Comparator<PageKeys>() {
+                @Override
+                public int compare(PageKeys o1, PageKeys o2) {
+                    return Long.compare(o1.getPos(), o2.getPos());
+                }
+            });
+            children.addAll(missing);
+            pages.clear();
+            for (PageKeys child : children) {
+                Page page = child.page != null ? child.page : child.parent.page.getChildPage(child.index);
+                if (page.isLeaf()) {
+                    visit(child, page, keys, visitor);
+                } else {
+                    child.page = page;
+                    pages.add(child);
+                }
+            }
+        }
+    }
+
+    private static void visit(PageKeys p, Page leaf, List<?> keys, PositionVisitor visitor) {
+        for (int i = p.start; i < p.end; i++) {
+            Object key = keys.get(i);
+            int index = 0;
+            if (key != null) {
+                index = leaf.binarySearch(key);
+                if (index < 0) {
+                    index = -index - 1;
+                }
+            }
+            visitor.visit(i, new CursorPos(leaf, index, p.getParentPos()));
+        }
+    }
+
+    private static int getChildIndex(Page page, Object key) {
+        if (key == null) {
+            return 0;
+        }
+        int index = page.binarySearch(key) + 1;
+        return index < 0 ? -index : index;
+    }
+
     @Override
     public void remove() {
         throw DataUtils.newUnsupportedOperationException(
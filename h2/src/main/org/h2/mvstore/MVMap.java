@@ -955,6 +955,22 @@ protected final void removePage(long pos, int memory) {
      * @return the map
      */
     public final MVMap<K, V> openVersion(long version) {
+        return openVersion(version, version);
+    }
+
+    /**
+     * Open an old version for the given map, as it was at the end of that
+     * version, no matter whether the version is still kept in memory.
+     *
+     * @param version the version
+     * @return the map
+     */
+    public final MVMap<K, V> openCompletedVersion(long version) {
+        // a chunk holds the data as it was at the end of the previous version
+        return openVersion(version, version + 1);
+    }
+
+    private MVMap<K, V> openVersion(long version, long storedVersion) {
         if (readOnly) {
             throw DataUtils.newUnsupportedOperationException(
                     "This map is read-only; need to call " +
@@ -971,7 +987,7 @@ public final MVMap<K, V> openVersion(long version) {
 
         if (rootReference == null) {
             // smaller than all in-memory versions
-            MVMap<K, V> map = openReadOnly(store.getRootPos(getId(), version), version);
+            MVMap<K, V> map = openReadOnly(store.getRootPos(getId(), storedVersion), version);
             return map;
         }
         MVMap<K, V> m = openReadOnly(rootReference.root, version);
@@ -282,6 +282,17 @@ public class MVStore implements AutoCloseable {
      */
     private volatile TxCounter currentTxCounter = new TxCounter(currentVersion);
 
+    /**
+     * Versions pinned by readers of old data, with the number of pins.
+     * Modifications are synchronized on this map.
+     */
+    private final HashMap<Long, Integer> pinnedVersions = new HashMap<>();
+
+    /**
+     * The oldest pinned version, or Long.MAX_VALUE if there is none.
+     */
+    private volatile long oldestPinnedVersion = Long.MAX_VALUE;
+
     /**
      * The estimated memory used by unsaved pages. This number is not accurate,
      * also because it may be changed concurrently, and because temporary pages
@@ -2369,6 +2380,10 @@ public long getVersionsToKeep() {
      * @return the version
      */
     public long getOldestVersionToKeep() {
+        return Math.min(getOldestUnpinnedVersionToKeep(), oldestPinnedVersion);
+    }
+
+    private long getOldestUnpinnedVersionToKeep() {
         long v = oldestVersionToKeep.get();
         if (fileStore == null) {
             v = Math.max(v - versionsToKeep + 1, INITIAL_VERSION);
@@ -2382,6 +2397,76 @@ public long getOldestVersionToKeep() {
         return v;
     }
 
+    /**
+     * Prevent the given old version from being discarded, so that it can be
+     * read using MVMap.openCompletedVersion(). Each call needs to be matched by a call
+     * to unpinVersion().
+     *
+     * @param version the version to pin
+     * @throws IllegalArgumentException if the version is no longer available
+     */
+    public void pinVersion(long version) {
+        synchronized (pinnedVersions) {
+            Integer count = pinnedVersions.get(version);
+            pinnedVersions.put(version, count == null ? 1 : count + 1);
+            if (version < oldestPinnedVersion) {
+                oldestPinnedVersion = version;
+            }
+        }
+        // in-memory versions may already be discarded, even if they were not
+        // yet removed from the maps; otherwise the data of a version is
+        // in the chunk of the next one
+        boolean known = version <= currentVersion && (fileStore == null ?
+                version >= getOldestUnpinnedVersionToKeep() :
+                version == currentVersion || isKnownVersion(version + 1));
+        if (!known) {
+            unpinVersion(version);
+            throw DataUtils.newIllegalArgumentException("Unknown version {0}", version);
+        }
+    }
+
+    /**
+     * Release a version pinned with pinVersion().
+     *
+     * @param version the pinned version
+     */
+    public void unpinVersion(long version) {
+        synchronized (pinnedVersions) {
+            Integer count = pinnedVersions.get(version);
+            if (count == null) {
+                return;
+            }
+            if (count > 1) {
+                pinnedVersions.put(version, count - 1);
+            } else {
+                pinnedVersions.remove(version);
+                long oldest = Long.MAX_VALUE;
+                for (long v : pinnedVersions.keySet()) {
+                    oldest = Math.min(oldest, v);
+                }
+                oldestPinnedVersion = oldest;
+            }
+        }
+    }
+
+    /**
+     * Get the newest version, that was stored at or before the given time.
+     * Only versions of chunks that are still in the file are known.
+     *
+     * @param time the time in milliseconds since 1970
+     * @return the version, or -1 if no such version is known
+     */
+    public long getVersionAtTime(long time) {
+        long version = 0;
+        for (Chunk c : chunks.values()) {
+            if (creationTime + c.time <= time && c.version > version) {
+                version = c.version;
+            }
+        }
+        // the chunk of a version is written when the previous one ends
+        return version - 1;
+    }
+
     private void setOldestVersionToKeep(long oldestVersionToKeep) {
         boolean success;
         do {
@@ -5,19 +5,24 @@
  */
 package org.h2.mvstore.db;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import org.h2.command.dml.AllColumnsForPlan;
 import org.h2.engine.Session;
 import org.h2.index.BaseIndex;
 import org.h2.index.Cursor;
+import org.h2.index.IndexLookupBatch;
 import org.h2.index.IndexType;
 import org.h2.message.DbException;
+import org.h2.mvstore.tx.TransactionMap;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
 import org.h2.result.SortOrder;
 import org.h2.table.Column;
 import org.h2.table.IndexColumn;
 import org.h2.table.TableFilter;
+import org.h2.value.Value;
 import org.h2.value.ValueLong;
 
 /**
@@ -83,6 +88,31 @@ public Cursor find(Session session, SearchRow first, SearchRow last) {
         return mainIndex.find(session, min, max);
     }
 
+    @Override
+    public IndexLookupBatch createLookupBatch(TableFilter[] filters, int filter) {
+        if (!MVIndexLookupBatch.hasIndexConditions(filters[filter])) {
+            return null;
+        }
+        return new MVIndexLookupBatch(filters[filter]) {
+
+            @Override
+            Value convertToKey(SearchRow row, boolean first) {
+                return mainIndex.getKey(row, first ? ValueLong.MIN : ValueLong.MAX, ValueLong.MIN);
+            }
+
+            @Override
+            TransactionMap<Value, Value> getMap(Session session) {
+                return mainIndex.getMap(session);
+            }
+
+            @Override
+            Cursor createCursor(Session session, Iterator<Map.Entry<Value, Value>> entries) {
+                return new MVPrimaryIndex.MVStoreCursor(session, entries);
+            }
+
+        };
+    }
+
     @Override
     public Cursor findFirstOrLast(Session session, boolean first) {
         return mainIndex.findFirstOrLast(session, first);
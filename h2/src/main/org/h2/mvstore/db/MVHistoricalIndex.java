@@ -0,0 +1,112 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import org.h2.command.dml.AllColumnsForPlan;
+import org.h2.engine.Session;
+import org.h2.index.BaseIndex;
+import org.h2.index.Cursor;
+import org.h2.index.IndexType;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.IndexColumn;
+import org.h2.table.TableFilter;
+
+/**
+ * The scan index of a table in an old version of the store.
+ */
+public class MVHistoricalIndex extends BaseIndex {
+
+    private final MVHistoricalTable historicalTable;
+
+    public MVHistoricalIndex(MVHistoricalTable table, IndexColumn[] columns) {
+        super(table, 0, table.getName() + "_HISTORY", columns,
+                IndexType.createScan(false));
+        this.historicalTable = table;
+    }
+
+    @Override
+    public void close(Session session) {
+        // nothing to do
+    }
+
+    @Override
+    public void add(Session session, Row row) {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public void remove(Session session, Row row) {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        long version = historicalTable.getVersion(session);
+        MVPrimaryIndex primaryIndex = (MVPrimaryIndex) historicalTable.getMVTable().getScanIndex(session);
+        return primaryIndex.findHistorical(session, version, first, last);
+    }
+
+    @Override
+    public double getCost(Session session, int[] masks,
+            TableFilter[] filters, int filter, SortOrder sortOrder,
+            AllColumnsForPlan allColumnsSet) {
+        return 10 * getCostRangeIndex(masks, historicalTable.getRowCountApproximation(),
+                filters, filter, sortOrder, true, allColumnsSet);
+    }
+
+    @Override
+    public String getCreateSQL() {
+        return null;
+    }
+
+    @Override
+    public void remove(Session session) {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public void truncate(Session session) {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public void checkRename() {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    @Override
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        return historicalTable.getRowCountApproximation();
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return historicalTable.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+}
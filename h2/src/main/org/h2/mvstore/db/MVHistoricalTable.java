@@ -0,0 +1,249 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.ArrayList;
+import org.h2.engine.Session;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionVisitor;
+import org.h2.index.Index;
+import org.h2.index.IndexType;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.table.TableType;
+import org.h2.value.Value;
+
+/**
+ * A read-only view of a table as it was in an old version of the store
+ * (SELECT ... FROM TEST AS OF VERSION 10). The version is calculated once
+ * for each execution of the statement, and pinned until the end of the
+ * statement.
+ */
+public class MVHistoricalTable extends Table {
+
+    private final MVTable table;
+    private final boolean timestamp;
+    private Expression expression;
+    private boolean optimized;
+    private final MVHistoricalIndex scanIndex;
+
+    /**
+     * The session and the statement the version was calculated for.
+     */
+    private Session versionSession;
+    private long versionStatementId;
+    private long version;
+
+    /**
+     * Create a new historical view of a table.
+     *
+     * @param table the table
+     * @param timestamp whether the expression is a timestamp, not a version
+     * @param expression the version or timestamp expression
+     */
+    public MVHistoricalTable(MVTable table, boolean timestamp, Expression expression) {
+        super(table.getSchema(), 0, table.getName(), false, true);
+        this.table = table;
+        this.timestamp = timestamp;
+        this.expression = expression;
+        Column[] sourceColumns = table.getColumns();
+        Column[] cols = new Column[sourceColumns.length];
+        for (int i = 0; i < cols.length; i++) {
+            cols[i] = sourceColumns[i].getClone();
+        }
+        setColumns(cols);
+        scanIndex = new MVHistoricalIndex(this, IndexColumn.wrap(cols));
+    }
+
+    /**
+     * Get the version to read. It is calculated when it is used for the first
+     * time in the current execution of the statement.
+     *
+     * @param session the session
+     * @return the version
+     */
+    long getVersion(Session session) {
+        long statementId = session.getStatementId();
+        if (versionSession != session || versionStatementId != statementId) {
+            version = calculateVersion(session);
+            versionSession = session;
+            versionStatementId = statementId;
+        }
+        return version;
+    }
+
+    /**
+     * Calculate the version to read, and pin it until the end of the current
+     * statement.
+     *
+     * @param session the session
+     * @return the version
+     */
+    private long calculateVersion(Session session) {
+        if (!optimized) {
+            expression = expression.optimize(session);
+            optimized = true;
+        }
+        Value v = expression.getValue(session);
+        long version;
+        if (timestamp) {
+            version = session.getDatabase().getStore().getMvStore().getVersionAtTime(v.getTimestamp().getTime());
+            if (version < 0) {
+                throw DbException.getInvalidValueException("timestamp", v.getTraceSQL());
+            }
+        } else {
+            version = v.getLong();
+        }
+        try {
+            session.getTransaction().pinVersion(version);
+        } catch (IllegalArgumentException e) {
+            throw DbException.getInvalidValueException("version", version);
+        }
+        return version;
+    }
+
+    /**
+     * Get the table.
+     *
+     * @return the table
+     */
+    MVTable getMVTable() {
+        return table;
+    }
+
+    @Override
+    public String getDropSQL() {
+        return null;
+    }
+
+    @Override
+    public String getCreateSQL() {
+        return null;
+    }
+
+    @Override
+    public StringBuilder getSQL(StringBuilder builder, boolean alwaysQuote) {
+        table.getSQL(builder, alwaysQuote).append(timestamp ? " AS OF TIMESTAMP " : " AS OF VERSION ");
+        return expression.getSQL(builder, alwaysQuote);
+    }
+
+    @Override
+    public boolean lock(Session session, boolean exclusive, boolean forceLockEvenInMvcc) {
+        // old versions are never modified
+        return false;
+    }
+
+    @Override
+    public void close(Session session) {
+        // nothing to do
+    }
+
+    @Override
+    public void unlock(Session s) {
+        // nothing to do
+    }
+
+    @Override
+    public boolean isLockedExclusively() {
+        return false;
+    }
+
+    @Override
+    public Index addIndex(Session session, String indexName,
+            int indexId, IndexColumn[] cols, IndexType indexType,
+            boolean create, String indexComment) {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public void removeRow(Session session, Row row) {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public void addRow(Session session, Row row) {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public void checkSupportAlter() {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public void checkRename() {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public boolean canGetRowCount() {
+        return false;
+    }
+
+    @Override
+    public boolean canDrop() {
+        return false;
+    }
+
+    @Override
+    public long getRowCount(Session session) {
+        throw DbException.throwInternalError(toString());
+    }
+
+    @Override
+    public TableType getTableType() {
+        return TableType.SYSTEM_TABLE;
+    }
+
+    @Override
+    public Index getScanIndex(Session session) {
+        return scanIndex;
+    }
+
+    @Override
+    public ArrayList<Index> getIndexes() {
+        return null;
+    }
+
+    @Override
+    public void truncate(Session session) {
+        throw DbException.getUnsupportedException("AS OF");
+    }
+
+    @Override
+    public long getMaxDataModificationId() {
+        return 0;
+    }
+
+    @Override
+    public Index getUniqueIndex() {
+        return null;
+    }
+
+    @Override
+    public long getRowCountApproximation() {
+        return table.getRowCountApproximation();
+    }
+
+    @Override
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+    @Override
+    public boolean isDeterministic() {
+        return expression.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR);
+    }
+
+    @Override
+    public boolean canReference() {
+        return false;
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.h2.engine.Session;
+import org.h2.index.Cursor;
+import org.h2.index.IndexLookupBatch;
+import org.h2.mvstore.tx.TransactionMap;
+import org.h2.result.SearchRow;
+import org.h2.table.TableFilter;
+import org.h2.util.DoneFuture;
+import org.h2.value.Value;
+
+/**
+ * A batch of lookups in an index of a MVStore table. The first keys of all
+ * ranges of the batch are searched in ascending order with a single descent of
+ * the tree, so that each page is read only once, and pages that are not in
+ * memory are read in the order of their position in the file. The entries of
+ * the ranges are read when the cursors are used.
+ */
+abstract class MVIndexLookupBatch implements IndexLookupBatch {
+
+    /**
+     * The maximum number of search rows of a batch.
+     */
+    private static final int MAX_BATCH_SIZE = 4096;
+
+    private final TableFilter filter;
+
+    private final ArrayList<Value> from = new ArrayList<>();
+
+    private final ArrayList<Value> to = new ArrayList<>();
+
+    private final ArrayList<Future<Cursor>> result = new ArrayList<>();
+
+    /**
+     * Create a new batch.
+     *
+     * @param filter the table filter that uses the index
+     */
+    MVIndexLookupBatch(TableFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Check whether the lookups of a table filter may be batched. Lookups
+     * without index conditions read all rows, so batching them would only
+     * keep all rows in memory.
+     *
+     * @param filter the table filter
+     * @return whether the table filter has index conditions
+     */
+    static boolean hasIndexConditions(TableFilter filter) {
+        return !filter.getIndexConditions().isEmpty();
+    }
+
+    /**
+     * Convert a search row to a key of the map.
+     *
+     * @param row the search row, or null
+     * @param first whether the row is the first row of the range
+     * @return the key, or null if there is no limit
+     */
+    abstract Value convertToKey(SearchRow row, boolean first);
+
+    /**
+     * Get the map of the index.
+     *
+     * @param session the session
+     * @return the map
+     */
+    abstract TransactionMap<Value, Value> getMap(Session session);
+
+    /**
+     * Create a cursor over the entries of a range.
+     *
+     * @param session the session
+     * @param entries the entries
+     * @return the cursor
+     */
+    abstract Cursor createCursor(Session session, Iterator<Map.Entry<Value, Value>> entries);
+
+    @Override
+    public boolean addSearchRows(SearchRow first, SearchRow last) {
+        from.add(convertToKey(first, true));
+        to.add(convertToKey(last, false));
+        return true;
+    }
+
+    @Override
+    public boolean isBatchFull() {
+        return from.size() >= MAX_BATCH_SIZE;
+    }
+
+    @Override
+    public List<Future<Cursor>> find() {
+        if (from.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Session session = filter.getSession();
+        List<Iterator<Map.Entry<Value, Value>>> entries = getMap(session).findEntries(
+                from.toArray(new Value[0]), to.toArray(new Value[0]));
+        result.clear();
+        for (Iterator<Map.Entry<Value, Value>> iterator : entries) {
+            result.add(new DoneFuture<>(createCursor(session, iterator)));
+        }
+        from.clear();
+        to.clear();
+        return result;
+    }
+
+    @Override
+    public String getPlanSQL() {
+        return "sorted";
+    }
+
+    @Override
+    public void reset(boolean beforeQuery) {
+        from.clear();
+        to.clear();
+        result.clear();
+    }
+
+}
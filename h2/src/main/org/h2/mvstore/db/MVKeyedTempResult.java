@@ -0,0 +1,220 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.db;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.h2.engine.Database;
+import org.h2.expression.Expression;
+import org.h2.message.DbException;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVMap.Builder;
+import org.h2.result.ResultExternal;
+import org.h2.value.Value;
+import org.h2.value.ValueLong;
+import org.h2.value.ValueRow;
+
+/**
+ * Temporary result with rows grouped by key columns. All rows with the same
+ * key can be looked up. It is used when rows grouped by a key, such as the
+ * build side of a hash join or the source rows of groups of a GROUP BY query,
+ * do not fit into memory.
+ */
+public class MVKeyedTempResult extends MVTempResult {
+
+    /**
+     * Map with keys (values of key columns followed by the identity of a row)
+     * and rows as values.
+     */
+    private final MVMap<ValueRow, ValueRow> map;
+
+    /**
+     * Indexes of key columns.
+     */
+    private final int[] keyIndexes;
+
+    private final Database database;
+
+    /**
+     * Counter for the identities of rows.
+     */
+    private long counter;
+
+    /**
+     * Cursor for the {@link #next()} method.
+     */
+    private Cursor<ValueRow, ValueRow> cursor;
+
+    /**
+     * Creates a shallow copy of the result.
+     *
+     * @param parent
+     *                   parent result
+     */
+    private MVKeyedTempResult(MVKeyedTempResult parent) {
+        super(parent);
+        this.map = parent.map;
+        this.keyIndexes = parent.keyIndexes;
+        this.database = parent.database;
+    }
+
+    /**
+     * Creates a new keyed temporary result.
+     *
+     * @param database
+     *            database
+     * @param expressions
+     *            column expressions
+     * @param keyIndexes
+     *            indexes of key columns
+     */
+    public MVKeyedTempResult(Database database, Expression[] expressions, int[] keyIndexes) {
+        super(database, expressions, expressions.length, expressions.length);
+        this.keyIndexes = keyIndexes;
+        this.database = database;
+        ValueDataType keyType = new ValueDataType(database, new int[keyIndexes.length + 1]);
+        ValueDataType valueType = new ValueDataType(database, new int[resultColumnCount]);
+        Builder<ValueRow, ValueRow> builder = new MVMap.Builder<ValueRow, ValueRow>().keyType(keyType)
+                .valueType(valueType).singleWriter();
+        map = store.openMap("tmp", builder);
+    }
+
+    @Override
+    public int addRow(Value[] values) {
+        assert parent == null;
+        int keyCount = keyIndexes.length;
+        Value[] key = new Value[keyCount + 1];
+        for (int i = 0; i < keyCount; i++) {
+            key[i] = values[keyIndexes[i]];
+        }
+        key[keyCount] = ValueLong.get(counter++);
+        map.put(ValueRow.get(key), ValueRow.get(values));
+        return ++rowCount;
+    }
+
+    /**
+     * Get all rows with the specified key.
+     *
+     * @param key
+     *            the values of key columns
+     * @return the list of rows, may be empty
+     */
+    public ArrayList<Value[]> find(Value[] key) {
+        ArrayList<Value[]> list = new ArrayList<>();
+        for (Iterator<Value[]> i = iterator(key); i.hasNext();) {
+            list.add(i.next());
+        }
+        return list;
+    }
+
+    /**
+     * Get an iterator over all rows with the specified key. The rows are read
+     * from the map while iterating, so that they do not need to fit into
+     * memory.
+     *
+     * @param key
+     *            the values of key columns
+     * @return the iterator
+     */
+    public Iterator<Value[]> iterator(final Value[] key) {
+        final int keyCount = keyIndexes.length;
+        Value[] from = new Value[keyCount + 1];
+        System.arraycopy(key, 0, from, 0, keyCount);
+        from[keyCount] = ValueLong.get(Long.MIN_VALUE);
+        final Cursor<ValueRow, ValueRow> c = map.cursor(ValueRow.get(from));
+        return new Iterator<Value[]>() {
+
+            private Value[] row;
+
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (row == null && !done) {
+                    if (!c.hasNext()) {
+                        done = true;
+                        return false;
+                    }
+                    Value[] k = c.next().getList();
+                    for (int i = 0; i < keyCount; i++) {
+                        if (database.compare(k[i], key[i]) != 0) {
+                            done = true;
+                            return false;
+                        }
+                    }
+                    row = c.getValue().getList();
+                    if (hasEnum) {
+                        fixEnum(row);
+                    }
+                }
+                return row != null;
+            }
+
+            @Override
+            public Value[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Value[] r = row;
+                row = null;
+                return r;
+            }
+
+            @Override
+            public void remove() {
+                throw DbException.getUnsupportedException("remove()");
+            }
+
+        };
+    }
+
+    @Override
+    public boolean contains(Value[] values) {
+        throw DbException.getUnsupportedException("contains()");
+    }
+
+    @Override
+    public synchronized ResultExternal createShallowCopy() {
+        if (parent != null) {
+            return parent.createShallowCopy();
+        }
+        if (closed) {
+            return null;
+        }
+        childCount++;
+        return new MVKeyedTempResult(this);
+    }
+
+    @Override
+    public Value[] next() {
+        if (cursor == null) {
+            cursor = map.cursor(null);
+        }
+        if (!cursor.hasNext()) {
+            return null;
+        }
+        cursor.next();
+        Value[] currentRow = cursor.getValue().getList();
+        if (hasEnum) {
+            fixEnum(currentRow);
+        }
+        return currentRow;
+    }
+
+    @Override
+    public int removeRow(Value[] values) {
+        throw DbException.getUnsupportedException("removeRow()");
+    }
+
+    @Override
+    public void reset() {
+        cursor = null;
+    }
+
+}
@@ -6,6 +6,7 @@
 package org.h2.mvstore.db;
 
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -17,8 +18,10 @@
 import org.h2.engine.Session;
 import org.h2.index.BaseIndex;
 import org.h2.index.Cursor;
+import org.h2.index.IndexLookupBatch;
 import org.h2.index.IndexType;
 import org.h2.message.DbException;
+import org.h2.mvstore.MVMap;
 import org.h2.mvstore.tx.Transaction;
 import org.h2.mvstore.tx.TransactionMap;
 import org.h2.result.Row;
@@ -31,6 +34,7 @@
 import org.h2.value.ValueArray;
 import org.h2.value.ValueLong;
 import org.h2.value.ValueNull;
+import org.h2.value.VersionedValue;
 
 /**
  * A table stored in a MVStore.
@@ -244,6 +248,31 @@ public Cursor find(Session session, SearchRow first, SearchRow last) {
         return new MVStoreCursor(session, map.entryIterator(min, max));
     }
 
+    @Override
+    public IndexLookupBatch createLookupBatch(TableFilter[] filters, int filter) {
+        if (!MVIndexLookupBatch.hasIndexConditions(filters[filter])) {
+            return null;
+        }
+        return new MVIndexLookupBatch(filters[filter]) {
+
+            @Override
+            Value convertToKey(SearchRow row, boolean first) {
+                return extractPKFromRow(row, first ? ValueLong.MIN : ValueLong.MAX);
+            }
+
+            @Override
+            TransactionMap<Value, Value> getMap(Session session) {
+                return MVPrimaryIndex.this.getMap(session);
+            }
+
+            @Override
+            Cursor createCursor(Session session, Iterator<Entry<Value, Value>> entries) {
+                return new MVStoreCursor(session, entries);
+            }
+
+        };
+    }
+
     private ValueLong extractPKFromRow(SearchRow row, ValueLong defaultValue) {
         ValueLong result;
         if (row == null) {
@@ -268,13 +297,25 @@ public MVTable getTable() {
 
     @Override
     public Row getRow(Session session, long key) {
-        TransactionMap<Value, Value> map = getMap(session);
-        Value v = map.get(ValueLong.get(key));
-        if (v == null) {
+        Row row = getRowIfExists(session, key);
+        if (row == null) {
             throw DbException.get(ErrorCode.ROW_NOT_FOUND_IN_PRIMARY_INDEX,
                     getSQL(false), String.valueOf(key));
         }
-        return getRow(session, key, (ValueArray) v);
+        return row;
+    }
+
+    /**
+     * Get the row with the given key, if it is visible to the session.
+     *
+     * @param session the session
+     * @param key the key
+     * @return the row, or null if there is no such row
+     */
+    Row getRowIfExists(Session session, long key) {
+        TransactionMap<Value, Value> map = getMap(session);
+        Value v = map.get(ValueLong.get(key));
+        return v == null ? null : getRow(session, key, (ValueArray) v);
     }
 
     private static Row getRow(Session session, long key, ValueArray array) {
@@ -418,6 +459,121 @@ Cursor find(Session session, ValueLong first, ValueLong last) {
         return new MVStoreCursor(session, map.entryIterator(first, last));
     }
 
+    /**
+     * Get cursors over disjoint ranges of rows that together contain all rows
+     * of the table. The ranges contain approximately the same number of rows,
+     * and all cursors read the same snapshot of the data, so they can be used
+     * by different threads to scan the table concurrently.
+     *
+     * @param session the session
+     * @param count the requested number of cursors
+     * @return the cursors, there may be fewer cursors than requested
+     */
+    public Cursor[] findParallel(Session session, int count) {
+        TransactionMap<Value, Value> map = getMap(session);
+        MVMap<Value, VersionedValue> m = dataMap.map;
+        long size = m.sizeAsLong();
+        ArrayList<Long> bounds = new ArrayList<>(count);
+        long last = Long.MIN_VALUE;
+        for (int i = 1; i < count; i++) {
+            Value k = m.getKey(size * i / count);
+            if (k != null && k.getLong() > last) {
+                last = k.getLong();
+                bounds.add(last);
+            }
+        }
+        int n = bounds.size() + 1;
+        Value[] from = new Value[n], to = new Value[n];
+        for (int i = 1; i < n; i++) {
+            long bound = bounds.get(i - 1);
+            from[i] = ValueLong.get(bound);
+            to[i - 1] = ValueLong.get(bound - 1);
+        }
+        List<Iterator<Entry<Value, Value>>> iterators = map.entryIterators(from, to);
+        Cursor[] cursors = new Cursor[n];
+        for (int i = 0; i < n; i++) {
+            cursors[i] = new MVStoreCursor(session, iterators.get(i));
+        }
+        return cursors;
+    }
+
+    /**
+     * Get the key from a search row of the historical index. The search row
+     * may contain values of other columns only, which are checked by the
+     * conditions of the query.
+     *
+     * @param row the row
+     * @param ifEmpty the value to use if the row doesn't restrict the key
+     * @return the key
+     */
+    private ValueLong getHistoricalKey(SearchRow row, ValueLong ifEmpty) {
+        if (row == null || mainIndexColumn == SearchRow.ROWID_INDEX) {
+            return ifEmpty;
+        }
+        Value v = row.getValue(mainIndexColumn);
+        if (v == null || v == ValueNull.INSTANCE) {
+            return ifEmpty;
+        }
+        return (ValueLong) v.convertTo(Value.LONG);
+    }
+
+    /**
+     * Search for a set of rows in an old version of the store. Only values,
+     * which were committed in that version, are visible.
+     *
+     * @param session the session
+     * @param version the pinned version of the store
+     * @param first the key of the first row
+     * @param last the key of the last row
+     * @return the cursor
+     */
+    Cursor findHistorical(Session session, long version, SearchRow first, SearchRow last) {
+        ValueLong min = getHistoricalKey(first, ValueLong.MIN);
+        final ValueLong max = getHistoricalKey(last, ValueLong.MAX);
+        MVMap<Value, VersionedValue> map;
+        try {
+            map = dataMap.map.openCompletedVersion(version);
+        } catch (IllegalArgumentException e) {
+            throw DbException.getInvalidValueException("version", version);
+        }
+        final org.h2.mvstore.Cursor<Value, VersionedValue> cursor = map.cursor(min);
+        return new MVStoreCursor(session, new Iterator<Entry<Value, Value>>() {
+
+            private Entry<Value, Value> current = fetchNext();
+
+            private Entry<Value, Value> fetchNext() {
+                while (cursor.hasNext()) {
+                    Value key = cursor.next();
+                    if (key.getLong() > max.getLong()) {
+                        break;
+                    }
+                    Value value = (Value) cursor.getValue().getCommittedValue();
+                    if (value != null) {
+                        return new AbstractMap.SimpleImmutableEntry<>(key, value);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return current != null;
+            }
+
+            @Override
+            public Entry<Value, Value> next() {
+                Entry<Value, Value> result = current;
+                current = fetchNext();
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw DbException.getUnsupportedException("remove");
+            }
+        });
+    }
+
     @Override
     public boolean isRowIdIndex() {
         return true;
@@ -5,9 +5,12 @@
  */
 package org.h2.mvstore.db;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import org.h2.api.ErrorCode;
@@ -17,12 +20,15 @@
 import org.h2.engine.Session;
 import org.h2.index.BaseIndex;
 import org.h2.index.Cursor;
+import org.h2.index.IndexLookupBatch;
 import org.h2.index.IndexType;
+import org.h2.index.PartialIndexCondition;
 import org.h2.message.DbException;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.tx.Transaction;
 import org.h2.mvstore.tx.TransactionMap;
+import org.h2.mvstore.type.DataType;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
 import org.h2.result.SortOrder;
@@ -49,10 +55,34 @@ public final class MVSecondaryIndex extends BaseIndex implements MVIndex {
 
     public MVSecondaryIndex(Database db, MVTable table, int id, String indexName,
                 IndexColumn[] columns, IndexType indexType) {
+        this(db, table, id, indexName, columns, new Column[0], null, indexType);
+    }
+
+    /**
+     * Create a secondary index that also stores the values of the included
+     * columns, or only contains the rows where the condition is true. The
+     * values of the included columns are stored in the value of the map
+     * entries, so that they don't change the order of the entries.
+     *
+     * @param db the database
+     * @param table the table
+     * @param id the object id
+     * @param indexName the index name
+     * @param columns the indexed columns
+     * @param includedColumns the included columns
+     * @param condition the condition of a partial index, or null
+     * @param indexType the index type
+     */
+    public MVSecondaryIndex(Database db, MVTable table, int id, String indexName,
+                IndexColumn[] columns, Column[] includedColumns, PartialIndexCondition condition,
+                IndexType indexType) {
         super(table, id, indexName, columns, indexType);
         this.mvTable = table;
+        this.includedColumns = includedColumns;
+        this.condition = condition;
         if (!database.isStarting()) {
             checkIndexColumnTypes(columns);
+            checkIndexColumnTypes(IndexColumn.wrap(includedColumns));
         }
         // always store the row key in the map key,
         // even for unique indexes, as some of the index columns could be null
@@ -80,25 +110,35 @@ public MVSecondaryIndex(Database db, MVTable table, int id, String indexName,
     @Override
     public void addRowsToBuffer(List<Row> rows, String bufferName) {
         MVMap<ValueArray, Value> map = openMap(bufferName);
+        Session session = database.getSystemSession();
         for (Row row : rows) {
+            if (condition != null && !condition.matches(session, row)) {
+                continue;
+            }
             ValueArray key = convertToKey(row, null);
-            map.append(key, ValueNull.INSTANCE);
+            map.append(key, getIncludedValues(row));
         }
     }
 
     private static final class Source {
-        private final Iterator<ValueArray> iterator;
+        private final Iterator<Map.Entry<ValueArray, Value>> iterator;
         ValueArray currentRowData;
+        Value currentValue;
 
-        public Source(Iterator<ValueArray> iterator) {
+        public Source(Iterator<Map.Entry<ValueArray, Value>> iterator) {
             this.iterator = iterator;
-            this.currentRowData = iterator.next();
+            next(iterator.next());
+        }
+
+        private void next(Map.Entry<ValueArray, Value> entry) {
+            currentRowData = entry.getKey();
+            currentValue = entry.getValue();
         }
 
         public boolean hasNext() {
             boolean result = iterator.hasNext();
             if(result) {
-                currentRowData = iterator.next();
+                next(iterator.next());
             }
             return result;
         }
@@ -130,7 +170,7 @@ public void addBufferedRows(List<String> bufferNames) {
         Queue<Source> queue = new PriorityQueue<>(buffersCount,
                 new Source.Comparator(database.getMode(), compareMode));
         for (String bufferName : bufferNames) {
-            Iterator<ValueArray> iter = openMap(bufferName).keyIterator(null);
+            Iterator<Map.Entry<ValueArray, Value>> iter = openMap(bufferName).entrySet().iterator();
             if (iter.hasNext()) {
                 queue.offer(new Source(iter));
             }
@@ -140,13 +180,13 @@ public void addBufferedRows(List<String> bufferNames) {
             while (!queue.isEmpty()) {
                 Source s = queue.poll();
                 ValueArray rowData = s.next();
-                SearchRow row = convertToSearchRow(rowData);
+                SearchRow row = convertToSearchRow(rowData, s.currentValue);
 
                 if (indexType.isUnique() && !mayHaveNullDuplicates(row)) {
                     checkUnique(dataMap, rowData, Long.MIN_VALUE);
                 }
 
-                dataMap.putCommitted(rowData, ValueNull.INSTANCE);
+                dataMap.putCommitted(rowData, s.currentValue);
 
                 if (s.hasNext()) {
                     queue.offer(s);
@@ -189,6 +229,9 @@ public void close(Session session) {
 
     @Override
     public void add(Session session, Row row) {
+        if (condition != null && !condition.matches(session, row)) {
+            return;
+        }
         TransactionMap<Value, Value> map = getMap(session);
         ValueArray array = convertToKey(row, null);
         boolean checkRequired = indexType.isUnique() && !mayHaveNullDuplicates(row);
@@ -197,7 +240,7 @@ public void add(Session session, Row row) {
         }
 
         try {
-            map.put(array, ValueNull.INSTANCE);
+            map.put(array, getIncludedValues(row));
         } catch (IllegalStateException e) {
             throw mvTable.convertException(e);
         }
@@ -226,6 +269,9 @@ private void checkUnique(TransactionMap<Value, Value> map, ValueArray row, long
 
     @Override
     public void remove(Session session, Row row) {
+        if (condition != null && !condition.matches(session, row)) {
+            return;
+        }
         ValueArray array = convertToKey(row, null);
         TransactionMap<Value, Value> map = getMap(session);
         try {
@@ -242,6 +288,20 @@ public void remove(Session session, Row row) {
 
     @Override
     public void update(Session session, Row oldRow, Row newRow) {
+        if (condition != null) {
+            boolean oldMatches = condition.matches(session, oldRow);
+            boolean newMatches = condition.matches(session, newRow);
+            if (oldMatches != newMatches) {
+                if (oldMatches) {
+                    remove(session, oldRow);
+                } else {
+                    add(session, newRow);
+                }
+                return;
+            } else if (!oldMatches) {
+                return;
+            }
+        }
         if (!rowsAreEqual(oldRow, newRow)) {
             super.update(session, oldRow, newRow);
         }
@@ -258,6 +318,14 @@ private boolean rowsAreEqual(SearchRow rowOne, SearchRow rowTwo) {
                 return false;
             }
         }
+        for (Column c : includedColumns) {
+            int index = c.getColumnId();
+            Value v1 = rowOne.getValue(index);
+            Value v2 = rowTwo.getValue(index);
+            if (v1 == null ? v2 != null : !v1.equals(v2)) {
+                return false;
+            }
+        }
         return rowOne.getKey() == rowTwo.getKey();
     }
 
@@ -270,7 +338,162 @@ private Cursor find(Session session, SearchRow first, boolean bigger, SearchRow
         ValueArray min = convertToKey(first, bigger ? ValueLong.MAX : ValueLong.MIN);
         ValueArray max = convertToKey(last, ValueLong.MAX);
         TransactionMap<Value,Value> map = getMap(session);
-        return new MVStoreCursor(session, map.keyIterator(min, max, false));
+        if (includedColumns.length > 0) {
+            return new MVStoreCursor(session, null, map.entryIterator(min, max));
+        }
+        return new MVStoreCursor(session, map.keyIterator(min, max, false), null);
+    }
+
+    @Override
+    public IndexLookupBatch createLookupBatch(TableFilter[] filters, int filter) {
+        if (!MVIndexLookupBatch.hasIndexConditions(filters[filter])) {
+            return null;
+        }
+        return new MVIndexLookupBatch(filters[filter]) {
+
+            @Override
+            Value convertToKey(SearchRow row, boolean first) {
+                return MVSecondaryIndex.this.convertToKey(row, first ? ValueLong.MIN : ValueLong.MAX);
+            }
+
+            @Override
+            TransactionMap<Value, Value> getMap(Session session) {
+                return MVSecondaryIndex.this.getMap(session);
+            }
+
+            @Override
+            Cursor createCursor(Session session, Iterator<Map.Entry<Value, Value>> entries) {
+                return new MVStoreCursor(session, null, entries);
+            }
+
+        };
+    }
+
+    /**
+     * Find the first and the last row of each distinct value of the first
+     * index column within a range, without reading the other rows. The next
+     * value is found with a search for the first key after all keys of the
+     * current value. If the second index column is NULL in the first or the
+     * last row, the first or the last row where it is not NULL is returned as
+     * well. The rows are returned in the order of the index.
+     *
+     * @param session the session
+     * @param first the first row of the range, or null
+     * @param last the last row of the range, or null
+     * @return the cursor
+     */
+    public Cursor findGroupBounds(Session session, SearchRow first, SearchRow last) {
+        final TransactionMap<Value, Value> map = getMap(session);
+        final DataType keyType = map.getKeyType();
+        ValueArray min = convertToKey(first, ValueLong.MIN);
+        final ValueArray max = convertToKey(last, ValueLong.MAX);
+        final Value start = min == null ? map.firstKey() : map.ceilingKey(min);
+        Iterator<Value> it = new Iterator<Value>() {
+
+            /**
+             * The first key of the next value.
+             */
+            private Value next = start;
+
+            private final ArrayList<Value> keys = new ArrayList<>(4);
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                if (index < keys.size()) {
+                    return true;
+                }
+                keys.clear();
+                index = 0;
+                if (next == null || max != null && keyType.compare(next, max) > 0) {
+                    next = null;
+                    return false;
+                }
+                ValueArray firstKey = (ValueArray) next;
+                Value v = firstKey.getList()[0];
+                ValueArray end = getGroupKey(v, null, ValueLong.MAX);
+                Value lastKey = map.lowerKey(end);
+                if (lastKey == null) {
+                    lastKey = firstKey;
+                }
+                keys.add(firstKey);
+                if (keyColumns > 2) {
+                    if (firstKey.getList()[1] == ValueNull.INSTANCE) {
+                        // NULL is sorted first
+                        Value k = map.higherKey(getGroupKey(v, ValueNull.INSTANCE, ValueLong.MAX));
+                        if (k != null && keyType.compare(k, lastKey) < 0) {
+                            keys.add(k);
+                        }
+                    }
+                    if (((ValueArray) lastKey).getList()[1] == ValueNull.INSTANCE) {
+                        // NULL is sorted last
+                        Value k = map.lowerKey(getGroupKey(v, ValueNull.INSTANCE, ValueLong.MIN));
+                        if (k != null && keyType.compare(k, firstKey) > 0) {
+                            keys.add(k);
+                        }
+                    }
+                }
+                if (keyType.compare(lastKey, firstKey) > 0) {
+                    keys.add(lastKey);
+                }
+                next = map.higherKey(end);
+                return true;
+            }
+
+            @Override
+            public Value next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return keys.get(index++);
+            }
+
+            @Override
+            public void remove() {
+                throw DbException.getUnsupportedException("remove()");
+            }
+
+        };
+        return new MVStoreCursor(session, it, null);
+    }
+
+    /**
+     * Get a key that is sorted after or before all keys with the given values
+     * of the first two index columns.
+     *
+     * @param first the value of the first column
+     * @param second the value of the second column, or null for all values
+     * @param key the row key, MIN or MAX
+     * @return the key
+     */
+    private ValueArray getGroupKey(Value first, Value second, ValueLong key) {
+        Value[] array = new Value[keyColumns];
+        array[0] = first;
+        if (keyColumns > 2) {
+            array[1] = second;
+        }
+        array[keyColumns - 1] = key;
+        return ValueArray.get(array);
+    }
+
+    /**
+     * Get the values of the included columns of a row, as stored in the value
+     * of the map entries.
+     *
+     * @param row the row
+     * @return the values, or NULL if there are no included columns
+     */
+    private Value getIncludedValues(SearchRow row) {
+        int length = includedColumns.length;
+        if (length == 0) {
+            return ValueNull.INSTANCE;
+        }
+        Value[] values = new Value[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = row.getValue(includedColumns[i].getColumnId());
+        }
+        return ValueArray.get(values);
     }
 
     private static ValueArray convertToKey(ValueArray r, ValueLong key) {
@@ -300,9 +523,11 @@ private ValueArray convertToKey(SearchRow r, ValueLong key) {
      * Convert array of values to a SearchRow.
      *
      * @param key the index key
+     * @param included the values of the included columns, or NULL if they are
+     *            not known
      * @return the row
      */
-    SearchRow convertToSearchRow(ValueArray key) {
+    SearchRow convertToSearchRow(ValueArray key, Value included) {
         Value[] array = key.getList();
         SearchRow searchRow = mvTable.getTemplateRow();
         searchRow.setKey((array[array.length - 1]).getLong());
@@ -313,6 +538,12 @@ SearchRow convertToSearchRow(ValueArray key) {
             Value v = array[i];
             searchRow.setValue(idx, v);
         }
+        if (included != ValueNull.INSTANCE) {
+            Value[] values = ((ValueArray) included).getList();
+            for (int i = 0; i < values.length; i++) {
+                searchRow.setValue(includedColumns[i].getColumnId(), values[i]);
+            }
+        }
         return searchRow;
     }
 
@@ -325,6 +556,10 @@ public MVTable getTable() {
     public double getCost(Session session, int[] masks,
             TableFilter[] filters, int filter, SortOrder sortOrder,
             AllColumnsForPlan allColumnsSet) {
+        if (condition != null && !condition.isImpliedBy(session, filters == null ? null : filters[filter])) {
+            // the index doesn't contain all rows the query may need
+            return Double.POSITIVE_INFINITY;
+        }
         try {
             return 10 * getCostRangeIndex(masks, dataMap.sizeAsLongMax(),
                     filters, filter, sortOrder, false, allColumnsSet);
@@ -360,7 +595,7 @@ public Cursor findFirstOrLast(Session session, boolean first) {
         while (true) {
             if (key == null) {
                 return new MVStoreCursor(session,
-                        Collections.<Value>emptyIterator());
+                        Collections.<Value>emptyIterator(), null);
             }
             if (((ValueArray) key).getList()[0] != ValueNull.INSTANCE) {
                 break;
@@ -368,7 +603,7 @@ public Cursor findFirstOrLast(Session session, boolean first) {
             key = first ? map.higherKey(key) : map.lowerKey(key);
         }
         MVStoreCursor cursor = new MVStoreCursor(session,
-                                Collections.singletonList(key).iterator());
+                                Collections.singletonList(key).iterator(), null);
         cursor.next();
         return cursor;
     }
@@ -439,12 +674,23 @@ final class MVStoreCursor implements Cursor {
 
         private final Session session;
         private final Iterator<Value> it;
+        private final Iterator<Map.Entry<Value, Value>> entries;
         private ValueArray current;
+        private Value included;
         private Row row;
 
-        MVStoreCursor(Session session, Iterator<Value> it) {
+        /**
+         * Create a cursor that iterates over the keys, or over the entries if
+         * the values of the included columns are needed.
+         *
+         * @param session the session
+         * @param it the key iterator, or null
+         * @param entries the entry iterator, or null
+         */
+        MVStoreCursor(Session session, Iterator<Value> it, Iterator<Map.Entry<Value, Value>> entries) {
             this.session = session;
             this.it = it;
+            this.entries = entries;
         }
 
         @Override
@@ -460,12 +706,23 @@ public Row get() {
 
         @Override
         public SearchRow getSearchRow() {
-            return current == null ? null : convertToSearchRow(current);
+            return current == null ? null : convertToSearchRow(current, included);
         }
 
         @Override
         public boolean next() {
-            current = it.hasNext() ? (ValueArray)it.next() : null;
+            if (entries != null) {
+                if (entries.hasNext()) {
+                    Map.Entry<Value, Value> entry = entries.next();
+                    current = (ValueArray) entry.getKey();
+                    included = entry.getValue();
+                } else {
+                    current = null;
+                }
+            } else {
+                current = it.hasNext() ? (ValueArray)it.next() : null;
+                included = ValueNull.INSTANCE;
+            }
             row = null;
             return current != null;
         }
@@ -18,9 +18,11 @@
 import org.h2.engine.DbObject;
 import org.h2.engine.Session;
 import org.h2.engine.SysProperties;
+import org.h2.expression.Expression;
 import org.h2.index.Cursor;
 import org.h2.index.Index;
 import org.h2.index.IndexType;
+import org.h2.index.PartialIndexCondition;
 import org.h2.message.DbException;
 import org.h2.message.Trace;
 import org.h2.mvstore.DataUtils;
@@ -102,6 +104,13 @@ public String getEventText() {
      * prevent starvation, since Java's synchronized locking is biased.
      */
     private final ArrayDeque<Session> waitingSessions = new ArrayDeque<>();
+
+    /**
+     * The number of sessions that are requesting an exclusive lock. While it
+     * is not zero, shared locks are acquired through the waiting queue;
+     * otherwise they are acquired without synchronization.
+     */
+    private final AtomicInteger exclusiveRequests = new AtomicInteger();
     private final Trace traceLock;
     private final AtomicInteger changesUntilAnalyze;
     private int nextAnalyze;
@@ -149,31 +158,71 @@ public boolean lock(Session session, boolean exclusive,
         if (lockExclusiveSession == session) {
             return true;
         }
-        if (!exclusive && lockSharedSessions.containsKey(session)) {
-            return true;
-        }
-        synchronized (getLockSyncObject()) {
-            if (!exclusive && lockSharedSessions.containsKey(session)) {
+        if (!exclusive) {
+            if (lockSharedSessions.containsKey(session)) {
                 return true;
             }
-            session.setWaitForLock(this, Thread.currentThread());
-            if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
-                WAITING_FOR_LOCK.set(getName());
+            if (tryLockShared(session)) {
+                return false;
             }
-            waitingSessions.addLast(session);
-            try {
-                doLock1(session, lockMode, exclusive);
-            } finally {
-                session.setWaitForLock(null, null);
+        } else {
+            exclusiveRequests.incrementAndGet();
+        }
+        try {
+            synchronized (getLockSyncObject()) {
+                if (!exclusive && lockSharedSessions.containsKey(session)) {
+                    return true;
+                }
+                session.setWaitForLock(this, Thread.currentThread());
                 if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
-                    WAITING_FOR_LOCK.remove();
+                    WAITING_FOR_LOCK.set(getName());
+                }
+                waitingSessions.addLast(session);
+                try {
+                    doLock1(session, lockMode, exclusive);
+                } finally {
+                    session.setWaitForLock(null, null);
+                    if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
+                        WAITING_FOR_LOCK.remove();
+                    }
+                    waitingSessions.remove(session);
                 }
-                waitingSessions.remove(session);
+            }
+        } finally {
+            if (exclusive) {
+                exclusiveRequests.decrementAndGet();
             }
         }
         return false;
     }
 
+    /**
+     * Try to acquire a shared lock without synchronization. This only succeeds
+     * if the table is not locked exclusively and no session is requesting an
+     * exclusive lock. The session is registered first and the exclusive state
+     * is checked afterwards, while a session requesting an exclusive lock does
+     * the opposite, so that at least one of them sees the other.
+     *
+     * @param session the session
+     * @return true if the shared lock was acquired
+     */
+    private boolean tryLockShared(Session session) {
+        if (lockExclusiveSession != null || exclusiveRequests.get() != 0) {
+            return false;
+        }
+        if (lockSharedSessions.putIfAbsent(session, session) != null) {
+            return false;
+        }
+        if (lockExclusiveSession != null || exclusiveRequests.get() != 0) {
+            lockSharedSessions.remove(session);
+            // the session requesting the exclusive lock may have seen us
+            notifyWaitingSessions();
+            return false;
+        }
+        addSharedLock(session);
+        return true;
+    }
+
     /**
      * The the object on which to synchronize and wait on. For the
      * multi-threaded mode, this is this object, but for non-multi-threaded, it
@@ -273,16 +322,7 @@ private boolean doLock2(Session session, int lockMode, boolean exclusive) {
                 }
             } else {
                 if (lockSharedSessions.putIfAbsent(session, session) == null) {
-                    traceLock(session, exclusive, TraceLockEvent.TRACE_LOCK_OK, NO_EXTRA_INFO);
-                    session.addLock(this);
-                    if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
-                        ArrayList<String> list = SHARED_LOCKS.get();
-                        if (list == null) {
-                            list = new ArrayList<>();
-                            SHARED_LOCKS.set(list);
-                        }
-                        list.add(getName());
-                    }
+                    addSharedLock(session);
                 }
                 return true;
             }
@@ -290,6 +330,19 @@ private boolean doLock2(Session session, int lockMode, boolean exclusive) {
         return false;
     }
 
+    private void addSharedLock(Session session) {
+        traceLock(session, false, TraceLockEvent.TRACE_LOCK_OK, NO_EXTRA_INFO);
+        session.addLock(this);
+        if (SysProperties.THREAD_DEADLOCK_DETECTOR) {
+            ArrayList<String> list = SHARED_LOCKS.get();
+            if (list == null) {
+                list = new ArrayList<>();
+                SHARED_LOCKS.set(list);
+            }
+            list.add(getName());
+        }
+    }
+
     private void traceLock(Session session, boolean exclusive, TraceLockEvent eventEnum, String extraInfo) {
         if (traceLock.isDebugEnabled()) {
             traceLock.debug("{0} {1} {2} {3} {4}", session.getId(),
@@ -319,11 +372,17 @@ public void unlock(Session s) {
                     }
                 }
             }
-            if (wasLocked && !waitingSessions.isEmpty()) {
-                Object lockSyncObject = getLockSyncObject();
-                synchronized (lockSyncObject) {
-                    lockSyncObject.notifyAll();
-                }
+            if (wasLocked) {
+                notifyWaitingSessions();
+            }
+        }
+    }
+
+    private void notifyWaitingSessions() {
+        if (!waitingSessions.isEmpty() || exclusiveRequests.get() != 0) {
+            Object lockSyncObject = getLockSyncObject();
+            synchronized (lockSyncObject) {
+                lockSyncObject.notifyAll();
             }
         }
     }
@@ -338,10 +397,22 @@ public Row getRow(Session session, long key) {
         return primaryIndex.getRow(session, key);
     }
 
+    @Override
+    public Row getRowIfExists(Session session, long key) {
+        return primaryIndex.getRowIfExists(session, key);
+    }
+
     @Override
     public Index addIndex(Session session, String indexName, int indexId,
             IndexColumn[] cols, IndexType indexType, boolean create,
             String indexComment) {
+        return addIndex(session, indexName, indexId, cols, new Column[0], null, indexType, create, indexComment);
+    }
+
+    @Override
+    public Index addIndex(Session session, String indexName, int indexId, IndexColumn[] cols,
+            Column[] includedColumns, Expression condition, IndexType indexType, boolean create,
+            String indexComment) {
         if (indexType.isPrimaryKey()) {
             for (IndexColumn c : cols) {
                 Column column = c.column;
@@ -366,7 +437,7 @@ public Index addIndex(Session session, String indexName, int indexId,
                 // we can not reuse primary index
                 mainIndexColumn = SearchRow.ROWID_INDEX;
             }
-        } else if (primaryIndex.getRowCountMax() != 0) {
+        } else if (primaryIndex.getRowCountMax() != 0 || includedColumns.length > 0 || condition != null) {
             mainIndexColumn = SearchRow.ROWID_INDEX;
         }
 
@@ -378,8 +449,10 @@ public Index addIndex(Session session, String indexName, int indexId,
             index = new MVSpatialIndex(session.getDatabase(), this, indexId,
                     indexName, cols, indexType);
         } else {
+            PartialIndexCondition partial = condition == null ? null
+                    : new PartialIndexCondition(session, this, condition);
             index = new MVSecondaryIndex(session.getDatabase(), this, indexId,
-                    indexName, cols, indexType);
+                    indexName, cols, includedColumns, partial, indexType);
         }
         if (index.needRebuild()) {
             rebuildIndex(session, index, indexName);
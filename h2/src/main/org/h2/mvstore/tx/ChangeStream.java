@@ -0,0 +1,234 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.mvstore.tx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.h2.mvstore.MVMap;
+
+/**
+ * A stream of changes made by committed transactions of a transaction store,
+ * in the order in which transactions were committed.
+ * <p>
+ * Events are kept in a bounded queue. If the queue is full, a committing
+ * transaction waits up to the configured timeout for a consumer to make room.
+ * If that does not happen, events are dropped and the stream is marked as
+ * lossy; no further events are queued, and the consumer should close it,
+ * resynchronize and open a new stream.
+ * <p>
+ * Optionally, changes are also written to a change log map in the same store,
+ * keyed by the event sequence number, with values
+ * [ commitSequence, mapId, key, oldValue, newValue ]. The consumer is
+ * responsible for removing processed entries from that map. The entries of a
+ * transaction are written after it was committed, so that a transaction that
+ * is rolled back after a crash never appears in the change log.
+ * <p>
+ * A consumer must not commit transactions of the same store while it is the
+ * only one draining a full queue, otherwise commits stall until the timeout.
+ */
+public final class ChangeStream {
+
+    /**
+     * A single committed change.
+     */
+    public static final class Event {
+
+        /**
+         * The sequence number of this event.
+         */
+        public final long sequence;
+
+        /**
+         * The sequence number of the commit this event belongs to.
+         * All events of a transaction share the same value.
+         */
+        public final long commitSequence;
+
+        /**
+         * The name of the map where the change occurred.
+         */
+        public final String mapName;
+
+        /**
+         * The key.
+         */
+        public final Object key;
+
+        /**
+         * The value before the change (null if the entry was added).
+         */
+        public final Object oldValue;
+
+        /**
+         * The value after the change (null if the entry was removed).
+         */
+        public final Object newValue;
+
+        Event(long sequence, long commitSequence, String mapName, Object key,
+                Object oldValue, Object newValue) {
+            this.sequence = sequence;
+            this.commitSequence = commitSequence;
+            this.mapName = mapName;
+            this.key = key;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        @Override
+        public String toString() {
+            return sequence + "/" + commitSequence + " " + mapName + " " + key + ": " + oldValue + " -> " + newValue;
+        }
+    }
+
+    private final TransactionStore transactionStore;
+
+    private final ArrayBlockingQueue<Event> queue;
+
+    private final long timeoutMillis;
+
+    /**
+     * The persistent change log, or null.
+     */
+    private final MVMap<Long, Object[]> changeLog;
+
+    /**
+     * The sequence number of the last event, guarded by this.
+     */
+    private long sequence;
+
+    /**
+     * The sequence number of the last commit, guarded by this.
+     */
+    private long commitSequence;
+
+    private volatile boolean lossy;
+
+    ChangeStream(TransactionStore transactionStore, int capacity, long timeoutMillis,
+            MVMap<Long, Object[]> changeLog) {
+        this.transactionStore = transactionStore;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.timeoutMillis = timeoutMillis;
+        this.changeLog = changeLog;
+        if (changeLog != null) {
+            Long lastKey = changeLog.lastKey();
+            if (lastKey != null) {
+                sequence = lastKey;
+                commitSequence = (Long) changeLog.get(lastKey)[0];
+            }
+        }
+    }
+
+    /**
+     * Retrieve and remove the next event, waiting if necessary.
+     *
+     * @param timeout how long to wait
+     * @param unit the unit of the timeout
+     * @return the event, or null if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    /**
+     * Remove up to the given number of available events, without waiting.
+     *
+     * @param target the collection to add the events to
+     * @param maxEvents the maximum number of events to remove
+     * @return the number of events removed
+     */
+    public int drainTo(Collection<? super Event> target, int maxEvents) {
+        return queue.drainTo(target, maxEvents);
+    }
+
+    /**
+     * Check whether events were dropped, because the queue was full for
+     * longer than the timeout, or the change log could not be written.
+     *
+     * @return true if some events were lost
+     */
+    public boolean isLossy() {
+        return lossy;
+    }
+
+    /**
+     * Get the persistent change log.
+     *
+     * @return the change log map, or null if it is not used
+     */
+    public MVMap<Long, Object[]> getChangeLog() {
+        return changeLog;
+    }
+
+    /**
+     * Stop publishing changes to this stream. Events already in the queue can
+     * still be consumed.
+     */
+    public void close() {
+        transactionStore.closeChangeStream(this);
+    }
+
+    /**
+     * Publish the changes of a transaction. This method is called while
+     * holding the lock on this stream, right after the transaction was
+     * logically committed, and does not throw exceptions. The change log is
+     * not written here, because the transaction is not committed yet if the
+     * store is stored at this point, see {@link #writeChangeLog(List)}.
+     *
+     * @param changes the changes as [ mapId, mapName, key, oldValue, newValue ]
+     * @return the entries of the change log as [ sequence, commitSequence,
+     *         mapId, key, oldValue, newValue ], or null if there is no change
+     *         log
+     */
+    List<Object[]> publish(List<Object[]> changes) {
+        long commitSeq = ++commitSequence;
+        List<Object[]> logEntries = changeLog == null ? null : new ArrayList<Object[]>(changes.size());
+        for (Object[] change : changes) {
+            long seq = ++sequence;
+            if (logEntries != null) {
+                logEntries.add(new Object[] { seq, commitSeq, change[0], change[2], change[3], change[4] });
+            }
+            if (!lossy) {
+                Event event = new Event(seq, commitSeq, (String) change[1], change[2], change[3], change[4]);
+                try {
+                    if (!queue.offer(event, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                        lossy = true;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    lossy = true;
+                }
+            }
+        }
+        return logEntries;
+    }
+
+    /**
+     * Write the entries of a transaction to the change log. This method is
+     * called while holding the lock on this stream, after the undo log of the
+     * transaction was renamed to the committed name, so that a transaction
+     * that is rolled back after a crash never has entries in the change log.
+     * It does not throw exceptions.
+     *
+     * @param logEntries the entries returned by {@link #publish(List)}, or
+     *            null
+     */
+    void writeChangeLog(List<Object[]> logEntries) {
+        if (logEntries != null) {
+            try {
+                for (Object[] entry : logEntries) {
+                    changeLog.put((Long) entry[0], Arrays.copyOfRange(entry, 1, entry.length));
+                }
+            } catch (RuntimeException e) {
+                lossy = true;
+            }
+        }
+    }
+}
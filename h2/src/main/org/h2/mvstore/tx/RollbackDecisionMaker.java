@@ -15,15 +15,17 @@
  */
 final class RollbackDecisionMaker extends MVMap.DecisionMaker<Object[]> {
     private final TransactionStore store;
+    private final Transaction transaction;
     private final long transactionId;
     private final long toLogId;
     private final TransactionStore.RollbackListener listener;
     private MVMap.Decision decision;
 
-    RollbackDecisionMaker(TransactionStore store, long transactionId, long toLogId,
+    RollbackDecisionMaker(TransactionStore store, Transaction transaction, long toLogId,
                             TransactionStore.RollbackListener listener) {
         this.store = store;
-        this.transactionId = transactionId;
+        this.transaction = transaction;
+        this.transactionId = transaction.transactionId;
         this.toLogId = toLogId;
         this.listener = listener;
     }
@@ -48,6 +50,8 @@ public MVMap.Decision decide(Object[] existingValue, Object[] providedValue) {
                     Object key = existingValue[1];
                     VersionedValue previousValue = map.operate(key, valueToRestore, MVMap.DecisionMaker.DEFAULT);
                     listener.onRollback(map, key, previousValue, valueToRestore);
+                    transaction.adjustSizeDelta(mapId, (isPresent(valueToRestore) ? 1 : 0)
+                            - (isPresent(previousValue) ? 1 : 0));
                 }
             }
             decision = MVMap.Decision.REMOVE;
@@ -55,6 +59,10 @@ public MVMap.Decision decide(Object[] existingValue, Object[] providedValue) {
         return decision;
     }
 
+    private static boolean isPresent(VersionedValue value) {
+        return value != null && value.getCurrentValue() != null;
+    }
+
     @Override
     public void reset() {
         decision = null;
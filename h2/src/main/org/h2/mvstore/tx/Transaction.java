@@ -10,7 +10,9 @@
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.type.DataType;
 import org.h2.value.VersionedValue;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -61,6 +63,27 @@ public class Transaction {
      */
     private static final int STATUS_ROLLED_BACK  = 5;
 
+    /**
+     * The durability level of a transaction, which changes are written to
+     * the store together with changes of other transactions, whenever the
+     * store is committed next time, for example by the background writer.
+     */
+    public static final int DURABILITY_NONE = 0;
+
+    /**
+     * The durability level of a transaction, which changes are written to
+     * the store immediately, if auto-commit delay of the store is 0, but
+     * without waiting for them to reach the disk. This is the default.
+     */
+    public static final int DURABILITY_ASYNC = 1;
+
+    /**
+     * The durability level of a transaction, which changes are written to
+     * the store and forced to the disk before commit returns. All changes,
+     * committed earlier with any durability level, become durable as well.
+     */
+    public static final int DURABILITY_SYNC = 2;
+
     private static final String[] STATUS_NAMES = {
             "CLOSED", "OPEN", "PREPARED", "COMMITTED", "ROLLING_BACK", "ROLLED_BACK"
     };
@@ -113,6 +136,11 @@ public class Transaction {
      */
     private MVStore.TxCounter txCounter;
 
+    /**
+     * Old versions of the store pinned during the current statement, or null.
+     */
+    private ArrayList<Long> pinnedVersions;
+
     /**
      * Transaction name.
      */
@@ -154,6 +182,15 @@ public class Transaction {
      */
     private volatile boolean notificationRequested;
 
+    /**
+     * Net change in the number of entries, made by this transaction, per map id.
+     * It is modified only by the thread owning this transaction, and read by
+     * other threads only after this transaction became logically committed.
+     * Null, if changes are not tracked, which is the case for transactions
+     * recovered from undo logs, because their changes were made before.
+     */
+    private final ConcurrentHashMap<Integer, AtomicLong> sizeDeltas;
+
 
     Transaction(TransactionStore store, int transactionId, long sequenceNum, int status,
                 String name, long logId, int timeoutMillis, int ownerId,
@@ -166,6 +203,8 @@ public class Transaction {
         this.timeoutMillis = timeoutMillis;
         this.ownerId = ownerId;
         this.listener = listener;
+        // non-zero log id means that transaction is recovered with some changes already made
+        this.sizeDeltas = logId == 0 ? new ConcurrentHashMap<Integer, AtomicLong>() : null;
     }
 
     public int getId() {
@@ -281,6 +320,35 @@ public void markStatementEnd() {
             txCounter = null;
             store.store.deregisterVersionUsage(counter);
         }
+        unpinVersions();
+    }
+
+    /**
+     * Prevent an old version of the store from being discarded until the end
+     * of the current statement, so that it can be read with
+     * MVMap.openCompletedVersion().
+     *
+     * @param version the version to pin
+     * @throws IllegalArgumentException if the version is no longer available
+     */
+    public void pinVersion(long version) {
+        if (pinnedVersions == null) {
+            pinnedVersions = new ArrayList<>();
+        } else if (pinnedVersions.contains(version)) {
+            return;
+        }
+        store.store.pinVersion(version);
+        pinnedVersions.add(version);
+    }
+
+    private void unpinVersions() {
+        ArrayList<Long> versions = pinnedVersions;
+        if (versions != null) {
+            pinnedVersions = null;
+            for (long version : versions) {
+                store.store.unpinVersion(version);
+            }
+        }
     }
 
     /**
@@ -324,6 +392,67 @@ void logUndo() {
         store.removeUndoLogRecord(transactionId);
     }
 
+    /**
+     * Check whether the net change in the number of entries of every map
+     * is tracked by this transaction.
+     *
+     * @return true if tracked
+     */
+    boolean isSizeTracked() {
+        return sizeDeltas != null;
+    }
+
+    /**
+     * Get the net change in the number of entries of the given map,
+     * made by this transaction.
+     *
+     * @param mapId the map id
+     * @return the number of added entries minus the number of removed entries
+     */
+    long getSizeDelta(int mapId) {
+        AtomicLong delta = sizeDeltas.get(mapId);
+        return delta == null ? 0 : delta.get();
+    }
+
+    /**
+     * Account for entries added to or removed from the given map
+     * by this transaction.
+     *
+     * @param mapId the map id
+     * @param delta the number of added entries (negative if removed)
+     */
+    void adjustSizeDelta(int mapId, long delta) {
+        if (delta != 0 && sizeDeltas != null) {
+            AtomicLong value = sizeDeltas.get(mapId);
+            if (value == null) {
+                value = new AtomicLong();
+                sizeDeltas.put(mapId, value);
+            }
+            value.addAndGet(delta);
+        }
+    }
+
+    /**
+     * Forget all changes in the number of entries of the given map,
+     * made by this transaction.
+     *
+     * @param mapId the map id
+     */
+    void resetSizeDelta(int mapId) {
+        if (sizeDeltas != null) {
+            sizeDeltas.remove(mapId);
+        }
+    }
+
+    /**
+     * Get the ids of the maps changed by this transaction.
+     *
+     * @return the map ids
+     */
+    Iterable<Integer> getChangedMapIds() {
+        return sizeDeltas.keySet();
+    }
+
     /**
      * Open a data map.
      *
@@ -378,6 +507,17 @@ public void prepare() {
      * Commit the transaction. Afterwards, this transaction is closed.
      */
     public void commit() {
+        commit(DURABILITY_ASYNC);
+    }
+
+    /**
+     * Commit the transaction with the given durability level. Afterwards,
+     * this transaction is closed.
+     *
+     * @param durability the durability level, one of DURABILITY_NONE,
+     *            DURABILITY_ASYNC, or DURABILITY_SYNC
+     */
+    public void commit(int durability) {
         assert store.openTransactions.get().get(transactionId);
         Throwable ex = null;
         boolean hasChanges = false;
@@ -393,7 +533,7 @@ public void commit() {
             throw e;
         } finally {
             try {
-                store.endTransaction(this, hasChanges);
+                store.endTransaction(this, hasChanges, durability);
             } catch (Throwable e) {
                 if (ex == null) {
                     throw e;
@@ -451,7 +591,7 @@ public void rollback() {
             throw e;
         } finally {
             try {
-                store.endTransaction(this, true);
+                store.endTransaction(this, true, DURABILITY_ASYNC);
             } catch (Throwable e) {
                 if (ex == null) {
                     throw e;
@@ -506,6 +646,7 @@ private void checkNotClosed() {
     void closeIt() {
         long lastState = setStatus(STATUS_CLOSED);
         store.store.deregisterVersionUsage(txCounter);
+        unpinVersions();
         if((hasChanges(lastState) || hasRollback(lastState)) && notificationRequested) {
             notifyAllWaitingTransactions();
         }
@@ -6,6 +6,7 @@
 package org.h2.mvstore.tx;
 
 import org.h2.mvstore.Cursor;
+import org.h2.mvstore.CursorPos;
 import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.Page;
@@ -15,8 +16,13 @@
 
 import java.util.AbstractMap;
 import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -89,11 +95,33 @@ public long sizeAsLongMax() {
 
     /**
      * Get the size of the map as seen by this transaction.
+     * <p>
+     * Usually it is computed from the committed size of the map and changes of
+     * this transaction and of transactions being committed. Entries of the map
+     * are counted only if the committed size is not known yet.
      *
      * @return the size
      */
     public long sizeAsLong() {
         TransactionStore store = transaction.store;
+        int mapId = map.getId();
+        long size = store.getSize(mapId, transaction);
+        if (size < 0) {
+            long stamp = store.getSizeStamp();
+            size = countEntries();
+            store.setCommittedSize(mapId, transaction, stamp, size);
+        }
+        return size;
+    }
+
+    /**
+     * Count entries of the map, visible to this transaction, looking into
+     * undo logs of all open transactions.
+     *
+     * @return the size
+     */
+    private long countEntries() {
+        TransactionStore store = transaction.store;
 
         // The purpose of the following loop is to get a coherent picture
         // of a state of three independent volatile / atomic variables,
@@ -251,6 +279,7 @@ public V putIfAbsent(K key, V value) {
      */
     public void append(K key, V value) {
         map.append(key, VersionedValueUncommitted.getInstance(transaction.log(map.getId(), key, null), value, null));
+        transaction.adjustSizeDelta(map.getId(), 1);
     }
 
     /**
@@ -279,6 +308,7 @@ public V putCommitted(K key, V value) {
         DataUtils.checkArgument(value != null, "The value may not be null");
         VersionedValue newValue = VersionedValueCommitted.getInstance(value);
         VersionedValue oldValue = map.put(key, newValue);
+        transaction.store.invalidateCommittedSize(map.getId());
         @SuppressWarnings("unchecked")
         V result = (V) (oldValue == null ? null : oldValue.getCurrentValue());
         return result;
@@ -310,6 +340,9 @@ private V set(Object key, TxDecisionMaker decisionMaker) {
             assert decision != MVMap.Decision.REPEAT;
             blockingTransaction = decisionMaker.getBlockingTransaction();
             if (decision != MVMap.Decision.ABORT || blockingTransaction == null) {
+                if (decision == MVMap.Decision.PUT) {
+                    transaction.adjustSizeDelta(map.getId(), decisionMaker.getSizeDelta());
+                }
                 @SuppressWarnings("unchecked")
                 V res = result == null ? null : (V) result.getCurrentValue();
                 return res;
@@ -449,6 +482,8 @@ public boolean isClosed() {
     public void clear() {
         // TODO truncate transactionally?
         map.clear();
+        transaction.resetSizeDelta(map.getId());
+        transaction.store.invalidateCommittedSize(map.getId());
     }
 
     @Override
@@ -583,7 +618,74 @@ public Iterator<K> keyIterator(K from, K to, boolean includeUncommitted) {
      * @return the iterator
      */
     public Iterator<Map.Entry<K, V>> entryIterator(final K from, final K to) {
-        return new EntryIterator<>(this, from, to);
+        return new EntryIterator<>(this, new Snapshot(this), from, to);
+    }
+
+    /**
+     * Iterate over entries in several ranges of keys. All iterators read the
+     * same snapshot of the map, so they can be used by different threads to
+     * read the ranges concurrently.
+     *
+     * @param from the first key of each range, or null if there is no limit
+     * @param to the last key of each range, or null if there is no limit
+     * @return the iterators, one for each range
+     */
+    public List<Iterator<Map.Entry<K, V>>> entryIterators(K[] from, K[] to) {
+        Snapshot snapshot = new Snapshot(this);
+        int count = from.length;
+        List<Iterator<Map.Entry<K, V>>> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(new EntryIterator<K, V>(this, snapshot, from[i], to[i]));
+        }
+        return list;
+    }
+
+    /**
+     * Find the entries of several ranges of keys. The ranges are read from the
+     * same snapshot of the map. The first keys of all ranges are searched
+     * together in ascending order, with one descent through the tree, see
+     * {@link Cursor#find(Page, List, Cursor.PositionVisitor)}. The entries
+     * are only read when the iterators are used, so that an iterator keeps at
+     * most the leaf page of its current entry reachable.
+     *
+     * @param from the first key of each range, or null if there is no limit
+     * @param to the last key of each range, or null if there is no limit
+     * @return the iterators over the entries of each range, in the order of
+     *         the ranges
+     */
+    public List<Iterator<Map.Entry<K, V>>> findEntries(final K[] from, final K[] to) {
+        int count = from.length;
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        final DataType keyType = map.getKeyType();
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                K k1 = from[o1], k2 = from[o2];
+                if (k1 == null || k2 == null) {
+                    return k1 == null ? k2 == null ? 0 : -1 : 1;
+                }
+                return keyType.compare(k1, k2);
+            }
+        });
+        ArrayList<K> keys = new ArrayList<>(count);
+        for (int i : order) {
+            keys.add(from[i]);
+        }
+        final Snapshot snapshot = new Snapshot(this);
+        final List<Iterator<Map.Entry<K, V>>> result = new ArrayList<>(
+                Collections.<Iterator<Map.Entry<K, V>>> nCopies(count, null));
+        Cursor.find(snapshot.root, keys, new Cursor.PositionVisitor() {
+            @Override
+            public void visit(int j, CursorPos pos) {
+                int i = order[j];
+                result.set(i, new EntryIterator<K, V>(TransactionMap.this, snapshot,
+                        new Cursor<K, VersionedValue>(pos, to[i])));
+            }
+        });
+        return result;
     }
 
     /**
@@ -646,10 +748,42 @@ public DataType getKeyType() {
     }
 
 
+    /**
+     * A state of the map together with the set of transactions that were
+     * being committed at that time.
+     */
+    private static final class Snapshot {
+
+        final BitSet committingTransactions;
+
+        final Page root;
+
+        Snapshot(TransactionMap<?, ?> transactionMap) {
+            TransactionStore store = transactionMap.getTransaction().store;
+            MVMap<?, VersionedValue> map = transactionMap.map;
+            // The purpose of the following loop is to get a coherent picture
+            // of a state of two independent volatile / atomic variables,
+            // which they had at some recent moment in time.
+            // In order to get such a "snapshot", we wait for a moment of silence,
+            // when neither of the variables concurrently changes it's value.
+            BitSet committingTransactions;
+            RootReference mapRootReference;
+            do {
+                committingTransactions = store.committingTransactions.get();
+                mapRootReference = map.flushAndGetRoot();
+            } while (committingTransactions != store.committingTransactions.get());
+            // Now we have a snapshot, where mapRootReference points to state of the map
+            // and committingTransactions mask tells us which of seemingly uncommitted changes
+            // should be considered as committed.
+            this.committingTransactions = committingTransactions;
+            this.root = mapRootReference.root;
+        }
+    }
+
     private static final class KeyIterator<K> extends TMIterator<K,K> {
 
         public KeyIterator(TransactionMap<K, ?> transactionMap, K from, K to, boolean includeUncommitted) {
-            super(transactionMap, from, to, includeUncommitted);
+            super(transactionMap, new Snapshot(transactionMap), from, to, includeUncommitted);
         }
 
         @Override
@@ -660,8 +794,13 @@ protected K registerCurrent(K key, VersionedValue data) {
 
     private static final class EntryIterator<K,V> extends TMIterator<K,Map.Entry<K,V>> {
 
-        public EntryIterator(TransactionMap<K, ?> transactionMap, K from, K to) {
-            super(transactionMap, from, to, false);
+        public EntryIterator(TransactionMap<K, ?> transactionMap, Snapshot snapshot, K from, K to) {
+            super(transactionMap, snapshot, from, to, false);
+        }
+
+        public EntryIterator(TransactionMap<K, ?> transactionMap, Snapshot snapshot,
+                Cursor<K, VersionedValue> cursor) {
+            super(transactionMap, snapshot, cursor, false);
         }
 
         @Override
@@ -678,28 +817,18 @@ protected Map.Entry<K, V> registerCurrent(K key, VersionedValue data) {
         private final boolean includeAllUncommitted;
         private X current;
 
-        TMIterator(TransactionMap<K,?> transactionMap, K from, K to, boolean includeAllUncommitted) {
-            Transaction transaction = transactionMap.getTransaction();
-            this.transactionId = transaction.transactionId;
-            TransactionStore store = transaction.store;
-            MVMap<K, VersionedValue> map = transactionMap.map;
-            // The purpose of the following loop is to get a coherent picture
-            // of a state of two independent volatile / atomic variables,
-            // which they had at some recent moment in time.
-            // In order to get such a "snapshot", we wait for a moment of silence,
-            // when neither of the variables concurrently changes it's value.
-            BitSet committingTransactions;
-            RootReference mapRootReference;
-            do {
-                committingTransactions = store.committingTransactions.get();
-                mapRootReference = map.flushAndGetRoot();
-            } while (committingTransactions != store.committingTransactions.get());
-            // Now we have a snapshot, where mapRootReference points to state of the map
-            // and committingTransactions mask tells us which of seemingly uncommitted changes
-            // should be considered as committed.
+        TMIterator(TransactionMap<K,?> transactionMap, Snapshot snapshot, K from, K to,
+                boolean includeAllUncommitted) {
+            this(transactionMap, snapshot, new Cursor<K,VersionedValue>(snapshot.root, from, to),
+                    includeAllUncommitted);
+        }
+
+        TMIterator(TransactionMap<K,?> transactionMap, Snapshot snapshot, Cursor<K,VersionedValue> cursor,
+                boolean includeAllUncommitted) {
+            this.transactionId = transactionMap.getTransaction().transactionId;
             // Subsequent map traversal uses this snapshot info only.
-            this.cursor = new Cursor<>(mapRootReference.root, from, to);
-            this.committingTransactions = committingTransactions;
+            this.cursor = cursor;
+            this.committingTransactions = snapshot.committingTransactions;
 
             this.includeAllUncommitted = includeAllUncommitted;
             fetchNext();
@@ -8,8 +8,11 @@
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.h2.mvstore.Cursor;
@@ -59,6 +62,11 @@ public class TransactionStore {
 
     private final MVMap.Builder<Object, VersionedValue> mapBuilder;
 
+    /**
+     * The data type for map keys and values.
+     */
+    private final DataType dataType;
+
     /**
      * This BitSet is used as vacancy indicator for transaction slots in transactions[].
      * It provides easy way to find first unoccupied slot, and also allows for copy-on-write
@@ -75,6 +83,45 @@ public class TransactionStore {
      */
     final AtomicReference<BitSet> committingTransactions = new AtomicReference<>(new BitSet());
 
+    /**
+     * Number of committed entries per map id, without changes of transactions,
+     * which are still open or only logically committed. Only maps, whose size
+     * was requested, are present here.
+     * Modifications are synchronized on this map, and changes of a committed
+     * transaction are added here at the same time its committingTransactions bit
+     * is cleared.
+     */
+    final ConcurrentHashMap<Integer, Long> committedSizes = new ConcurrentHashMap<>();
+
+    /**
+     * Version of committedSizes and committingTransactions pair,
+     * odd while committed sizes of a transaction are being published.
+     */
+    private final AtomicLong committedSizesVersion = new AtomicLong();
+
+    /**
+     * Counter of events, which change the committed size of a map or the set
+     * of its committing transactions. Entries of a map are counted without
+     * synchronization, and the result is only used if no such event happened
+     * for this map in the meantime.
+     */
+    private final AtomicLong sizeStamp = new AtomicLong();
+
+    /**
+     * The value of sizeStamp at the last event per map id.
+     */
+    private final ConcurrentHashMap<Integer, Long> sizeStamps = new ConcurrentHashMap<>();
+
+    /**
+     * The value of sizeStamp at the last event, which may affect any map.
+     */
+    private volatile long globalSizeStamp;
+
+    /**
+     * The stream committed changes are published to, or null.
+     */
+    private volatile ChangeStream changeStream;
+
     private boolean init;
 
     /**
@@ -101,6 +148,17 @@ public class TransactionStore {
     // TODO: introduce constructor parameter instead of a static field, driven by URL parameter
     private static final int MAX_OPEN_TRANSACTIONS = 65535;
 
+    /**
+     * How many times to try to get a size of the map from committed size,
+     * before falling back to counting of its entries
+     */
+    private static final int MAX_SIZE_ATTEMPTS = 100;
+
+    /**
+     * Indicates that total change of the map size can not be determined
+     */
+    private static final long UNKNOWN_SIZE_DELTA = Long.MIN_VALUE;
+
 
     /**
      * Generate a string used to name undo log map for a specific transaction.
@@ -138,6 +196,7 @@ public TransactionStore(MVStore store) {
     public TransactionStore(MVStore store, DataType dataType, int timeoutMillis) {
         this.store = store;
         this.timeoutMillis = timeoutMillis;
+        this.dataType = dataType;
         preparedTransactions = store.openMap("openTransactions",
                 new MVMap.Builder<Integer, Object[]>());
         DataType oldValueType = new VersionedValueType(dataType);
@@ -431,6 +490,156 @@ void removeUndoLogRecord(int transactionId) {
      */
     <K, V> void removeMap(TransactionMap<K, V> map) {
         store.removeMap(map.map, false);
+        invalidateCommittedSize(map.map.getId());
+    }
+
+    /**
+     * Get the number of entries in the given map, visible to the given
+     * transaction, using known committed size of the map and changes of the
+     * transaction itself and of logically committed transactions.
+     *
+     * @param mapId the map id
+     * @param transaction the transaction
+     * @return the size, or -1 if it can not be determined this way
+     */
+    long getSize(int mapId, Transaction transaction) {
+        for (int attempt = 0; attempt < MAX_SIZE_ATTEMPTS; attempt++) {
+            long version = committedSizesVersion.get();
+            if ((version & 1) == 0) {
+                Long committedSize = committedSizes.get(mapId);
+                if (committedSize == null) {
+                    return -1;
+                }
+                long delta = getSizeDelta(mapId, transaction, committingTransactions.get());
+                if (committedSizesVersion.get() == version) {
+                    return delta == UNKNOWN_SIZE_DELTA ? -1 : committedSize + delta;
+                }
+            }
+            Thread.yield();
+        }
+        return -1;
+    }
+
+    /**
+     * Get the current size stamp. It must be read before entries of a map are
+     * counted, and passed to setCommittedSize() afterwards.
+     *
+     * @return the size stamp
+     */
+    long getSizeStamp() {
+        return sizeStamp.get();
+    }
+
+    /**
+     * Memorize committed size of the map, derived from the number of its
+     * entries, counted on behalf of the given transaction. The size is
+     * ignored if the map was changed by a committing transaction, or bypassing
+     * transactions, after the given stamp was read.
+     *
+     * @param mapId the map id
+     * @param transaction the transaction
+     * @param stamp the size stamp before counting
+     * @param size the number of entries visible to the transaction
+     */
+    void setCommittedSize(int mapId, Transaction transaction, long stamp, long size) {
+        synchronized (committedSizes) {
+            // if some transaction started or finished to commit changes of the
+            // map during counting, we can not tell whether they were counted
+            Long mapStamp = sizeStamps.get(mapId);
+            if (globalSizeStamp <= stamp && (mapStamp == null || mapStamp <= stamp)
+                    && transaction.getStatus() != Transaction.STATUS_CLOSED) {
+                long delta = getSizeDelta(mapId, transaction, committingTransactions.get());
+                if (delta != UNKNOWN_SIZE_DELTA) {
+                    committedSizes.put(mapId, size - delta);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget committed size of the map, after it was modified bypassing
+     * transactions.
+     *
+     * @param mapId the map id
+     */
+    void invalidateCommittedSize(int mapId) {
+        synchronized (committedSizes) {
+            committedSizes.remove(mapId);
+            sizeStamps.put(mapId, sizeStamp.incrementAndGet());
+        }
+    }
+
+    /**
+     * Update the size stamps of the maps changed by the transaction. This
+     * must be called after the change of the committingTransactions bit.
+     *
+     * @param t the transaction
+     */
+    private void updateSizeStamps(Transaction t) {
+        if (t.isSizeTracked()) {
+            for (Integer mapId : t.getChangedMapIds()) {
+                sizeStamps.put(mapId, sizeStamp.incrementAndGet());
+            }
+        } else {
+            globalSizeStamp = sizeStamp.incrementAndGet();
+        }
+    }
+
+    private long getSizeDelta(int mapId, Transaction transaction, BitSet committing) {
+        long delta = 0;
+        // closed transaction may only be used to read the map
+        boolean own = transaction.getStatus() != Transaction.STATUS_CLOSED;
+        if (own) {
+            if (!transaction.isSizeTracked()) {
+                return UNKNOWN_SIZE_DELTA;
+            }
+            delta = transaction.getSizeDelta(mapId);
+        }
+        for (int i = committing.nextSetBit(0); i >= 0; i = committing.nextSetBit(i + 1)) {
+            if (!own || i != transaction.transactionId) {
+                Transaction committingTransaction = getTransaction(i);
+                if (committingTransaction == null || !committingTransaction.isSizeTracked()) {
+                    return UNKNOWN_SIZE_DELTA;
+                }
+                delta += committingTransaction.getSizeDelta(mapId);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Clear the committingTransactions bit of the transaction, and at the same
+     * time add its changes to the committed sizes of maps.
+     *
+     * @param t the transaction
+     * @param success whether all changes of the transaction were committed
+     */
+    private void publishCommit(Transaction t, boolean success) {
+        synchronized (committedSizes) {
+            committedSizesVersion.incrementAndGet();
+            try {
+                if (t.isSizeTracked()) {
+                    for (Integer mapId : t.getChangedMapIds()) {
+                        Long committedSize = committedSizes.get(mapId);
+                        if (committedSize != null) {
+                            if (success) {
+                                committedSizes.put(mapId, committedSize + t.getSizeDelta(mapId));
+                            } else {
+                                // only a part of changes may be committed
+                                committedSizes.remove(mapId);
+                            }
+                        }
+                    }
+                } else {
+                    // maps changed by a recovered transaction are not known
+                    committedSizes.clear();
+                }
+                flipCommittingTransactionsBit(t.transactionId, false);
+                updateSizeStamps(t);
+            } finally {
+                committedSizesVersion.incrementAndGet();
+            }
+        }
     }
 
     /**
@@ -442,15 +651,33 @@ <K, V> void removeMap(TransactionMap<K, V> map) {
     void commit(Transaction t, boolean recovery) {
         if (!store.isClosed()) {
             int transactionId = t.transactionId;
-            // this is an atomic action that causes all changes
-            // made by this transaction, to be considered as "committed"
-            flipCommittingTransactionsBit(transactionId, true);
-
+            ChangeStream stream = recovery ? null : changeStream;
+            // changes have to be collected while they are still protected
+            // from other transactions
+            List<Object[]> changes = stream == null ? null : collectChanges(transactionId);
             CommitDecisionMaker commitDecisionMaker = new CommitDecisionMaker();
+            boolean success = false;
             try {
                 MVMap<Long, Object[]> undoLog = undoLogs[transactionId];
-                if(!recovery) {
-                    store.renameMap(undoLog, getUndoLogName(true, transactionId));
+                if (stream == null) {
+                    // this is an atomic action that causes all changes
+                    // made by this transaction, to be considered as "committed"
+                    flipCommittingTransactionsBit(transactionId, true);
+                    updateSizeStamps(t);
+                    if (!recovery) {
+                        store.renameMap(undoLog, getUndoLogName(true, transactionId));
+                    }
+                } else {
+                    // changes are published in commit order
+                    synchronized (stream) {
+                        flipCommittingTransactionsBit(transactionId, true);
+                        updateSizeStamps(t);
+                        List<Object[]> logEntries = stream.publish(changes);
+                        store.renameMap(undoLog, getUndoLogName(true, transactionId));
+                        // the committed undo log is the commit point after a
+                        // crash, the change log must not be stored before it
+                        stream.writeChangeLog(logEntries);
+                    }
                 }
                 try {
                     Cursor<Long, Object[]> cursor = undoLog.cursor(null);
@@ -470,13 +697,63 @@ void commit(Transaction t, boolean recovery) {
                         }
                     }
                     undoLog.clear();
+                    success = true;
                 } finally {
                     store.renameMap(undoLog, getUndoLogName(false, transactionId));
                 }
             } finally {
-                flipCommittingTransactionsBit(transactionId, false);
+                publishCommit(t, success);
+            }
+        }
+    }
+
+    /**
+     * Collect the final changes made by a transaction that is about to be
+     * committed, one for each modified entry, in the order of the last
+     * modification of the entry.
+     *
+     * @param transactionId the id of the transaction
+     * @return the changes as [ mapId, mapName, key, oldValue, newValue ]
+     */
+    private List<Object[]> collectChanges(int transactionId) {
+        List<Object[]> changes = new ArrayList<>();
+        // values before the transaction of entries modified more than once
+        HashMap<Integer, HashMap<Object, Object>> firstOldValues = new HashMap<>();
+        Cursor<Long, Object[]> cursor = undoLogs[transactionId].cursor(null);
+        while (cursor.hasNext()) {
+            Long undoKey = cursor.next();
+            Object[] op = cursor.getValue();
+            int mapId = (Integer) op[0];
+            MVMap<Object, VersionedValue> map = openMap(mapId);
+            if (map == null) {
+                continue;
+            }
+            Object key = op[1];
+            VersionedValue oldValue = (VersionedValue) op[2];
+            Object old = oldValue == null ? null : oldValue.getCurrentValue();
+            VersionedValue current = map.get(key);
+            HashMap<Object, Object> mapOldValues = firstOldValues.get(mapId);
+            if (current == null || current.getOperationId() != undoKey) {
+                // modified again later on
+                if (mapOldValues == null) {
+                    mapOldValues = new HashMap<>();
+                    firstOldValues.put(mapId, mapOldValues);
+                }
+                if (!mapOldValues.containsKey(key)) {
+                    mapOldValues.put(key, old);
+                }
+                continue;
+            }
+            if (mapOldValues != null && mapOldValues.containsKey(key)) {
+                old = mapOldValues.remove(key);
+            }
+            Object value = current.getCurrentValue();
+            // skip locks and entries added and removed again
+            if (old == null ? value != null : !old.equals(value)) {
+                changes.add(new Object[] { mapId, map.getName(), key, old, value });
             }
         }
+        return changes;
     }
 
     private void flipCommittingTransactionsBit(int transactionId, boolean flag) {
@@ -490,6 +767,43 @@ private void flipCommittingTransactionsBit(int transactionId, boolean flag) {
         } while(!success);
     }
 
+    /**
+     * Open a stream of changes made by transactions committed from now on.
+     * Only one stream can be open at a time.
+     *
+     * @param capacity the maximum number of events kept in memory
+     * @param timeoutMillis how long a committing transaction waits for room
+     *        in a full queue, before events are dropped
+     * @param changeLogName the name of the map to persist changes to, or null
+     * @return the stream
+     */
+    public synchronized ChangeStream openChangeStream(int capacity, long timeoutMillis, String changeLogName) {
+        if (changeStream != null) {
+            throw DataUtils.newIllegalStateException(DataUtils.ERROR_TRANSACTION_ILLEGAL_STATE,
+                    "Change stream is already open");
+        }
+        MVMap<Long, Object[]> changeLog = null;
+        if (changeLogName != null) {
+            changeLog = store.openMap(changeLogName, new MVMap.Builder<Long, Object[]>()
+                    .valueType(new ArrayType(new DataType[] {
+                            new ObjectDataType(), new ObjectDataType(), dataType, dataType, dataType })));
+        }
+        ChangeStream stream = new ChangeStream(this, capacity, timeoutMillis, changeLog);
+        changeStream = stream;
+        return stream;
+    }
+
+    /**
+     * Stop publishing changes to the given stream.
+     *
+     * @param stream the stream
+     */
+    synchronized void closeChangeStream(ChangeStream stream) {
+        if (changeStream == stream) {
+            changeStream = null;
+        }
+    }
+
     /**
      * Open the map with the given name.
      *
@@ -537,15 +851,18 @@ MVMap<Object, VersionedValue> openMap(int mapId) {
 
     /**
      * End this transaction. Change status to CLOSED and vacate transaction slot.
-     * Will try to commit MVStore if autocommitDelay is 0 or if database is idle
-     * and amount of unsaved changes is sizable.
+     * Will commit MVStore and force it to the disk for a synchronous transaction,
+     * otherwise will try to commit MVStore if autocommitDelay is 0 (unless
+     * transaction does not need durability) or if database is idle and amount
+     * of unsaved changes is sizable.
      *
      * @param t the transaction
      * @param hasChanges true if transaction has done any updates
      *                  (even if they are fully rolled back),
      *                   false if it just performed a data access
+     * @param durability the durability level of the transaction
      */
-    void endTransaction(Transaction t, boolean hasChanges) {
+    void endTransaction(Transaction t, boolean hasChanges, int durability) {
         t.closeIt();
         int txId = t.transactionId;
         transactions.set(txId, null);
@@ -565,7 +882,12 @@ void endTransaction(Transaction t, boolean hasChanges) {
                 preparedTransactions.remove(txId);
             }
 
-            if (wasStored || store.getAutoCommitDelay() == 0) {
+            if (durability == Transaction.DURABILITY_SYNC && !store.isClosed()) {
+                // unlike tryCommit(), wait for concurrent store operation,
+                // so changes of this transaction are written for sure
+                store.commit();
+                store.sync();
+            } else if (wasStored || store.getAutoCommitDelay() == 0 && durability != Transaction.DURABILITY_NONE) {
                 store.tryCommit();
             } else {
                 if (isUndoEmpty()) {
@@ -614,7 +936,7 @@ Transaction getTransaction(int transactionId) {
     void rollbackTo(Transaction t, long maxLogId, long toLogId) {
         int transactionId = t.getId();
         MVMap<Long, Object[]> undoLog = undoLogs[transactionId];
-        RollbackDecisionMaker decisionMaker = new RollbackDecisionMaker(this, transactionId, toLogId, t.listener);
+        RollbackDecisionMaker decisionMaker = new RollbackDecisionMaker(this, t, toLogId, t.listener);
         for (long logId = maxLogId - 1; logId >= toLogId; logId--) {
             Long undoKey = getOperationId(transactionId, logId);
             undoLog.operate(undoKey, null, decisionMaker);
@@ -40,6 +40,11 @@ abstract class TxDecisionMaker extends MVMap.DecisionMaker<VersionedValue> {
      */
     long                         undoKey;
 
+    /**
+     * Whether an entry was visible to the transaction before this modification
+     */
+    private       boolean        existedBefore;
+
     /**
      * Id of the last operation, we decided to {@link MVMap.Decision.REPEAT}.
      */
@@ -128,9 +133,20 @@ final Transaction getBlockingTransaction() {
      * @param value previous value to be logged
      */
     final void logIt(VersionedValue value) {
+        existedBefore = value != null && value.getCurrentValue() != null;
         undoKey = transaction.log(mapId, key, value);
     }
 
+    /**
+     * Get the change in the number of map entries visible to the transaction,
+     * caused by a modification, once {@link MVMap.Decision#PUT} is made.
+     *
+     * @return 1 if entry was added, -1 if removed, 0 otherwise
+     */
+    int getSizeDelta() {
+        return (value != null ? 1 : 0) - (existedBefore ? 1 : 0);
+    }
+
     /**
      * Check whether specified transaction id belongs to "current" transaction
      * (transaction we are acting within).
@@ -291,6 +307,11 @@ public MVMap.Decision decide(VersionedValue existingValue, VersionedValue provid
             return decision;
         }
 
+        @Override
+        int getSizeDelta() {
+            return 0;
+        }
+
         @SuppressWarnings("unchecked")
         @Override
         public VersionedValue selectValue(VersionedValue existingValue, VersionedValue providedValue) {
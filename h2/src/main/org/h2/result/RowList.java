@@ -235,6 +235,21 @@ public int size() {
         return size;
     }
 
+    /**
+     * Remove all rows from the list, so that it can be used again, and delete
+     * the temporary file.
+     */
+    public void clear() {
+        close();
+        list.clear();
+        lobs = null;
+        size = 0;
+        index = 0;
+        listIndex = 0;
+        memory = 0;
+        written = false;
+    }
+
     /**
      * Close the result list and delete the temporary file.
      */
@@ -80,6 +80,7 @@ public class Column {
     private boolean isComputed;
     private TableFilter computeTableFilter;
     private int selectivity;
+    private ColumnStatistics statistics;
     private SingleColumnResolver resolver;
     private String comment;
     private boolean primaryKey;
@@ -578,6 +579,9 @@ private String getCreateSQL(boolean includeName) {
         if (selectivity != 0) {
             buff.append(" SELECTIVITY ").append(selectivity);
         }
+        if (statistics != null) {
+            statistics.getSQL(buff.append(" STATISTICS "));
+        }
         if (comment != null) {
             buff.append(" COMMENT ");
             StringUtils.quoteStringSQL(buff, comment);
@@ -668,6 +672,24 @@ public void setSelectivity(int selectivity) {
         this.selectivity = selectivity;
     }
 
+    /**
+     * Get the distribution of the values of this column.
+     *
+     * @return the statistics, or null if not known
+     */
+    public ColumnStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Set the distribution of the values of this column.
+     *
+     * @param statistics the statistics, or null
+     */
+    public void setStatistics(ColumnStatistics statistics) {
+        this.statistics = statistics;
+    }
+
     /**
      * Add a check constraint expression to this column. An existing check
      * constraint is added using AND.
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2004-2019 H2 Group. Multiple-Licensed under the MPL 2.0,
+ * and the EPL 1.0 (https://h2database.com/html/license.html).
+ * Initial Developer: H2 Group
+ */
+package org.h2.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+import org.h2.engine.Database;
+import org.h2.message.DbException;
+import org.h2.value.Value;
+import org.h2.value.ValueArray;
+import org.h2.value.ValueInt;
+import org.h2.value.ValueLong;
+import org.h2.value.ValueNull;
+
+/**
+ * The distribution of the values of a column, as computed by ANALYZE. It
+ * consists of a list of the most common values with their frequencies, and an
+ * equi-depth histogram of the remaining values. Each bucket of the histogram
+ * contains about the same number of rows. All fractions are relative to the
+ * number of rows of the table, including rows with NULL.
+ */
+public final class ColumnStatistics {
+
+    /**
+     * The maximum number of buckets of the histogram.
+     */
+    public static final int MAX_BUCKETS = 16;
+
+    /**
+     * The maximum number of most common values.
+     */
+    public static final int MAX_MOST_COMMON_VALUES = 16;
+
+    /**
+     * The maximum length of the SQL representation of the statistics of a
+     * column. Statistics of columns with larger values are not kept.
+     */
+    private static final int MAX_SQL_LENGTH = 8192;
+
+    /**
+     * Fractions are stored in parts per million.
+     */
+    private static final int SCALE = 1_000_000;
+
+    /**
+     * The fraction of rows with values in the histogram, in parts per million.
+     */
+    private final int histogramFraction;
+
+    /**
+     * The number of distinct values in the histogram.
+     */
+    private final long histogramDistinct;
+
+    /**
+     * The bounds of the buckets of the histogram, in ascending order. Bucket i
+     * contains the values between bounds[i] and bounds[i + 1].
+     */
+    private final Value[] bounds;
+
+    private final Value[] mostCommonValues;
+
+    /**
+     * The frequencies of the most common values, in parts per million.
+     */
+    private final int[] frequencies;
+
+    /**
+     * The number of rows of the sample, or 0 if not known.
+     */
+    private final int sampleRows;
+
+    private ColumnStatistics(int histogramFraction, long histogramDistinct, Value[] bounds,
+            Value[] mostCommonValues, int[] frequencies, int sampleRows) {
+        this.histogramFraction = histogramFraction;
+        this.histogramDistinct = histogramDistinct;
+        this.bounds = bounds;
+        this.mostCommonValues = mostCommonValues;
+        this.frequencies = frequencies;
+        this.sampleRows = sampleRows;
+    }
+
+    /**
+     * Compute the statistics of a sample of the column values.
+     *
+     * @param database the database
+     * @param values the values of the sample that are not NULL, this list is
+     *            sorted by this method
+     * @param rowCount the number of rows of the sample, including rows with
+     *            NULL
+     * @return the statistics, or null if the sample is empty or the values are
+     *         too large
+     */
+    public static ColumnStatistics create(final Database database, ArrayList<Value> values, int rowCount) {
+        int size = values.size();
+        if (size == 0) {
+            return null;
+        }
+        Collections.sort(values, new Comparator<Value>() {
+            @Override
+            public int compare(Value o1, Value o2) {
+                return database.compare(o1, o2);
+            }
+        });
+        // distinct values and the number of their occurrences
+        ArrayList<Value> distinct = new ArrayList<>();
+        ArrayList<Integer> counts = new ArrayList<>();
+        for (int i = 0; i < size;) {
+            Value v = values.get(i);
+            int j = i + 1;
+            while (j < size && database.areEqual(v, values.get(j))) {
+                j++;
+            }
+            distinct.add(v);
+            counts.add(j - i);
+            i = j;
+        }
+        int distinctCount = distinct.size();
+        // values that are clearly more common than the average value
+        Integer[] order = new Integer[distinctCount];
+        for (int i = 0; i < distinctCount; i++) {
+            order[i] = i;
+        }
+        final ArrayList<Integer> c = counts;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Integer.compare(c.get(o2), c.get(o1));
+            }
+        });
+        double average = (double) size / distinctCount;
+        boolean[] isCommon = new boolean[distinctCount];
+        int commonCount = 0;
+        for (int i = 0; i < distinctCount && commonCount < MAX_MOST_COMMON_VALUES; i++) {
+            int count = counts.get(order[i]);
+            if (count < 2 || count <= average * 1.25) {
+                break;
+            }
+            isCommon[order[i]] = true;
+            commonCount++;
+        }
+        Value[] mostCommonValues = new Value[commonCount];
+        int[] frequencies = new int[commonCount];
+        ArrayList<Value> rest = new ArrayList<>();
+        for (int i = 0, j = 0; i < distinctCount; i++) {
+            int count = counts.get(i);
+            if (isCommon[i]) {
+                mostCommonValues[j] = distinct.get(i);
+                frequencies[j++] = getFraction(count, rowCount);
+            } else {
+                Value v = distinct.get(i);
+                for (int k = 0; k < count; k++) {
+                    rest.add(v);
+                }
+            }
+        }
+        int restSize = rest.size();
+        int buckets = Math.min(MAX_BUCKETS, distinctCount - commonCount);
+        Value[] bounds;
+        if (buckets == 0) {
+            bounds = new Value[0];
+        } else {
+            bounds = new Value[buckets + 1];
+            for (int i = 0; i <= buckets; i++) {
+                bounds[i] = rest.get((int) ((long) i * (restSize - 1) / buckets));
+            }
+        }
+        ColumnStatistics statistics = new ColumnStatistics(getFraction(restSize, rowCount),
+                distinctCount - commonCount, bounds, mostCommonValues, frequencies, rowCount);
+        if (statistics.getSQL(new StringBuilder()).length() > MAX_SQL_LENGTH) {
+            return null;
+        }
+        return statistics;
+    }
+
+    private static int getFraction(long count, long rowCount) {
+        return (int) (count * SCALE / rowCount);
+    }
+
+    /**
+     * Read the statistics from their SQL representation.
+     *
+     * @param column the column
+     * @param value the value of the SQL representation
+     * @return the statistics
+     */
+    public static ColumnStatistics get(Column column, Value value) {
+        try {
+            Value[] list = ((ValueArray) value.convertTo(Value.ARRAY)).getList();
+            Value[] bounds = convert(column, list[2]);
+            Value[] mostCommonValues = convert(column, list[3]);
+            Value[] f = ((ValueArray) list[4].convertTo(Value.ARRAY)).getList();
+            int[] frequencies = new int[f.length];
+            for (int i = 0; i < f.length; i++) {
+                frequencies[i] = f[i].getInt();
+            }
+            if (frequencies.length != mostCommonValues.length || bounds.length == 1) {
+                throw DbException.getInvalidValueException("STATISTICS", value.getTraceSQL());
+            }
+            int sampleRows = list.length > 5 ? list[5].getInt() : 0;
+            return new ColumnStatistics(list[0].getInt(), list[1].getLong(), bounds, mostCommonValues, frequencies,
+                    sampleRows);
+        } catch (ClassCastException | ArrayIndexOutOfBoundsException e) {
+            throw DbException.getInvalidValueException("STATISTICS", value.getTraceSQL());
+        }
+    }
+
+    private static Value[] convert(Column column, Value value) {
+        Value[] list = ((ValueArray) value.convertTo(Value.ARRAY)).getList();
+        Value[] result = new Value[list.length];
+        for (int i = 0; i < list.length; i++) {
+            result[i] = column.convert(list[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Get the SQL representation of the statistics. It is an array of the
+     * fraction of rows in the histogram, the number of distinct values in the
+     * histogram, the bounds of the histogram, the most common values, their
+     * frequencies, and the number of rows of the sample.
+     *
+     * @param builder the string builder
+     * @return the specified string builder
+     */
+    public StringBuilder getSQL(StringBuilder builder) {
+        int[] f = frequencies;
+        Value[] list = new Value[f.length];
+        for (int i = 0; i < f.length; i++) {
+            list[i] = ValueInt.get(f[i]);
+        }
+        return ValueArray.get(new Value[] { ValueInt.get(histogramFraction), ValueLong.get(histogramDistinct),
+                ValueArray.get(bounds), ValueArray.get(mostCommonValues), ValueArray.get(list),
+                ValueInt.get(sampleRows) }).getSQL(builder);
+    }
+
+    /**
+     * Get the bounds of the buckets of the histogram.
+     *
+     * @return the bounds, in ascending order
+     */
+    public Value[] getHistogramBounds() {
+        return bounds;
+    }
+
+    /**
+     * Estimate the number of distinct values of the column, not including
+     * NULL. If the table has more rows than the sample, the rows that were not
+     * sampled are expected to add new values in proportion to the square of
+     * the fraction of distinct values in the sample: columns where most
+     * sampled values are distinct are scaled to the number of rows of the
+     * table, while columns where each value was seen many times are not.
+     *
+     * @param rowCount the number of rows of the table
+     * @return the number of distinct values
+     */
+    public double getDistinctCount(long rowCount) {
+        double distinct = histogramDistinct + mostCommonValues.length;
+        if (sampleRows > 0 && rowCount > sampleRows) {
+            double ratio = distinct / sampleRows;
+            distinct += (rowCount - sampleRows) * ratio * ratio;
+        }
+        return distinct;
+    }
+
+    /**
+     * Get the most common values.
+     *
+     * @return the most common values
+     */
+    public Value[] getMostCommonValues() {
+        return mostCommonValues;
+    }
+
+    /**
+     * Get the frequencies of the most common values.
+     *
+     * @return the fractions of the rows with these values
+     */
+    public double[] getMostCommonFrequencies() {
+        double[] result = new double[frequencies.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (double) frequencies[i] / SCALE;
+        }
+        return result;
+    }
+
+    /**
+     * Estimate the fraction of rows where the column is equal to the value.
+     *
+     * @param database the database
+     * @param v the value, converted to the data type of the column
+     * @return the fraction of rows
+     */
+    public double getEqualFraction(Database database, Value v) {
+        if (v == ValueNull.INSTANCE) {
+            return 0;
+        }
+        for (int i = 0; i < mostCommonValues.length; i++) {
+            if (database.areEqual(v, mostCommonValues[i])) {
+                return (double) frequencies[i] / SCALE;
+            }
+        }
+        if (histogramDistinct == 0) {
+            return 0;
+        }
+        return (double) histogramFraction / SCALE / histogramDistinct;
+    }
+
+    /**
+     * Estimate the fraction of rows where the column is within the given
+     * range.
+     *
+     * @param database the database
+     * @param min the lower bound, converted to the data type of the column, or
+     *            null if the range has no lower bound
+     * @param max the upper bound, converted to the data type of the column, or
+     *            null if the range has no upper bound
+     * @return the fraction of rows
+     */
+    public double getRangeFraction(Database database, Value min, Value max) {
+        if (min == ValueNull.INSTANCE || max == ValueNull.INSTANCE) {
+            return 0;
+        }
+        long fraction = 0;
+        for (int i = 0; i < mostCommonValues.length; i++) {
+            Value v = mostCommonValues[i];
+            if ((min == null || database.compare(v, min) >= 0) && (max == null || database.compare(v, max) <= 0)) {
+                fraction += frequencies[i];
+            }
+        }
+        int buckets = bounds.length - 1;
+        double histogram = 0;
+        for (int i = 0; i < buckets; i++) {
+            Value low = bounds[i], high = bounds[i + 1];
+            if (min != null && database.compare(high, min) < 0 || max != null && database.compare(low, max) > 0) {
+                continue;
+            }
+            boolean containsLow = min == null || database.compare(low, min) >= 0;
+            boolean containsHigh = max == null || database.compare(high, max) <= 0;
+            // the range covers the bucket, or a part of it
+            histogram += containsLow && containsHigh ? 1 : 0.5;
+        }
+        if (buckets > 0) {
+            fraction += (long) (histogram * histogramFraction / buckets);
+        }
+        return Math.min((double) fraction / SCALE, 1);
+    }
+
+}
@@ -117,7 +117,8 @@ public class MetaTable extends Table {
     private static final int TABLE_CONSTRAINTS = 30;
     private static final int KEY_COLUMN_USAGE = 31;
     private static final int REFERENTIAL_CONSTRAINTS = 32;
-    private static final int META_TABLE_TYPE_COUNT = REFERENTIAL_CONSTRAINTS + 1;
+    private static final int COLUMN_STATISTICS = 33;
+    private static final int META_TABLE_TYPE_COUNT = COLUMN_STATISTICS + 1;
 
     private final int type;
     private final int indexColumn;
@@ -621,6 +622,21 @@ public MetaTable(Schema schema, int id, int type) {
             );
             break;
         }
+        case COLUMN_STATISTICS: {
+            setMetaTableName("COLUMN_STATISTICS");
+            cols = createColumns(
+                    "TABLE_CATALOG",
+                    "TABLE_SCHEMA",
+                    "TABLE_NAME",
+                    "COLUMN_NAME",
+                    "STATISTICS_TYPE",
+                    "ORDINAL_POSITION INT",
+                    "VALUE",
+                    "FREQUENCY DOUBLE"
+            );
+            indexColumnName = "TABLE_NAME";
+            break;
+        }
         default:
             throw DbException.throwInternalError("type="+type);
         }
@@ -1160,6 +1176,8 @@ public ArrayList<Row> generateRows(Session session, SearchRow first,
                             Long.toString(fs.getReadCount()));
                     add(rows, "info.UPDATE_FAILURE_PERCENT",
                             String.format(Locale.ENGLISH, "%.2f%%", 100 * mvStore.getUpdateFailureRatio()));
+                    add(rows, "info.STORE_LAST_VERSION",
+                            Long.toString(mvStore.getCurrentVersion() - 1));
                     long size;
                     try {
                         size = fs.getFile().size();
@@ -2152,12 +2170,62 @@ public ArrayList<Row> generateRows(Session session, SearchRow first,
             }
             break;
         }
+        case COLUMN_STATISTICS: {
+            for (Table table : getAllTables(session)) {
+                String tableName = table.getName();
+                if (!checkIndex(session, tableName, indexFrom, indexTo)) {
+                    continue;
+                }
+                if (hideTable(table, session)) {
+                    continue;
+                }
+                for (Column c : table.getColumns()) {
+                    ColumnStatistics statistics = c.getStatistics();
+                    if (statistics == null) {
+                        continue;
+                    }
+                    Value[] values = statistics.getMostCommonValues();
+                    double[] frequencies = statistics.getMostCommonFrequencies();
+                    for (int j = 0; j < values.length; j++) {
+                        addColumnStatistics(rows, catalog, table, c, "MOST_COMMON_VALUE", j, values[j],
+                                ValueDouble.get(frequencies[j]));
+                    }
+                    values = statistics.getHistogramBounds();
+                    for (int j = 0; j < values.length; j++) {
+                        addColumnStatistics(rows, catalog, table, c, "HISTOGRAM_BOUND", j, values[j], null);
+                    }
+                }
+            }
+            break;
+        }
         default:
             DbException.throwInternalError("type="+type);
         }
         return rows;
     }
 
+    private void addColumnStatistics(ArrayList<Row> rows, String catalog, Table table, Column column,
+            String statisticsType, int position, Value value, Value frequency) {
+        add(rows,
+                // TABLE_CATALOG
+                catalog,
+                // TABLE_SCHEMA
+                table.getSchema().getName(),
+                // TABLE_NAME
+                table.getName(),
+                // COLUMN_NAME
+                column.getName(),
+                // STATISTICS_TYPE
+                statisticsType,
+                // ORDINAL_POSITION
+                ValueInt.get(position + 1),
+                // VALUE
+                value.getString(),
+                // FREQUENCY
+                frequency
+        );
+    }
+
     private static short getRefAction(ConstraintActionType action) {
         switch (action) {
         case CASCADE:
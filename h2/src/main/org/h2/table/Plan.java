@@ -118,6 +118,10 @@ public double calculateCost(Session session, AllColumnsForPlan allColumnsSet) {
                 t.debug("Plan       :   for table filter {0}", tableFilter);
             }
             PlanItem item = tableFilter.getBestPlanItem(session, allFilters, i, allColumnsSet);
+            if (i > 0 && allFilters.length == filters.length) {
+                item = tableFilter.getMergeJoinPlanItem(session, item, allFilters, i,
+                        planItems.get(allFilters[i - 1]), allColumnsSet);
+            }
             planItems.put(tableFilter, item);
             if (t.isDebugEnabled()) {
                 t.debug("Plan       :   best plan item cost {0} index {1}",
@@ -156,6 +156,36 @@ public abstract Index addIndex(Session session, String indexName,
             int indexId, IndexColumn[] cols, IndexType indexType,
             boolean create, String indexComment);
 
+    /**
+     * Create an index for this table that also stores the values of the
+     * included columns, or only contains the rows where the condition is
+     * true. Tables that don't support this only accept an empty list of
+     * included columns and no condition.
+     *
+     * @param session the session
+     * @param indexName the name of the index
+     * @param indexId the id
+     * @param cols the index columns
+     * @param includedColumns the included columns
+     * @param condition the condition of a partial index, with columns that
+     *            are not mapped yet, or null
+     * @param indexType the index type
+     * @param create whether this is a new index
+     * @param indexComment the comment
+     * @return the index
+     */
+    public Index addIndex(Session session, String indexName, int indexId, IndexColumn[] cols,
+            Column[] includedColumns, Expression condition, IndexType indexType, boolean create,
+            String indexComment) {
+        if (includedColumns.length > 0) {
+            throw DbException.getUnsupportedException("INCLUDE");
+        }
+        if (condition != null) {
+            throw DbException.getUnsupportedException("Partial index");
+        }
+        return addIndex(session, indexName, indexId, cols, indexType, create, indexComment);
+    }
+
     /**
      * Get the given row.
      *
@@ -168,6 +198,18 @@ public Row getRow(Session session, long key) {
         return null;
     }
 
+    /**
+     * Get the given row if it exists. Rows may be removed by other sessions
+     * after their keys were read from an index, if the table is not locked.
+     *
+     * @param session the session
+     * @param key the primary key
+     * @return the row, or null if there is no such row
+     */
+    public Row getRowIfExists(Session session, long key) {
+        return getRow(session, key);
+    }
+
     /**
      * Remove a row from the table and all indexes.
      *
@@ -483,6 +525,40 @@ public boolean isLockedExclusivelyBy(Session session) {
         return false;
     }
 
+    /**
+     * Check whether the rows of an UPDATE or DELETE statement may be modified
+     * in batches while the table is still read. This is not possible if the
+     * table references itself, as the referential constraint may only be
+     * satisfied after all rows are modified, and for an UPDATE if a unique
+     * index contains an updated column, as the new value of a row may still
+     * be used by a row of a later batch.
+     *
+     * @param columns the updated columns, or null for a DELETE
+     * @return true if yes
+     */
+    public boolean canModifyRowsInBatches(Set<Column> columns) {
+        if (constraints != null) {
+            for (Constraint constraint : constraints) {
+                if (constraint.getConstraintType() == Constraint.Type.REFERENTIAL
+                        && constraint.getTable() == this && constraint.getRefTable() == this) {
+                    return false;
+                }
+            }
+        }
+        if (columns != null) {
+            for (Index index : getIndexes()) {
+                if (index.getIndexType().isUnique()) {
+                    for (Column column : index.getColumns()) {
+                        if (columns.contains(column)) {
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      * Update a list of rows in this table.
      *
@@ -614,6 +690,9 @@ public void dropMultipleColumnsConstraintsAndIndexes(Session session,
                         continue;
                     }
                     if (index.getColumnIndex(col) < 0) {
+                        if (isReferencedByIndex(index, col)) {
+                            throw DbException.get(ErrorCode.COLUMN_IS_REFERENCED_1, index.getSQL(false));
+                        }
                         continue;
                     }
                     if (index.getColumns().length == 1) {
@@ -636,6 +715,21 @@ public void dropMultipleColumnsConstraintsAndIndexes(Session session,
         }
     }
 
+    private static boolean isReferencedByIndex(Index index, Column column) {
+        for (Column c : index.getIncludedColumns()) {
+            if (c == column) {
+                return true;
+            }
+        }
+        Expression condition = index.getCondition();
+        if (condition != null) {
+            HashSet<Column> columns = new HashSet<>();
+            condition.isEverything(ExpressionVisitor.getColumnsVisitor(columns, null));
+            return columns.contains(column);
+        }
+        return false;
+    }
+
     /**
      * Create a new row for a table.
      *
@@ -1110,6 +1204,10 @@ public Index getIndexForColumn(Column column,
         if (indexes != null) {
             for (int i = 1, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
+                if (index.getCondition() != null) {
+                    // doesn't contain all rows
+                    continue;
+                }
                 if (needGetFirstOrLast && !index.canGetFirstOrLast()) {
                     continue;
                 }
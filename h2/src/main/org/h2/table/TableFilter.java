@@ -9,6 +9,7 @@
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map.Entry;
 
 import org.h2.api.ErrorCode;
@@ -22,12 +23,19 @@
 import org.h2.expression.ExpressionColumn;
 import org.h2.expression.condition.Comparison;
 import org.h2.expression.condition.ConditionAndOr;
+import org.h2.index.HashJoinIndex;
 import org.h2.index.Index;
 import org.h2.index.IndexCondition;
 import org.h2.index.IndexCursor;
+import org.h2.index.IndexMergeIndex;
+import org.h2.index.MergeJoinIndex;
 import org.h2.index.IndexLookupBatch;
+import org.h2.index.SkipScanIndex;
 import org.h2.index.ViewIndex;
 import org.h2.message.DbException;
+import org.h2.mvstore.db.MVDelegateIndex;
+import org.h2.mvstore.db.MVPrimaryIndex;
+import org.h2.mvstore.db.MVSecondaryIndex;
 import org.h2.result.Row;
 import org.h2.result.SearchRow;
 import org.h2.result.SortOrder;
@@ -93,6 +101,13 @@ public int compare(TableFilter o1, TableFilter o2) {
      */
     private final ArrayList<IndexCondition> indexConditions = Utils.newSmallArrayList();
 
+    /**
+     * The index conditions of OR conditions. Each element contains the index
+     * conditions of each operand of an OR condition; the rows of each operand
+     * may be found using a different index.
+     */
+    private final ArrayList<ArrayList<ArrayList<IndexCondition>>> indexUnions = Utils.newSmallArrayList();
+
     /**
      * Whether new window conditions should not be accepted.
      */
@@ -259,6 +274,61 @@ public PlanItem getBestPlanItem(Session s, TableFilter[] filters, int filter,
             item = item1;
         }
 
+        if (masks != null && filter > 0 && nestedJoin == null && select != null &&
+                table instanceof RegularTable && item.getIndex().getIndexType().isScan() &&
+                s.getDatabase().getSettings().hashJoin) {
+            // no index can be used for the equality conditions, so reading
+            // the table once into a hash table is better than a scan for each
+            // row of the outer tables
+            HashJoinIndex hashIndex = HashJoinIndex.create(table, masks);
+            if (hashIndex != null) {
+                double cost = hashIndex.getCost(s, masks, filters, filter, null, allColumnsSet);
+                if (cost < item.cost) {
+                    item = new PlanItem();
+                    item.setIndex(hashIndex);
+                    item.setMasks(masks);
+                    item.cost = cost;
+                }
+            }
+        }
+
+        if (masks != null && nestedJoin == null && table instanceof RegularTable &&
+                s.getDatabase().getSettings().skipScan) {
+            // an index may be used for a condition on its second column by
+            // reading the range of each value of its first column
+            for (Index index : table.getIndexes()) {
+                SkipScanIndex skipScan = SkipScanIndex.create(index, masks, indexConditions);
+                if (skipScan != null) {
+                    double cost = skipScan.getCost(s, masks, filters, filter, sortOrder, allColumnsSet);
+                    if (cost < item.cost) {
+                        item = new PlanItem();
+                        item.setIndex(skipScan);
+                        item.setMasks(masks);
+                        item.cost = cost;
+                    }
+                }
+            }
+        }
+
+        if (masks != null && nestedJoin == null && table instanceof RegularTable &&
+                s.getDatabase().getSettings().indexMerge) {
+            // several indexes may be used together by merging the keys of the
+            // rows they find
+            IndexMergeIndex merge = IndexMergeIndex.createIntersection(s, this, filters, filter, masks, sortOrder);
+            for (ArrayList<ArrayList<IndexCondition>> disjuncts : indexUnions) {
+                IndexMergeIndex union = IndexMergeIndex.createUnion(s, this, filters, filter, disjuncts, sortOrder);
+                if (union != null && (merge == null || union.getCost() < merge.getCost())) {
+                    merge = union;
+                }
+            }
+            if (merge != null && merge.getCost() < item.cost) {
+                item = new PlanItem();
+                item.setIndex(merge);
+                item.setMasks(masks);
+                item.cost = merge.getCost();
+            }
+        }
+
         if (nestedJoin != null) {
             setEvaluatable(true);
             item.setNestedJoinPlan(nestedJoin.getBestPlanItem(s, filters, filter, allColumnsSet));
@@ -279,6 +349,66 @@ public PlanItem getBestPlanItem(Session s, TableFilter[] filters, int filter,
         return item;
     }
 
+    /**
+     * Get the plan item to use if this table is joined right after the given
+     * table. If the index of the given table returns the rows in the order of
+     * a column that is compared for equality with the first column of the
+     * index of this table, a merge join is used.
+     *
+     * @param s the session
+     * @param item the best plan item for this table
+     * @param filters all joined table filters
+     * @param filter the index of this table filter, the table filter before
+     *            it is the outer one
+     * @param outerItem the plan item of the outer table filter
+     * @param allColumnsSet the set of all columns
+     * @return the plan item to use
+     */
+    public PlanItem getMergeJoinPlanItem(Session s, PlanItem item, TableFilter[] filters, int filter,
+            PlanItem outerItem, AllColumnsForPlan allColumnsSet) {
+        TableFilter outer = filters[filter - 1];
+        if (select == null || nestedJoin != null || join != null || outer.nestedJoin != null
+                || outer.join != null || outerItem == null || !(table instanceof RegularTable)
+                || !(outer.table instanceof RegularTable) || !s.getDatabase().getSettings().mergeJoin) {
+            return item;
+        }
+        Index index = item.getIndex();
+        Column column = MergeJoinIndex.getOrderColumn(index);
+        Column outerColumn = MergeJoinIndex.getOrderColumn(outerItem.getIndex());
+        if (column == null || outerColumn == null) {
+            return item;
+        }
+        int[] outerMasks = outerItem.getMasks();
+        if (outerMasks != null && (outerMasks[outerColumn.getColumnId()] & IndexCondition.EQUALITY)
+                == IndexCondition.EQUALITY) {
+            // only one value of the outer table is used
+            return item;
+        }
+        for (IndexCondition condition : indexConditions) {
+            if (condition.getCompareType() != Comparison.EQUAL || condition.getColumn() != column
+                    || !condition.isEvaluatable()) {
+                continue;
+            }
+            Expression expr = condition.getExpression();
+            if (expr instanceof ExpressionColumn) {
+                ExpressionColumn ec = (ExpressionColumn) expr;
+                if (ec.getTableFilter() == outer && ec.getColumn() == outerColumn) {
+                    MergeJoinIndex mergeIndex = new MergeJoinIndex(index, column);
+                    double cost = mergeIndex.getCost(s, item.getMasks(), filters, filter, null, allColumnsSet);
+                    if (cost < item.cost) {
+                        PlanItem mergeItem = new PlanItem();
+                        mergeItem.setIndex(mergeIndex);
+                        mergeItem.setMasks(item.getMasks());
+                        mergeItem.cost = cost;
+                        return mergeItem;
+                    }
+                    return item;
+                }
+            }
+        }
+        return item;
+    }
+
     /**
      * Set what plan item (index, cost, masks) to use.
      *
@@ -370,6 +500,7 @@ public void prepare() {
     public void startQuery(Session s) {
         this.session = s;
         scanCount = 0;
+        clearJoinIndex();
         if (nestedJoin != null) {
             nestedJoin.startQuery(s);
         }
@@ -657,6 +788,36 @@ public void addIndexCondition(IndexCondition condition) {
         }
     }
 
+    /**
+     * Add the index conditions of the operands of an OR condition.
+     *
+     * @param disjuncts the index conditions of each operand
+     */
+    public void addIndexUnion(ArrayList<ArrayList<IndexCondition>> disjuncts) {
+        if (!doneWithIndexConditions) {
+            indexUnions.add(disjuncts);
+        }
+    }
+
+    /**
+     * Get the index conditions of the given condition for this table filter,
+     * without adding them to the index conditions of this table filter.
+     *
+     * @param s the session
+     * @param condition the condition
+     * @return the index conditions
+     */
+    public ArrayList<IndexCondition> collectIndexConditions(Session s, Expression condition) {
+        int size = indexConditions.size(), unionCount = indexUnions.size();
+        condition.createIndexConditions(s, this);
+        List<IndexCondition> added = indexConditions.subList(size, indexConditions.size());
+        ArrayList<IndexCondition> list = new ArrayList<>(added);
+        added.clear();
+        // OR conditions within the condition can't be used for the whole table
+        indexUnions.subList(unionCount, indexUnions.size()).clear();
+        return list;
+    }
+
     /**
      * Used to reject all additional index conditions.
      */
@@ -962,7 +1123,7 @@ public boolean isUsed() {
      *
      * @param session the new session
      */
-    void setSession(Session session) {
+    public void setSession(Session session) {
         this.session = session;
     }
 
@@ -1284,6 +1445,22 @@ public boolean hasInComparisons() {
         return false;
     }
 
+    /**
+     * Check whether the rows are read in a single pass over one snapshot of an
+     * MVStore table, so that rows that are modified while the rows are read
+     * are not returned again.
+     *
+     * @return true if yes
+     */
+    public boolean isSnapshotScan() {
+        if (!table.isMVStore() || join != null || nestedJoin != null || joinBatch != null
+                || hasInComparisons()) {
+            return false;
+        }
+        return index instanceof MVPrimaryIndex || index instanceof MVSecondaryIndex
+                || index instanceof MVDelegateIndex || index instanceof IndexMergeIndex;
+    }
+
     /**
      * Add the current row to the array, if there is a current row.
      *
@@ -1316,6 +1493,27 @@ public void visit(TableFilterVisitor visitor) {
         } while (f != null);
     }
 
+    /**
+     * Release the hash tables of hash joins and the cursors of merge joins of
+     * this and all joined tables.
+     */
+    public void clearJoinIndexes() {
+        visit(new TableFilterVisitor() {
+            @Override
+            public void accept(TableFilter f) {
+                f.clearJoinIndex();
+            }
+        });
+    }
+
+    private void clearJoinIndex() {
+        if (index instanceof HashJoinIndex) {
+            ((HashJoinIndex) index).clear();
+        } else if (index instanceof MergeJoinIndex) {
+            ((MergeJoinIndex) index).clear();
+        }
+    }
+
     public boolean isEvaluatable() {
         return evaluatable;
     }
@@ -53,6 +53,7 @@ public void test() throws SQLException {
         testLargeUpdateDelete();
         testCloseConnectionDelete();
         testOrderGroup();
+        testLargeGroup();
         testLimitBufferedResult();
         deleteDb("bigResult");
     }
@@ -424,6 +425,51 @@ private void testLimitBufferedResult() throws SQLException {
         conn.close();
     }
 
+    private void testLargeGroup() throws SQLException {
+        deleteDb("bigResult");
+        Connection conn = getConnection("bigResult");
+        Statement stat = conn.createStatement();
+        int len = getSize(2000, 20000), groups = len / 5;
+        stat.execute("SET MAX_MEMORY_ROWS 10");
+        stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR) AS SELECT X, 'n' || MOD(X, " + groups
+                + ") FROM SYSTEM_RANGE(1, " + len + ")");
+        long[] sums = new long[groups];
+        for (int i = 1; i <= len; i++) {
+            sums[i % groups] += i;
+        }
+        ResultSet rs = stat.executeQuery("SELECT NAME, COUNT(*), SUM(ID), MIN(ID) FROM TEST GROUP BY NAME");
+        boolean[] found = new boolean[groups];
+        int count = 0;
+        while (rs.next()) {
+            int group = Integer.parseInt(rs.getString(1).substring(1));
+            assertFalse(found[group]);
+            found[group] = true;
+            assertEquals(5, rs.getInt(2));
+            assertEquals(sums[group], rs.getLong(3));
+            assertEquals(group == 0 ? groups : group, rs.getInt(4));
+            count++;
+        }
+        assertEquals(groups, count);
+        rs = stat.executeQuery("SELECT NAME, SUM(ID) FROM TEST GROUP BY NAME HAVING COUNT(*) = 5 OFFSET "
+                + (groups - 10) + " ROWS");
+        count = 0;
+        while (rs.next()) {
+            count++;
+        }
+        assertEquals(10, count);
+        rs = stat.executeQuery("SELECT A.NAME, COUNT(B.ID) FROM TEST A LEFT JOIN TEST B "
+                + "ON A.ID = B.ID + " + groups + " GROUP BY A.NAME ORDER BY A.NAME");
+        count = 0;
+        long total = 0;
+        while (rs.next()) {
+            count++;
+            total += rs.getLong(2);
+        }
+        assertEquals(groups, count);
+        assertEquals(len - groups, total);
+        conn.close();
+    }
+
     private void testOrderGroup() throws SQLException {
         deleteDb("bigResult");
         Connection conn = getConnection("bigResult");
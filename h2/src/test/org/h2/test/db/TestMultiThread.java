@@ -21,7 +21,11 @@
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.h2.api.ErrorCode;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.table.Table;
 import org.h2.test.TestAll;
 import org.h2.test.TestBase;
 import org.h2.test.TestDb;
@@ -78,6 +82,7 @@ public void test() throws Exception {
         testConcurrentInsert();
         testConcurrentUpdate();
         testConcurrentUpdate2();
+        testConcurrentTableLocks();
     }
 
     private void testConcurrentSchemaChange() throws Exception {
@@ -551,4 +556,90 @@ private void testConcurrentUpdate2() throws Exception {
             deleteDb("concurrentUpdate2");
         }
     }
+
+    private void testConcurrentTableLocks() throws Exception {
+        if (config.networked) {
+            return;
+        }
+        deleteDb(getTestName());
+        final String url = getURL(getTestName() + ";LOCK_TIMEOUT=10000", true);
+        int threadCount = 4;
+        final int count = 1_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount + 1);
+        Connection conn = getConnection(url);
+        try {
+            conn.createStatement().execute("CREATE TABLE TEST(ID INT)");
+            final AtomicInteger sharedCount = new AtomicInteger();
+            final AtomicInteger exclusiveCount = new AtomicInteger();
+            final AtomicInteger runningCount = new AtomicInteger(threadCount);
+            final ArrayList<Future<Void>> jobs = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                jobs.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        try (Connection taskConn = getConnection(url)) {
+                            taskConn.setAutoCommit(false);
+                            Session session = (Session) ((JdbcConnection) taskConn).getSession();
+                            Table table = getTable(session);
+                            for (int j = 0; j < count; j++) {
+                                table.lock(session, false, true);
+                                sharedCount.incrementAndGet();
+                                Thread.yield();
+                                assertEquals(0, exclusiveCount.get());
+                                assertFalse(table.isLockedExclusively());
+                                sharedCount.decrementAndGet();
+                                // releases the lock
+                                taskConn.commit();
+                            }
+                        } finally {
+                            runningCount.decrementAndGet();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            jobs.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try (Connection taskConn = getConnection(url)) {
+                        taskConn.setAutoCommit(false);
+                        Session session = (Session) ((JdbcConnection) taskConn).getSession();
+                        Table table = getTable(session);
+                        while (runningCount.get() > 0) {
+                            table.lock(session, true, true);
+                            exclusiveCount.incrementAndGet();
+                            // let the other threads try to lock the table
+                            Thread.sleep(1);
+                            assertEquals(0, sharedCount.get());
+                            assertTrue(table.isLockedExclusivelyBy(session));
+                            exclusiveCount.decrementAndGet();
+                            taskConn.commit();
+                        }
+                    }
+                    return null;
+                }
+            }));
+            // check for exceptions, including lock timeouts
+            for (Future<Void> job : jobs) {
+                job.get(5, TimeUnit.MINUTES);
+            }
+            // no lock is left behind
+            Session session = (Session) ((JdbcConnection) conn).getSession();
+            Table table = getTable(session);
+            conn.setAutoCommit(false);
+            table.lock(session, true, true);
+            assertTrue(table.isLockedExclusivelyBy(session));
+            conn.commit();
+            assertFalse(table.isLockedExclusively());
+        } finally {
+            IOUtils.closeSilently(conn);
+            executor.shutdown();
+            executor.awaitTermination(20, TimeUnit.SECONDS);
+        }
+        deleteDb(getTestName());
+    }
+
+    private static Table getTable(Session session) {
+        return session.getDatabase().getSchema("PUBLIC").findTableOrView(session, "TEST");
+    }
 }
@@ -17,6 +17,8 @@
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import org.h2.api.ErrorCode;
+import org.h2.expression.ExpressionCompiler;
+import org.h2.table.ColumnStatistics;
 import org.h2.test.TestBase;
 import org.h2.test.TestDb;
 import org.h2.tools.SimpleResultSet;
@@ -47,6 +49,7 @@ public void test() throws Exception {
         testOrderByExpression();
         testGroupSubquery();
         testAnalyzeLob();
+        testColumnStatistics();
         testLike();
         testExistsSubquery();
         testQueryCacheConcurrentUse();
@@ -62,14 +65,28 @@ public void test() throws Exception {
         testNestedInSelectAndLike();
         testNestedInSelect();
         testInSelectJoin();
+        testHashJoin();
+        testMergeJoin();
+        testManyJoins();
+        testParallelAggregation();
+        testBatchEvaluation();
+        testCompiledExpressions();
         testMinMaxNullOptimization();
         testUseCoveringIndex();
+        testIncludedColumns();
+        testPartialIndex();
+        testBatchedLookups();
+        testSkipScan();
+        testLooseIndexScan();
+        testIndexMerge();
+        testBatchedDataChange();
         // testUseIndexWhenAllColumnsNotInOrderBy();
         if (config.networked) {
             return;
         }
         testOptimizeInJoinSelect();
         testOptimizeInJoin();
+        testSubqueryMemo();
         testMultiColumnRangeQuery();
         testDistinctOptimization();
         testQueryCacheTimestamp();
@@ -195,6 +212,56 @@ private void testAnalyzeLob() throws Exception {
         conn.close();
     }
 
+    private void testColumnStatistics() throws Exception {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        // A is 0 in 90% of the rows and unique otherwise
+        stat.execute("create table test(id int primary key, a int, b int) as "
+                + "select x, case when mod(x, 10) = 0 then x else 0 end, mod(x, 100) "
+                + "from system_range(1, 10000)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create index idx_b on test(b)");
+        stat.execute("analyze");
+        ResultSet rs = stat.executeQuery("select value, frequency from information_schema.column_statistics "
+                + "where table_name = 'TEST' and column_name = 'A' and statistics_type = 'MOST_COMMON_VALUE'");
+        assertTrue(rs.next());
+        assertEquals("0", rs.getString(1));
+        assertEquals(900, Math.round(rs.getDouble(2) * 1000));
+        assertFalse(rs.next());
+        rs = stat.executeQuery("select count(*) from information_schema.column_statistics "
+                + "where table_name = 'TEST' and column_name = 'A' and statistics_type = 'HISTOGRAM_BOUND'");
+        rs.next();
+        assertEquals(ColumnStatistics.MAX_BUCKETS + 1, rs.getInt(1));
+        assertColumnStatisticsPlans(stat);
+        conn.close();
+        // the statistics are persistent
+        if (!config.memory) {
+            conn = getConnection("optimizations");
+            stat = conn.createStatement();
+            assertColumnStatisticsPlans(stat);
+            conn.close();
+        }
+        conn = getConnection("optimizations");
+        conn.createStatement().execute("drop table test");
+        conn.close();
+    }
+
+    private void assertColumnStatisticsPlans(Statement stat) throws SQLException {
+        // a common value
+        ResultSet rs = stat.executeQuery("explain select * from test where a = 0 and b = 5");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_B");
+        // a rare value
+        rs = stat.executeQuery("explain select * from test where a = 10 and b = 5");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_A");
+        // a small range
+        rs = stat.executeQuery("explain select * from test where a > 9900 and b = 5");
+        rs.next();
+        assertContains(rs.getString(1), "IDX_A");
+    }
+
     private void testLike() throws Exception {
         Connection conn = getConnection("optimizations");
         Statement stat = conn.createStatement();
@@ -573,6 +640,301 @@ private void testInSelectJoin() throws SQLException {
         conn.close();
     }
 
+    private void testMergeJoin() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table p(id int primary key, name varchar) " +
+                "as select x, 'p' || x from system_range(1, 1000)");
+        stat.execute("create table c(id int primary key, pid int, v int) " +
+                "as select x, case when mod(x, 10) = 0 then null else mod(x * 7, 1100) end, x " +
+                "from system_range(1, 5000)");
+        stat.execute("create index idx_c on c(pid)");
+        String[] queries = {
+                "select count(*), sum(c.v) from p inner join c on c.pid = p.id",
+                "select count(*), sum(c.v) from p inner join c on c.pid = p.id where p.id between 100 and 500",
+                "select count(*), sum(c.v) from p inner join c on c.pid = p.id where c.v > 2500",
+        };
+        for (String query : queries) {
+            ResultSet rs = stat.executeQuery("explain " + query);
+            rs.next();
+            assertContains(rs.getString(1), "mergeJoin");
+            rs = stat.executeQuery(query);
+            rs.next();
+            String result = rs.getString(1) + " " + rs.getString(2);
+            String other = query.replace("c.pid = p.id", "c.pid = p.id + 0");
+            rs = stat.executeQuery("explain " + other);
+            rs.next();
+            assertFalse(rs.getString(1).contains("mergeJoin"));
+            rs = stat.executeQuery(other);
+            rs.next();
+            assertEquals(rs.getString(1) + " " + rs.getString(2), result);
+        }
+        // the merge join is also used if c is the first table of the query
+        ResultSet rs = stat.executeQuery("explain select max(c.id) from c inner join p on c.pid = p.id " +
+                "group by c.pid");
+        rs.next();
+        assertContains(rs.getString(1), "/* PUBLIC.IDX_C.mergeJoin: PID = P.ID */");
+        stat.execute("drop table p, c");
+        conn.close();
+    }
+
+    private void testParallelAggregation() throws SQLException {
+        if (!config.mvStore) {
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id identity, a int, b varchar, c double) " +
+                "as select x, mod(x, 100), 'b' || mod(x * 7, 1000), x / 4 from system_range(1, 50000)");
+        stat.execute("delete from test where id between 10000 and 20000");
+        String[] queries = {
+                "select count(*), count(a), sum(a), min(b), max(b), avg(a), bit_or(a), every(a < 99), " +
+                        "round(stddev_pop(c), 6), round(var_samp(c), 6) from test",
+                "select count(*), sum(c) from test where b like 'b1%'",
+                "select a, count(*), sum(c), max(b) from test group by a order by a",
+                "select a + 1, count(b) filter (where c > 100), avg(c) from test " +
+                        "group by a having count(*) > 300 order by 1",
+                "select b, count(*) from test where a > 90 group by b order by b",
+                "select sum(a) from test where a > (select 50)",
+                "select count(*) from test where id > 45000",
+        };
+        for (String query : queries) {
+            stat.execute("set parallelism 1");
+            String expected = getResult(stat.executeQuery(query));
+            stat.execute("set parallelism 4");
+            assertEquals(expected, getResult(stat.executeQuery(query)));
+        }
+        PreparedStatement prep = conn.prepareStatement("select a, sum(c) from test where a < ? group by a order by a");
+        prep.setInt(1, 10);
+        stat.execute("set parallelism 1");
+        String expected = getResult(prep.executeQuery());
+        stat.execute("set parallelism 4");
+        assertEquals(expected, getResult(prep.executeQuery()));
+        conn.setAutoCommit(false);
+        stat.execute("insert into test values (null, 1000, 'x', 1)");
+        assertEquals("1", getResult(stat.executeQuery("select count(*) from test where a = 1000")));
+        conn.rollback();
+        assertEquals("0", getResult(stat.executeQuery("select count(*) from test where a = 1000")));
+        // errors and the query timeout also stop the other threads
+        assertThrows(ErrorCode.DIVISION_BY_ZERO_1, stat).executeQuery("select sum(1 / (a - 50)) from test");
+        stat.execute("set query_timeout 10");
+        assertThrows(ErrorCode.STATEMENT_WAS_CANCELED, stat).
+                executeQuery("select count(*) from test where repeat(b, 10000) like '%x%'");
+        stat.execute("set query_timeout 0");
+        assertEquals("39999", getResult(stat.executeQuery("select count(*) from test")));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testBatchEvaluation() throws SQLException {
+        String[] queries = {
+                "select id, a from test where a = 3 and b like 'b1%'",
+                "select id from test where a < 2 or c > 1490 or b is null",
+                "select id, b from test where not (a > 5) and b like '%9'",
+                "select id from test where a + 1 = mod(id, 100) and abs(c - 100) < 10",
+                "select id from test where lower(b) = 'b17' or upper(b) = 'B18'",
+                "select id from test where e = 'y' and _rowid_ < 100",
+                "select id from test where b is not null and a between 10 and 12 limit 20 offset 5",
+                "select id from test where a in (1, 2) and c > (select 1000)",
+                "select id, id / a from test where a > 97 and id / a > 1000",
+                "select rownum, id from test where a = 5 or a = 7",
+                "select * from test where a = ? or b = ?",
+        };
+        String[] expected = null;
+        for (String settings : new String[] { ";BATCH_EVALUATION=FALSE", "" }) {
+            deleteDb("optimizations");
+            Connection conn = getConnection("optimizations" + settings);
+            Statement stat = conn.createStatement();
+            stat.execute("create table test(id int primary key, a int, b varchar, c double, e enum('x', 'y')) " +
+                    "as select x, mod(x, 100), case when mod(x, 13) = 0 then null else 'b' || mod(x * 7, 1000) end, " +
+                    "x / 2, case when mod(x, 3) = 0 then 'y' else 'x' end from system_range(1, 3000)");
+            String[] results = new String[queries.length];
+            for (int i = 0; i < queries.length; i++) {
+                PreparedStatement prep = conn.prepareStatement(queries[i]);
+                if (prep.getParameterMetaData().getParameterCount() > 0) {
+                    prep.setInt(1, 7);
+                    prep.setString(2, "b21");
+                }
+                results[i] = getResult(prep.executeQuery());
+            }
+            if (expected == null) {
+                expected = results;
+            } else {
+                for (int i = 0; i < queries.length; i++) {
+                    assertEquals(queries[i], expected[i], results[i]);
+                }
+            }
+            // the condition is not evaluated for rows after the limit
+            ResultSet rs = stat.executeQuery("select count(*) from " +
+                    "(select id from test where 1 / (id - 20) <= 0 limit 18)");
+            rs.next();
+            assertEquals(18, rs.getInt(1));
+            rs = stat.executeQuery("select id from test where 1 / (id - 20) <= 0 limit 3 offset 16");
+            assertTrue(rs.next());
+            assertEquals(17, rs.getInt(1));
+            conn.close();
+        }
+        deleteDb("optimizations");
+    }
+
+    private void testCompiledExpressions() throws SQLException {
+        String[] queries = {
+                "select id, a + b, a * 2 - 1, c / 4, -c from test where a > 10 and b < 50",
+                "select id from test where a = 3 or b is null or not (c > 100)",
+                "select id, a = b, a <> b or c < 0 from test where (a > 90 or b > 90) and d",
+                "select id from test where a is not distinct from b or b is distinct from 4",
+                "select id, a / b, mod(a, b) from test where b <> 0 and c >= a",
+                "select id, c * 1.5 from test where c * 1.5 between 10 and 20",
+                "select id, e + 1 from test where e > 0 and _rowid_ < 500",
+                "select a * a * a * a * a from test where id > 990",
+                "select id from test where a / (b - b) > 0",
+                "select id from test where e + e > 0",
+                "select id, -a, -e from test where -e < -998 or -b > -2",
+                "select id from test where a > ? and c < ?",
+        };
+        String[] expected = null;
+        for (String settings : new String[] { "", ";COMPILE_EXPRESSIONS=TRUE" }) {
+            deleteDb("optimizations");
+            Connection conn = getConnection("optimizations" + settings);
+            Statement stat = conn.createStatement();
+            stat.execute("create table test(id int primary key, a int, b int, c double, d boolean, e bigint) " +
+                    "as select x, mod(x, 100), case when mod(x, 11) = 0 then null else mod(x * 7, 100) end, " +
+                    "(x - 500) / 3.0, mod(x, 3) = 0, case when x = 1000 then 9223372036854775807 else x end " +
+                    "from system_range(1, 1000)");
+            long compiledCount = ExpressionCompiler.getCompiledCount();
+            String[] results = new String[queries.length + 1];
+            for (int i = 0; i < queries.length; i++) {
+                try {
+                    PreparedStatement prep = conn.prepareStatement(queries[i]);
+                    if (prep.getParameterMetaData().getParameterCount() > 0) {
+                        prep.setInt(1, 95);
+                        prep.setDouble(2, 0);
+                    }
+                    results[i] = getResult(prep.executeQuery());
+                } catch (SQLException e) {
+                    results[i] = "error " + e.getErrorCode();
+                }
+            }
+            PreparedStatement prep = conn.prepareStatement("select id from test where a < ?");
+            prep.setInt(1, 2);
+            String result = getResult(prep.executeQuery());
+            prep.setString(1, "3");
+            result += getResult(prep.executeQuery());
+            prep.setNull(1, Types.INTEGER);
+            results[queries.length] = result + getResult(prep.executeQuery());
+            compiledCount = ExpressionCompiler.getCompiledCount() - compiledCount;
+            if (settings.isEmpty()) {
+                assertEquals(0, compiledCount);
+            } else {
+                // at least one condition or expression of each query
+                assertTrue(compiledCount >= queries.length);
+            }
+            if (expected == null) {
+                expected = results;
+            } else {
+                for (int i = 0; i < results.length; i++) {
+                    assertEquals(i < queries.length ? queries[i] : "parameters", expected[i], results[i]);
+                }
+            }
+            conn.close();
+        }
+        deleteDb("optimizations");
+    }
+
+    private static String getResult(ResultSet rs) throws SQLException {
+        StringBuilder builder = new StringBuilder();
+        int columnCount = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1) {
+                    builder.append(' ');
+                }
+                builder.append(rs.getString(i));
+            }
+        }
+        return builder.toString();
+    }
+
+    private void testHashJoin() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations;MAX_MEMORY_ROWS=100");
+        Statement stat = conn.createStatement();
+        stat.execute("create table a(id int primary key, x int) " +
+                "as select x, mod(x, 50) from system_range(1, 2000)");
+        stat.execute("create table b(id int primary key, y int, name varchar) " +
+                "as select x, nullif(mod(x, 70), 0), 'b' || x from system_range(1, 3000)");
+        String[] queries = {
+                "select count(*), sum(b.id) from a inner join b on a.x = b.y",
+                "select count(*), sum(b.id), count(b.id) from a left join b on a.x = b.y",
+                "select count(*) from a left join b on a.x = b.y where b.id is null",
+        };
+        String[] results = new String[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            ResultSet rs = stat.executeQuery("explain " + queries[i]);
+            rs.next();
+            assertContains(rs.getString(1), "hashJoin");
+            rs = stat.executeQuery(queries[i]);
+            rs.next();
+            results[i] = rs.getString(1) + " " + rs.getString(rs.getMetaData().getColumnCount());
+        }
+        // rows of A with x = 0 have no match, all other rows match 43 rows
+        assertEquals("84280 125998600", results[0]);
+        assertEquals("84320 84280", results[1]);
+        assertEquals("40 40", results[2]);
+        stat.execute("create index idx_a on a(x)");
+        stat.execute("create index idx_b on b(y)");
+        for (int i = 0; i < queries.length; i++) {
+            ResultSet rs = stat.executeQuery("explain " + queries[i]);
+            rs.next();
+            assertFalse(rs.getString(1).contains("hashJoin"));
+            rs = stat.executeQuery(queries[i]);
+            rs.next();
+            assertEquals(results[i], rs.getString(1) + " " + rs.getString(rs.getMetaData().getColumnCount()));
+        }
+        stat.execute("drop table a, b");
+        conn.close();
+    }
+
+    private void testManyJoins() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        int count = 12;
+        StringBuilder from = new StringBuilder();
+        StringBuilder where = new StringBuilder("T0.ID = 1");
+        for (int i = 0; i < count; i++) {
+            stat.execute("create table t" + i + "(id int primary key, p int) " +
+                    "as select x, x from system_range(1, 100)");
+            // the tables are listed in an unfavorable order
+            from.insert(0, i == 0 ? "t0" : "t" + i + ", ");
+            if (i > 0) {
+                where.append(" and t").append(i - 1).append(".p = t").append(i).append(".id");
+            }
+        }
+        String sql = "select count(*) from " + from + " where " + where;
+        ResultSet rs = stat.executeQuery("explain " + sql);
+        rs.next();
+        String plan = rs.getString(1);
+        assertFalse(plan, plan.contains("tableScan"));
+        assertContains(plan, "FROM \"PUBLIC\".\"T0\"");
+        for (int i = 0; i < 3; i++) {
+            rs = stat.executeQuery("explain " + sql);
+            rs.next();
+            assertEquals(plan, rs.getString(1));
+        }
+        rs = stat.executeQuery(sql);
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        for (int i = 0; i < count; i++) {
+            stat.execute("drop table t" + i);
+        }
+        conn.close();
+    }
 
     private void testOptimizeInJoinSelect() throws SQLException {
         deleteDb("optimizations");
@@ -604,6 +966,53 @@ public static ResultSet optimizeInJoinSelect() {
         return rs;
     }
 
+    private void testSubqueryMemo() throws SQLException {
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create alias count_calls deterministic for \"" +
+                getClass().getName() + ".countCalls\"");
+        stat.execute("create table t(id int primary key, k int) " +
+                "as select x, mod(x, 10) from system_range(1, 1000)");
+        stat.execute("create table u(k int, v int) " +
+                "as select mod(x, 10), x from system_range(1, 100)");
+        String sql = "select id, k, (select sum(count_calls(v)) from u where u.k = t.k) from t";
+        calls = 0;
+        ResultSet rs = stat.executeQuery(sql);
+        while (rs.next()) {
+            int k = rs.getInt(2);
+            // the sum of the values k + 10 * i for i from 0 to 9, or
+            // 10 + 10 * i for k = 0
+            assertEquals(k == 0 ? 550 : 10 * k + 450, rs.getInt(3));
+        }
+        // the subquery is evaluated once for each distinct value of t.k
+        assertEquals(100, calls);
+        stat.execute("update u set v = v + 1 where k = 1");
+        rs = stat.executeQuery(sql + " where k = 1");
+        while (rs.next()) {
+            assertEquals(470, rs.getInt(3));
+        }
+        stat.execute("drop table t, u");
+        stat.execute("drop alias count_calls");
+        conn.close();
+    }
+
+    /**
+     * The number of calls of the function countCalls.
+     */
+    static int calls;
+
+    /**
+     * This method is called via reflection from the database.
+     *
+     * @param x the value
+     * @return the value
+     */
+    public static int countCalls(int x) {
+        calls++;
+        return x;
+    }
+
     private void testOptimizeInJoin() throws SQLException {
         deleteDb("optimizations");
         Connection conn = getConnection("optimizations");
@@ -1147,7 +1556,7 @@ private void testConvertOrToIn() throws SQLException {
 
     private void testUseCoveringIndex() throws SQLException {
         deleteDb("optimizations");
-        Connection conn = getConnection("optimizations");
+        Connection conn = getConnection("optimizations;MERGE_JOIN=FALSE");
         Statement stat = conn.createStatement();
         stat.execute("CREATE TABLE TABLE_A(id IDENTITY PRIMARY KEY NOT NULL, " +
                 "name VARCHAR NOT NULL, active BOOLEAN DEFAULT TRUE, " +
@@ -1179,6 +1588,362 @@ private void testUseCoveringIndex() throws SQLException {
         conn.close();
     }
 
+    private void testIncludedColumns() throws SQLException {
+        if (!config.mvStore) {
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, a int, b varchar, c int) " +
+                "as select x, mod(x, 100), 'b' || x, x from system_range(1, 1000)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create index idx_a_b on test(a) include(b)");
+        ResultSet rs = stat.executeQuery("select sql from information_schema.indexes " +
+                "where index_name = 'IDX_A_B'");
+        rs.next();
+        assertContains(rs.getString(1), "(\"A\") INCLUDE(\"B\")");
+        // the index that contains all columns of the query is used
+        rs = stat.executeQuery("explain select b from test where a = 5");
+        rs.next();
+        assertContains(rs.getString(1), "/* PUBLIC.IDX_A_B: A = 5 */");
+        stat.execute("update test set b = 'x' where id = 105");
+        rs = stat.executeQuery("select id, b from test where a = 5 and b >= 'x'");
+        assertTrue(rs.next());
+        assertEquals(105, rs.getInt(1));
+        assertEquals("x", rs.getString(2));
+        assertFalse(rs.next());
+        assertThrows(ErrorCode.COLUMN_IS_REFERENCED_1, stat).
+                execute("alter table test drop column b");
+        assertThrows(ErrorCode.DUPLICATE_COLUMN_NAME_1, stat).
+                execute("create index idx_a_a on test(a) include(a)");
+        assertThrows(ErrorCode.SYNTAX_ERROR_1, stat).
+                execute("create hash index idx_a_c on test(a) include(c)");
+        conn.close();
+        if (!config.memory) {
+            conn = getConnection("optimizations");
+            stat = conn.createStatement();
+            rs = stat.executeQuery("select count(*), sum(length(b)) from test where a = 5");
+            rs.next();
+            assertEquals(10, rs.getInt(1));
+            assertEquals(35, rs.getInt(2));
+            stat.execute("drop table test");
+            conn.close();
+        }
+    }
+
+    private void testPartialIndex() throws SQLException {
+        if (!config.mvStore) {
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, status varchar, k int, v int) " +
+                "as select x, case when mod(x, 100) = 0 then 'P' else 'D' end, mod(x, 10), x " +
+                "from system_range(1, 10000)");
+        stat.execute("create index idx_k on test(k) where status = 'P'");
+        stat.execute("create index idx_v on test(v) where v > 5000");
+        ResultSet rs = stat.executeQuery("select sql from information_schema.indexes " +
+                "where index_name = 'IDX_K'");
+        rs.next();
+        assertContains(rs.getString(1), "(\"K\") WHERE \"STATUS\" = 'P'");
+        // the index is only used if the query implies the index condition
+        String[][] plans = {
+                { "status = 'P' and k = 0", "IDX_K" },
+                { "k = 0", "tableScan" },
+                { "status in ('P') and k = 0", "IDX_K" },
+                { "status in ('P', 'D') and k = 0", "tableScan" },
+                { "v > 6000", "IDX_V" },
+                { "v between 6000 and 7000", "IDX_V" },
+                { "v = 5001", "IDX_V" },
+                { "v >= 5000", "tableScan" },
+                { "v < 9000", "tableScan" },
+        };
+        for (String[] plan : plans) {
+            rs = stat.executeQuery("explain select * from test where " + plan[0]);
+            rs.next();
+            assertContains(rs.getString(1), plan[1]);
+        }
+        rs = stat.executeQuery("explain select * from test order by k");
+        rs.next();
+        assertContains(rs.getString(1), "tableScan");
+        rs = stat.executeQuery("select min(k), max(k), count(*) from test");
+        rs.next();
+        assertEquals(0, rs.getInt(1));
+        assertEquals(9, rs.getInt(2));
+        assertEquals(10000, rs.getInt(3));
+        // rows are added to and removed from the index when they change
+        String query = "select count(*), sum(v) from test where status = 'P' and k = 0";
+        rs = stat.executeQuery(query);
+        rs.next();
+        assertEquals(100, rs.getInt(1));
+        assertEquals(505000, rs.getInt(2));
+        stat.execute("update test set status = 'P' where id = 10");
+        stat.execute("update test set status = 'D' where id = 100");
+        stat.execute("update test set k = 1 where id = 200");
+        stat.execute("delete from test where id = 300");
+        rs = stat.executeQuery(query);
+        rs.next();
+        assertEquals(98, rs.getInt(1));
+        assertEquals(505000 + 10 - 100 - 200 - 300, rs.getInt(2));
+        // a unique partial index only checks the rows of the index
+        stat.execute("create unique index idx_u on test(k) where status = 'X'");
+        stat.execute("insert into test values (-1, 'X', 1, 0), (-2, 'Y', 1, 0)");
+        assertThrows(ErrorCode.DUPLICATE_KEY_1, stat).
+                execute("insert into test values (-3, 'X', 1, 0)");
+        assertThrows(ErrorCode.COLUMN_IS_REFERENCED_1, stat).
+                execute("alter table test drop column status");
+        assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).
+                execute("create index idx_r on test(k) where rand() < 0.5");
+        assertThrows(ErrorCode.FEATURE_NOT_SUPPORTED_1, stat).
+                execute("create index idx_r on test(k) where k in (select 1)");
+        conn.close();
+        if (!config.memory) {
+            conn = getConnection("optimizations");
+            stat = conn.createStatement();
+            rs = stat.executeQuery(query);
+            rs.next();
+            assertEquals(98, rs.getInt(1));
+            stat.execute("drop table test");
+            conn.close();
+        }
+    }
+
+    private void testBatchedLookups() throws SQLException {
+        if (!config.mvStore) {
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table dim(id int primary key, g int, name varchar) " +
+                "as select x, mod(x, 50), 'n' || x from system_range(1, 2000)");
+        stat.execute("create index idx_g on dim(g)");
+        stat.execute("create table dim2(name varchar) as select 'm' || x from system_range(1, 2000)");
+        stat.execute("create table fact(id int primary key, d int, name varchar) " +
+                "as select x, mod(x * 7, 2100), 'n' || mod(x, 30) from system_range(1, 5000)");
+        String[][] queries = {
+                { "select f.id, d.name from fact f inner join dim d on d.id = f.d where f.id < 300 order by f.id",
+                        "batched:sorted PUBLIC.PRIMARY_KEY" },
+                { "select f.id, d.id from fact f inner join dim d on d.g = f.d where f.id < 300 order by f.id, d.id",
+                        "batched:sorted PUBLIC.IDX_G" },
+                { "select f.id, d.name from fact f left join dim2 d on d._rowid_ = f.d where f.id < 300 order by f.id",
+                        "batched:sorted PUBLIC.DIM2.tableScan" },
+                { "select f.id, d.name from fact f left join dim d on d.id = f.d where f.id < 300 order by f.id",
+                        "batched:sorted" },
+                { "select f.id, d.id from fact f inner join dim d on d.id between f.d and f.d + 2 " +
+                        "where f.id < 300 order by f.id, d.id", "batched:sorted" },
+                { "select f.id, d.id from fact f inner join dim d on d.name = f.name " +
+                        "where f.id < 300 order by f.id, d.id", "hashJoin" },
+        };
+        for (String[] query : queries) {
+            stat.execute("set batch_joins false");
+            String expected = getResult(stat.executeQuery(query[0]));
+            stat.execute("set batch_joins true");
+            ResultSet rs = stat.executeQuery("explain " + query[0]);
+            rs.next();
+            assertContains(rs.getString(1), query[1]);
+            assertEquals(expected, getResult(stat.executeQuery(query[0])));
+        }
+        // lookups without index conditions are not batched
+        ResultSet rs = stat.executeQuery("explain select * from fact f inner join dim2 d on d.name = f.name");
+        rs.next();
+        assertFalse(rs.getString(1).contains("batched"));
+        // rows are locked through the rows of the table filters
+        rs = stat.executeQuery("explain select * from fact f left join dim d on d.id = f.d for update");
+        rs.next();
+        assertFalse(rs.getString(1).contains("batched"));
+        stat.execute("drop table fact, dim, dim2");
+        conn.close();
+    }
+
+    private void testSkipScan() throws SQLException {
+        if (!config.mvStore) {
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, tenant int, created int, u int) " +
+                "as select x, mod(x, 10), x / 10, x from system_range(1, 50000)");
+        stat.execute("insert into test values (-1, null, 100, null)");
+        stat.execute("create index idx_t on test(tenant, created)");
+        stat.execute("create index idx_u on test(u, created)");
+        String query = "select count(*), sum(id) from test where created between 100 and 102";
+        // the number of distinct values of the first column is not known
+        ResultSet rs = stat.executeQuery("explain " + query);
+        rs.next();
+        assertContains(rs.getString(1), "tableScan");
+        stat.execute("analyze");
+        rs = stat.executeQuery("explain " + query);
+        rs.next();
+        assertContains(rs.getString(1), "/* PUBLIC.IDX_T.skipScan: CREATED >= 100");
+        rs = stat.executeQuery(query);
+        rs.next();
+        assertEquals(31, rs.getInt(1));
+        assertEquals(30434, rs.getInt(2));
+        rs = stat.executeQuery("select id from test where created = 100 order by tenant, id");
+        assertEquals("-1\n1000\n1001\n1002\n1003\n1004\n1005\n1006\n1007\n1008\n1009", getResult(rs));
+        rs = stat.executeQuery("select count(*) from test where created < 3");
+        rs.next();
+        assertEquals(29, rs.getInt(1));
+        // the first column has too many distinct values
+        stat.execute("drop index idx_t");
+        rs = stat.executeQuery("explain " + query);
+        rs.next();
+        assertFalse(rs.getString(1).contains("skipScan"));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testLooseIndexScan() throws SQLException {
+        if (!config.mvStore) {
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, device int, ts int, v int) " +
+                "as select x, mod(x, 4), case when mod(x, 7) = 0 then null else x end, x " +
+                "from system_range(1, 20000)");
+        stat.execute("insert into test values (-1, null, 5, 0), (-2, 9, null, 0)");
+        stat.execute("create index idx_d on test(device, ts)");
+        String query = "select device, min(ts), max(ts) from test group by device order by device";
+        String expected = "null 5 5\n0 4 20000\n1 1 19997\n2 2 19998\n3 3 19995\n9 null null";
+        // the number of distinct values of the first column is not known
+        ResultSet rs = stat.executeQuery("explain " + query);
+        rs.next();
+        assertFalse(rs.getString(1).contains("looseScan"));
+        stat.execute("analyze");
+        rs = stat.executeQuery("explain " + query);
+        rs.next();
+        assertContains(rs.getString(1), "/* PUBLIC.IDX_D.looseScan */");
+        assertEquals(expected, getResult(stat.executeQuery(query)));
+        rs = stat.executeQuery("select device, max(ts) from test where device in(1, 2) group by device");
+        assertEquals("1 19997\n2 19998", getResult(rs));
+        // other columns need all rows
+        rs = stat.executeQuery("explain select device, max(v) from test group by device");
+        rs.next();
+        assertFalse(rs.getString(1).contains("looseScan"));
+        rs = stat.executeQuery("explain select device, count(ts) from test group by device");
+        rs.next();
+        assertFalse(rs.getString(1).contains("looseScan"));
+        rs = stat.executeQuery("explain select device, max(ts) from test where v > 0 group by device");
+        rs.next();
+        assertFalse(rs.getString(1).contains("looseScan"));
+        // NULL is sorted last in descending indexes
+        stat.execute("drop index idx_d");
+        stat.execute("create index idx_d on test(device, ts desc)");
+        rs = stat.executeQuery("explain " + query);
+        rs.next();
+        assertContains(rs.getString(1), "looseScan");
+        assertEquals(expected, getResult(stat.executeQuery(query)));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testIndexMerge() throws SQLException {
+        if (!config.mvStore) {
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, a int, b int, c int) " +
+                "as select x, mod(x, 100), mod(x / 7, 100), x from system_range(1, 20000)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create index idx_b on test(b)");
+        stat.execute("analyze");
+        ResultSet rs = stat.executeQuery("explain select * from test where a = 5 or b = 7");
+        rs.next();
+        assertContains(rs.getString(1), "/* PUBLIC.IDX_A.union(PUBLIC.IDX_B) */");
+        assertEquals(getResult(stat.executeQuery("select count(*), sum(id) from test where a + 0 = 5 or b + 0 = 7")),
+                getResult(stat.executeQuery("select count(*), sum(id) from test where a = 5 or b = 7")));
+        rs = stat.executeQuery("explain select * from test where a = 5 and b = 7");
+        rs.next();
+        assertContains(rs.getString(1), "/* PUBLIC.IDX_A.intersect(PUBLIC.IDX_B): A = 5");
+        assertEquals(getResult(stat.executeQuery("select id from test where a + 0 = 5 and b + 0 = 7 order by id")),
+                getResult(stat.executeQuery("select id from test where a = 5 and b = 7 order by id")));
+        // the conditions outside of the OR condition are used for each operand
+        assertEquals(getResult(stat.executeQuery(
+                "select count(*), sum(id) from test where (a + 0 = 5 or b + 0 = 7 or a + 0 in(8, 9)) and id > 1000")),
+                getResult(stat.executeQuery(
+                "select count(*), sum(id) from test where (a = 5 or b = 7 or a in(8, 9)) and id > 1000")));
+        // an operand without index conditions needs a table scan
+        rs = stat.executeQuery("explain select * from test where a = 5 or c = 7");
+        rs.next();
+        assertContains(rs.getString(1), "tableScan");
+        PreparedStatement prep = conn.prepareStatement("select count(*) from test where a = ? or b = ?");
+        for (int i = 0; i < 2; i++) {
+            prep.setInt(1, i);
+            prep.setInt(2, i + 1);
+            assertEquals(getResult(stat.executeQuery("select count(*) from test where a + 0 = " + i
+                    + " or b + 0 = " + (i + 1))), getResult(prep.executeQuery()));
+        }
+        assertEquals(getResult(stat.executeQuery("select count(*), sum(t2.id) from test t1 " +
+                "join test t2 on t2.a + 0 = t1.id or t2.b + 0 = t1.id where t1.id < 3")),
+                getResult(stat.executeQuery("select count(*), sum(t2.id) from test t1 " +
+                "join test t2 on t2.a = t1.id or t2.b = t1.id where t1.id < 3")));
+        // rows that are removed by another session while the keys are read
+        // are skipped
+        rs = stat.executeQuery("select count(*) from test where a = 5 or b = 7");
+        rs.next();
+        int count = rs.getInt(1);
+        stat.execute("set lazy_query_execution true");
+        rs = stat.executeQuery("select id from test where a = 5 or b = 7");
+        assertTrue(rs.next());
+        Connection conn2 = getConnection("optimizations");
+        conn2.createStatement().execute("delete from test where id = 19905");
+        conn2.close();
+        int rows = 1;
+        while (rs.next()) {
+            assertFalse(rs.getInt(1) == 19905);
+            rows++;
+        }
+        assertEquals(count - 1, rows);
+        stat.execute("set lazy_query_execution false");
+        stat.execute("drop table test");
+        conn.close();
+    }
+
+    private void testBatchedDataChange() throws SQLException {
+        if (!config.mvStore) {
+            return;
+        }
+        deleteDb("optimizations");
+        Connection conn = getConnection("optimizations;DML_BATCH_SIZE=10");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, a int, b int check b < 2000, u int unique)");
+        stat.execute("create index idx_a on test(a)");
+        stat.execute("create table child(id int primary key, " +
+                "parent int references test(id) on delete cascade)");
+        stat.execute("insert into test select x, x, mod(x, 10), x from system_range(1, 1000)");
+        stat.execute("insert into child select x, x from system_range(1, 1000)");
+        // the rows moved by earlier batches must not be found again
+        assertEquals(1000, stat.executeUpdate("update test set a = a + 500 where a > 0"));
+        assertEquals("1000 1000500", getResult(stat.executeQuery("select count(*), sum(a) from test")));
+        assertEquals(1000, stat.executeUpdate("update test set b = b + 1"));
+        assertEquals("1000 5500", getResult(stat.executeQuery("select count(*), sum(b) from test")));
+        // the new values of the rows must be computed before any row is updated
+        assertEquals(1000, stat.executeUpdate("update test set b = (select max(b) from test) + id"));
+        assertEquals("1000 510500", getResult(stat.executeQuery("select count(*), sum(b) from test")));
+        // a constraint violation in a later batch must undo all batches
+        assertThrows(ErrorCode.CHECK_CONSTRAINT_VIOLATED_1, stat).execute("update test set b = b + 1000");
+        assertEquals("1000 510500", getResult(stat.executeQuery("select count(*), sum(b) from test")));
+        // unique values may only be unique after all rows are updated
+        assertEquals(1000, stat.executeUpdate("update test set u = u + 1"));
+        assertEquals(500, stat.executeUpdate("delete from test where a > 1000"));
+        assertEquals("500 500", getResult(stat.executeQuery("select count(*), count(distinct parent) from child")));
+        stat.execute("drop table child, test");
+        stat.execute("create table test(id int primary key, parent int references test(id))");
+        stat.execute("insert into test select x, nullif(x - 1, 0) from system_range(1, 100)");
+        // a row may only be deleted together with the rows that reference it
+        assertEquals(100, stat.executeUpdate("delete from test"));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
     private void testConditionAndOrDistributiveLaw() throws SQLException {
         deleteDb("optimizations");
         Connection conn = getConnection("optimizations");
@@ -8,9 +8,12 @@
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 
 import org.h2.api.ErrorCode;
+import org.h2.engine.Session;
+import org.h2.jdbc.JdbcConnection;
 import org.h2.test.TestBase;
 import org.h2.test.TestDb;
 
@@ -33,6 +36,9 @@ public void test() throws Exception {
         deleteDb("queryCache");
         test1();
         testClearingCacheWithTableStructureChanges();
+        testSharedCache();
+        testParameterizeLiterals();
+        testResultCache();
         deleteDb("queryCache");
     }
 
@@ -107,4 +113,211 @@ private void testClearingCacheWithTableStructureChanges() throws Exception {
                     prepareStatement("SELECT * FROM TEST");
         }
     }
+
+    private void testSharedCache() throws Exception {
+        deleteDb("queryCache");
+        String url = "queryCache;QUERY_CACHE_SIZE=2;SHARED_QUERY_CACHE_SIZE=10";
+        try (Connection conn = getConnection(url)) {
+            Statement stat = conn.createStatement();
+            stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR)");
+            stat.execute("CREATE SCHEMA S2");
+            stat.execute("CREATE TABLE S2.TEST(ID INT PRIMARY KEY, NAME VARCHAR)");
+            stat.execute("INSERT INTO S2.TEST VALUES (1, 'other')");
+            stat.execute("CREATE USER U2 PASSWORD ''");
+            String select = "SELECT NAME FROM TEST WHERE ID = ?";
+            try (Connection conn2 = getConnection(url)) {
+                PreparedStatement prep = conn2.prepareStatement("INSERT INTO TEST VALUES (?, ?)");
+                prep.setInt(1, 1);
+                prep.setString(2, "a");
+                prep.executeUpdate();
+                prep.close();
+                prep = conn2.prepareStatement(select);
+                prep.setInt(1, 1);
+                assertEquals("a", getSingleValue(prep));
+                prep.close();
+                // statements are passed to the shared cache on eviction
+                conn2.createStatement().execute("UPDATE TEST SET NAME = 'b' WHERE ID = 1");
+                conn2.createStatement().execute("DELETE FROM TEST WHERE ID = 2");
+            }
+            // statements are passed to the shared cache on close
+            long hitCount = getSharedQueryCacheHitCount(conn);
+            try (Connection conn2 = getConnection(url)) {
+                // settings used only during execution keep the statements
+                conn2.createStatement().execute("SET PARALLELISM 2");
+                conn2.createStatement().execute("SET TRANSACTION_DURABILITY ASYNC");
+                conn2.setAutoCommit(false);
+                PreparedStatement prep = conn2.prepareStatement("INSERT INTO TEST VALUES (?, ?)");
+                prep.setInt(1, 2);
+                prep.setString(2, "c");
+                prep.executeUpdate();
+                prep = conn2.prepareStatement(select);
+                if (!config.networked) {
+                    // both statements were prepared by the previous session
+                    assertEquals(hitCount + 2, getSharedQueryCacheHitCount(conn));
+                }
+                prep.setInt(1, 2);
+                assertEquals("c", getSingleValue(prep));
+                prep.close();
+                try (Connection conn3 = getConnection(url)) {
+                    prep = conn3.prepareStatement(select);
+                    prep.setInt(1, 2);
+                    // uncommitted changes of other sessions are not visible
+                    assertNull(getSingleValue(prep));
+                    prep.setInt(1, 1);
+                    assertEquals("b", getSingleValue(prep));
+                }
+                conn2.rollback();
+            }
+            try (Connection conn2 = getConnection(url)) {
+                conn2.createStatement().execute("SET SCHEMA S2");
+                PreparedStatement prep = conn2.prepareStatement(select);
+                prep.setInt(1, 1);
+                assertEquals("other", getSingleValue(prep));
+            }
+            try (Connection conn2 = getConnection(url, "U2", getPassword(""))) {
+                assertThrows(ErrorCode.NOT_ENOUGH_RIGHTS_FOR_1, conn2).prepareStatement(select);
+            }
+            stat.execute("ALTER TABLE TEST ALTER COLUMN NAME RENAME TO NAME2");
+            try (Connection conn2 = getConnection(url)) {
+                assertThrows(ErrorCode.COLUMN_NOT_FOUND_1, conn2).prepareStatement(select);
+            }
+            stat.execute("DROP TABLE TEST");
+            stat.execute("DROP SCHEMA S2 CASCADE");
+            stat.execute("DROP USER U2");
+        }
+    }
+
+    private void testParameterizeLiterals() throws Exception {
+        deleteDb("queryCache");
+        try (Connection conn = getConnection("queryCache;PARAMETERIZE_LITERALS=TRUE")) {
+            Statement stat = conn.createStatement();
+            stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR, D DATE)");
+            stat.execute("INSERT INTO TEST VALUES (1, 'a', '2001-01-01'), (2, 'b', '2002-02-02')");
+            stat.execute("SET QUERY_STATISTICS TRUE");
+            for (int i = 1; i <= 3; i++) {
+                ResultSet rs = stat.executeQuery("SELECT NAME FROM TEST WHERE ID = " + i);
+                assertEquals(i < 3, rs.next());
+                if (i < 3) {
+                    assertEquals(i == 1 ? "a" : "b", rs.getString(1));
+                }
+            }
+            ResultSet rs = stat.executeQuery("SELECT EXECUTION_COUNT FROM INFORMATION_SCHEMA.QUERY_STATISTICS"
+                    + " WHERE SQL_STATEMENT LIKE 'SELECT NAME FROM TEST WHERE ID = ?%'");
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+            stat.execute("SET QUERY_STATISTICS FALSE");
+            // the literal is converted to the column type
+            rs = stat.executeQuery("SELECT ID FROM TEST WHERE D = '2002-02-02'");
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt(1));
+            assertThrows(ErrorCode.INVALID_DATETIME_CONSTANT_2, stat)
+                    .executeQuery("SELECT ID FROM TEST WHERE D = 'x'");
+            // literals of the select list and in LIKE are not replaced
+            rs = stat.executeQuery("SELECT 'x' FROM TEST WHERE NAME LIKE 'a%'");
+            assertEquals("'x'", rs.getMetaData().getColumnLabel(1));
+            assertTrue(rs.next());
+            assertFalse(rs.next());
+            stat.execute("UPDATE TEST SET NAME = 'c' WHERE ID = 2");
+            rs = stat.executeQuery("SELECT NAME FROM TEST WHERE ID = 2");
+            assertTrue(rs.next());
+            assertEquals("c", rs.getString(1));
+            // comparisons of two literals are not replaced and can be folded
+            stat.execute("SET QUERY_STATISTICS TRUE");
+            rs = stat.executeQuery("SELECT ID FROM TEST WHERE 1 = 0");
+            assertFalse(rs.next());
+            rs = stat.executeQuery("SELECT ID FROM TEST WHERE NAME = 'a' AND (1 = 1)");
+            assertTrue(rs.next());
+            rs = stat.executeQuery("SELECT SQL_STATEMENT FROM INFORMATION_SCHEMA.QUERY_STATISTICS"
+                    + " WHERE SQL_STATEMENT LIKE 'SELECT ID FROM TEST WHERE %' ORDER BY SQL_STATEMENT");
+            assertTrue(rs.next());
+            assertEquals("SELECT ID FROM TEST WHERE 1 = 0", rs.getString(1));
+            assertTrue(rs.next());
+            assertEquals("SELECT ID FROM TEST WHERE NAME = ? AND (1 = 1)", rs.getString(1));
+            assertFalse(rs.next());
+            stat.execute("SET QUERY_STATISTICS FALSE");
+            // replaced literals are not visible to the client
+            PreparedStatement prep = conn.prepareStatement("SELECT ID FROM TEST WHERE NAME = 'a' AND ID = ?");
+            assertEquals(1, prep.getParameterMetaData().getParameterCount());
+            prep.setInt(1, 1);
+            assertEquals("1", getSingleValue(prep));
+            // error messages contain the original statement
+            try {
+                stat.execute("INSERT INTO TEST VALUES (1, 'Hello', NULL)");
+                fail();
+            } catch (SQLException e) {
+                assertEquals(ErrorCode.DUPLICATE_KEY_1, e.getErrorCode());
+                assertContains(e.getMessage(), "'Hello'");
+            }
+            stat.execute("DROP TABLE TEST");
+        }
+    }
+
+    private void testResultCache() throws Exception {
+        deleteDb("queryCache");
+        String url = "queryCache;QUERY_RESULT_CACHE_SIZE=1024";
+        try (Connection conn = getConnection(url); Connection conn2 = getConnection(url)) {
+            Statement stat = conn.createStatement();
+            Statement stat2 = conn2.createStatement();
+            stat.execute("CREATE TABLE TEST(ID INT PRIMARY KEY, NAME VARCHAR)");
+            stat.execute("INSERT INTO TEST VALUES (1, 'a'), (2, 'b')");
+            stat.execute("CREATE ALIAS COUNT_CALLS DETERMINISTIC FOR \"" + getClass().getName() + ".countCalls\"");
+            String query = "SELECT SUM(COUNT_CALLS(ID)) FROM TEST";
+            calls = 0;
+            assertEquals("3", getSingleValue(conn.prepareStatement(query)));
+            assertEquals(2, calls);
+            // the result is reused by other sessions
+            assertEquals("3", getSingleValue(conn2.prepareStatement(query)));
+            assertEquals(2, calls);
+            // uncommitted changes are only visible to the session
+            conn2.setAutoCommit(false);
+            stat2.execute("INSERT INTO TEST VALUES (3, 'c')");
+            assertEquals("6", getSingleValue(conn2.prepareStatement(query)));
+            assertEquals("3", getSingleValue(conn.prepareStatement(query)));
+            conn2.commit();
+            conn2.setAutoCommit(true);
+            assertEquals("6", getSingleValue(conn.prepareStatement(query)));
+            calls = 0;
+            assertEquals("6", getSingleValue(conn2.prepareStatement(query)));
+            assertEquals(0, calls);
+            // local temporary tables are not shared
+            stat.execute("CREATE LOCAL TEMPORARY TABLE T(X INT)");
+            stat2.execute("CREATE LOCAL TEMPORARY TABLE T(X INT)");
+            stat.execute("INSERT INTO T VALUES 1");
+            assertEquals("1", getSingleValue(conn.prepareStatement("SELECT COUNT(*) FROM T")));
+            assertEquals("0", getSingleValue(conn2.prepareStatement("SELECT COUNT(*) FROM T")));
+            stat.execute("DROP TABLE T");
+            stat2.execute("DROP TABLE T");
+            stat.execute("DROP ALIAS COUNT_CALLS");
+            stat.execute("DROP TABLE TEST");
+        }
+    }
+
+    /**
+     * The number of calls of the function countCalls.
+     */
+    static volatile int calls;
+
+    /**
+     * This method is called via reflection from the database.
+     *
+     * @param x the value
+     * @return the value
+     */
+    public static int countCalls(int x) {
+        calls++;
+        return x;
+    }
+
+    private long getSharedQueryCacheHitCount(Connection conn) {
+        if (config.networked) {
+            return 0;
+        }
+        return ((Session) ((JdbcConnection) conn).getSession()).getDatabase().getSharedQueryCacheHitCount();
+    }
+
+    private static String getSingleValue(PreparedStatement prep) throws Exception {
+        try (ResultSet rs = prep.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
 }
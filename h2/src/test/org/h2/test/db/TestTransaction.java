@@ -16,6 +16,9 @@
 import java.util.Random;
 
 import org.h2.api.ErrorCode;
+import org.h2.engine.Database;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.mvstore.MVStore;
 import org.h2.test.TestBase;
 import org.h2.test.TestDb;
 
@@ -44,6 +47,7 @@ public void test() throws Exception {
         testCommitOnAutoCommitChange();
         testConcurrentSelectForUpdate();
         testLogMode();
+        testTransactionDurability();
         testRollback();
         testRollback2();
         testForUpdate();
@@ -159,6 +163,41 @@ private void testLogMode(int logMode) throws SQLException {
         conn.close();
     }
 
+    private void testTransactionDurability() throws SQLException {
+        if (config.memory || !config.mvStore) {
+            return;
+        }
+        deleteDb("transaction");
+        Connection conn = getConnection("transaction;WRITE_DELAY=0;TRANSACTION_DURABILITY=NONE");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key)");
+        MVStore store = ((Database) ((JdbcConnection) conn).getSession().getDataHandler()).getStore().getMvStore();
+        store.commit();
+        stat.execute("insert into test values(1)");
+        assertTrue(store.hasUnsavedChanges());
+        stat.execute("set transaction durability async");
+        stat.execute("insert into test values(2)");
+        assertFalse(store.hasUnsavedChanges());
+        stat.execute("set write_delay 60000");
+        stat.execute("set transaction durability sync");
+        stat.execute("insert into test values(3)");
+        assertFalse(store.hasUnsavedChanges());
+        assertThrows(ErrorCode.INVALID_VALUE_2, stat).execute("set transaction_durability 3");
+        stat.execute("shutdown immediately");
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            // expected
+        }
+        conn = getConnection("transaction");
+        stat = conn.createStatement();
+        ResultSet rs = stat.executeQuery("select count(*) from test");
+        rs.next();
+        assertEquals(3, rs.getInt(1));
+        stat.execute("drop table test");
+        conn.close();
+    }
+
     private void testConcurrentSelectForUpdate() throws SQLException {
         deleteDb("transaction");
         Connection conn = getConnection("transaction");
@@ -17,3 +17,54 @@ insert into person select convert(x,varchar) as firstname, (convert(x,varchar) |
 --
 explain analyze SELECT * FROM person WHERE firstname IN ('FirstName1', 'FirstName2') AND lastname='LastName1';
 >> SELECT "PERSON"."FIRSTNAME", "PERSON"."LASTNAME" FROM "PUBLIC"."PERSON" /* PUBLIC.PERSON_1: FIRSTNAME IN('FirstName1', 'FirstName2') AND LASTNAME = 'LastName1' */ /* scanCount: 1 */ WHERE ("FIRSTNAME" IN('FirstName1', 'FirstName2')) AND ("LASTNAME" = 'LastName1')
+
+drop table person;
+> ok
+
+create table t(id int primary key, owner int, v int);
+> ok
+
+create table acl(obj int, usr int, x int);
+> ok
+
+insert into t values (1, 1, 0), (2, 1, null), (3, 2, 1), (4, null, 2), (5, 5, 2);
+> update count: 5
+
+insert into acl values (1, 1, 0), (2, 1, 1), (3, 2, null), (null, 1, 2), (4, 5, 2);
+> update count: 5
+
+explain select id from t where exists(select 1 from acl where acl.obj = t.id and acl.usr = 1);
+>> SELECT "ID" FROM "PUBLIC"."T" /* PUBLIC.PRIMARY_KEY_5: ID IN(SELECT DISTINCT ACL.OBJ FROM PUBLIC.ACL /++ PUBLIC.ACL.tableScan ++/ WHERE (ACL.OBJ IS NOT NULL) AND (ACL.USR = 1)) */ WHERE ("T"."ID" IS NOT NULL) AND ("T"."ID" IN( SELECT DISTINCT "ACL"."OBJ" FROM "PUBLIC"."ACL" /* PUBLIC.ACL.tableScan */ WHERE ("ACL"."OBJ" IS NOT NULL) AND ("ACL"."USR" = 1)))
+
+select id from t where exists(select 1 from acl where acl.obj = t.id and acl.usr = 1);
+> ID
+> --
+> 1
+> 2
+> rows: 2
+
+select id from t where not exists(select 1 from acl where acl.obj = t.id and acl.usr = t.owner);
+> ID
+> --
+> 4
+> 5
+> rows: 2
+
+select id, v in(select x from acl where acl.usr = t.owner) a, v not in(select x from acl where acl.usr = t.owner) b from t;
+> ID A     B
+> -- ----- -----
+> 1  TRUE  FALSE
+> 2  null  null
+> 3  null  null
+> 4  FALSE TRUE
+> 5  TRUE  FALSE
+> rows: 5
+
+create index acl_obj on acl(obj);
+> ok
+
+explain select id from t where exists(select 1 from acl where acl.obj = t.id and acl.usr = 1);
+>> SELECT "ID" FROM "PUBLIC"."T" /* PUBLIC.T.tableScan */ WHERE EXISTS( SELECT 1 FROM "PUBLIC"."ACL" /* PUBLIC.ACL_OBJ: OBJ = T.ID */ WHERE ("ACL"."USR" = 1) AND ("ACL"."OBJ" = "T"."ID"))
+
+drop table t, acl;
+> ok
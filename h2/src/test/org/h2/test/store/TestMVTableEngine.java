@@ -73,6 +73,7 @@ public void test() throws Exception {
         testGarbageCollectionForLOB();
         testSpatial();
         testCount();
+        testAsOfVersion();
         testMinMaxWithNull();
         testTimeout();
         testExplainAnalyze();
@@ -500,6 +501,74 @@ private void testSpatial() throws SQLException {
         conn.close();
     }
 
+    private void testAsOfVersion() throws Exception {
+        if (config.memory) {
+            return;
+        }
+        deleteDb(getTestName());
+        // each commit completes a version of the store
+        Connection conn = getConnection(getTestName() + ";TRANSACTION_DURABILITY=SYNC");
+        Statement stat = conn.createStatement();
+        stat.execute("create table test(id int primary key, name varchar)");
+        stat.execute("insert into test values(1, 'a')");
+        long v1 = getLastStoreVersion(stat);
+        stat.execute("update test set name = 'b' where id = 1");
+        stat.execute("insert into test values(2, 'c')");
+        long v2 = getLastStoreVersion(stat);
+        assertTrue(v2 > v1);
+
+        ResultSet rs = stat.executeQuery("select name from test as of version " + v1);
+        assertTrue(rs.next());
+        assertEquals("a", rs.getString(1));
+        assertFalse(rs.next());
+        PreparedStatement prep = conn.prepareStatement("select count(*) from test as of version ?");
+        prep.setLong(1, v1);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        prep.setLong(1, v2);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(2, rs.getInt(1));
+        // the version is calculated again for each execution of a nested join
+        prep = conn.prepareStatement("select count(o.id) from test t left join " +
+                "(test as of version ? as o inner join test x on o.id = x.id) on t.id = o.id");
+        prep.setLong(1, v1);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(1, rs.getInt(1));
+        prep.setLong(1, v2);
+        rs = prep.executeQuery();
+        rs.next();
+        assertEquals(2, rs.getInt(1));
+        rs = stat.executeQuery("select t.name, o.name from test t " +
+                "join test as of version " + v1 + " as o on t.id = o.id");
+        assertTrue(rs.next());
+        assertEquals("b", rs.getString(1));
+        assertEquals("a", rs.getString(2));
+        assertFalse(rs.next());
+        rs = stat.executeQuery("select count(*) from test as of timestamp current_timestamp");
+        rs.next();
+        assertEquals(2, rs.getInt(1));
+        rs = stat.executeQuery("explain select * from test as of version " + v1);
+        rs.next();
+        assertContains(rs.getString(1), "AS OF VERSION");
+        // AS followed by an alias
+        rs = stat.executeQuery("select of.name from test as of where of.id = 2");
+        assertTrue(rs.next());
+        assertEquals("c", rs.getString(1));
+        assertThrows(ErrorCode.INVALID_VALUE_2, stat).
+                executeQuery("select * from test as of version " + (v2 + 1000));
+        conn.close();
+    }
+
+    private static long getLastStoreVersion(Statement stat) throws SQLException {
+        ResultSet rs = stat.executeQuery("select value from information_schema.settings " +
+                "where name = 'info.STORE_LAST_VERSION'");
+        rs.next();
+        return rs.getLong(1);
+    }
+
     private void testCount() throws Exception {
         if (config.memory) {
             return;
@@ -551,8 +620,9 @@ private void testCount() throws Exception {
         rs = stat2.executeQuery("explain analyze select count(*) from test");
         rs.next();
         plan = rs.getString(1);
-        // transaction log is larger than the table, so read the table
-        assertContains(plan, "reads:");
+        // committed size of the table is known, so there is no need to read
+        // the table, even if transaction log is larger than the table
+        assertTrue(plan, plan.indexOf("reads:") < 0);
         rs = stat2.executeQuery("select count(*) from test");
         rs.next();
         assertEquals(10000, rs.getInt(1));
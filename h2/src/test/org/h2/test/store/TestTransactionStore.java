@@ -11,15 +11,18 @@
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
+import org.h2.mvstore.tx.ChangeStream;
 import org.h2.mvstore.tx.Transaction;
 import org.h2.mvstore.tx.TransactionMap;
 import org.h2.mvstore.tx.TransactionStore;
@@ -50,6 +53,9 @@ public void test() throws Exception {
         testConcurrentAddRemove();
         testConcurrentAdd();
         testCountWithOpenTransactions();
+        testCountWithCommitAndRollback();
+        testChangeStream();
+        testChangeStreamCrash();
         testConcurrentUpdate();
         testRepeatedChange();
         testTransactionAge();
@@ -249,6 +255,225 @@ private void testCountWithOpenTransactions() {
         s.close();
     }
 
+    private void testCountWithCommitAndRollback() {
+        MVStore s = MVStore.open(null);
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+
+        Transaction tx1 = ts.begin();
+        TransactionMap<Integer, Integer> map1 = tx1.openMap("data");
+        Transaction tx2 = ts.begin();
+        TransactionMap<Integer, Integer> map2 = tx2.openMap("data");
+        long savepoint = tx1.setSavepoint();
+        Random r = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            int k = r.nextInt(100);
+            switch (r.nextInt(20)) {
+            case 0:
+                tx1.commit();
+                tx1 = ts.begin();
+                map1 = map1.getInstance(tx1);
+                savepoint = tx1.setSavepoint();
+                break;
+            case 1:
+                tx1.rollbackToSavepoint(savepoint);
+                break;
+            case 2:
+                tx1.rollback();
+                tx1 = ts.begin();
+                map1 = map1.getInstance(tx1);
+                savepoint = tx1.setSavepoint();
+                break;
+            case 3:
+                savepoint = tx1.setSavepoint();
+                break;
+            case 4:
+                tx2.commit();
+                tx2 = ts.begin();
+                map2 = map2.getInstance(tx2);
+                break;
+            default:
+                // keys are split between transactions to avoid lock waits
+                TransactionMap<Integer, Integer> map = k % 2 == 0 ? map1 : map2;
+                if (r.nextBoolean()) {
+                    map.remove(k);
+                } else {
+                    map.put(k, i);
+                }
+            }
+            assertEquals("op: " + i, countKeys(map1), (int) map1.sizeAsLong());
+            assertEquals("op: " + i, countKeys(map2), (int) map2.sizeAsLong());
+        }
+        tx1.commit();
+        tx2.commit();
+        Transaction tx = ts.begin();
+        TransactionMap<Integer, Integer> map = tx.openMap("data");
+        assertEquals(countKeys(map), (int) map.sizeAsLong());
+        s.close();
+    }
+
+    private void testChangeStream() throws InterruptedException {
+        MVStore s = MVStore.open(null);
+        TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        ChangeStream stream = ts.openChangeStream(10000, 0, "changeLog");
+        try {
+            ts.openChangeStream(10, 0, null);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(DataUtils.ERROR_TRANSACTION_ILLEGAL_STATE,
+                    DataUtils.getErrorCode(e.getMessage()));
+        }
+
+        Transaction tx = ts.begin();
+        TransactionMap<Integer, Integer> map = tx.openMap("data");
+        long savepoint = tx.setSavepoint();
+        Random r = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            int k = r.nextInt(50);
+            switch (r.nextInt(20)) {
+            case 0:
+                tx.commit();
+                tx = ts.begin();
+                map = map.getInstance(tx);
+                savepoint = tx.setSavepoint();
+                break;
+            case 1:
+                tx.rollbackToSavepoint(savepoint);
+                break;
+            case 2:
+                tx.rollback();
+                tx = ts.begin();
+                map = map.getInstance(tx);
+                savepoint = tx.setSavepoint();
+                break;
+            case 3:
+                savepoint = tx.setSavepoint();
+                break;
+            case 4:
+                map.lock(k);
+                break;
+            default:
+                if (r.nextBoolean()) {
+                    map.remove(k);
+                } else {
+                    map.put(k, i);
+                }
+            }
+        }
+        tx.commit();
+        assertFalse(stream.isLossy());
+
+        // applying the events must produce the committed state
+        HashMap<Integer, Integer> replica = new HashMap<>();
+        long lastSequence = 0;
+        for (ChangeStream.Event e; (e = stream.poll(0, TimeUnit.MILLISECONDS)) != null;) {
+            assertEquals("data", e.mapName);
+            assertEquals(lastSequence + 1, e.sequence);
+            lastSequence = e.sequence;
+            assertEquals(e.oldValue, replica.get(e.key));
+            if (e.newValue == null) {
+                replica.remove(e.key);
+            } else {
+                replica.put((Integer) e.key, (Integer) e.newValue);
+            }
+        }
+        assertEquals(lastSequence, (long) stream.getChangeLog().lastKey());
+        tx = ts.begin();
+        map = map.getInstance(tx);
+        assertEquals(replica.size(), countKeys(map));
+        for (Entry<Integer, Integer> entry : replica.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        tx.commit();
+        stream.close();
+
+        // the change log is continued, and a full queue makes the stream lossy
+        stream = ts.openChangeStream(1, 0, "changeLog");
+        tx = ts.begin();
+        map = map.getInstance(tx);
+        map.put(1000, 1);
+        map.put(1001, 1);
+        tx.commit();
+        assertTrue(stream.isLossy());
+        ArrayList<ChangeStream.Event> events = new ArrayList<>();
+        assertEquals(1, stream.drainTo(events, 10));
+        assertEquals(lastSequence + 1, events.get(0).sequence);
+        assertEquals(lastSequence + 2, (long) stream.getChangeLog().lastKey());
+        stream.close();
+
+        tx = ts.begin();
+        map = map.getInstance(tx);
+        map.put(1002, 1);
+        tx.commit();
+        assertEquals(lastSequence + 2, (long) stream.getChangeLog().lastKey());
+        s.close();
+    }
+
+    private void testChangeStreamCrash() throws Exception {
+        String fileName = getBaseDir() + "/testChangeStreamCrash.h3";
+        FileUtils.delete(fileName);
+        MVStore s = new MVStore.Builder().fileName(fileName).autoCommitDisabled().open();
+        final TransactionStore ts = new TransactionStore(s);
+        ts.init();
+        ChangeStream stream = ts.openChangeStream(1, 60000, "changeLog");
+        Transaction tx = ts.begin();
+        TransactionMap<Integer, Integer> map = tx.openMap("data");
+        map.put(1, 1);
+        tx.commit();
+        // the queue is full, the next commit waits after its changes were
+        // published
+        final Transaction tx2 = ts.begin();
+        map = map.getInstance(tx2);
+        map.put(2, 2);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    tx2.commit();
+                } catch (IllegalStateException e) {
+                    // the store was closed
+                }
+            }
+        };
+        thread.start();
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+        // crash before the transaction is committed
+        s.commit();
+        s.closeImmediately();
+        thread.interrupt();
+        thread.join();
+        assertTrue(stream.isLossy());
+
+        s = MVStore.open(fileName);
+        TransactionStore ts2 = new TransactionStore(s);
+        ts2.init();
+        for (Transaction t : ts2.getOpenTransactions()) {
+            assertFalse(t.getStatus() == Transaction.STATUS_COMMITTED);
+            t.rollback();
+        }
+        MVMap<Long, Object[]> changeLog = s.openMap("changeLog");
+        assertEquals(1, changeLog.size());
+        assertEquals(1L, (long) changeLog.lastKey());
+        tx = ts2.begin();
+        map = tx.openMap("data");
+        assertEquals(1, (int) map.get(1));
+        assertNull(map.get(2));
+        tx.commit();
+        s.close();
+        FileUtils.delete(fileName);
+    }
+
+    private static int countKeys(TransactionMap<Integer, Integer> map) {
+        int count = 0;
+        for (Iterator<Integer> it = map.keyIterator(null); it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
     private void testConcurrentUpdate() {
         MVStore s;
         TransactionStore ts;